@@ -0,0 +1,207 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.codec;
+
+import io.scif.FormatException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.BytesLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * JMH benchmarks of compressing and decompressing with every codec that can
+ * do both, for each pixel type and entropy profile of {@link SyntheticData}.
+ * Throughput is reported in MB/s of uncompressed data by the {@code megabytes}
+ * counter. Codecs that can only decompress are measured by
+ * {@link DecoderBenchmark}, and the lossy 8-bit {@link JPEGCodec} by
+ * {@link JPEGCodecBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+	@Param({ "Passthrough", "Base64", "LZW", "Zlib", "Zstd", "LZ4",
+		"JPEG2000" })
+	public String codec;
+
+	@Param({ "uint8", "uint16", "float32" })
+	public String pixelType;
+
+	@Param({ "flat", "noise", "microscopy" })
+	public String profile;
+
+	private Context context;
+
+	private DataHandleService dataHandleService;
+
+	private Codec instance;
+
+	private CodecOptions options;
+
+	private byte[] image;
+
+	private byte[] compressed;
+
+	private byte[] decompressed;
+
+	/** Counts the megabytes of uncompressed data processed. */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+
+		public double megabytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			megabytes = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() throws FormatException {
+		context = new Context();
+		dataHandleService = context.service(DataHandleService.class);
+		instance = context.service(CodecService.class).getCodec(codecClass(
+			codec));
+		image = SyntheticData.image(pixelType, profile);
+
+		options = new CodecOptions();
+		options.width = SyntheticData.SIZE;
+		options.height = SyntheticData.SIZE;
+		options.channels = 1;
+		options.bitsPerSample = 8 * SyntheticData.bytesPerSample(pixelType);
+		options.maxBytes = image.length;
+		options.lossless = true;
+
+		compressed = instance.compress(image, options);
+		decompressed = new byte[image.length];
+		if (!Arrays.equals(image, instance.decompress(compressed,
+			options)))
+		{
+			throw new IllegalStateException(codec + " does not round trip");
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Benchmark
+	public byte[] compress(final Counters counters) throws FormatException {
+		counters.megabytes += image.length / 1e6;
+		return instance.compress(image, options);
+	}
+
+	@Benchmark
+	public byte[] decompress(final Counters counters) throws FormatException {
+		counters.megabytes += image.length / 1e6;
+		return instance.decompress(compressed, options);
+	}
+
+	/** Decompresses into a reused buffer, as TIFF tiles are. */
+	@Benchmark
+	public int decompressIntoBuffer(final Counters counters)
+		throws FormatException
+	{
+		counters.megabytes += image.length / 1e6;
+		return instance.decompress(ByteBuffer.wrap(compressed), decompressed, 0,
+			decompressed.length, options);
+	}
+
+	/** Decompresses from a data handle, as TIFF strips are read. */
+	@Benchmark
+	public byte[] decompressHandle(final Counters counters)
+		throws FormatException, IOException
+	{
+		counters.megabytes += image.length / 1e6;
+		try (final DataHandle<Location> handle = dataHandleService.create(
+			new BytesLocation(compressed)))
+		{
+			return instance.decompress(handle, options);
+		}
+	}
+
+	static Class<? extends Codec> codecClass(final String name) {
+		switch (name) {
+			case "Base64":
+				return Base64Codec.class;
+			case "JPEG":
+				return JPEGCodec.class;
+			case "JPEG2000":
+				return JPEG2000Codec.class;
+			case "LosslessJPEG":
+				return LosslessJPEGCodec.class;
+			case "LZ4":
+				return LZ4Codec.class;
+			case "LZW":
+				return LZWCodec.class;
+			case "Nikon":
+				return NikonCodec.class;
+			case "Packbits":
+				return PackbitsCodec.class;
+			case "Passthrough":
+				return PassthroughCodec.class;
+			case "Zlib":
+				return ZlibCodec.class;
+			case "Zstd":
+				return ZstdCodec.class;
+			default:
+				throw new IllegalArgumentException("Unknown codec: " + name);
+		}
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.codec;
+
+import io.scif.FormatException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.BytesLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * JMH benchmarks of the codecs that can only decompress, for each entropy
+ * profile of {@link SyntheticData}. The compressed data is produced by the
+ * encoders of {@link HuffmanEncoder} and by {@link SyntheticData#packbits}.
+ * Lossless JPEG is measured with 8-bit and 16-bit samples. Throughput is
+ * reported in MB/s of uncompressed data by the {@code megabytes} counter.
+ * <p>
+ * The video codecs (MJPB, MSRLE, MSVideo, QTRLE and RPZA) are not measured, as
+ * they decode frames of their own container formats, and neither is LuraWave,
+ * which needs a licensed decoder.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecoderBenchmark {
+
+	@Param({ "Packbits", "LosslessJPEG8", "LosslessJPEG16", "Nikon" })
+	public String codec;
+
+	@Param({ "flat", "noise", "microscopy" })
+	public String profile;
+
+	private Context context;
+
+	private DataHandleService dataHandleService;
+
+	private Codec instance;
+
+	private CodecOptions options;
+
+	private byte[] compressed;
+
+	private int size;
+
+	@Setup
+	public void setUp() {
+		context = new Context();
+		dataHandleService = context.service(DataHandleService.class);
+		final CodecService codecService = context.service(CodecService.class);
+
+		switch (codec) {
+			case "Packbits":
+				instance = codecService.getCodec(PackbitsCodec.class);
+				final byte[] image = SyntheticData.image("uint8", profile);
+				compressed = SyntheticData.packbits(image);
+				options = new CodecOptions();
+				options.maxBytes = image.length;
+				size = image.length;
+				break;
+			case "LosslessJPEG8":
+			case "LosslessJPEG16":
+				final int bits = codec.endsWith("16") ? 16 : 8;
+				instance = codecService.getCodec(LosslessJPEGCodec.class);
+				compressed = HuffmanEncoder.encodeJPEG(SyntheticData.samples(profile,
+					(1 << bits) - 1), bits);
+				options = new CodecOptions();
+				size = bits / 8 * SyntheticData.SIZE * SyntheticData.SIZE;
+				break;
+			case "Nikon":
+				instance = codecService.getCodec(NikonCodec.class);
+				compressed = HuffmanEncoder.encodeNikon(SyntheticData.samples(profile,
+					4095));
+				final NikonCodecOptions nikon = new NikonCodecOptions();
+				nikon.lossless = true;
+				nikon.bitsPerSample = 12;
+				nikon.width = SyntheticData.SIZE;
+				nikon.height = SyntheticData.SIZE;
+				nikon.maxBytes = compressed.length;
+				nikon.split = -1;
+				options = nikon;
+				size = 3 * SyntheticData.SIZE * SyntheticData.SIZE / 2;
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown codec: " + codec);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Benchmark
+	public byte[] decompress(final CodecBenchmark.Counters counters)
+		throws FormatException, IOException
+	{
+		counters.megabytes += size / 1e6;
+		if (options instanceof NikonCodecOptions) {
+			// the vertical predictors carry over from one call to the next
+			((NikonCodecOptions) options).vPredictor = null;
+		}
+		try (final DataHandle<Location> handle = dataHandleService.create(
+			new BytesLocation(compressed)))
+		{
+			return instance.decompress(handle, options);
+		}
+	}
+
+}
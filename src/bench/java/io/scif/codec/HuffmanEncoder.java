@@ -0,0 +1,159 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.codec;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Huffman encoders producing input for the decoders of
+ * {@link LosslessJPEGCodec} and {@link NikonCodec}, which cannot compress.
+ * Images are {@link SyntheticData#SIZE} pixels square.
+ */
+final class HuffmanEncoder {
+
+	/**
+	 * Code lengths from 2 to 14 bits, for sample differences of up to 16 bits,
+	 * with the most common differences first.
+	 */
+	private static final short[] JPEG_TABLE = { 0, 1, 5, 1, 1, 1, 1, 1, 1, 1, 1,
+		1, 1, 1, 0, 0, 4, 3, 5, 2, 6, 1, 7, 0, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+
+	/** The 12-bit lossless table of {@link NikonCodec}. */
+	private static final short[] NIKON_TABLE = { 0, 1, 4, 2, 3, 1, 2, 0, 0, 0, 0,
+		0, 0, 0, 0, 0, 5, 4, 6, 3, 7, 2, 8, 1, 9, 0, 10, 11, 12 };
+
+	private static final int SIZE = SyntheticData.SIZE;
+
+	private HuffmanEncoder() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	/**
+	 * Encodes a single component image as lossless JPEG, predicting each sample
+	 * from the one to its left.
+	 */
+	static byte[] encodeJPEG(final int[] image, final int bits) {
+		final int[][] codes = codes(JPEG_TABLE);
+		final BitWriter data = new BitWriter(image.length);
+		for (int i = 0; i < image.length; i++) {
+			final int predictor;
+			if (i == 0) predictor = 1 << (bits - 1);
+			else if (i % SIZE == 0) predictor = image[i - SIZE];
+			else predictor = image[i - 1];
+			// differences are modulo 2^16, as in the lossless JPEG decoder
+			writeDifference(data, codes, (image[i] - predictor) << 16 >> 16);
+		}
+		final byte[] scan = data.toByteArray();
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeShort(out, LosslessJPEGCodec.SOI);
+		writeShort(out, LosslessJPEGCodec.SOF3);
+		writeShort(out, 11);
+		out.write(bits);
+		writeShort(out, SIZE);
+		writeShort(out, SIZE);
+		out.write(1);
+		out.write(new byte[] { 1, 0x11, 0 }, 0, 3);
+		writeShort(out, LosslessJPEGCodec.DHT);
+		writeShort(out, 3 + JPEG_TABLE.length);
+		out.write(0);
+		for (final short value : JPEG_TABLE) {
+			out.write(value);
+		}
+		writeShort(out, LosslessJPEGCodec.SOS);
+		writeShort(out, 8);
+		out.write(new byte[] { 1, 1, 0, 1, 0, 0 }, 0, 6);
+		for (final byte b : scan) {
+			out.write(b);
+			if (b == (byte) 0xff) out.write(0);
+		}
+		writeShort(out, LosslessJPEGCodec.EOI);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Encodes an image as Nikon NEF data, predicting each sample from the
+	 * previous one of the same color.
+	 */
+	static byte[] encodeNikon(final int[] image) {
+		final int[][] codes = codes(NIKON_TABLE);
+		final BitWriter data = new BitWriter(image.length);
+		final int[] vPredictor = new int[4];
+		final int[] hPredictor = new int[2];
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				final int value = image[y * SIZE + x];
+				if (x < 2) {
+					final int cfaIndex = 2 * (y & 1) + (x & 1);
+					writeDifference(data, codes, value - vPredictor[cfaIndex]);
+					vPredictor[cfaIndex] = value;
+				}
+				else writeDifference(data, codes, value - hPredictor[x & 1]);
+				hPredictor[x & 1] = value;
+			}
+		}
+		return data.toByteArray();
+	}
+
+	/** Returns the code and its length for each value of the given table. */
+	private static int[][] codes(final short[] table) {
+		final int[][] codes = new int[17][];
+		int code = 0;
+		int k = 16;
+		for (int length = 1; length <= 16; length++) {
+			for (int i = 0; i < table[length - 1]; i++) {
+				codes[table[k++]] = new int[] { code++, length };
+			}
+			code <<= 1;
+		}
+		return codes;
+	}
+
+	/** Writes a difference as its bit count followed by its bits. */
+	private static void writeDifference(final BitWriter out,
+		final int[][] codes, final int difference)
+	{
+		final int bitCount = 32 - Integer.numberOfLeadingZeros(Math.abs(
+			difference));
+		out.write(codes[bitCount][0], codes[bitCount][1]);
+		if (bitCount > 0 && bitCount < 16) {
+			out.write(difference < 0 ? difference - 1 : difference, bitCount);
+		}
+	}
+
+	private static void writeShort(final ByteArrayOutputStream out,
+		final int value)
+	{
+		out.write(value >> 8);
+		out.write(value);
+	}
+
+}
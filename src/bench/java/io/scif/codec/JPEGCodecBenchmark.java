@@ -0,0 +1,119 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.codec;
+
+import io.scif.FormatException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+
+/**
+ * JMH benchmarks of {@link JPEGCodec}, which is lossy and only handles 8-bit
+ * data, for each entropy profile of {@link SyntheticData} and each
+ * {@link JPEGCodecOptions#scale scale} of decompression. Throughput is
+ * reported in MB/s of uncompressed, full size data by the {@code megabytes}
+ * counter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JPEGCodecBenchmark {
+
+	@Param({ "flat", "noise", "microscopy" })
+	public String profile;
+
+	@Param({ "1", "2", "8" })
+	public int scale;
+
+	private Context context;
+
+	private Codec instance;
+
+	private JPEGCodecOptions options;
+
+	private byte[] image;
+
+	private byte[] compressed;
+
+	@Setup
+	public void setUp() throws FormatException {
+		context = new Context();
+		instance = context.service(CodecService.class).getCodec(JPEGCodec.class);
+		image = SyntheticData.image("uint8", profile);
+
+		options = JPEGCodecOptions.getDefaultOptions();
+		options.width = SyntheticData.SIZE;
+		options.height = SyntheticData.SIZE;
+		options.channels = 1;
+		options.bitsPerSample = 8;
+		options.scale = scale;
+
+		compressed = instance.compress(image, options);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Benchmark
+	public byte[] compress(final CodecBenchmark.Counters counters)
+		throws FormatException
+	{
+		counters.megabytes += image.length / 1e6;
+		return instance.compress(image, options);
+	}
+
+	@Benchmark
+	public byte[] decompress(final CodecBenchmark.Counters counters)
+		throws FormatException
+	{
+		counters.megabytes += image.length / 1e6;
+		return instance.decompress(compressed, options);
+	}
+
+}
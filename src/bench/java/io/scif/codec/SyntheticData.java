@@ -0,0 +1,165 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic images for the codec benchmarks. Every image is
+ * generated from a fixed seed, so that runs on different machines compress
+ * exactly the same data.
+ */
+final class SyntheticData {
+
+	/** Width and height of every image. */
+	static final int SIZE = 256;
+
+	private SyntheticData() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	/**
+	 * Creates the samples of an image with the given entropy profile, with
+	 * values from 0 to {@code max}.
+	 *
+	 * @param profile "flat" for a constant image, "noise" for uniformly
+	 *          distributed values, or "microscopy" for bright spots on a dim
+	 *          background, with shot noise
+	 */
+	static int[] samples(final String profile, final int max) {
+		final Random random = new Random(42);
+		final int[] samples = new int[SIZE * SIZE];
+		switch (profile) {
+			case "flat":
+				Arrays.fill(samples, max / 4);
+				break;
+			case "noise":
+				for (int i = 0; i < samples.length; i++) {
+					samples[i] = random.nextInt(max + 1);
+				}
+				break;
+			case "microscopy":
+				final double[] spots = new double[3 * 40];
+				for (int i = 0; i < spots.length; i += 3) {
+					spots[i] = random.nextDouble() * SIZE;
+					spots[i + 1] = random.nextDouble() * SIZE;
+					spots[i + 2] = 2 + random.nextDouble() * 6;
+				}
+				for (int y = 0; y < SIZE; y++) {
+					for (int x = 0; x < SIZE; x++) {
+						double mean = 0.05 * max;
+						for (int i = 0; i < spots.length; i += 3) {
+							final double dx = x - spots[i], dy = y - spots[i + 1];
+							final double sigma = spots[i + 2];
+							mean += 0.8 * max * Math.exp(-(dx * dx + dy * dy) / (2 * sigma *
+								sigma));
+						}
+						// shot noise, approximated by a normal distribution
+						final double value = mean + random.nextGaussian() * Math.sqrt(
+							mean * Math.max(1, max / 255.0));
+						samples[y * SIZE + x] = (int) Math.max(0, Math.min(max, Math
+							.round(value)));
+					}
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown profile: " + profile);
+		}
+		return samples;
+	}
+
+	/**
+	 * Creates a big-endian image with the given pixel type and entropy profile.
+	 *
+	 * @param pixelType "uint8", "uint16" or "float32"
+	 * @see #samples(String, int)
+	 */
+	static byte[] image(final String pixelType, final String profile) {
+		final int bytesPerSample = bytesPerSample(pixelType);
+		final int[] samples = samples(profile, bytesPerSample == 1 ? 255 : 65535);
+		final byte[] image = new byte[samples.length * bytesPerSample];
+		for (int i = 0; i < samples.length; i++) {
+			final int value = bytesPerSample == 4 ? Float.floatToIntBits(
+				samples[i] / 65535f) : samples[i];
+			for (int b = 0; b < bytesPerSample; b++) {
+				image[i * bytesPerSample + b] = (byte) (value >> (8 * (bytesPerSample -
+					b - 1)));
+			}
+		}
+		return image;
+	}
+
+	static int bytesPerSample(final String pixelType) {
+		switch (pixelType) {
+			case "uint8":
+				return 1;
+			case "uint16":
+				return 2;
+			case "float32":
+				return 4;
+			default:
+				throw new IllegalArgumentException("Unknown pixel type: " + pixelType);
+		}
+	}
+
+	/** Encodes the given data with PackBits. */
+	static byte[] packbits(final byte[] data) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int i = 0;
+		while (i < data.length) {
+			int run = 1;
+			while (i + run < data.length && run < 128 && data[i + run] == data[i]) {
+				run++;
+			}
+			if (run > 2) {
+				out.write(1 - run);
+				out.write(data[i]);
+				i += run;
+				continue;
+			}
+			// a literal ends where a run of three begins
+			int literal = 1;
+			while (i + literal < data.length && literal < 128 && !(i + literal +
+				2 < data.length && data[i + literal] == data[i + literal + 1] &&
+				data[i + literal] == data[i + literal + 2]))
+			{
+				literal++;
+			}
+			out.write(literal - 1);
+			out.write(data, i, literal);
+			i += literal;
+		}
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * JMH benchmark of {@link TiffParser} IFD parsing, measuring the time needed
+ * to parse every IFD of a synthetic TIFF file with one IFD per page, with and
+ * without caching of the entry values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TiffOpenBenchmark {
+
+	private static final int ENTRIES = 12;
+
+	private static final String DESCRIPTION = "Synthetic page for benchmarking";
+
+	@Param({ "50000" })
+	public int pages;
+
+	@Param({ "true", "false" })
+	public boolean caching;
+
+	private Context context;
+
+	private DataHandleService dataHandleService;
+
+	private File file;
+
+	private FileLocation location;
+
+	@Setup
+	public void setUp() throws IOException {
+		context = new Context();
+		dataHandleService = context.service(DataHandleService.class);
+		file = File.createTempFile("benchmark", ".tif");
+		writeTiff(file, pages);
+		location = new FileLocation(file);
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.dispose();
+		file.delete();
+	}
+
+	@Benchmark
+	public IFDList parse() throws IOException {
+		try (final DataHandle<Location> handle = dataHandleService.readBuffer(
+			location))
+		{
+			final TiffParser parser = new TiffParser(context, handle);
+			parser.setDoCaching(caching);
+			final IFDList ifds = parser.getIFDs();
+			if (!caching) {
+				for (final IFD ifd : ifds) {
+					parser.fillInIFD(ifd);
+				}
+			}
+			return ifds;
+		}
+	}
+
+	/**
+	 * Writes a little-endian TIFF with one 1x1 8-bit page per IFD. Each IFD has
+	 * a description and resolution values stored out of line after its entry
+	 * table, as is usual for TIFF writers.
+	 */
+	private static void writeTiff(final File file, final int pages)
+		throws IOException
+	{
+		final byte[] description = (DESCRIPTION + "\0").getBytes("US-ASCII");
+		final int ifdLength = 2 + ENTRIES * 12 + 4;
+		final int pageLength = ifdLength + description.length + 16 + 1;
+
+		try (final OutputStream out = new BufferedOutputStream(
+			new FileOutputStream(file)))
+		{
+			final ByteBuffer header = ByteBuffer.allocate(8).order(
+				ByteOrder.LITTLE_ENDIAN);
+			header.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+			out.write(header.array());
+
+			final ByteBuffer page = ByteBuffer.allocate(pageLength).order(
+				ByteOrder.LITTLE_ENDIAN);
+			for (int p = 0; p < pages; p++) {
+				final long offset = 8 + (long) p * pageLength;
+				final int descriptionOffset = (int) offset + ifdLength;
+				final int resolutionOffset = descriptionOffset + description.length;
+				final int pixelOffset = resolutionOffset + 16;
+				final long next = p == pages - 1 ? 0 : offset + pageLength;
+
+				page.clear();
+				page.putShort((short) ENTRIES);
+				putEntry(page, IFD.NEW_SUBFILE_TYPE, IFDType.LONG, 1, 0);
+				putEntry(page, IFD.IMAGE_WIDTH, IFDType.SHORT, 1, 1);
+				putEntry(page, IFD.IMAGE_LENGTH, IFDType.SHORT, 1, 1);
+				putEntry(page, IFD.BITS_PER_SAMPLE, IFDType.SHORT, 1, 8);
+				putEntry(page, IFD.COMPRESSION, IFDType.SHORT, 1, 1);
+				putEntry(page, IFD.PHOTOMETRIC_INTERPRETATION, IFDType.SHORT, 1, 1);
+				putEntry(page, IFD.IMAGE_DESCRIPTION, IFDType.ASCII,
+					description.length, descriptionOffset);
+				putEntry(page, IFD.STRIP_OFFSETS, IFDType.LONG, 1, pixelOffset);
+				putEntry(page, IFD.ROWS_PER_STRIP, IFDType.SHORT, 1, 1);
+				putEntry(page, IFD.STRIP_BYTE_COUNTS, IFDType.LONG, 1, 1);
+				putEntry(page, IFD.X_RESOLUTION, IFDType.RATIONAL, 1,
+					resolutionOffset);
+				putEntry(page, IFD.Y_RESOLUTION, IFDType.RATIONAL, 1,
+					resolutionOffset + 8);
+				page.putInt((int) next);
+				page.put(description);
+				page.putInt(72).putInt(1).putInt(72).putInt(1);
+				page.put((byte) p);
+				out.write(page.array());
+			}
+		}
+	}
+
+	private static void putEntry(final ByteBuffer buffer, final int tag,
+		final IFDType type, final int count, final int value)
+	{
+		buffer.putShort((short) tag);
+		buffer.putShort((short) type.getCode());
+		buffer.putInt(count);
+		if (type == IFDType.SHORT && count == 1) {
+			buffer.putShort((short) value).putShort((short) 0);
+		}
+		else buffer.putInt(value);
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import io.scif.FormatException;
+import io.scif.util.FormatTools;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+import org.scijava.io.location.BytesLocation;
+import org.scijava.util.Bytes;
+
+/**
+ * JMH benchmarks of the TIFF predictors, writing a synthetic 32-bit floating
+ * point plane with Deflate and each predictor, and reading it back.
+ * Throughput is reported in MB/s of uncompressed data by the
+ * {@code megabytes} counter, and of the written TIFF by the
+ * {@code compressedMegabytes} counter; the ratio of the two is the
+ * compression ratio of the predictor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TiffPredictorBenchmark {
+
+	@Param({ "1", "2", "3" })
+	public int predictor;
+
+	@Param({ "2048" })
+	public int size;
+
+	private Context context;
+
+	private byte[] plane;
+
+	private BytesLocation written;
+
+	private byte[] samples;
+
+	/** Length in bytes of the written TIFF. */
+	private long length;
+
+	/** Counts the megabytes of uncompressed and compressed data processed. */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class Counters {
+
+		public double megabytes;
+
+		public double compressedMegabytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			megabytes = 0;
+			compressedMegabytes = 0;
+		}
+	}
+
+	@Setup
+	public void setUp() throws FormatException, IOException {
+		context = new Context();
+
+		// a smooth field with a little noise, like most measured data
+		plane = new byte[size * size * 4];
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				final double value = Math.sin(x / 50.0) * Math.cos(y / 70.0) * 1000 +
+					((x * 31 + y * 17) % 7) * 0.01;
+				Bytes.unpack(Float.floatToIntBits((float) value), plane, (y * size +
+					x) * 4, 4, true);
+			}
+		}
+		written = new BytesLocation(plane.length);
+		length = write(written);
+		samples = new byte[plane.length];
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Benchmark
+	public long write(final Counters counters) throws FormatException,
+		IOException
+	{
+		final long tiffLength = write(new BytesLocation(plane.length));
+		counters.megabytes += plane.length / 1e6;
+		counters.compressedMegabytes += tiffLength / 1e6;
+		return tiffLength;
+	}
+
+	@Benchmark
+	public byte[] read(final Counters counters) throws FormatException,
+		IOException
+	{
+		counters.megabytes += plane.length / 1e6;
+		counters.compressedMegabytes += length / 1e6;
+		final TiffParser parser = new TiffParser(context, written);
+		return parser.getSamples(parser.getFirstIFD(), samples);
+	}
+
+	/** Writes the plane as 256x256 Deflate tiles, returning the TIFF size. */
+	private long write(final BytesLocation location) throws FormatException,
+		IOException
+	{
+		final TiffSaver saver = new TiffSaver(context, location);
+		saver.setLittleEndian(true);
+		saver.writeHeader();
+		final IFD ifd = new IFD(null);
+		ifd.putIFDValue(IFD.IMAGE_WIDTH, size);
+		ifd.putIFDValue(IFD.IMAGE_LENGTH, size);
+		ifd.putIFDValue(IFD.TILE_WIDTH, 256);
+		ifd.putIFDValue(IFD.TILE_LENGTH, 256);
+		ifd.putIFDValue(IFD.COMPRESSION, TiffCompression.DEFLATE.getCode());
+		ifd.putIFDValue(IFD.PREDICTOR, predictor);
+		saver.writeImage(plane, ifd, 0, FormatTools.FLOAT, true);
+		return saver.getStream().length();
+	}
+
+}
@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import io.scif.FormatException;
+import io.scif.util.FormatTools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.scijava.Context;
+import org.scijava.io.location.FileLocation;
+
+/**
+ * JMH benchmark of {@link TiffSaver} image writing, measuring the time needed
+ * to write a synthetic uncompressed 16-bit stack to a file as strips of one
+ * row, strips of 64 rows, or 256x256 tiles.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TiffSaveBenchmark {
+
+	@Param({ "strips1", "strips64", "tiles256" })
+	public String layout;
+
+	@Param({ "4096" })
+	public int size;
+
+	@Param({ "8" })
+	public int planes;
+
+	private Context context;
+
+	private byte[] plane;
+
+	private File file;
+
+	@Setup
+	public void setUp() throws IOException {
+		context = new Context();
+		plane = new byte[size * size * 2];
+		for (int i = 0; i < plane.length; i++) {
+			plane[i] = (byte) (i * 31);
+		}
+		file = File.createTempFile("benchmark", ".tif");
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.dispose();
+		file.delete();
+	}
+
+	@Benchmark
+	public long write() throws FormatException, IOException {
+		file.delete();
+		final TiffSaver saver = new TiffSaver(context, new FileLocation(file));
+		saver.setLittleEndian(true);
+		saver.setBigTiff(true);
+		saver.writeHeader();
+		for (int p = 0; p < planes; p++) {
+			final IFD ifd = new IFD(null);
+			ifd.putIFDValue(IFD.IMAGE_WIDTH, size);
+			ifd.putIFDValue(IFD.IMAGE_LENGTH, size);
+			if (layout.equals("tiles256")) {
+				ifd.putIFDValue(IFD.TILE_WIDTH, 256);
+				ifd.putIFDValue(IFD.TILE_LENGTH, 256);
+			}
+			else {
+				final long rowsPerStrip = layout.equals("strips1") ? 1 : 64;
+				ifd.putIFDValue(IFD.ROWS_PER_STRIP, new long[] { rowsPerStrip });
+			}
+			saver.writeImage(plane, ifd, p, FormatTools.UINT16, p == planes - 1);
+		}
+		final long length = saver.getStream().length();
+		saver.getStream().close();
+		return length;
+	}
+
+}
@@ -400,9 +400,9 @@ public abstract class AbstractReader<M extends TypedMetadata, P extends DataPlan
 			scanlinePad == 0)
 		{
 			if (metadata.get(imageIndex).getInterleavedAxisCount() > 0) {
-				int bytesToSkip = bpp;
+				long bytesToSkip = bpp;
 				bytesToSkip *= bounds.max(xIndex);
-				int bytesToRead = bytesToSkip;
+				long bytesToRead = bytesToSkip;
 				for (int i = 0; i < bounds.numDimensions(); i++) {
 					if (i != xIndex) {
 						if (i == yIndex) {
@@ -415,7 +415,7 @@ public abstract class AbstractReader<M extends TypedMetadata, P extends DataPlan
 					}
 				}
 				s.skip(bytesToSkip);
-				s.read(bytes, 0, bytesToRead);
+				s.read(bytes, 0, (int) bytesToRead);
 			}
 			else {
 				final int rowLen = (int) (bpp * bounds.max(xIndex));
@@ -425,12 +425,12 @@ public abstract class AbstractReader<M extends TypedMetadata, P extends DataPlan
 				if (c <= 0 || !metadata.get(imageIndex).isMultichannel()) c = 1;
 				for (int channel = 0; channel < c; channel++) {
 
-					s.skipBytes(y * rowLen);
+					s.skip((long) y * rowLen);
 					s.read(bytes, channel * h * rowLen, h * rowLen);
 					if (channel < c - 1) {
 						// no need to skip bytes after reading final channel
-						s.skipBytes((int) (metadata.get(imageIndex).getAxisLength(Axes.Y) -
-							y - h) * rowLen);
+						s.skip((metadata.get(imageIndex).getAxisLength(Axes.Y) - y - h) *
+							rowLen);
 					}
 				}
 			}
@@ -444,10 +444,10 @@ public abstract class AbstractReader<M extends TypedMetadata, P extends DataPlan
 					if (i != xIndex && i != yIndex) planeProduct *= metadata.get(
 						imageIndex).getAxisLength(i);
 				}
-				int bytesToSkip = scanlineWidth * (int) planeProduct;
-				s.skipBytes((int) bounds.min(yIndex) * bytesToSkip);
+				// file offsets may exceed 2GB even when the region read does not
+				s.skip(bounds.min(yIndex) * scanlineWidth * planeProduct);
 
-				bytesToSkip = bpp;
+				int bytesToSkip = bpp;
 				int bytesToRead = bytesToSkip;
 				bytesToRead *= bounds.max(xIndex);
 				bytesToRead *= planeProduct;
@@ -472,7 +472,7 @@ public abstract class AbstractReader<M extends TypedMetadata, P extends DataPlan
 				final int x = (int) bounds.min(xIndex);
 				final int y = (int) bounds.min(yIndex);
 				for (int channel = 0; channel < c; channel++) {
-					s.skipBytes(y * scanlineWidth * bpp);
+					s.skip((long) y * scanlineWidth * bpp);
 					for (int row = 0; row < h; row++) {
 						s.skipBytes(x * bpp);
 						s.read(bytes, channel * w * h * bpp + row * w * bpp, w * bpp);
@@ -484,7 +484,7 @@ public abstract class AbstractReader<M extends TypedMetadata, P extends DataPlan
 					}
 					if (channel < c - 1) {
 						// no need to skip bytes after reading final channel
-						s.skipBytes(scanlineWidth * bpp * (int) (metadata.get(imageIndex)
+						s.skip((long) scanlineWidth * bpp * (metadata.get(imageIndex)
 							.getAxisLength(Axes.Y) - y - h));
 					}
 				}
@@ -150,6 +150,66 @@ public interface Reader extends HasFormat, HasSource, Groupable {
 	Plane openPlane(int imageIndex, long planeIndex, Plane plane, Interval bounds,
 		SCIFIOConfig config) throws FormatException, IOException;
 
+	/**
+	 * Gets the number of resolution levels available for the given image. Level
+	 * 0 is the image at full resolution, and each following level is a smaller,
+	 * downsampled version of it, e.g. one level of a pyramidal TIFF.
+	 *
+	 * @param imageIndex the image index within the dataset.
+	 * @return The number of resolution levels; 1 if the image has no
+	 *         sub-resolutions.
+	 */
+	default int getResolutionCount(final int imageIndex) {
+		return 1;
+	}
+
+	/**
+	 * Gets the lengths of the planar axes of the given image at the given
+	 * resolution level, in the order of the image's planar axes.
+	 *
+	 * @param imageIndex the image index within the dataset.
+	 * @param resolution the resolution level, from 0 (full resolution) to
+	 *          {@link #getResolutionCount(int)} - 1.
+	 * @throws IllegalArgumentException If the resolution level is out of range.
+	 */
+	default long[] getResolutionDimensions(final int imageIndex,
+		final int resolution)
+	{
+		if (resolution != 0) {
+			throw new IllegalArgumentException("Invalid resolution level: " +
+				resolution);
+		}
+		return getMetadata().get(imageIndex).getAxesLengthsPlanar();
+	}
+
+	/**
+	 * Creates a {@link io.scif.Plane} representation of a desired sub-region of
+	 * the pixels at the specified indices and resolution level. Only the pixels
+	 * of the requested level are read, so opening a low resolution level is much
+	 * cheaper than opening and downsampling the full resolution plane.
+	 *
+	 * @param imageIndex the image index within the dataset.
+	 * @param planeIndex the plane index within the image.
+	 * @param resolution the resolution level, from 0 (full resolution) to
+	 *          {@link #getResolutionCount(int)} - 1.
+	 * @param bounds bounds of the planar axes, in the coordinates of the given
+	 *          resolution level.
+	 * @param config Configuration information to use for this read.
+	 * @return The desired sub-region at the specified indices and level.
+	 * @throws IllegalArgumentException If the resolution level is out of range.
+	 * @see #getResolutionDimensions(int, int)
+	 */
+	default Plane openPlane(final int imageIndex, final long planeIndex,
+		final int resolution, final Interval bounds, final SCIFIOConfig config)
+		throws FormatException, IOException
+	{
+		if (resolution != 0) {
+			throw new IllegalArgumentException("Invalid resolution level: " +
+				resolution);
+		}
+		return openPlane(imageIndex, planeIndex, bounds, config);
+	}
+
 	/** Returns the current file. */
 	Location getCurrentLocation();
 
@@ -27,62 +27,65 @@
  * #L%
  */
 
-package io.scif.codec;
-
-import java.util.Random;
 
-import org.scijava.log.LogService;
-import org.scijava.log.StderrLogService;
+package io.scif.codec;
 
 /**
  * A class for reading arbitrary numbers of bits from a byte array.
+ * <p>
+ * Bits are buffered in a 64-bit accumulator that is refilled a whole word at
+ * a time, so that short reads only need a shift. {@link #peekBits(int)} and
+ * {@link #consumeBits(int)} allow table-driven decoders to look at the next
+ * bits before deciding how many of them to use.
  *
  * @author Eric Kjellman
  */
 public class BitBuffer {
 
-	// -- Constants --
-
-	/** Various bitmasks for the 0000xxxx side of a byte. */
-	private static final int[] BACK_MASK = { 0x00, // 00000000
-		0x01, // 00000001
-		0x03, // 00000011
-		0x07, // 00000111
-		0x0F, // 00001111
-		0x1F, // 00011111
-		0x3F, // 00111111
-		0x7F // 01111111
-	};
-
-	/** Various bitmasks for the xxxx0000 side of a byte. */
-	private static final int[] FRONT_MASK = { 0x0000, // 00000000
-		0x0080, // 10000000
-		0x00C0, // 11000000
-		0x00E0, // 11100000
-		0x00F0, // 11110000
-		0x00F8, // 11111000
-		0x00FC, // 11111100
-		0x00FE // 11111110
-	};
+	// -- Fields --
 
 	private final byte[] byteBuffer;
 
+	/** Index of the next byte to load into the accumulator. */
 	private int currentByte;
 
-	private int currentBit;
-
 	private final int eofByte;
 
-	private boolean eofFlag;
+	/**
+	 * Buffered bits, left aligned: the next bit to read is the most significant
+	 * one. Any bits below the first {@link #bitCount} are either zero or the
+	 * bits that follow in the byte array.
+	 */
+	private long bits;
+
+	/** Number of valid bits in {@link #bits}; never more than 63. */
+	private int bitCount;
+
+	// -- Constructors --
 
 	/** Default constructor. */
 	public BitBuffer(final byte[] byteBuffer) {
+		this(byteBuffer, 0, byteBuffer.length);
+	}
+
+	/**
+	 * Constructs a bit buffer reading {@code length} bytes of the given array,
+	 * starting at {@code offset}.
+	 */
+	public BitBuffer(final byte[] byteBuffer, final int offset,
+		final int length)
+	{
+		if (offset < 0 || length < 0 || offset + length > byteBuffer.length) {
+			throw new IllegalArgumentException("Invalid range: offset=" + offset +
+				", length=" + length);
+		}
 		this.byteBuffer = byteBuffer;
-		currentByte = 0;
-		currentBit = 0;
-		eofByte = byteBuffer.length;
+		currentByte = offset;
+		eofByte = offset + length;
 	}
 
+	// -- BitBuffer API methods --
+
 	/**
 	 * Skips a number of bits in the BitBuffer.
 	 *
@@ -92,22 +95,24 @@ public class BitBuffer {
 		if (bits < 0) {
 			throw new IllegalArgumentException("Bits to skip may not be negative");
 		}
+		if (bits <= bitCount) {
+			drop((int) bits);
+			return;
+		}
 
+		final long toSkip = bits - bitCount;
+		this.bits = 0;
+		bitCount = 0;
 		// handles skipping past eof
-		if ((long) eofByte * 8 < (long) currentByte * 8 + currentBit + bits) {
-			eofFlag = true;
+		if ((long) (eofByte - currentByte) * 8 <= toSkip) {
 			currentByte = eofByte;
-			currentBit = 0;
 			return;
 		}
-
-		final int skipBytes = (int) (bits / 8);
-		final int skipBits = (int) (bits % 8);
-		currentByte += skipBytes;
-		currentBit += skipBits;
-		while (currentBit >= 8) {
-			currentByte++;
-			currentBit -= 8;
+		currentByte += (int) (toSkip >>> 3);
+		final int skipBits = (int) (toSkip & 7);
+		if (skipBits > 0) {
+			fill();
+			drop(skipBits);
 		}
 	}
 
@@ -129,63 +134,104 @@ public class BitBuffer {
 	 * Requesting more than 32 bits is allowed, but only up to 32 bits worth of
 	 * data will be returned (the last 32 bits read).
 	 * <p>
+	 * If the end of the buffer is reached part way, the bits that could be read
+	 * are returned; once it has been reached, -1 is returned.
 	 *
 	 * @param bitsToRead the number of bits to read from the bit buffer
 	 * @return the value of the bits read
 	 */
-	public int getBits(int bitsToRead) {
+	public int getBits(final int bitsToRead) {
 		if (bitsToRead < 0) {
 			throw new IllegalArgumentException("Bits to read may not be negative");
 		}
 		if (bitsToRead == 0) return 0;
-		if (eofFlag) return -1; // Already at end of file
-		int toStore = 0;
-		while (bitsToRead != 0 && !eofFlag) {
-			if (currentBit < 0 || currentBit > 7) {
-				throw new IllegalStateException("byte=" + currentByte + ", bit = " +
-					currentBit);
+		if (bitsToRead <= 32) {
+			if (bitCount < bitsToRead) fill();
+			if (bitCount >= bitsToRead) {
+				final int value = (int) (bits >>> (64 - bitsToRead));
+				drop(bitsToRead);
+				return value;
 			}
+		}
+		return getBitsSlow(bitsToRead);
+	}
 
-			// if we need to read from more than the current byte in the
-			// buffer...
-			final int bitsLeft = 8 - currentBit;
-			if (bitsToRead >= bitsLeft) {
-				toStore <<= bitsLeft;
-				bitsToRead -= bitsLeft;
-				final int cb = byteBuffer[currentByte];
-				if (currentBit == 0) {
-					// we can read in a whole byte, so we'll do that.
-					toStore += cb & 0xff;
-				}
-				else {
-					// otherwise, only read the appropriate number of bits off
-					// the back
-					// side of the byte, in order to "finish" the current byte
-					// in the
-					// buffer.
-					toStore += cb & BACK_MASK[bitsLeft];
-					currentBit = 0;
-				}
-				currentByte++;
-			}
-			else {
-				// We will be able to finish using the current byte.
-				// read the appropriate number of bits off the front side of the
-				// byte,
-				// then push them into the int.
-				toStore = toStore << bitsToRead;
-				final int cb = byteBuffer[currentByte] & 0xff;
-				toStore += (cb & (0x00FF - FRONT_MASK[currentBit])) >> (bitsLeft -
-					bitsToRead);
-				currentBit += bitsToRead;
-				bitsToRead = 0;
-			}
-			// If we reach the end of the buffer, return what we currently have.
-			if (currentByte == eofByte) {
-				eofFlag = true;
-				return toStore;
+	/**
+	 * Returns the next {@code count} bits without advancing past them. Bits
+	 * beyond the end of the buffer read as zero.
+	 *
+	 * @param count the number of bits to look at, from 1 to 32
+	 * @return the value of the bits, as for {@link #getBits(int)}
+	 */
+	public int peekBits(final int count) {
+		if (count < 1 || count > 32) {
+			throw new IllegalArgumentException("Bits to peek must be from 1 to 32");
+		}
+		if (bitCount < count) fill();
+		return (int) (bits >>> (64 - count));
+	}
+
+	/**
+	 * Advances past up to {@code count} bits, usually after looking at them
+	 * with {@link #peekBits(int)}.
+	 *
+	 * @param count the number of bits to consume, from 0 to 32
+	 * @return the number of bits consumed, which is less than {@code count} only
+	 *         if the end of the buffer was reached
+	 */
+	public int consumeBits(final int count) {
+		if (count < 0 || count > 32) {
+			throw new IllegalArgumentException(
+				"Bits to consume must be from 0 to 32");
+		}
+		if (bitCount < count) fill();
+		final int consumed = Math.min(count, bitCount);
+		drop(consumed);
+		return consumed;
+	}
+
+	// -- Helper methods --
+
+	/** Reads bits up to the end of the buffer, or more than 32 bits. */
+	private int getBitsSlow(int bitsToRead) {
+		if (bitCount == 0 && currentByte == eofByte) return -1;
+		long toStore = 0;
+		while (bitsToRead > 0) {
+			fill();
+			final int n = Math.min(Math.min(bitsToRead, 32), bitCount);
+			if (n == 0) break;
+			toStore = (toStore << n) | (bits >>> (64 - n));
+			drop(n);
+			bitsToRead -= n;
+		}
+		return (int) toStore;
+	}
+
+	/** Discards the next {@code n} buffered bits, where n <= bitCount. */
+	private void drop(final int n) {
+		bits <<= n;
+		bitCount -= n;
+	}
+
+	/** Loads as many whole bytes as fit into the accumulator. */
+	private void fill() {
+		if (currentByte + 8 <= eofByte) {
+			final byte[] b = byteBuffer;
+			final int p = currentByte;
+			final long word = (b[p] & 0xffL) << 56 | (b[p + 1] & 0xffL) << 48 |
+				(b[p + 2] & 0xffL) << 40 | (b[p + 3] & 0xffL) << 32 | (b[p + 4] &
+					0xffL) << 24 | (b[p + 5] & 0xffL) << 16 | (b[p + 6] & 0xffL) << 8 |
+				(b[p + 7] & 0xffL);
+			bits |= word >>> bitCount;
+			final int bytes = (63 - bitCount) >>> 3;
+			currentByte += bytes;
+			bitCount += bytes << 3;
+		}
+		else {
+			while (bitCount < 56 && currentByte < eofByte) {
+				bits |= (byteBuffer[currentByte++] & 0xffL) << (56 - bitCount);
+				bitCount += 8;
 			}
 		}
-		return toStore;
 	}
 }
@@ -67,15 +67,11 @@ public class BitWriter {
 	// -- BitWriter API methods --
 
 	/** Writes the given value using the given number of bits. */
-	public void write(int value, final int numBits) {
+	public void write(final int value, final int numBits) {
 		if (numBits <= 0) return;
-		final byte[] bits = new byte[numBits];
-		for (int i = 0; i < numBits; i++) {
-			bits[i] = (byte) (value & 0x0001);
-			value >>= 1;
-		}
 		for (int i = numBits - 1; i >= 0; i--) {
-			final int b = bits[i] << (7 - bit);
+			// bits above the 32nd repeat the sign bit
+			final int b = ((value >> Math.min(i, 31)) & 1) << (7 - bit);
 			buf[index] |= b;
 			bit++;
 			if (bit > 7) {
@@ -33,6 +33,7 @@ import io.scif.FormatException;
 import io.scif.SCIFIOPlugin;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.scijava.io.handle.DataHandle;
 import org.scijava.io.location.Location;
@@ -50,6 +51,15 @@ import org.scijava.plugin.SingletonPlugin;
  * both compression methods or neither. (The same is expected for
  * decompression).
  *
+ * <p>
+ * Codecs are singletons: {@link CodecService#getCodec} hands the same instance
+ * to every caller, so implementations must be safe for concurrent use. They
+ * keep no per-call state in fields, and treat the given options as read-only,
+ * except for the fields documented as carrying state from one call to the
+ * next, such as {@link CodecOptions#previousImage}. Options that are modified
+ * in this way must not be shared between threads.
+ * </p>
+ *
  * @author Eric Kjellman
  */
 public interface Codec extends SCIFIOPlugin, SingletonPlugin {
@@ -128,4 +138,44 @@ public interface Codec extends SCIFIOPlugin, SingletonPlugin {
 	byte[] decompress(DataHandle<Location> in, CodecOptions options)
 		throws FormatException, IOException;
 
+	/**
+	 * Decompresses a block of data into the given buffer, so that blocks can be
+	 * decoded one after another without allocating any memory. The remaining
+	 * bytes of {@code in} are decompressed; its position is not changed.
+	 * <p>
+	 * The default implementation decompresses into a new array and copies it;
+	 * codecs should override it to decode directly into the given buffer.
+	 * </p>
+	 *
+	 * @param in The data to be decompressed.
+	 * @param out The buffer into which to decompress.
+	 * @param offset The position in {@code out} of the first decompressed
+	 *          byte.
+	 * @param length The maximum number of bytes to decompress.
+	 * @param options Options to be used during decompression.
+	 * @return The number of bytes written to {@code out}.
+	 * @throws FormatException If data is not valid compressed data for this
+	 *           decompressor.
+	 */
+	default int decompress(final ByteBuffer in, final byte[] out,
+		final int offset, final int length, final CodecOptions options)
+		throws FormatException
+	{
+		final byte[] data;
+		if (in.hasArray() && in.arrayOffset() + in.position() == 0 && in
+			.remaining() == in.array().length)
+		{
+			data = in.array();
+		}
+		else {
+			data = new byte[in.remaining()];
+			in.duplicate().get(data);
+		}
+		final byte[] decompressed = decompress(data, options);
+		if (decompressed == null) return 0;
+		final int n = Math.min(decompressed.length, length);
+		System.arraycopy(decompressed, 0, out, offset, n);
+		return n;
+	}
+
 }
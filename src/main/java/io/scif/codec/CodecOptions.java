@@ -115,6 +115,19 @@ public class CodecOptions {
 	 */
 	public boolean ycbcr;
 
+	/**
+	 * Compression level for codecs offering a choice, such as 1 (fastest) to 9
+	 * (smallest) for zlib. Default is -1, the codec's own default (WRITE).
+	 */
+	public int compressionLevel = -1;
+
+	/**
+	 * Codec specific compression strategy, such as
+	 * {@link java.util.zip.Deflater#FILTERED} for zlib. Default is 0, the
+	 * codec's own default (WRITE).
+	 */
+	public int compressionStrategy;
+
 	// -- Constructors --
 
 	/** Construct a new CodecOptions. */
@@ -140,6 +153,8 @@ public class CodecOptions {
 			this.tileGridXOffset = options.tileGridXOffset;
 			this.tileGridYOffset = options.tileGridYOffset;
 			this.ycbcr = options.ycbcr;
+			this.compressionLevel = options.compressionLevel;
+			this.compressionStrategy = options.compressionStrategy;
 		}
 	}
 
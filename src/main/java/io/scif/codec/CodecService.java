@@ -40,5 +40,9 @@ import org.scijava.plugin.SingletonService;
  */
 public interface CodecService extends SingletonService<Codec>, SCIFIOService {
 
+	/**
+	 * Gets the shared instance of the given codec. The instance is safe to use
+	 * from several threads at once; see {@link Codec}.
+	 */
 	<C extends Codec> C getCodec(Class<C> codecClass);
 }
@@ -44,7 +44,8 @@ public enum CompressionType implements CodedEnum {
 		UNCOMPRESSED(1, "Uncompressed"), ZLIB(2, "zlib"), CINEPAK(3, "Cinepak"),
 		ANIMATION(4, "Animation"), H_263(5, "H.263"), SORENSON(6, "Sorenson"),
 		SORENSON_3(7, "Sorenson 3"), MPEG_4(8, "MPEG 4"), LZW(9, "LZW"), J2K(10,
-			"JPEG-2000"), J2K_LOSSY(11, "JPEG-2000 Lossy"), JPEG(12, "JPEG");
+			"JPEG-2000"), J2K_LOSSY(11, "JPEG-2000 Lossy"), JPEG(12, "JPEG"), ZSTD(13,
+				"Zstandard"), LZ4(14, "LZ4");
 
 	/** Code for the compression. */
 	private int code;
@@ -33,7 +33,9 @@ import io.scif.FormatException;
 import io.scif.UnsupportedCompressionException;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.scijava.io.handle.DataHandle;
 import org.scijava.io.location.Location;
@@ -41,6 +43,9 @@ import org.scijava.plugin.Plugin;
 
 /**
  * This class implements Huffman decoding.
+ * <p>
+ * Codes of up to ten bits are decoded with a single table lookup; longer
+ * codes are resolved by comparing against the largest code of each length.
  *
  * @author Melissa Linkert
  */
@@ -51,11 +56,16 @@ public class HuffmanCodec extends AbstractCodec {
 
 	private static final int LEAVES_OFFSET = 16;
 
-	// -- Fields --
+	/** Number of bits resolved by the first-level lookup table. */
+	private static final int LOOKUP_BITS = 10;
 
-	private int leafCounter;
+	// -- Fields --
 
-	private final HashMap<short[], Decoder> cachedDecoders = new HashMap<>();
+	/**
+	 * Decoders of the tables passed to {@link #getDecoder}, dropped once their
+	 * table is no longer referenced.
+	 */
+	private final Map<short[], Decoder> cachedDecoders = new WeakHashMap<>();
 
 	// -- Codec API methods --
 
@@ -91,6 +101,7 @@ public class HuffmanCodec extends AbstractCodec {
 		in.read(pix);
 
 		final BitBuffer bb = new BitBuffer(pix);
+		final Decoder decoder = getDecoder(huffman.table);
 
 		final int nSamples = (huffman.maxBytes * 8) / huffman.bitsPerSample;
 		int bytesPerSample = huffman.bitsPerSample / 8;
@@ -99,7 +110,7 @@ public class HuffmanCodec extends AbstractCodec {
 		final BitWriter out = new BitWriter();
 
 		for (int i = 0; i < nSamples; i++) {
-			final int sample = getSample(bb, options);
+			final int sample = decoder.getSample(bb);
 			out.write(sample, bytesPerSample * 8);
 		}
 
@@ -119,80 +130,173 @@ public class HuffmanCodec extends AbstractCodec {
 				"loci.formats.codec.HuffmanCodecOptions.");
 		}
 
-		final HuffmanCodecOptions huffman = (HuffmanCodecOptions) options;
-		Decoder decoder = cachedDecoders.get(huffman.table);
+		return getDecoder(((HuffmanCodecOptions) options).table).getSample(bb);
+	}
+
+	/**
+	 * Returns the decoder for the given table, which holds the number of codes
+	 * of each length from 1 to 16 followed by the values of the codes in order
+	 * of increasing length. The decoder is cached for as long as the table
+	 * itself is referenced, so this suits tables which are used again and
+	 * again; callers decoding many samples with the same table should use the
+	 * returned decoder directly.
+	 *
+	 * @see #createDecoder(short[])
+	 */
+	public synchronized Decoder getDecoder(final short[] table) {
+		Decoder decoder = cachedDecoders.get(table);
 		if (decoder == null) {
-			decoder = new Decoder(huffman.table);
-			cachedDecoders.put(huffman.table, decoder);
+			decoder = createDecoder(table);
+			cachedDecoders.put(table, decoder);
 		}
+		return decoder;
+	}
 
-		int bitCount = decoder.decode(bb);
-		if (bitCount == 16) {
-			return 0x8000;
-		}
-		if (bitCount < 0) bitCount = 0;
-		int v = bb.getBits(bitCount) & ((int) Math.pow(2, bitCount) - 1);
-		if ((v & (1 << (bitCount - 1))) == 0) {
-			v -= (1 << bitCount) - 1;
+	/**
+	 * Creates a new decoder for the given table, laid out as for
+	 * {@link #getDecoder}, without caching it. This suits tables which are
+	 * read afresh with each image.
+	 */
+	public static Decoder createDecoder(final short[] table) {
+		if (table == null) {
+			throw new IllegalArgumentException("No Huffman table.");
 		}
-
-		return v;
+		return new Decoder(table);
 	}
 
-	// -- Helper class --
+	// -- Helper classes --
 
-	class Decoder {
+	/** Decodes the canonical Huffman codes described by one table. */
+	public static final class Decoder {
 
-		public Decoder[] branch = new Decoder[2];
+		/**
+		 * Value and length of each code of at most {@link #LOOKUP_BITS} bits, as
+		 * {@code length << 16 | value}, indexed by the next bits; 0 if the code
+		 * is longer.
+		 */
+		private final int[] lookup = new int[1 << LOOKUP_BITS];
 
-		private int leafValue = -1;
+		private final int[] minCode = new int[17];
 
-		public Decoder() {}
+		/** Largest code of each length, or -1 if there are none. */
+		private final int[] maxCode = new int[17];
 
-		public Decoder(final short[] source) {
-			leafCounter = 0;
-			createDecoder(this, source, 0, 0);
-		}
+		/** Index in {@link #values} of the first code of each length. */
+		private final int[] valueOffsets = new int[17];
 
-		private Decoder createDecoder(final short[] source, final int start,
-			final int level)
-		{
-			final Decoder dest = new Decoder();
-			createDecoder(dest, source, start, level);
-			return dest;
-		}
+		private final int[] values;
+
+		/**
+		 * Unassigned prefix of each length longer than {@link #LOOKUP_BITS}, or
+		 * -1 if there is none.
+		 */
+		private final int[] freeCode = new int[17];
+
+		/** Value decoded for the unassigned prefix of each length. */
+		private final int[] freeValue = new int[17];
 
-		private void createDecoder(final Decoder dest, final short[] source,
-			final int start, final int level)
-		{
-			int next = 0;
-			int i = 0;
-			while (i <= leafCounter && next < LEAVES_OFFSET) {
-				i += source[start + next++] & 0xff;
+		private Decoder(final short[] source) {
+			int total = 0;
+			for (int i = 0; i < LEAVES_OFFSET && i < source.length; i++) {
+				total += source[i] & 0xff;
+			}
+			values = new int[total];
+			for (int i = 0; i < total; i++) {
+				final int index = LEAVES_OFFSET + i;
+				if (index < source.length) values[i] = source[index] & 0xff;
 			}
 
-			if (level < next && next < LEAVES_OFFSET) {
-				dest.branch[0] = createDecoder(source, start, level + 1);
-				dest.branch[1] = createDecoder(source, start, level + 1);
+			int code = 0;
+			int k = 0;
+			int lastLength = 0;
+			for (int length = 1; length <= 16; length++) {
+				valueOffsets[length] = k;
+				minCode[length] = code;
+				int count = length <= source.length ? source[length - 1] & 0xff : 0;
+				// ignore codes that do not fit in an invalid table
+				count = Math.min(count, (1 << length) - code);
+				for (int i = 0; i < count; i++) {
+					if (length <= LOOKUP_BITS) {
+						final int shift = LOOKUP_BITS - length;
+						final int entry = (length << 16) | values[k];
+						Arrays.fill(lookup, code << shift, (code + 1) << shift, entry);
+					}
+					code++;
+					k++;
+				}
+				maxCode[length] = count > 0 ? code - 1 : -1;
+				if (count > 0) lastLength = length;
+				code <<= 1;
 			}
-			else {
-				i = start + LEAVES_OFFSET + leafCounter++;
-				if (i < source.length) {
-					dest.leafValue = source[i] & 0xff;
+
+			// If the table is incomplete, each subtree to the right of the last
+			// code decodes as a whole to one of any extra values in the table.
+			Arrays.fill(freeCode, -1);
+			int extra = LEAVES_OFFSET + total;
+			for (int length = lastLength; length > 0; length--) {
+				final int prefix = maxCode[lastLength] >> (lastLength - length);
+				if ((prefix & 1) != 0) continue;
+				final int value = extra < source.length ? source[extra] & 0xff : 0;
+				extra++;
+				if (length <= LOOKUP_BITS) {
+					final int shift = LOOKUP_BITS - length;
+					Arrays.fill(lookup, (prefix | 1) << shift, (prefix + 2) << shift,
+						(length << 16) | value);
+				}
+				else {
+					freeCode[length] = prefix | 1;
+					freeValue[length] = value;
 				}
 			}
 		}
 
+		/**
+		 * Decodes the next code from the given bits.
+		 *
+		 * @return the value of the code, or -1 if the code is not valid or is
+		 *         truncated by the end of the buffer
+		 */
 		public int decode(final BitBuffer bb) {
-			Decoder d = this;
-			while (d.branch[0] != null) {
-				final int v = bb.getBits(1);
-				if (v < 0) break; // eof
-				d = d.branch[v];
+			final int entry = lookup[bb.peekBits(LOOKUP_BITS)];
+			if (entry != 0) {
+				final int length = entry >>> 16;
+				if (bb.consumeBits(length) < length) return -1;
+				return entry & 0xffff;
+			}
+			final int next = bb.peekBits(16);
+			for (int length = LOOKUP_BITS + 1; length <= 16; length++) {
+				final int code = next >>> (16 - length);
+				if (code <= maxCode[length]) {
+					if (bb.consumeBits(length) < length) return -1;
+					return values[valueOffsets[length] + code - minCode[length]];
+				}
+				if (code == freeCode[length]) {
+					if (bb.consumeBits(length) < length) return -1;
+					return freeValue[length];
+				}
 			}
-			return d.leafValue;
+			return -1;
 		}
 
+		/**
+		 * Decodes the next sample: a code giving the number of bits of the
+		 * sample, followed by those bits. The result is 0x8000 for a 16-bit
+		 * sample, as lossless JPEG requires.
+		 */
+		public int getSample(final BitBuffer bb) {
+			int bitCount = decode(bb);
+			if (bitCount == 16) {
+				return 0x8000;
+			}
+			if (bitCount <= 0) return 0;
+			final int mask = bitCount < 31 ? (1 << bitCount) - 1
+				: (int) Math.pow(2, bitCount) - 1;
+			int v = bb.getBits(bitCount) & mask;
+			if ((v & (1 << (bitCount - 1))) == 0) {
+				v -= (1 << bitCount) - 1;
+			}
+			return v;
+		}
 	}
 
 }
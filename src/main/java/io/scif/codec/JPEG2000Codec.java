@@ -189,6 +189,12 @@ public class JPEG2000Codec extends AbstractCodec {
 	 * The CodecOptions parameter should have the following fields set:
 	 * {@link CodecOptions#interleaved interleaved}
 	 * {@link CodecOptions#littleEndian littleEndian}
+	 * <p>
+	 * If it is a {@link JPEG2000CodecOptions}, its
+	 * {@link JPEG2000CodecOptions#resolution resolution} and
+	 * {@link JPEG2000CodecOptions#sourceRegion sourceRegion} select the part of
+	 * the image to decode.
+	 * </p>
 	 *
 	 * @see Codec#decompress(DataHandle, CodecOptions)
 	 */
@@ -219,6 +225,12 @@ public class JPEG2000Codec extends AbstractCodec {
 	 * The CodecOptions parameter should have the following fields set:
 	 * {@link CodecOptions#interleaved interleaved}
 	 * {@link CodecOptions#littleEndian littleEndian}
+	 * <p>
+	 * If it is a {@link JPEG2000CodecOptions}, its
+	 * {@link JPEG2000CodecOptions#resolution resolution} and
+	 * {@link JPEG2000CodecOptions#sourceRegion sourceRegion} select the part of
+	 * the image to decode; the samples of just that part are returned.
+	 * </p>
 	 *
 	 * @see Codec#decompress(byte[], CodecOptions)
 	 */
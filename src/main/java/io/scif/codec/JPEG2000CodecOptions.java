@@ -29,6 +29,8 @@
 
 package io.scif.codec;
 
+import java.awt.Rectangle;
+
 /**
  * Options for compressing and decompressing JPEG-2000 data.
  */
@@ -60,6 +62,15 @@ public class JPEG2000CodecOptions extends CodecOptions {
 	 */
 	public Integer resolution;
 
+	/**
+	 * The region to decode as would be provided to:
+	 * {@code J2KImageReadParam#setSourceRegion(Rectangle)} (READ), in the
+	 * coordinates of the decoded resolution level. Only the tiles of the
+	 * codestream that intersect the region are decoded. Leaving this value
+	 * {@code null} signifies that the whole image will be decoded.
+	 */
+	public Rectangle sourceRegion;
+
 	// -- Constructors --
 
 	/** Creates a new instance. */
@@ -81,6 +92,7 @@ public class JPEG2000CodecOptions extends CodecOptions {
 			}
 			numDecompositionLevels = j2kOptions.numDecompositionLevels;
 			resolution = j2kOptions.resolution;
+			sourceRegion = j2kOptions.sourceRegion;
 		}
 	}
 
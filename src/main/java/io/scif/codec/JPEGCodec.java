@@ -33,22 +33,23 @@ import io.scif.FormatException;
 import io.scif.gui.AWTImageTools;
 
 import java.awt.image.BufferedImage;
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import javax.imageio.ImageIO;
 
 import org.scijava.io.handle.DataHandle;
-import org.scijava.io.handle.DataHandleInputStream;
 import org.scijava.io.location.Location;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.util.Bytes;
 
 /**
- * This class implements JPEG compression and decompression.
+ * This class implements JPEG compression and decompression. Baseline and
+ * progressive images are decompressed natively, without AWT.
  */
 @Plugin(type = Codec.class)
 public class JPEGCodec extends AbstractCodec {
@@ -96,41 +97,140 @@ public class JPEGCodec extends AbstractCodec {
 	 * {@link CodecOptions#interleaved interleaved}
 	 * {@link CodecOptions#littleEndian littleEndian}
 	 *
-	 * @see Codec#decompress(DataHandle, CodecOptions)
+	 * @see #decompress(byte[], CodecOptions)
 	 */
 	@Override
-	public byte[] decompress(final DataHandle<Location> in, CodecOptions options)
-		throws FormatException, IOException
+	public byte[] decompress(final DataHandle<Location> in,
+		final CodecOptions options) throws FormatException, IOException
 	{
-		BufferedImage b;
-		int nextByte;
-		final long offset = in.offset();
+		if (in == null) throw new IllegalArgumentException(
+			"No data to decompress.");
+		final byte[] data = new byte[(int) (in.length() - in.offset())];
+		in.read(data);
+		return decompress(data, options);
+	}
+
+	/**
+	 * The CodecOptions parameter should have the following fields set:
+	 * {@link CodecOptions#interleaved interleaved}
+	 * {@link CodecOptions#littleEndian littleEndian}
+	 * <p>
+	 * Baseline and progressive JPEG images are decoded without ImageIO, and
+	 * reduced by the {@link JPEGCodecOptions#scale scale} of
+	 * {@link JPEGCodecOptions}, if given. Other images are decoded with ImageIO,
+	 * or with {@link LosslessJPEGCodec}.
+	 * </p>
+	 *
+	 * @see Codec#decompress(byte[], CodecOptions)
+	 */
+	@Override
+	public byte[] decompress(final byte[] data, CodecOptions options)
+		throws FormatException
+	{
+		if (data == null) throw new IllegalArgumentException(
+			"No data to decompress.");
+		if (options == null) options = CodecOptions.getDefaultOptions();
+		final JPEGDecoder decoder;
 		try {
-			try {
-				do {
-					nextByte = in.read();
-					if (nextByte == -1)
-					{
-						throw new EOFException();
-					}
-				} while(nextByte != (byte) 0xff || nextByte != (byte) 0xd8);
-				in.seek(in.offset() - 2);
-			}
-			catch (final EOFException e) {
-				in.seek(offset);
-			}
+			decoder = createDecoder(data, 0, data.length, options);
+		}
+		catch (final FormatException e) {
+			return decompressImageIO(data, options);
+		}
+		final byte[] buf = new byte[decoder.getSize()];
+		decode(decoder, buf, 0, options);
+		return buf;
+	}
 
-			b = ImageIO.read(new BufferedInputStream(new DataHandleInputStream<>(in),
-				8192));
+	/**
+	 * The CodecOptions parameter should have the following fields set:
+	 * {@link CodecOptions#interleaved interleaved}
+	 * {@link CodecOptions#littleEndian littleEndian}
+	 *
+	 * @see #decompress(byte[], CodecOptions)
+	 */
+	@Override
+	public int decompress(final ByteBuffer in, final byte[] out,
+		final int offset, final int length, CodecOptions options)
+		throws FormatException
+	{
+		if (options == null) options = CodecOptions.getDefaultOptions();
+		final byte[] data;
+		final int dataOffset;
+		if (in.hasArray()) {
+			data = in.array();
+			dataOffset = in.arrayOffset() + in.position();
+		}
+		else {
+			data = new byte[in.remaining()];
+			in.duplicate().get(data);
+			dataOffset = 0;
+		}
+
+		final JPEGDecoder decoder;
+		try {
+			decoder = createDecoder(data, dataOffset, in.remaining(), options);
+		}
+		catch (final FormatException e) {
+			final byte[] buf = decompressImageIO(Arrays.copyOfRange(data,
+				dataOffset, dataOffset + in.remaining()), options);
+			final int n = Math.min(buf.length, length);
+			System.arraycopy(buf, 0, out, offset, n);
+			return n;
+		}
+		final int size = decoder.getSize();
+		if (size <= length) {
+			// samples are decoded straight into place
+			decode(decoder, out, offset, options);
+			return size;
+		}
+		final byte[] buf = new byte[size];
+		decode(decoder, buf, 0, options);
+		System.arraycopy(buf, 0, out, offset, length);
+		return length;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Creates a decoder for the given image, after reading its header.
+	 *
+	 * @throws FormatException If the image cannot be decoded without ImageIO.
+	 */
+	private JPEGDecoder createDecoder(final byte[] data, final int offset,
+		final int length, final CodecOptions options) throws FormatException
+	{
+		final int scale = options instanceof JPEGCodecOptions
+			? ((JPEGCodecOptions) options).scale : 1;
+		final JPEGDecoder decoder = new JPEGDecoder(data, offset, length, scale);
+		decoder.readHeader();
+		return decoder;
+	}
+
+	private void decode(final JPEGDecoder decoder, final byte[] out,
+		final int offset, final CodecOptions options) throws FormatException
+	{
+		decoder.decode(out, offset, options.interleaved);
+		if (options.ycbcr && decoder.getChannels() == 3) {
+			correctYCbCr(out, offset, decoder.getWidth() * decoder.getHeight(),
+				options.interleaved);
+		}
+	}
+
+	/** Decodes the given image with ImageIO. */
+	private byte[] decompressImageIO(final byte[] data,
+		final CodecOptions options) throws FormatException
+	{
+		final BufferedImage b;
+		try {
+			b = ImageIO.read(new ByteArrayInputStream(data));
 		}
 		catch (final IOException exc) {
 			// probably a lossless JPEG; delegate to LosslessJPEGCodec
-			in.seek(offset);
 			final Codec codec = codecService.getCodec(LosslessJPEGCodec.class);
-			return codec.decompress(in, options);
+			return codec.decompress(data, options);
 		}
-
-		if (options == null) options = CodecOptions.getDefaultOptions();
+		if (b == null) throw new FormatException("Could not read JPEG data");
 
 		final byte[][] buf = AWTImageTools.getPixelBytes(b, options.littleEndian);
 
@@ -175,4 +275,24 @@ public class JPEGCodec extends AbstractCodec {
 		}
 		return rtn;
 	}
+
+	/**
+	 * Applies the same YCbCr correction as {@link #decompressImageIO} to 8-bit
+	 * samples decoded without ImageIO.
+	 */
+	private void correctYCbCr(final byte[] buf, final int offset,
+		final int pixels, final boolean interleaved)
+	{
+		final int step = interleaved ? 3 : 1;
+		final int channelOffset = interleaved ? 1 : pixels;
+		for (int p = 0; p < pixels; p++) {
+			final int i = offset + p * step;
+			final int y = buf[i] & 0xff;
+			final int cb = Math.max(0, (buf[i + channelOffset] & 0xff) - 128);
+			final int cr = Math.max(0, (buf[i + 2 * channelOffset] & 0xff) - 128);
+			buf[i] = (byte) (y + 1.402 * cr);
+			buf[i + channelOffset] = (byte) (y - 0.34414 * cb - 0.71414 * cr);
+			buf[i + 2 * channelOffset] = (byte) (y + 1.772 * cb);
+		}
+	}
 }
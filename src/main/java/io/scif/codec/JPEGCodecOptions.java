@@ -0,0 +1,74 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.codec;
+
+/**
+ * Options for compressing and decompressing JPEG data.
+ */
+public class JPEGCodecOptions extends CodecOptions {
+
+	// -- Fields --
+
+	/**
+	 * The factor by which to reduce decompressed images: 1, 2, 4 or 8 (READ).
+	 * Reduced images are computed from the lowest frequencies of each block,
+	 * which is much faster than decompressing the full image and then reducing
+	 * it. Images that are not baseline or progressive JPEGs are not reduced.
+	 */
+	public int scale = 1;
+
+	// -- Constructors --
+
+	/** Creates a new instance. */
+	public JPEGCodecOptions() {
+		super();
+	}
+
+	/**
+	 * Creates a new instance with options.
+	 *
+	 * @param options The option to set.
+	 */
+	public JPEGCodecOptions(final CodecOptions options) {
+		super(options);
+		if (options instanceof JPEGCodecOptions) {
+			scale = ((JPEGCodecOptions) options).scale;
+		}
+	}
+
+	// -- Static methods --
+
+	/** Return JPEGCodecOptions with reasonable default values. */
+	public static JPEGCodecOptions getDefaultOptions() {
+		return new JPEGCodecOptions(CodecOptions.getDefaultOptions());
+	}
+
+}
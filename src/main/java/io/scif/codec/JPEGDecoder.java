@@ -0,0 +1,1255 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.codec;
+
+import io.scif.FormatException;
+import io.scif.UnsupportedCompressionException;
+
+import java.util.Arrays;
+
+/**
+ * Decodes baseline and progressive JPEG images with Huffman coding and 8 bits
+ * per sample, straight into a byte array and without any AWT classes.
+ * <p>
+ * Tables may be given in a separate abbreviated stream (as stored in a TIFF
+ * file's JPEG_TABLES) preceding the image, and the image can be reduced by 2,
+ * 4 or 8 while its blocks are transformed, which is much faster than reducing
+ * the decoded image.
+ * </p>
+ * <p>
+ * Lossless, hierarchical, arithmetic coded and 12-bit images are not
+ * supported; {@link #readHeader()} throws an
+ * {@link UnsupportedCompressionException} for them.
+ * </p>
+ */
+final class JPEGDecoder {
+
+	// -- Constants --
+
+	/** Natural order index of each coefficient in zigzag order. */
+	private static final int[] ZIGZAG = { 0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32,
+		25, 18, 11, 4, 5, 12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21,
+		28, 35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51, 58, 59,
+		52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63,
+		// extra entries, so that corrupt run lengths stay in the last slot
+		63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63 };
+
+	// Ways of upsampling a component to the size of the image
+	private static final int DIRECT = 0;
+
+	private static final int REPLICATE = 1;
+
+	private static final int FANCY_H2V1 = 2;
+
+	private static final int FANCY_H2V2 = 3;
+
+	/** Number of bits decoded at once through a Huffman table's lookup. */
+	private static final int LOOKAHEAD = 9;
+
+	// Fixed point constants of the integer inverse DCT
+	private static final int CONST_BITS = 13;
+
+	private static final int PASS1_BITS = 2;
+
+	private static final int FIX_0_298631336 = 2446;
+
+	private static final int FIX_0_390180644 = 3196;
+
+	private static final int FIX_0_541196100 = 4433;
+
+	private static final int FIX_0_765366865 = 6270;
+
+	private static final int FIX_0_899976223 = 7373;
+
+	private static final int FIX_1_175875602 = 9633;
+
+	private static final int FIX_1_501321110 = 12299;
+
+	private static final int FIX_1_847759065 = 15137;
+
+	private static final int FIX_1_961570560 = 16069;
+
+	private static final int FIX_2_053119869 = 16819;
+
+	private static final int FIX_2_562915447 = 20995;
+
+	private static final int FIX_3_072711026 = 25172;
+
+	/**
+	 * Weights of the reduced inverse DCTs, indexed by output size: entry
+	 * {@code x * n + u} is the weight of frequency {@code u} at position
+	 * {@code x}. Each output sample is the mean of the samples it replaces.
+	 */
+	private static final float[][] REDUCED_COSINES = new float[5][];
+
+	// Fixed point YCbCr to RGB conversion tables
+	private static final int[] CR_R = new int[256];
+
+	private static final int[] CB_B = new int[256];
+
+	private static final int[] CR_G = new int[256];
+
+	private static final int[] CB_G = new int[256];
+
+	static {
+		for (final int n : new int[] { 2, 4 }) {
+			final float[] cosines = new float[n * n];
+			for (int x = 0; x < n; x++) {
+				for (int u = 0; u < n; u++) {
+					// the mean of the cosine over the 8 / n samples replaced
+					final int k = 8 / n;
+					final double mean = u == 0 ? Math.sqrt(0.5) : Math.sin(k * u *
+						Math.PI / 16) / (k * Math.sin(u * Math.PI / 16));
+					cosines[x * n + u] = (float) (0.5 * mean * Math.cos((2 * x + 1) * u *
+						Math.PI / (2 * n)));
+				}
+			}
+			REDUCED_COSINES[n] = cosines;
+		}
+		for (int i = 0; i < 256; i++) {
+			final int x = i - 128;
+			CR_R[i] = (int) Math.round(1.40200 * x);
+			CB_B[i] = (int) Math.round(1.77200 * x);
+			CR_G[i] = -(int) Math.round(0.71414 * 65536) * x;
+			CB_G[i] = -(int) Math.round(0.34414 * 65536) * x + 32768;
+		}
+	}
+
+	// -- Fields --
+
+	private final byte[] data;
+
+	private final int end;
+
+	/** Position of the next byte to read. */
+	private int pos;
+
+	/** Reduction factor: 1, 2, 4 or 8. */
+	private final int scale;
+
+	/** Size of a transformed block: 8 divided by the reduction factor. */
+	private final int blockSize;
+
+	private final int[][] quantizationTables = new int[4][];
+
+	private final HuffmanTable[] dcTables = new HuffmanTable[4];
+
+	private final HuffmanTable[] acTables = new HuffmanTable[4];
+
+	private int restartInterval;
+
+	private boolean progressive;
+
+	private boolean jfif;
+
+	/** Color transform of the Adobe marker, or -1 if there is none. */
+	private int adobeTransform = -1;
+
+	private int width, height;
+
+	private Component[] components;
+
+	private int hMax, vMax, mcusPerLine, mcusPerColumn;
+
+	/** Whether a scan has been decoded. */
+	private boolean decoded;
+
+	// Entropy decoding state: unread bits, left-aligned, and their number
+	private long bits;
+
+	private int bitCount;
+
+	/** Whether a marker ends the entropy coded data. */
+	private boolean markerReached;
+
+	/** Number of remaining blocks of the current end of band run. */
+	private int eobrun;
+
+	/** Block of coefficients for sequential images. */
+	private final short[] block = new short[64];
+
+	/** Work space of the inverse DCT. */
+	private final int[] workspace = new int[64];
+
+	/** Work space of the reduced inverse DCT. */
+	private final float[] reducedWorkspace = new float[16];
+
+	// -- Constructor --
+
+	/**
+	 * Creates a decoder for the given JPEG stream.
+	 *
+	 * @param scale factor by which to reduce the image: 1, 2, 4 or 8
+	 */
+	JPEGDecoder(final byte[] data, final int offset, final int length,
+		final int scale)
+	{
+		if (scale != 1 && scale != 2 && scale != 4 && scale != 8) {
+			throw new IllegalArgumentException("Invalid scale: " + scale);
+		}
+		this.data = data;
+		this.pos = offset;
+		this.end = offset + length;
+		this.scale = scale;
+		this.blockSize = 8 / scale;
+	}
+
+	// -- JPEGDecoder methods --
+
+	/**
+	 * Reads the markers up to and including the frame header.
+	 *
+	 * @throws UnsupportedCompressionException If the image is not a baseline or
+	 *           progressive, Huffman coded, 8-bit image.
+	 * @throws FormatException If there is no frame header.
+	 */
+	void readHeader() throws FormatException {
+		while (components == null) {
+			if (!readMarker()) throw new FormatException("No JPEG frame header");
+		}
+	}
+
+	/** Gets the width of the decoded, possibly reduced, image. */
+	int getWidth() {
+		return (width + scale - 1) / scale;
+	}
+
+	/** Gets the height of the decoded, possibly reduced, image. */
+	int getHeight() {
+		return (height + scale - 1) / scale;
+	}
+
+	/** Gets the number of channels of the decoded image. */
+	int getChannels() {
+		return components.length;
+	}
+
+	/** Gets the number of bytes of the decoded image. */
+	int getSize() {
+		return getWidth() * getHeight() * getChannels();
+	}
+
+	/**
+	 * Decodes the image into the given buffer, which must hold
+	 * {@link #getSize()} bytes from the given offset. Three channel images are
+	 * converted to RGB unless they are stored as RGB.
+	 *
+	 * @param interleaved Whether to interleave the channels; if false, the
+	 *          channels are stored one after another.
+	 */
+	void decode(final byte[] out, final int offset, final boolean interleaved)
+		throws FormatException
+	{
+		readHeader();
+		while (readMarker()) {
+			// keep reading scans until the end of the image
+		}
+		if (progressive) {
+			for (final Component c : components) {
+				if (c.quantization == null) {
+					c.quantization = quantizationTables[c.quantizationTable];
+					if (c.quantization == null) continue;
+				}
+				for (int row = 0; row < c.blocksPerColumn; row++) {
+					for (int col = 0; col < c.blocksPerLine; col++) {
+						transform(c, c.coefficients, (row * c.blocksPerLine + col) * 64,
+							row, col);
+					}
+				}
+			}
+		}
+		write(out, offset, interleaved);
+	}
+
+	// -- Helper methods - markers --
+
+	/**
+	 * Reads the next marker and its segment, decoding the scan it starts if it
+	 * is a start of scan.
+	 *
+	 * @return false if the end of the image was reached.
+	 */
+	private boolean readMarker() throws FormatException {
+		// skip anything before the marker, as well as fill bytes
+		while (pos + 1 < end && ((data[pos] & 0xff) != 0xff ||
+			(data[pos + 1] & 0xff) == 0xff || data[pos + 1] == 0))
+		{
+			pos++;
+		}
+		if (pos + 1 >= end) return false;
+		final int marker = 0xff00 | (data[pos + 1] & 0xff);
+		pos += 2;
+
+		switch (marker) {
+			case LosslessJPEGCodec.SOI:
+			case LosslessJPEGCodec.RST_0:
+			case LosslessJPEGCodec.RST_1:
+			case LosslessJPEGCodec.RST_2:
+			case LosslessJPEGCodec.RST_3:
+			case LosslessJPEGCodec.RST_4:
+			case LosslessJPEGCodec.RST_5:
+			case LosslessJPEGCodec.RST_6:
+			case LosslessJPEGCodec.RST_7:
+				return true;
+			case LosslessJPEGCodec.EOI:
+				// an abbreviated table specification may precede the image
+				return !decoded;
+		}
+
+		if (pos + 1 >= end) throw new FormatException("Truncated JPEG data");
+		final int length = readShort();
+		final int segmentEnd = pos + length - 2;
+		if (length < 2 || segmentEnd > end) {
+			throw new FormatException("Truncated JPEG marker segment");
+		}
+		try {
+			if (readSegment(marker, length, segmentEnd)) return true;
+		}
+		catch (final ArrayIndexOutOfBoundsException e) {
+			throw new FormatException("Invalid JPEG marker segment", e);
+		}
+		pos = segmentEnd;
+		return true;
+	}
+
+	/**
+	 * Reads the segment of the given marker.
+	 *
+	 * @return true if the segment starts a scan, which has been decoded.
+	 */
+	private boolean readSegment(final int marker, final int length,
+		final int segmentEnd) throws FormatException
+	{
+		switch (marker) {
+			case LosslessJPEGCodec.SOF0:
+			case LosslessJPEGCodec.SOF1:
+			case LosslessJPEGCodec.SOF2:
+				readFrameHeader(marker == LosslessJPEGCodec.SOF2);
+				break;
+			case LosslessJPEGCodec.SOF3:
+			case LosslessJPEGCodec.SOF5:
+			case LosslessJPEGCodec.SOF6:
+			case LosslessJPEGCodec.SOF7:
+			case LosslessJPEGCodec.JPG:
+			case LosslessJPEGCodec.SOF9:
+			case LosslessJPEGCodec.SOF10:
+			case LosslessJPEGCodec.SOF11:
+			case LosslessJPEGCodec.SOF13:
+			case LosslessJPEGCodec.SOF14:
+			case LosslessJPEGCodec.SOF15:
+				throw new UnsupportedCompressionException(
+					"Unsupported JPEG process: " + Integer.toHexString(marker));
+			case LosslessJPEGCodec.DHT:
+				readHuffmanTables(segmentEnd);
+				break;
+			case LosslessJPEGCodec.DQT:
+				readQuantizationTables(segmentEnd);
+				break;
+			case LosslessJPEGCodec.DRI:
+				restartInterval = readShort();
+				break;
+			case 0xffe0: // APP0
+				jfif |= length >= 7 && data[pos] == 'J' && data[pos + 1] == 'F' &&
+					data[pos + 2] == 'I' && data[pos + 3] == 'F' && data[pos + 4] == 0;
+				break;
+			case 0xffee: // APP14
+				if (length >= 14 && data[pos] == 'A' && data[pos + 1] == 'd' &&
+					data[pos + 2] == 'o' && data[pos + 3] == 'b' && data[pos + 4] == 'e')
+				{
+					adobeTransform = data[pos + 11] & 0xff;
+				}
+				break;
+			case LosslessJPEGCodec.SOS:
+				readScan();
+				decoded = true;
+				return true;
+		}
+		return false;
+	}
+
+	private void readFrameHeader(final boolean isProgressive)
+		throws FormatException
+	{
+		if (components != null) throw new FormatException(
+			"Multiple JPEG frames");
+		progressive = isProgressive;
+		final int precision = data[pos++] & 0xff;
+		if (precision != 8) {
+			throw new UnsupportedCompressionException(precision +
+				"-bit JPEG is not supported");
+		}
+		height = readShort();
+		width = readShort();
+		final int count = data[pos++] & 0xff;
+		if (width == 0 || height == 0) {
+			throw new UnsupportedCompressionException(
+				"JPEG images without a height are not supported");
+		}
+		if (count < 1 || count > 4) {
+			throw new FormatException("Invalid number of JPEG components: " +
+				count);
+		}
+
+		components = new Component[count];
+		for (int i = 0; i < count; i++) {
+			final Component c = new Component();
+			c.id = data[pos++] & 0xff;
+			final int sampling = data[pos++] & 0xff;
+			c.h = sampling >> 4;
+			c.v = sampling & 0xf;
+			c.quantizationTable = data[pos++] & 3;
+			if (c.h < 1 || c.h > 4 || c.v < 1 || c.v > 4) {
+				throw new FormatException("Invalid JPEG sampling factors");
+			}
+			hMax = Math.max(hMax, c.h);
+			vMax = Math.max(vMax, c.v);
+			components[i] = c;
+		}
+
+		mcusPerLine = (width + 8 * hMax - 1) / (8 * hMax);
+		mcusPerColumn = (height + 8 * vMax - 1) / (8 * vMax);
+		for (final Component c : components) {
+			c.width = (width * c.h + hMax - 1) / hMax;
+			c.height = (height * c.v + vMax - 1) / vMax;
+			c.blocksPerLine = mcusPerLine * c.h;
+			c.blocksPerColumn = mcusPerColumn * c.v;
+			c.stride = c.blocksPerLine * blockSize;
+			c.samples = new byte[c.stride * c.blocksPerColumn * blockSize];
+			if (progressive) {
+				c.coefficients = new short[c.blocksPerLine * c.blocksPerColumn * 64];
+			}
+		}
+	}
+
+	private void readHuffmanTables(final int segmentEnd)
+		throws FormatException
+	{
+		while (pos < segmentEnd) {
+			final int index = data[pos++] & 0xff;
+			final int[] counts = new int[16];
+			int total = 0;
+			for (int i = 0; i < 16; i++) {
+				counts[i] = data[pos++] & 0xff;
+				total += counts[i];
+			}
+			if (pos + total > segmentEnd) {
+				throw new FormatException("Invalid JPEG Huffman table");
+			}
+			final HuffmanTable table = new HuffmanTable(counts, data, pos);
+			pos += total;
+			if ((index >> 4) == 0) dcTables[index & 3] = table;
+			else acTables[index & 3] = table;
+		}
+	}
+
+	private void readQuantizationTables(final int segmentEnd) {
+		while (pos < segmentEnd) {
+			final int index = data[pos++] & 0xff;
+			final boolean wide = (index >> 4) != 0;
+			final int[] table = new int[64];
+			for (int k = 0; k < 64; k++) {
+				table[ZIGZAG[k]] = wide ? readShort() : data[pos++] & 0xff;
+			}
+			quantizationTables[index & 3] = table;
+		}
+	}
+
+	private int readShort() {
+		final int value = ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+		pos += 2;
+		return value;
+	}
+
+	// -- Helper methods - scans --
+
+	/** Reads a scan header and decodes the scan's entropy coded data. */
+	private void readScan() throws FormatException {
+		if (components == null) throw new FormatException(
+			"JPEG scan before frame header");
+		final int count = data[pos++] & 0xff;
+		if (count < 1 || count > components.length) {
+			throw new FormatException("Invalid number of JPEG scan components");
+		}
+		final Component[] scan = new Component[count];
+		for (int i = 0; i < count; i++) {
+			final int id = data[pos++] & 0xff;
+			final int tables = data[pos++] & 0xff;
+			for (final Component c : components) {
+				if (c.id == id) scan[i] = c;
+			}
+			if (scan[i] == null) {
+				throw new FormatException("Unknown JPEG component: " + id);
+			}
+			scan[i].dcTable = dcTables[tables >> 4];
+			scan[i].acTable = acTables[tables & 3];
+		}
+		final int spectralStart = data[pos++] & 0xff;
+		final int spectralEnd = Math.min(data[pos++] & 0xff, 63);
+		final int approximation = data[pos++] & 0xff;
+		final int high = approximation >> 4;
+		final int low = approximation & 0xf;
+		if (progressive && (spectralStart > spectralEnd || spectralStart > 0 &&
+			count > 1 || spectralStart == 0 && spectralEnd > 0))
+		{
+			throw new FormatException("Invalid progressive JPEG scan");
+		}
+
+		for (final Component c : scan) {
+			c.quantization = quantizationTables[c.quantizationTable];
+			if (c.quantization == null) {
+				throw new FormatException("Missing JPEG quantization table");
+			}
+			final boolean needsDC = !progressive || spectralStart == 0 && high == 0;
+			final boolean needsAC = !progressive || spectralStart > 0;
+			if (needsDC && c.dcTable == null || needsAC && c.acTable == null) {
+				throw new FormatException("Missing JPEG Huffman table");
+			}
+			c.dcPredictor = 0;
+		}
+
+		// the entropy coded data follows the header
+		bits = 0;
+		bitCount = 0;
+		markerReached = false;
+		eobrun = 0;
+
+		final int mcus;
+		if (count == 1) {
+			final Component c = scan[0];
+			mcus = ((c.width + 7) >> 3) * ((c.height + 7) >> 3);
+		}
+		else mcus = mcusPerLine * mcusPerColumn;
+		for (int mcu = 0; mcu < mcus; mcu++) {
+			if (restartInterval > 0 && mcu > 0 && mcu % restartInterval == 0) {
+				restart(scan);
+			}
+			if (count == 1) {
+				final Component c = scan[0];
+				final int blocksPerLine = (c.width + 7) >> 3;
+				decodeBlock(c, mcu / blocksPerLine, mcu % blocksPerLine,
+					spectralStart, spectralEnd, high, low);
+			}
+			else {
+				final int mcuRow = mcu / mcusPerLine;
+				final int mcuCol = mcu % mcusPerLine;
+				for (final Component c : scan) {
+					for (int v = 0; v < c.v; v++) {
+						for (int h = 0; h < c.h; h++) {
+							decodeBlock(c, mcuRow * c.v + v, mcuCol * c.h + h,
+								spectralStart, spectralEnd, high, low);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/** Skips to the data following the next restart marker. */
+	private void restart(final Component[] scan) {
+		while (pos + 1 < end && ((data[pos] & 0xff) != 0xff ||
+			(data[pos + 1] & 0xff) < 0xd0 || (data[pos + 1] & 0xff) > 0xd7))
+		{
+			if ((data[pos] & 0xff) == 0xff && data[pos + 1] != 0 &&
+				(data[pos + 1] & 0xff) != 0xff)
+			{
+				// another marker; the restart marker is missing
+				break;
+			}
+			pos++;
+		}
+		if (pos + 1 < end && (data[pos + 1] & 0xff) >= 0xd0 &&
+			(data[pos + 1] & 0xff) <= 0xd7)
+		{
+			pos += 2;
+		}
+		bits = 0;
+		bitCount = 0;
+		markerReached = false;
+		eobrun = 0;
+		for (final Component c : scan) {
+			c.dcPredictor = 0;
+		}
+	}
+
+	/** Decodes one block of the current scan. */
+	private void decodeBlock(final Component c, final int row, final int col,
+		final int spectralStart, final int spectralEnd, final int high,
+		final int low) throws FormatException
+	{
+		if (!progressive) {
+			// sequential blocks are complete, so transform them right away
+			Arrays.fill(block, (short) 0);
+			decodeSequential(c, block);
+			transform(c, block, 0, row, col);
+			return;
+		}
+		final short[] coefficients = c.coefficients;
+		final int offset = (row * c.blocksPerLine + col) * 64;
+		if (spectralStart == 0) {
+			if (high == 0) decodeDCFirst(c, coefficients, offset, low);
+			else if (getBits(1) != 0) coefficients[offset] |= 1 << low;
+		}
+		else if (high == 0) {
+			decodeACFirst(c, coefficients, offset, spectralStart, spectralEnd, low);
+		}
+		else {
+			decodeACRefine(c, coefficients, offset, spectralStart, spectralEnd, low);
+		}
+	}
+
+	private void decodeSequential(final Component c, final short[] coefficients)
+		throws FormatException
+	{
+		final int s = decodeHuffman(c.dcTable);
+		c.dcPredictor += s == 0 ? 0 : receiveExtend(s);
+		coefficients[0] = (short) c.dcPredictor;
+
+		final HuffmanTable acTable = c.acTable;
+		for (int k = 1; k < 64;) {
+			final int rs = decodeHuffman(acTable);
+			final int r = rs >> 4;
+			final int size = rs & 0xf;
+			if (size == 0) {
+				if (r != 15) break;
+				k += 16;
+			}
+			else {
+				k += r;
+				coefficients[ZIGZAG[k]] = (short) receiveExtend(size);
+				k++;
+			}
+		}
+	}
+
+	private void decodeDCFirst(final Component c, final short[] coefficients,
+		final int offset, final int low) throws FormatException
+	{
+		final int s = decodeHuffman(c.dcTable);
+		c.dcPredictor += s == 0 ? 0 : receiveExtend(s);
+		coefficients[offset] = (short) (c.dcPredictor << low);
+	}
+
+	private void decodeACFirst(final Component c, final short[] coefficients,
+		final int offset, final int start, final int stop, final int low)
+		throws FormatException
+	{
+		if (eobrun > 0) {
+			eobrun--;
+			return;
+		}
+		for (int k = start; k <= stop;) {
+			final int rs = decodeHuffman(c.acTable);
+			final int r = rs >> 4;
+			final int size = rs & 0xf;
+			if (size == 0) {
+				if (r < 15) {
+					eobrun = (1 << r) - 1;
+					if (r > 0) eobrun += getBits(r);
+					break;
+				}
+				k += 16;
+			}
+			else {
+				k += r;
+				coefficients[offset + ZIGZAG[k]] = (short) (receiveExtend(size) *
+					(1 << low));
+				k++;
+			}
+		}
+	}
+
+	private void decodeACRefine(final Component c, final short[] coefficients,
+		final int offset, final int start, final int stop, final int low)
+		throws FormatException
+	{
+		final int p1 = 1 << low;
+		final int m1 = -1 << low;
+		int k = start;
+		if (eobrun == 0) {
+			for (; k <= stop; k++) {
+				final int rs = decodeHuffman(c.acTable);
+				int r = rs >> 4;
+				int s = rs & 0xf;
+				if (s != 0) {
+					s = getBits(1) != 0 ? p1 : m1;
+				}
+				else if (r != 15) {
+					eobrun = 1 << r;
+					if (r > 0) eobrun += getBits(r);
+					break;
+				}
+				// advance over r zero coefficients, refining the nonzero ones
+				// on the way
+				do {
+					final int z = offset + ZIGZAG[k];
+					if (coefficients[z] != 0) refine(coefficients, z, p1, m1);
+					else if (--r < 0) break;
+					k++;
+				}
+				while (k <= stop);
+				if (s != 0 && k <= stop) coefficients[offset + ZIGZAG[k]] = (short) s;
+			}
+		}
+		if (eobrun > 0) {
+			for (; k <= stop; k++) {
+				final int z = offset + ZIGZAG[k];
+				if (coefficients[z] != 0) refine(coefficients, z, p1, m1);
+			}
+			eobrun--;
+		}
+	}
+
+	/** Adds a correction bit to a nonzero coefficient. */
+	private void refine(final short[] coefficients, final int z, final int p1,
+		final int m1)
+	{
+		if (getBits(1) != 0 && (coefficients[z] & p1) == 0) {
+			coefficients[z] += coefficients[z] >= 0 ? p1 : m1;
+		}
+	}
+
+	// -- Helper methods - entropy decoding --
+
+	/**
+	 * Tops up the unread bits with bytes of entropy coded data. Once a marker
+	 * is reached, zeros are supplied instead.
+	 */
+	private void fill() {
+		while (bitCount <= 56) {
+			int b = 0;
+			if (!markerReached) {
+				if (pos >= end) markerReached = true;
+				else {
+					b = data[pos] & 0xff;
+					if (b != 0xff) pos++;
+					else if (pos + 1 < end && data[pos + 1] == 0) pos += 2;
+					else {
+						// a marker (or the end of the data)
+						markerReached = true;
+						b = 0;
+					}
+				}
+			}
+			bits |= (long) b << (56 - bitCount);
+			bitCount += 8;
+		}
+	}
+
+	private int getBits(final int n) {
+		if (bitCount < n) fill();
+		final int value = (int) (bits >>> (64 - n));
+		bits <<= n;
+		bitCount -= n;
+		return value;
+	}
+
+	/** Reads {@code s} bits, and extends them to the signed value they code. */
+	private int receiveExtend(final int s) throws FormatException {
+		if (s > 16) throw new FormatException("Invalid JPEG data");
+		final int value = getBits(s);
+		return value < 1 << (s - 1) ? value - (1 << s) + 1 : value;
+	}
+
+	private int decodeHuffman(final HuffmanTable table) {
+		if (bitCount < 16) fill();
+		final int entry = table.lookup[(int) (bits >>> (64 - LOOKAHEAD))];
+		if (entry != 0) {
+			final int length = entry >> 8;
+			bits <<= length;
+			bitCount -= length;
+			return entry & 0xff;
+		}
+		for (int length = LOOKAHEAD + 1; length <= 16; length++) {
+			final int code = (int) (bits >>> (64 - length));
+			if (code <= table.maxCode[length]) {
+				bits <<= length;
+				bitCount -= length;
+				return table.values[table.valueOffsets[length] + code -
+					table.minCode[length]];
+			}
+		}
+		// not a valid code; treat it as an end of block
+		bits <<= 16;
+		bitCount -= 16;
+		return 0;
+	}
+
+	// -- Helper methods - inverse DCT --
+
+	/**
+	 * Transforms a block of coefficients into the samples of the given block of
+	 * the component.
+	 */
+	private void transform(final Component c, final short[] coefficients,
+		final int offset, final int row, final int col)
+	{
+		final int out = row * blockSize * c.stride + col * blockSize;
+		switch (blockSize) {
+			case 8:
+				idct(coefficients, offset, c.quantization, c.samples, out, c.stride);
+				break;
+			case 1:
+				c.samples[out] = clamp(128 + ((coefficients[offset] *
+					c.quantization[0] + 4) >> 3));
+				break;
+			default:
+				idctReduced(coefficients, offset, c.quantization, c.samples, out,
+					c.stride);
+		}
+	}
+
+	/**
+	 * Computes the inverse DCT of a block with the accurate integer method of
+	 * the Independent JPEG Group's library.
+	 */
+	private void idct(final short[] in, final int offset, final int[] q,
+		final byte[] out, final int outOffset, final int stride)
+	{
+		final int[] ws = workspace;
+
+		// columns, from the input to the work space
+		for (int col = 0; col < 8; col++) {
+			final int i = offset + col;
+			if (in[i + 8] == 0 && in[i + 16] == 0 && in[i + 24] == 0 &&
+				in[i + 32] == 0 && in[i + 40] == 0 && in[i + 48] == 0 &&
+				in[i + 56] == 0)
+			{
+				final int dc = (in[i] * q[col]) << PASS1_BITS;
+				for (int k = 0; k < 64; k += 8) {
+					ws[col + k] = dc;
+				}
+				continue;
+			}
+
+			// even part
+			int z2 = in[i + 16] * q[col + 16];
+			int z3 = in[i + 48] * q[col + 48];
+			int z1 = (z2 + z3) * FIX_0_541196100;
+			int tmp2 = z1 - z3 * FIX_1_847759065;
+			int tmp3 = z1 + z2 * FIX_0_765366865;
+			z2 = in[i] * q[col];
+			z3 = in[i + 32] * q[col + 32];
+			int tmp0 = (z2 + z3) << CONST_BITS;
+			int tmp1 = (z2 - z3) << CONST_BITS;
+			final int tmp10 = tmp0 + tmp3;
+			final int tmp13 = tmp0 - tmp3;
+			final int tmp11 = tmp1 + tmp2;
+			final int tmp12 = tmp1 - tmp2;
+
+			// odd part
+			tmp0 = in[i + 56] * q[col + 56];
+			tmp1 = in[i + 40] * q[col + 40];
+			tmp2 = in[i + 24] * q[col + 24];
+			tmp3 = in[i + 8] * q[col + 8];
+			z1 = tmp0 + tmp3;
+			z2 = tmp1 + tmp2;
+			z3 = tmp0 + tmp2;
+			int z4 = tmp1 + tmp3;
+			final int z5 = (z3 + z4) * FIX_1_175875602;
+			tmp0 *= FIX_0_298631336;
+			tmp1 *= FIX_2_053119869;
+			tmp2 *= FIX_3_072711026;
+			tmp3 *= FIX_1_501321110;
+			z1 *= -FIX_0_899976223;
+			z2 *= -FIX_2_562915447;
+			z3 = z3 * -FIX_1_961570560 + z5;
+			z4 = z4 * -FIX_0_390180644 + z5;
+			tmp0 += z1 + z3;
+			tmp1 += z2 + z4;
+			tmp2 += z2 + z3;
+			tmp3 += z1 + z4;
+
+			final int shift = CONST_BITS - PASS1_BITS;
+			final int round = 1 << (shift - 1);
+			ws[col] = (tmp10 + tmp3 + round) >> shift;
+			ws[col + 56] = (tmp10 - tmp3 + round) >> shift;
+			ws[col + 8] = (tmp11 + tmp2 + round) >> shift;
+			ws[col + 48] = (tmp11 - tmp2 + round) >> shift;
+			ws[col + 16] = (tmp12 + tmp1 + round) >> shift;
+			ws[col + 40] = (tmp12 - tmp1 + round) >> shift;
+			ws[col + 24] = (tmp13 + tmp0 + round) >> shift;
+			ws[col + 32] = (tmp13 - tmp0 + round) >> shift;
+		}
+
+		// rows, from the work space to the output
+		final int shift = CONST_BITS + PASS1_BITS + 3;
+		final int round = (1 << (shift - 1)) + (128 << shift);
+		for (int row = 0; row < 8; row++) {
+			final int i = row * 8;
+			final int o = outOffset + row * stride;
+
+			// even part
+			int z2 = ws[i + 2];
+			int z3 = ws[i + 6];
+			int z1 = (z2 + z3) * FIX_0_541196100;
+			int tmp2 = z1 - z3 * FIX_1_847759065;
+			int tmp3 = z1 + z2 * FIX_0_765366865;
+			int tmp0 = (ws[i] + ws[i + 4]) << CONST_BITS;
+			int tmp1 = (ws[i] - ws[i + 4]) << CONST_BITS;
+			final int tmp10 = tmp0 + tmp3;
+			final int tmp13 = tmp0 - tmp3;
+			final int tmp11 = tmp1 + tmp2;
+			final int tmp12 = tmp1 - tmp2;
+
+			// odd part
+			tmp0 = ws[i + 7];
+			tmp1 = ws[i + 5];
+			tmp2 = ws[i + 3];
+			tmp3 = ws[i + 1];
+			z1 = tmp0 + tmp3;
+			z2 = tmp1 + tmp2;
+			z3 = tmp0 + tmp2;
+			int z4 = tmp1 + tmp3;
+			final int z5 = (z3 + z4) * FIX_1_175875602;
+			tmp0 *= FIX_0_298631336;
+			tmp1 *= FIX_2_053119869;
+			tmp2 *= FIX_3_072711026;
+			tmp3 *= FIX_1_501321110;
+			z1 *= -FIX_0_899976223;
+			z2 *= -FIX_2_562915447;
+			z3 = z3 * -FIX_1_961570560 + z5;
+			z4 = z4 * -FIX_0_390180644 + z5;
+			tmp0 += z1 + z3;
+			tmp1 += z2 + z4;
+			tmp2 += z2 + z3;
+			tmp3 += z1 + z4;
+
+			out[o] = clamp((tmp10 + tmp3 + round) >> shift);
+			out[o + 7] = clamp((tmp10 - tmp3 + round) >> shift);
+			out[o + 1] = clamp((tmp11 + tmp2 + round) >> shift);
+			out[o + 6] = clamp((tmp11 - tmp2 + round) >> shift);
+			out[o + 2] = clamp((tmp12 + tmp1 + round) >> shift);
+			out[o + 5] = clamp((tmp12 - tmp1 + round) >> shift);
+			out[o + 3] = clamp((tmp13 + tmp0 + round) >> shift);
+			out[o + 4] = clamp((tmp13 - tmp0 + round) >> shift);
+		}
+	}
+
+	/**
+	 * Computes a reduced inverse DCT, using only the lowest frequencies of the
+	 * block, for 4x4 or 2x2 output.
+	 */
+	private void idctReduced(final short[] in, final int offset, final int[] q,
+		final byte[] out, final int outOffset, final int stride)
+	{
+		final int n = blockSize;
+		final float[] cosines = REDUCED_COSINES[n];
+		final float[] rows = reducedWorkspace;
+		for (int v = 0; v < n; v++) {
+			for (int x = 0; x < n; x++) {
+				float sum = 0;
+				for (int u = 0; u < n; u++) {
+					sum += cosines[x * n + u] * in[offset + v * 8 + u] * q[v * 8 + u];
+				}
+				rows[v * n + x] = sum;
+			}
+		}
+		for (int y = 0; y < n; y++) {
+			for (int x = 0; x < n; x++) {
+				float sum = 0;
+				for (int v = 0; v < n; v++) {
+					sum += cosines[y * n + v] * rows[v * n + x];
+				}
+				out[outOffset + y * stride + x] = clamp(128 + Math.round(sum));
+			}
+		}
+	}
+
+	private static byte clamp(final int value) {
+		return (byte) (value < 0 ? 0 : value > 255 ? 255 : value);
+	}
+
+	// -- Helper methods - output --
+
+	/** Upsamples, color converts and stores the decoded components. */
+	private void write(final byte[] out, final int offset,
+		final boolean interleaved)
+	{
+		final int w = getWidth();
+		final int h = getHeight();
+		final int channels = components.length;
+		final boolean ycc = channels == 3 ? isYCbCr() : channels == 4 &&
+			adobeTransform == 2;
+
+		final byte[][] rows = new byte[channels][];
+		final int[][] columns = new int[channels][];
+		final int[] upsampling = new int[channels];
+		for (int c = 0; c < channels; c++) {
+			final Component component = components[c];
+			final int width = (component.width + scale - 1) / scale;
+			if (component.h == hMax && component.v == vMax) {
+				upsampling[c] = DIRECT;
+			}
+			else if (component.h * 2 == hMax && component.v * 2 >= vMax &&
+				component.v <= vMax && width > 2 && blockSize > 1)
+			{
+				// smooth upsampling, as done by the Independent JPEG Group's library
+				upsampling[c] = component.v == vMax ? FANCY_H2V1 : FANCY_H2V2;
+			}
+			else {
+				upsampling[c] = REPLICATE;
+				columns[c] = new int[w];
+				for (int x = 0; x < w; x++) {
+					columns[c][x] = x * component.h / hMax;
+				}
+			}
+			if (upsampling[c] != DIRECT || ycc && c < 3) rows[c] = new byte[w];
+		}
+
+		final int planeSize = w * h;
+		final int[] starts = new int[channels];
+		for (int y = 0; y < h; y++) {
+			// the row of samples of each component
+			for (int c = 0; c < channels; c++) {
+				final Component component = components[c];
+				final byte[] samples = component.samples;
+				final int start = y * component.v / vMax * component.stride;
+				starts[c] = start;
+				switch (upsampling[c]) {
+					case DIRECT:
+						if (rows[c] != null) {
+							System.arraycopy(samples, start, rows[c], 0, w);
+						}
+						break;
+					case REPLICATE:
+						final int[] column = columns[c];
+						for (int x = 0; x < w; x++) {
+							rows[c][x] = samples[start + column[x]];
+						}
+						break;
+					case FANCY_H2V1:
+						upsampleH2V1(samples, start, (component.width + scale - 1) /
+							scale, rows[c], w);
+						break;
+					case FANCY_H2V2:
+						// the nearer of the neighbouring rows contributes a quarter
+						final int height = (component.height + scale - 1) / scale;
+						final int row = y / 2;
+						final int neighbour = y % 2 == 0 ? Math.max(row - 1, 0) : Math
+							.min(row + 1, height - 1);
+						upsampleH2V2(samples, start, neighbour * component.stride,
+							(component.width + scale - 1) / scale, rows[c], w);
+						break;
+				}
+			}
+			if (ycc) convert(rows, w, channels == 4);
+
+			for (int c = 0; c < channels; c++) {
+				final byte[] row = rows[c] == null ? components[c].samples : rows[c];
+				final int start = rows[c] == null ? starts[c] : 0;
+				if (!interleaved || channels == 1) {
+					System.arraycopy(row, start, out, offset + c * planeSize + y * w,
+						w);
+				}
+				else {
+					int o = offset + y * w * channels + c;
+					for (int x = 0; x < w; x++) {
+						out[o] = row[start + x];
+						o += channels;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Doubles the width of a row of samples, interpolating each output sample
+	 * from the nearest two input samples with weights 3/4 and 1/4.
+	 */
+	private static void upsampleH2V1(final byte[] in, final int start,
+		final int width, final byte[] out, final int outWidth)
+	{
+		for (int x = 0; x < outWidth; x++) {
+			final int i = x >> 1;
+			final int value = in[start + i] & 0xff;
+			if ((x & 1) == 0) {
+				out[x] = i == 0 ? (byte) value : (byte) ((value * 3 + (in[start + i -
+					1] & 0xff) + 1) >> 2);
+			}
+			else {
+				out[x] = i == width - 1 ? (byte) value : (byte) ((value * 3 + (in[start +
+					i + 1] & 0xff) + 2) >> 2);
+			}
+		}
+	}
+
+	/**
+	 * Doubles the width and height of the samples, interpolating each output
+	 * sample from the nearest four input samples with weights 9/16, 3/16, 3/16
+	 * and 1/16.
+	 *
+	 * @param start Start of the input row of the output row.
+	 * @param neighbour Start of the nearest other input row.
+	 */
+	private static void upsampleH2V2(final byte[] in, final int start,
+		final int neighbour, final int width, final byte[] out,
+		final int outWidth)
+	{
+		for (int x = 0; x < outWidth; x++) {
+			final int i = x >> 1;
+			final int sum = columnSum(in, start, neighbour, i);
+			if ((x & 1) == 0) {
+				out[x] = (byte) (i == 0 ? (sum * 4 + 8) >> 4 : (sum * 3 + columnSum(
+					in, start, neighbour, i - 1) + 8) >> 4);
+			}
+			else {
+				out[x] = (byte) (i == width - 1 ? (sum * 4 + 7) >> 4 : (sum * 3 +
+					columnSum(in, start, neighbour, i + 1) + 7) >> 4);
+			}
+		}
+	}
+
+	private static int columnSum(final byte[] in, final int start,
+		final int neighbour, final int i)
+	{
+		return (in[start + i] & 0xff) * 3 + (in[neighbour + i] & 0xff);
+	}
+
+	/**
+	 * Whether a three component image is stored as YCbCr, following the rules
+	 * of the Independent JPEG Group's library.
+	 */
+	private boolean isYCbCr() {
+		if (jfif) return true;
+		if (adobeTransform >= 0) return adobeTransform != 0;
+		return !(components[0].id == 'R' && components[1].id == 'G' &&
+			components[2].id == 'B');
+	}
+
+	/**
+	 * Converts a row of YCbCr samples to RGB, or YCCK to CMYK if the image has
+	 * four channels.
+	 */
+	private static void convert(final byte[][] rows, final int w,
+		final boolean cmyk)
+	{
+		final byte[] r = rows[0], g = rows[1], b = rows[2];
+		for (int x = 0; x < w; x++) {
+			final int y = r[x] & 0xff;
+			final int cb = g[x] & 0xff;
+			final int cr = b[x] & 0xff;
+			int red = y + CR_R[cr];
+			int green = y + ((CB_G[cb] + CR_G[cr]) >> 16);
+			int blue = y + CB_B[cb];
+			if (cmyk) {
+				red = 255 - red;
+				green = 255 - green;
+				blue = 255 - blue;
+			}
+			r[x] = clamp(red);
+			g[x] = clamp(green);
+			b[x] = clamp(blue);
+		}
+	}
+
+	// -- Helper classes --
+
+	/** A component of the frame, and its decoded samples. */
+	private static final class Component {
+
+		private int id, h, v, quantizationTable;
+
+		/** Size of the component, in samples at full resolution. */
+		private int width, height;
+
+		private int blocksPerLine, blocksPerColumn;
+
+		/** Samples of the component, at the reduced resolution. */
+		private byte[] samples;
+
+		private int stride;
+
+		/** Coefficients of every block, for progressive images. */
+		private short[] coefficients;
+
+		private int[] quantization;
+
+		private HuffmanTable dcTable, acTable;
+
+		private int dcPredictor;
+	}
+
+	/** A Huffman table with a lookup table for short codes. */
+	private static final class HuffmanTable {
+
+		/**
+		 * Symbol and code length of each code of at most {@link #LOOKAHEAD} bits,
+		 * as {@code length << 8 | symbol}, indexed by the next bits; 0 if the
+		 * code is longer.
+		 */
+		private final int[] lookup = new int[1 << LOOKAHEAD];
+
+		private final int[] minCode = new int[17];
+
+		/** Largest code of each length, or -1 if there are none. */
+		private final int[] maxCode = new int[17];
+
+		/** Index in {@link #values} of the first code of each length. */
+		private final int[] valueOffsets = new int[17];
+
+		private final int[] values;
+
+		private HuffmanTable(final int[] counts, final byte[] data,
+			final int offset) throws FormatException
+		{
+			int total = 0;
+			for (final int count : counts) {
+				total += count;
+			}
+			values = new int[total];
+			for (int i = 0; i < total; i++) {
+				values[i] = data[offset + i] & 0xff;
+			}
+
+			int code = 0;
+			int k = 0;
+			for (int length = 1; length <= 16; length++) {
+				valueOffsets[length] = k;
+				minCode[length] = code;
+				if (code + counts[length - 1] > 1 << length) {
+					throw new FormatException("Invalid JPEG Huffman table");
+				}
+				for (int i = 0; i < counts[length - 1]; i++) {
+					if (length <= LOOKAHEAD) {
+						final int shift = LOOKAHEAD - length;
+						final int entry = (length << 8) | values[k];
+						Arrays.fill(lookup, code << shift, (code + 1) << shift, entry);
+					}
+					code++;
+					k++;
+				}
+				maxCode[length] = counts[length - 1] > 0 ? code - 1 : -1;
+				code <<= 1;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,500 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.codec;
+
+import io.scif.FormatException;
+import io.scif.UnsupportedCompressionException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.location.Location;
+import org.scijava.plugin.Plugin;
+
+/**
+ * This class implements LZ4 compression and decompression, in the LZ4 frame
+ * format, in pure Java.
+ * <p>
+ * Compression writes a single frame of independent blocks of up to 4 MB,
+ * declaring its content size and without checksums, as the lz4 library's
+ * fast mode does. Decompression reads any frames without a dictionary, linked
+ * blocks or not, and skips their block and content checksums; only the header
+ * checksum is verified. Each thread reuses a single hash table.
+ * </p>
+ */
+@Plugin(type = Codec.class)
+public class LZ4Codec extends AbstractCodec {
+
+	// -- Constants --
+
+	private static final int MAGIC = 0x184D2204;
+
+	/** Magic number of skippable frames, whose low four bits are free. */
+	private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+
+	/** Size of the blocks written, and its code in the frame descriptor. */
+	private static final int BLOCK_SIZE = 4 << 20, BLOCK_SIZE_CODE = 7;
+
+	private static final int MIN_MATCH = 4;
+
+	/** Number of bytes at the end of a block which are always literals. */
+	private static final int LAST_LITERALS = 5;
+
+	/** Number of bytes at the end of a block in which no match starts. */
+	private static final int MATCH_FIND_LIMIT = 12;
+
+	private static final int MAX_OFFSET = 65535;
+
+	private static final int MAX_HASH_LOG = 16;
+
+	/** The hash table of each thread's compressor. */
+	private static final ThreadLocal<int[]> HASH_TABLE = ThreadLocal
+		.withInitial(() -> new int[1 << MAX_HASH_LOG]);
+
+	// -- Codec API methods --
+
+	@Override
+	public byte[] compress(final byte[] data, final CodecOptions options)
+		throws FormatException
+	{
+		if (data == null || data.length == 0) throw new IllegalArgumentException(
+			"No data to compress");
+		final int blocks = (data.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		final byte[] out = new byte[data.length + data.length / 255 + 16 *
+			blocks + 19];
+
+		// frame descriptor: version 1, independent blocks and content size
+		writeInt(out, 0, MAGIC);
+		out[4] = 0x68;
+		out[5] = (byte) (BLOCK_SIZE_CODE << 4);
+		for (int i = 0; i < 8; i++) {
+			out[6 + i] = (byte) ((long) data.length >>> (8 * i));
+		}
+		out[14] = (byte) (headerChecksum(out, 4, 10) >>> 8);
+		int op = 15;
+
+		final int[] hashTable = HASH_TABLE.get();
+		for (int start = 0; start < data.length; start += BLOCK_SIZE) {
+			final int end = Math.min(start + BLOCK_SIZE, data.length);
+			final int size = compressBlock(data, start, end, out, op + 4,
+				hashTable);
+			if (size < end - start) writeInt(out, op, size);
+			else {
+				// stored blocks are flagged by the high bit of their size
+				writeInt(out, op, (end - start) | 0x80000000);
+				System.arraycopy(data, start, out, op + 4, end - start);
+			}
+			op += 4 + Math.min(size, end - start);
+		}
+		writeInt(out, op, 0);
+		return Arrays.copyOf(out, op + 4);
+	}
+
+	@Override
+	public byte[] decompress(final byte[] data, final CodecOptions options)
+		throws FormatException
+	{
+		if (data == null) throw new IllegalArgumentException(
+			"No data to decompress.");
+		// frames usually declare their size, so that one pass usually does; but
+		// no more than a frame of this size could hold, in case it is corrupt
+		final long contentSize = Math.min(getContentSize(data), data.length *
+			255L);
+		int size = contentSize >= 0 && contentSize < Integer.MAX_VALUE / 2
+			? (int) contentSize : Math.max(8192, data.length * 4);
+		if (options != null && options.maxBytes > size) size = options.maxBytes;
+		while (true) {
+			final byte[] buf = new byte[size];
+			final Decoder decoder = new Decoder(data, 0, data.length, buf, 0, size);
+			final int len = decoder.decode();
+			if (!decoder.truncated) {
+				return len == buf.length ? buf : Arrays.copyOf(buf, len);
+			}
+			if (size >= Integer.MAX_VALUE / 2) {
+				throw new FormatException("LZ4 content too large");
+			}
+			size = Math.max(2 * size, 8192);
+		}
+	}
+
+	@Override
+	public int decompress(final ByteBuffer in, final byte[] out,
+		final int offset, final int length, final CodecOptions options)
+		throws FormatException
+	{
+		if (in.hasArray()) {
+			return new Decoder(in.array(), in.arrayOffset() + in.position(), in
+				.remaining(), out, offset, length).decode();
+		}
+		final byte[] data = new byte[in.remaining()];
+		in.duplicate().get(data);
+		return new Decoder(data, 0, data.length, out, offset, length).decode();
+	}
+
+	@Override
+	public byte[] decompress(final DataHandle<Location> in,
+		final CodecOptions options) throws FormatException, IOException
+	{
+		final long remaining = in.length() - in.offset();
+		if (remaining > Integer.MAX_VALUE) {
+			throw new FormatException("LZ4 data too large");
+		}
+		final byte[] data = new byte[(int) remaining];
+		in.readFully(data);
+		return decompress(data, options);
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Compresses one block, stopping if it does not get smaller.
+	 *
+	 * @return the compressed size, which is at least the block's size if it
+	 *         does not shrink
+	 */
+	private static int compressBlock(final byte[] src, final int start,
+		final int end, final byte[] dst, final int dstOffset,
+		final int[] hashTable)
+	{
+		final int limit = dstOffset + end - start;
+		final int matchLimit = end - LAST_LITERALS;
+		final int last = end - MATCH_FIND_LIMIT;
+		final int hashLog = Math.max(8, Math.min(MAX_HASH_LOG, 32 - Integer
+			.numberOfLeadingZeros(end - start)));
+		Arrays.fill(hashTable, 0, 1 << hashLog, -1);
+		int op = dstOffset;
+		int anchor = start;
+		int ip = start;
+		while (ip <= last) {
+			final int value = readInt(src, ip);
+			final int h = hash(src, ip, hashLog);
+			int match = hashTable[h];
+			hashTable[h] = ip;
+			if (match < 0 || ip - match > MAX_OFFSET || readInt(src,
+				match) != value)
+			{
+				// the longer without a match, the faster to skip ahead
+				ip += 1 + ((ip - anchor) >>> 6);
+				continue;
+			}
+			int p = ip;
+			while (p > anchor && match > start && src[p - 1] == src[match - 1]) {
+				p--;
+				match--;
+			}
+			int length = MIN_MATCH;
+			while (p + length < matchLimit && src[p + length] == src[match +
+				length])
+			{
+				length++;
+			}
+			op = writeSequence(src, anchor, p, p - match, length, dst, op, limit);
+			if (op < 0) return end - start;
+			ip = p + length;
+			anchor = ip;
+			// a position within the match helps the next ones
+			if (ip <= last) hashTable[hash(src, ip - 2, hashLog)] = ip - 2;
+		}
+		op = writeSequence(src, anchor, end, 0, 0, dst, op, limit);
+		return op < 0 ? end - start : op - dstOffset;
+	}
+
+	/** Hashes the five bytes at the given position, as the lz4 library does. */
+	private static int hash(final byte[] b, final int p, final int hashLog) {
+		final long value = (readInt(b, p) & 0xffffffffL) | (b[p + 4] & 0xffL) << 32;
+		return (int) (((value << 24) * 0xCF1BBCDCBBL) >>> (64 - hashLog));
+	}
+
+	/**
+	 * Writes the literals up to a match, and the match if its length is not 0.
+	 *
+	 * @return the position following the sequence, or -1 if past the limit
+	 */
+	private static int writeSequence(final byte[] src, final int anchor,
+		final int p, final int offset, final int length, final byte[] dst,
+		int op, final int limit)
+	{
+		final int literalLength = p - anchor;
+		if (op + 1 + literalLength + literalLength / 255 + 4 + (length -
+			MIN_MATCH) / 255 > limit)
+		{
+			return -1;
+		}
+		final int token = op++;
+		dst[token] = (byte) (Math.min(literalLength, 15) << 4);
+		op = writeLength(dst, op, literalLength);
+		System.arraycopy(src, anchor, dst, op, literalLength);
+		op += literalLength;
+		if (length == 0) return op;
+		dst[op++] = (byte) offset;
+		dst[op++] = (byte) (offset >>> 8);
+		dst[token] |= Math.min(length - MIN_MATCH, 15);
+		return writeLength(dst, op, length - MIN_MATCH);
+	}
+
+	/** Writes the part of a length beyond the 15 its token holds. */
+	private static int writeLength(final byte[] dst, int op, final int length) {
+		if (length < 15) return op;
+		int rest = length - 15;
+		while (rest >= 255) {
+			dst[op++] = (byte) 255;
+			rest -= 255;
+		}
+		dst[op++] = (byte) rest;
+		return op;
+	}
+
+	/**
+	 * Gets the content size declared by the first frame in the given data.
+	 *
+	 * @return the content size, or -1 if it is unknown
+	 */
+	private static long getContentSize(final byte[] data) {
+		if (data.length < 15 || readInt(data, 0) != MAGIC || (data[4] &
+			0x08) == 0)
+		{
+			return -1;
+		}
+		long size = 0;
+		for (int i = 0; i < 8; i++) {
+			size |= (data[6 + i] & 0xffL) << (8 * i);
+		}
+		return size;
+	}
+
+	/**
+	 * Computes the XXH32 hash of the given bytes with seed 0, as for a frame
+	 * descriptor, which is always shorter than 16 bytes.
+	 */
+	private static int headerChecksum(final byte[] b, final int offset,
+		final int length)
+	{
+		final int prime1 = 0x9E3779B1, prime2 = 0x85EBCA77, prime3 = 0xC2B2AE3D,
+				prime4 = 0x27D4EB2F, prime5 = 0x165667B1;
+		int h = prime5 + length;
+		int p = offset;
+		for (; p + 4 <= offset + length; p += 4) {
+			h = Integer.rotateLeft(h + readInt(b, p) * prime3, 17) * prime4;
+		}
+		for (; p < offset + length; p++) {
+			h = Integer.rotateLeft(h + (b[p] & 0xff) * prime5, 11) * prime1;
+		}
+		h = (h ^ (h >>> 15)) * prime2;
+		h = (h ^ (h >>> 13)) * prime3;
+		return h ^ (h >>> 16);
+	}
+
+	private static int readInt(final byte[] b, final int p) {
+		return (b[p] & 0xff) | (b[p + 1] & 0xff) << 8 | (b[p + 2] & 0xff) << 16 |
+			b[p + 3] << 24;
+	}
+
+	private static void writeInt(final byte[] b, final int p, final int value) {
+		b[p] = (byte) value;
+		b[p + 1] = (byte) (value >>> 8);
+		b[p + 2] = (byte) (value >>> 16);
+		b[p + 3] = (byte) (value >>> 24);
+	}
+
+	// -- Helper classes --
+
+	/** Decodes the frames of an input range into an output range. */
+	private static final class Decoder {
+
+		private final byte[] in, out;
+
+		private final int end, outStart, outEnd;
+
+		private int pos, op;
+
+		/** Whether the output was too small for the whole content. */
+		private boolean truncated;
+
+		private Decoder(final byte[] in, final int offset, final int length,
+			final byte[] out, final int outOffset, final int outLength)
+		{
+			this.in = in;
+			this.pos = offset;
+			this.end = offset + length;
+			this.out = out;
+			this.op = outOffset;
+			this.outStart = outOffset;
+			this.outEnd = outOffset + outLength;
+		}
+
+		/**
+		 * Decodes frames until the input ends or the output is full.
+		 *
+		 * @return the number of bytes written
+		 */
+		private int decode() throws FormatException {
+			try {
+				boolean first = true;
+				while (!truncated && end - pos >= 4) {
+					final int magic = readInt(in, pos);
+					if ((magic & 0xFFFFFFF0) == SKIPPABLE_MAGIC) {
+						final int size = end - pos < 8 ? -1 : readInt(in, pos + 4);
+						if (size < 0 || size > end - pos - 8) break;
+						pos += 8 + size;
+					}
+					else if (magic == MAGIC) decodeFrame();
+					else if (first) throw new FormatException("Not an LZ4 frame");
+					// data after the last frame, such as padding, is ignored
+					else break;
+					first = false;
+				}
+				return op - outStart;
+			}
+			catch (final ArrayIndexOutOfBoundsException e) {
+				throw new FormatException("Corrupt LZ4 data", e);
+			}
+		}
+
+		private void decodeFrame() throws FormatException {
+			final int descriptor = pos + 4;
+			final int flags = in[descriptor] & 0xff;
+			if ((flags >>> 6) != 1) {
+				throw new FormatException("Unsupported LZ4 frame version");
+			}
+			if ((flags & 1) != 0) {
+				throw new UnsupportedCompressionException(
+					"LZ4 dictionaries are not supported");
+			}
+			final boolean blockChecksums = (flags & 0x10) != 0;
+			final boolean contentChecksum = (flags & 0x04) != 0;
+			final int length = 2 + ((flags & 0x08) != 0 ? 8 : 0);
+			final int checksum = in[descriptor + length] & 0xff;
+			if (checksum != ((headerChecksum(in, descriptor, length) >>> 8) &
+				0xff))
+			{
+				throw new FormatException("Corrupt LZ4 frame descriptor");
+			}
+			pos = descriptor + length + 1;
+
+			// linked blocks may refer to any earlier output of the frame
+			final int frameStart = op;
+			while (true) {
+				// truncated input yields the blocks that could be decoded
+				if (end - pos < 4) {
+					pos = end;
+					return;
+				}
+				final int header = readInt(in, pos);
+				pos += 4;
+				if (header == 0) break;
+				final int size = header & 0x7fffffff;
+				if (size > end - pos) {
+					pos = end;
+					return;
+				}
+				if (header < 0) {
+					final int n = Math.min(size, outEnd - op);
+					System.arraycopy(in, pos, out, op, n);
+					op += n;
+					truncated = n < size;
+				}
+				else decodeBlock(pos, pos + size, frameStart);
+				if (truncated) return;
+				pos += size + (blockChecksums ? 4 : 0);
+			}
+			// content checksums are not verified
+			if (contentChecksum) pos += 4;
+		}
+
+		private void decodeBlock(int p, final int blockEnd, final int frameStart)
+			throws FormatException
+		{
+			while (p < blockEnd) {
+				final int token = in[p++] & 0xff;
+				int literalLength = token >>> 4;
+				if (literalLength == 15) {
+					int b;
+					do {
+						b = in[p++] & 0xff;
+						literalLength += b;
+					}
+					while (b == 255);
+				}
+				if (literalLength > blockEnd - p || literalLength < 0) {
+					throw new FormatException("Corrupt LZ4 block");
+				}
+				if (literalLength > outEnd - op) {
+					System.arraycopy(in, p, out, op, outEnd - op);
+					op = outEnd;
+					truncated = true;
+					return;
+				}
+				System.arraycopy(in, p, out, op, literalLength);
+				p += literalLength;
+				op += literalLength;
+				// the last sequence has only literals
+				if (p == blockEnd) return;
+
+				final int offset = (in[p] & 0xff) | (in[p + 1] & 0xff) << 8;
+				p += 2;
+				if (offset == 0 || offset > op - frameStart) {
+					throw new FormatException("Invalid LZ4 offset");
+				}
+				int matchLength = token & 15;
+				if (matchLength == 15) {
+					int b;
+					do {
+						b = in[p++] & 0xff;
+						matchLength += b;
+					}
+					while (b == 255);
+				}
+				matchLength += MIN_MATCH;
+				if (matchLength < 0) throw new FormatException("Corrupt LZ4 block");
+
+				final int n = Math.min(matchLength, outEnd - op);
+				final int from = op - offset;
+				if (offset >= n) System.arraycopy(out, from, out, op, n);
+				else {
+					// overlapping match: repeat the pattern, doubling it each time
+					int copied = 0;
+					while (copied < n) {
+						final int length = Math.min(copied + offset, n - copied);
+						System.arraycopy(out, from, out, op + copied, length);
+						copied += length;
+					}
+				}
+				op += n;
+				if (n < matchLength) {
+					truncated = true;
+					return;
+				}
+			}
+		}
+	}
+
+}
@@ -32,6 +32,7 @@ package io.scif.codec;
 import io.scif.FormatException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.scijava.io.handle.DataHandle;
@@ -96,6 +97,9 @@ public class LZWCodec extends AbstractCodec {
 
 	private static final int FIRST_CODE = 258;
 
+	/** Number of possible codes. */
+	private static final int TABLE_SIZE = 4096;
+
 	/** Masks for writing bits in compressor. */
 	private static final int[] COMPR_MASKS = { 0xff, 0x7f, 0x3f, 0x1f, 0x0f, 0x07,
 		0x03, 0x01 };
@@ -415,4 +419,162 @@ public class LZWCodec extends AbstractCodec {
 		}
 		return output;
 	}
+
+	/**
+	 * The CodecOptions parameter should have the following fields set:
+	 * {@link CodecOptions#maxBytes maxBytes}
+	 *
+	 * @see Codec#decompress(byte[], CodecOptions)
+	 */
+	@Override
+	public byte[] decompress(final byte[] data, CodecOptions options)
+		throws FormatException
+	{
+		if (data == null || data.length == 0) return null;
+		if (options == null) options = CodecOptions.getDefaultOptions();
+		final byte[] output = new byte[options.maxBytes];
+		decompress(ByteBuffer.wrap(data), output, 0, output.length, options);
+		return output;
+	}
+
+	/**
+	 * Decodes into the given buffer, reading codes through a 64-bit bit
+	 * accumulator and copying each decoded string as a whole.
+	 * <p>
+	 * Every string in the LZW table is a copy of earlier output: the string
+	 * decoded for the previous code followed by the first byte of the string
+	 * decoded next. So the table only stores where each string was written and
+	 * how long it is, and a code is decoded by copying its string from there.
+	 * </p>
+	 *
+	 * @see Codec#decompress(ByteBuffer, byte[], int, int, CodecOptions)
+	 */
+	@Override
+	public int decompress(final ByteBuffer in, final byte[] out,
+		final int offset, final int length, final CodecOptions options)
+		throws FormatException
+	{
+		final byte[] input;
+		int inPos;
+		final int inEnd;
+		if (in.hasArray()) {
+			input = in.array();
+			inPos = in.arrayOffset() + in.position();
+		}
+		else {
+			input = new byte[in.remaining()];
+			in.duplicate().get(input);
+			inPos = 0;
+		}
+		inEnd = inPos + in.remaining();
+
+		final int end = offset + length;
+		// Position in output buffer to write next byte to
+		int outPos = offset;
+
+		// Position and length in the output of the string for each code
+		final int[] positions = new int[TABLE_SIZE];
+		final int[] lengths = new int[TABLE_SIZE];
+
+		// Unread bits, left-aligned, and their number
+		long bits = 0;
+		int bitCount = 0;
+
+		int codeLength = 9;
+		int nextCode = FIRST_CODE;
+		// Previous code, or -1 right after a CLEAR code
+		int oldCode = -1;
+		int oldLength = 0;
+		// Position in output buffer of the string for the previous code
+		int oldPos = outPos;
+
+		while (outPos < end) {
+			// read next code, refilling the accumulator with whole bytes
+			if (bitCount < codeLength) {
+				if (inPos + 8 <= inEnd) {
+					while (bitCount <= 56) {
+						bits |= (long) (input[inPos++] & 0xff) << (56 - bitCount);
+						bitCount += 8;
+					}
+				}
+				else {
+					while (bitCount <= 56 && inPos < inEnd) {
+						bits |= (long) (input[inPos++] & 0xff) << (56 - bitCount);
+						bitCount += 8;
+					}
+					if (bitCount < codeLength) break;
+				}
+			}
+			final int code = (int) (bits >>> (64 - codeLength));
+			bits <<= codeLength;
+			bitCount -= codeLength;
+
+			// write the string for the code to output
+			final int pos = outPos;
+			final int stringLength;
+			if (code < CLEAR_CODE) {
+				stringLength = 1;
+				out[outPos++] = (byte) code;
+			}
+			else if (code >= FIRST_CODE && code < nextCode) {
+				// Code is already in the table
+				stringLength = lengths[code];
+				outPos += copy(out, positions[code], pos, Math.min(stringLength,
+					end - pos));
+			}
+			else if (code == CLEAR_CODE) {
+				nextCode = FIRST_CODE;
+				codeLength = 9;
+				oldCode = -1;
+				continue;
+			}
+			else if (code == EOI_CODE) break;
+			else if (code == nextCode && oldCode >= 0) {
+				// Special case: the string for the previous code, followed by
+				// its own first byte
+				stringLength = oldLength + 1;
+				outPos += copy(out, oldPos, pos, Math.min(oldLength, end - pos));
+				if (outPos < end) out[outPos++] = out[oldPos];
+			}
+			else {
+				// not a valid code; keep what was decoded so far
+				break;
+			}
+
+			// add string[old_code]+firstByte(string[code]) to the table; it
+			// starts where the string for the previous code was written
+			if (oldCode >= 0 && nextCode < TABLE_SIZE) {
+				positions[nextCode] = oldPos;
+				lengths[nextCode] = oldLength + 1;
+				nextCode++;
+				// Increase length of code if needed
+				if (nextCode >= 511) {
+					codeLength = nextCode >= 2047 ? 12 : nextCode >= 1023 ? 11 : 10;
+				}
+			}
+			oldCode = code;
+			oldLength = stringLength;
+			oldPos = pos;
+		}
+		return outPos - offset;
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Copies a decoded string to the given position, returning its length.
+	 * Short strings, the most common by far, are copied without calling
+	 * {@link System#arraycopy}.
+	 */
+	private static int copy(final byte[] out, final int from, final int to,
+		final int length)
+	{
+		if (length > 16) System.arraycopy(out, from, out, to, length);
+		else {
+			for (int i = 0; i < length; i++) {
+				out[to + i] = out[from + i];
+			}
+		}
+		return length;
+	}
 }
@@ -33,13 +33,14 @@ import io.scif.FormatException;
 import io.scif.UnsupportedCompressionException;
 
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.scijava.io.handle.DataHandle;
 import org.scijava.io.location.Location;
-import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.util.Bytes;
-import org.scijava.util.ShortArray;
 
 /**
  * Decompresses lossless JPEG images.
@@ -123,9 +124,6 @@ public class LosslessJPEGCodec extends AbstractCodec {
 
 	public static final int COM = 0xfffe; // comment
 
-	@Parameter
-	private CodecService codecService;
-
 	// -- Codec API methods --
 
 	@Override
@@ -144,227 +142,314 @@ public class LosslessJPEGCodec extends AbstractCodec {
 	 * @see Codec#decompress(DataHandle, CodecOptions)
 	 */
 	@Override
-	public byte[] decompress(final DataHandle<Location> in, CodecOptions options)
-		throws FormatException, IOException
+	public byte[] decompress(final DataHandle<Location> in,
+		final CodecOptions options) throws FormatException, IOException
 	{
 		if (in == null) throw new IllegalArgumentException(
 			"No data to decompress.");
-		if (options == null) options = CodecOptions.getDefaultOptions();
-		byte[] buf = new byte[0];
+		final byte[] data = new byte[(int) (in.length() - in.offset())];
+		in.read(data);
+		return decompress(data, options);
+	}
 
-		int width = 0, height = 0;
-		int bitsPerSample = 0, nComponents = 0, bytesPerSample = 0;
-		int[] horizontalSampling = null, verticalSampling = null;
-		int[] quantizationTable = null;
-		short[][] huffmanTables = null;
+	/**
+	 * The CodecOptions parameter should have the following fields set:
+	 * {@link CodecOptions#interleaved interleaved}
+	 * {@link CodecOptions#littleEndian littleEndian}
+	 *
+	 * @see Codec#decompress(byte[], CodecOptions)
+	 */
+	@Override
+	public byte[] decompress(final byte[] data, CodecOptions options)
+		throws FormatException
+	{
+		if (data == null) throw new IllegalArgumentException(
+			"No data to decompress.");
+		if (options == null) options = CodecOptions.getDefaultOptions();
+		final ByteBuffer in = ByteBuffer.wrap(data);
+		final Frame frame = readFrame(in);
+		final byte[] buf = new byte[frame.size];
+		decodeScan(in, frame, buf, 0);
+		if (!needsReordering(frame, options)) return buf;
+		final byte[] reordered = new byte[buf.length];
+		reorder(buf, frame, options, reordered, 0, reordered.length);
+		return reordered;
+	}
 
-		int startPredictor = 0;
+	/**
+	 * The CodecOptions parameter should have the following fields set:
+	 * {@link CodecOptions#interleaved interleaved}
+	 * {@link CodecOptions#littleEndian littleEndian}
+	 *
+	 * @see Codec#decompress(ByteBuffer, byte[], int, int, CodecOptions)
+	 */
+	@Override
+	public int decompress(final ByteBuffer in, final byte[] out,
+		final int offset, final int length, CodecOptions options)
+		throws FormatException
+	{
+		if (options == null) options = CodecOptions.getDefaultOptions();
+		final Frame frame = readFrame(in);
+		final int n = Math.min(frame.size, length);
+		if (!needsReordering(frame, options) && n == frame.size) {
+			// samples are decoded straight into place
+			decodeScan(in, frame, out, offset);
+		}
+		else {
+			final byte[] buf = new byte[frame.size];
+			decodeScan(in, frame, buf, 0);
+			reorder(buf, frame, options, out, offset, n);
+		}
+		return n;
+	}
 
-		int[] dcTable = null, acTable = null;
+	// -- Helper methods --
 
-		while (in.offset() < in.length() - 1) {
-			final int code = in.readShort() & 0xffff;
-			int length = in.readShort() & 0xffff;
-			final long fp = in.offset();
-			if (length > 0xff00) {
-				length = 0;
-				in.seek(fp - 2);
-			}
-			else if (code == SOS) {
-				nComponents = in.read();
-				dcTable = new int[nComponents];
-				acTable = new int[nComponents];
-				for (int i = 0; i < nComponents; i++) {
-					in.read(); // componentSelector
-					final int tableSelector = in.read();
-					dcTable[i] = (tableSelector & 0xf0) >> 4;
-					acTable[i] = tableSelector & 0xf;
+	/**
+	 * Reads the markers preceding the image data, up to and including the start
+	 * of scan.
+	 */
+	private Frame readFrame(final ByteBuffer data) throws FormatException {
+		final ByteBuffer in = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+		final Frame frame = new Frame();
+		try {
+			while (in.remaining() > 1) {
+				final int code = in.getShort() & 0xffff;
+				int length = in.getShort() & 0xffff;
+				final int fp = in.position();
+				if (length > 0xff00) {
+					length = 0;
+					in.position(fp - 2);
 				}
-				startPredictor = in.read();
-				in.read(); // endPredictor
-				in.read(); // least significant 4 bits = pointTransform
-
-				// read image data
-
-				byte[] toDecode = new byte[(int) (in.length() - in.offset())];
-				in.read(toDecode);
-
-				// scrub out byte stuffing
+				else if (code == SOS) {
+					frame.nComponents = in.get() & 0xff;
+					frame.dcTable = new int[frame.nComponents];
+					for (int i = 0; i < frame.nComponents; i++) {
+						in.get(); // componentSelector
+						final int tableSelector = in.get() & 0xff;
+						frame.dcTable[i] = (tableSelector & 0xf0) >> 4;
+					}
+					frame.startPredictor = in.get() & 0xff;
+					in.get(); // endPredictor
+					in.get(); // least significant 4 bits = pointTransform
 
-				final ByteVector b = new ByteVector();
-				for (int i = 0; i < toDecode.length; i++) {
-					b.add(toDecode[i]);
-					if (toDecode[i] == (byte) 0xff && toDecode[i + 1] == 0) i++;
+					// the image data runs to the end of the stream
+					frame.scanOffset = in.position();
+					return frame;
 				}
-				toDecode = b.toByteArray();
-
-				final BitBuffer bb = new BitBuffer(toDecode);
-				final HuffmanCodec huffman = codecService.getCodec(HuffmanCodec.class);
-				final HuffmanCodecOptions huffmanOptions = new HuffmanCodecOptions();
-				huffmanOptions.bitsPerSample = bitsPerSample;
-				huffmanOptions.maxBytes = buf.length / nComponents;
-
-				int nextSample = 0;
-				while (nextSample < buf.length / nComponents) {
-					for (int i = 0; i < nComponents; i++) {
-						if (huffmanTables != null) {
-							huffmanOptions.table = huffmanTables[dcTable[i]];
-						}
-						int v = 0;
-
-						if (huffmanOptions.table != null) {
-							v = huffman.getSample(bb, huffmanOptions);
-							if (nextSample == 0) {
-								v += (int) Math.pow(2, bitsPerSample - 1);
-							}
+				else {
+					length -= 2; // stored length includes length param
+					if (length == 0) continue;
+
+					if (code == EOI) {}
+					else if (code == SOF3) {
+						// lossless w/Huffman coding
+						frame.bitsPerSample = in.get() & 0xff;
+						frame.height = in.getShort() & 0xffff;
+						frame.width = in.getShort() & 0xffff;
+						frame.nComponents = in.get() & 0xff;
+						// sampling factors and quantization tables are not needed
+
+						frame.bytesPerSample = frame.bitsPerSample / 8;
+						if ((frame.bitsPerSample % 8) != 0) frame.bytesPerSample++;
+
+						frame.size = frame.width * frame.height * frame.nComponents *
+							frame.bytesPerSample;
+					}
+					else if (code == SOF11) {
+						throw new UnsupportedCompressionException(
+							"Arithmetic coding is not yet supported");
+					}
+					else if (code == DHT) {
+						if (frame.huffmanTables == null) {
+							frame.huffmanTables = new short[4][];
 						}
-						else {
-							throw new UnsupportedCompressionException(
-								"Arithmetic coding not supported");
+						final int s = in.get() & 0xff;
+						final byte destination = (byte) (s & 0xf);
+						final int[] nCodes = new int[16];
+						int total = 0;
+						for (int i = 0; i < nCodes.length; i++) {
+							nCodes[i] = in.get() & 0xff;
+							total += nCodes[i];
 						}
-
-						// apply predictor to the sample
-						int predictor = startPredictor;
-						if (nextSample < width * bytesPerSample) predictor = 1;
-						else if ((nextSample % (width * bytesPerSample)) == 0) {
-							predictor = 2;
+						final short[] table = new short[nCodes.length + total];
+						for (int i = 0; i < nCodes.length; i++) {
+							table[i] = (short) nCodes[i];
 						}
-
-						final int componentOffset = i * (buf.length / nComponents);
-
-						final int indexA = nextSample - bytesPerSample + componentOffset;
-						final int indexB = nextSample - width * bytesPerSample +
-							componentOffset;
-						final int indexC = nextSample - (width + 1) * bytesPerSample +
-							componentOffset;
-
-						final int sampleA = indexA < 0 ? 0 : Bytes.toInt(buf, indexA,
-							bytesPerSample, false);
-						final int sampleB = indexB < 0 ? 0 : Bytes.toInt(buf, indexB,
-							bytesPerSample, false);
-						final int sampleC = indexC < 0 ? 0 : Bytes.toInt(buf, indexC,
-							bytesPerSample, false);
-
-						if (nextSample > 0) {
-							int pred = 0;
-							switch (predictor) {
-								case 1:
-									pred = sampleA;
-									break;
-								case 2:
-									pred = sampleB;
-									break;
-								case 3:
-									pred = sampleC;
-									break;
-								case 4:
-									pred = sampleA + sampleB + sampleC;
-									break;
-								case 5:
-									pred = sampleA + ((sampleB - sampleC) / 2);
-									break;
-								case 6:
-									pred = sampleB + ((sampleA - sampleC) / 2);
-									break;
-								case 7:
-									pred = (sampleA + sampleB) / 2;
-									break;
-							}
-							v += pred;
+						for (int i = nCodes.length; i < table.length; i++) {
+							table[i] = (short) (in.get() & 0xff);
 						}
-
-						final int offset = componentOffset + nextSample;
-
-						Bytes.unpack(v, buf, offset, bytesPerSample, false);
+						frame.huffmanTables[destination] = table;
 					}
-					nextSample += bytesPerSample;
+					in.position(fp + length);
 				}
 			}
-			else {
-				length -= 2; // stored length includes length param
-				if (length == 0) continue;
-
-				if (code == EOI) {}
-				else if (code == SOF3) {
-					// lossless w/Huffman coding
-					bitsPerSample = in.read();
-					height = in.readShort();
-					width = in.readShort();
-					nComponents = in.read();
-					horizontalSampling = new int[nComponents];
-					verticalSampling = new int[nComponents];
-					quantizationTable = new int[nComponents];
-					for (int i = 0; i < nComponents; i++) {
-						in.skipBytes(1);
-						final int s = in.read();
-						horizontalSampling[i] = (s & 0xf0) >> 4;
-						verticalSampling[i] = s & 0x0f;
-						quantizationTable[i] = in.read();
-					}
+		}
+		catch (final BufferUnderflowException | IllegalArgumentException e) {
+			throw new FormatException("Truncated lossless JPEG data", e);
+		}
+		return frame;
+	}
+
+	/**
+	 * Decodes the image data of the given frame, one plane after another in
+	 * big-endian order, into the given buffer.
+	 */
+	private void decodeScan(final ByteBuffer in, final Frame frame,
+		final byte[] buf, final int off) throws FormatException
+	{
+		if (frame.scanOffset < 0 || frame.size == 0) return;
+
+		// scrub out byte stuffing
+		final int end = in.limit();
+		final byte[] toDecode = new byte[end - frame.scanOffset];
+		int len = 0;
+		for (int i = frame.scanOffset; i < end; i++) {
+			final byte b = in.get(i);
+			toDecode[len++] = b;
+			if (b == (byte) 0xff && i + 1 < end && in.get(i + 1) == 0) i++;
+		}
 
-					bytesPerSample = bitsPerSample / 8;
-					if ((bitsPerSample % 8) != 0) bytesPerSample++;
+		final int nComponents = frame.nComponents;
+		final int bytesPerSample = frame.bytesPerSample;
+		final int width = frame.width;
+		final int planeSize = frame.size / nComponents;
+
+		final BitBuffer bb = new BitBuffer(toDecode, 0, len);
+		// the tables are read with each frame, so their decoders are not cached
+		final HuffmanCodec.Decoder[] decoders =
+			new HuffmanCodec.Decoder[nComponents];
+		for (int i = 0; i < nComponents; i++) {
+			final short[] table = frame.huffmanTables == null ? null
+				: frame.huffmanTables[frame.dcTable[i]];
+			if (table == null) {
+				throw new UnsupportedCompressionException(
+					"Arithmetic coding not supported");
+			}
+			for (int j = 0; j < i && decoders[i] == null; j++) {
+				if (frame.dcTable[j] == frame.dcTable[i]) decoders[i] = decoders[j];
+			}
+			if (decoders[i] == null) decoders[i] = HuffmanCodec.createDecoder(table);
+		}
 
-					buf = new byte[width * height * nComponents * bytesPerSample];
+		int nextSample = 0;
+		while (nextSample < planeSize) {
+			for (int i = 0; i < nComponents; i++) {
+				int v = decoders[i].getSample(bb);
+				if (nextSample == 0) {
+					v += 1 << (frame.bitsPerSample - 1);
 				}
-				else if (code == SOF11) {
-					throw new UnsupportedCompressionException(
-						"Arithmetic coding is not yet supported");
+
+				// apply predictor to the sample
+				int predictor = frame.startPredictor;
+				if (nextSample < width * bytesPerSample) predictor = 1;
+				else if ((nextSample % (width * bytesPerSample)) == 0) {
+					predictor = 2;
 				}
-				else if (code == DHT) {
-					if (huffmanTables == null) {
-						huffmanTables = new short[4][];
-					}
-					final int s = in.read();
-//					final byte tableClass = (byte) ((s & 0xf0) >> 4);
-					final byte destination = (byte) (s & 0xf);
-					final int[] nCodes = new int[16];
-					final ShortArray table = new ShortArray();
-					for (int i = 0; i < nCodes.length; i++) {
-						nCodes[i] = in.read();
-						table.add((short) nCodes[i]);
-					}
 
-					for (int i = 0; i < nCodes.length; i++) {
-						for (int j = 0; j < nCodes[i]; j++) {
-							table.add(new Short((short) (in.read() & 0xff)));
-						}
-					}
-					huffmanTables[destination] = new short[table.size()];
-					for (int i = 0; i < huffmanTables[destination].length; i++) {
-						huffmanTables[destination][i] = table.getValue(i);
+				final int componentOffset = off + i * planeSize;
+
+				final int indexA = nextSample - bytesPerSample;
+				final int indexB = nextSample - width * bytesPerSample;
+				final int indexC = nextSample - (width + 1) * bytesPerSample;
+
+				final int sampleA = indexA < 0 ? 0 : Bytes.toInt(buf, componentOffset +
+					indexA, bytesPerSample, false);
+				final int sampleB = indexB < 0 ? 0 : Bytes.toInt(buf, componentOffset +
+					indexB, bytesPerSample, false);
+				final int sampleC = indexC < 0 ? 0 : Bytes.toInt(buf, componentOffset +
+					indexC, bytesPerSample, false);
+
+				if (nextSample > 0) {
+					int pred = 0;
+					switch (predictor) {
+						case 1:
+							pred = sampleA;
+							break;
+						case 2:
+							pred = sampleB;
+							break;
+						case 3:
+							pred = sampleC;
+							break;
+						case 4:
+							pred = sampleA + sampleB + sampleC;
+							break;
+						case 5:
+							pred = sampleA + ((sampleB - sampleC) / 2);
+							break;
+						case 6:
+							pred = sampleB + ((sampleA - sampleC) / 2);
+							break;
+						case 7:
+							pred = (sampleA + sampleB) / 2;
+							break;
 					}
+					v += pred;
 				}
-				in.seek(fp + length);
-			}
-		}
 
-		if (options.interleaved && nComponents > 1) {
-			// data is stored in planar (RRR...GGG...BBB...) order
-			final byte[] newBuf = new byte[buf.length];
-			for (int i = 0; i < buf.length; i += nComponents * bytesPerSample) {
-				for (int c = 0; c < nComponents; c++) {
-					final int src = c * (buf.length / nComponents) + (i / nComponents);
-					final int dst = i + c * bytesPerSample;
-					System.arraycopy(buf, src, newBuf, dst, bytesPerSample);
-				}
+				Bytes.unpack(v, buf, componentOffset + nextSample, bytesPerSample,
+					false);
 			}
-			buf = newBuf;
+			nextSample += bytesPerSample;
 		}
+	}
 
-		if (options.littleEndian && bytesPerSample > 1) {
-			// data is stored in big endian order
-			// reverse the bytes in each sample
-			final byte[] newBuf = new byte[buf.length];
-			for (int i = 0; i < buf.length; i += bytesPerSample) {
-				for (int q = 0; q < bytesPerSample; q++) {
-					newBuf[i + bytesPerSample - q - 1] = buf[i + q];
-				}
+	/**
+	 * Whether the decoded samples must be interleaved or byte swapped before
+	 * they are returned.
+	 */
+	private boolean needsReordering(final Frame frame,
+		final CodecOptions options)
+	{
+		return (options.interleaved && frame.nComponents > 1) ||
+			(options.littleEndian && frame.bytesPerSample > 1);
+	}
+
+	/**
+	 * Copies the first {@code length} bytes of the decoded samples to the given
+	 * buffer, interleaving and byte swapping them as requested.
+	 */
+	private void reorder(final byte[] buf, final Frame frame,
+		final CodecOptions options, final byte[] out, final int offset,
+		final int length)
+	{
+		final int bytesPerSample = frame.bytesPerSample;
+		final int nComponents = frame.nComponents;
+		final int planeSize = buf.length / nComponents;
+		// data is stored in planar (RRR...GGG...BBB...) order
+		final boolean interleave = options.interleaved && nComponents > 1;
+		// data is stored in big endian order
+		final boolean swap = options.littleEndian && bytesPerSample > 1;
+		for (int src = 0; src < buf.length; src += bytesPerSample) {
+			final int c = src / planeSize;
+			final int dst = interleave ? (src - c * planeSize) * nComponents + c *
+				bytesPerSample : src;
+			for (int q = 0; q < bytesPerSample; q++) {
+				final int index = dst + (swap ? bytesPerSample - q - 1 : q);
+				if (index < length) out[offset + index] = buf[src + q];
 			}
-			buf = newBuf;
 		}
+	}
+
+	// -- Helper classes --
+
+	/** The frame and scan parameters of a lossless JPEG stream. */
+	private static final class Frame {
+
+		private int width, height, bitsPerSample, nComponents, bytesPerSample;
+
+		/** Number of bytes of decoded samples. */
+		private int size;
+
+		private short[][] huffmanTables;
+
+		private int[] dcTable;
+
+		private int startPredictor;
 
-		return buf;
+		/** Position of the image data, or -1 if there is no scan. */
+		private int scanOffset = -1;
 	}
 
 }
@@ -93,6 +93,22 @@ public class LuraWaveCodec extends AbstractCodec {
 	{
 		checkLuraWaveService();
 
+		// the service decodes one stream at a time
+		synchronized (luraWaveService) {
+			return decode(buf, options, luraWaveService);
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Decodes the given LuraWave data; the caller must hold the lock of the
+	 * service.
+	 */
+	private static byte[] decode(final byte[] buf, final CodecOptions options,
+		final LuraWaveService luraWaveService)
+		throws FormatException
+	{
 		final BufferedInputStream stream = new BufferedInputStream(
 			new ByteArrayInputStream(buf), 4096);
 		try {
@@ -143,8 +159,6 @@ public class LuraWaveCodec extends AbstractCodec {
 		throw new FormatException("Unsupported bits per pixel: " + nbits);
 	}
 
-	// -- Helper methods --
-
 	/**
 	 * Checks the LuraWave service, throwing an exception if it is not available.
 	 *
@@ -157,21 +157,18 @@ public class NikonCodec extends AbstractCodec {
 		}
 
 		final NikonCodecOptions nikon = (NikonCodecOptions) options;
-		final HuffmanCodecOptions huffman = new HuffmanCodecOptions();
-		huffman.bitsPerSample = nikon.bitsPerSample;
-		huffman.maxBytes = nikon.maxBytes;
-
+		final short[] huffmanTable;
 		if (!nikon.lossless) {
 			if (nikon.bitsPerSample == 12) {
-				huffman.table = LOSSY_DECODER_CONFIGURATION_12;
+				huffmanTable = LOSSY_DECODER_CONFIGURATION_12;
 			}
-			else huffman.table = LOSSY_DECODER_CONFIGURATION_14;
+			else huffmanTable = LOSSY_DECODER_CONFIGURATION_14;
 		}
 		else {
 			if (nikon.bitsPerSample == 12) {
-				huffman.table = LOSSLESS_DECODER_CONFIGURATION_12;
+				huffmanTable = LOSSLESS_DECODER_CONFIGURATION_12;
 			}
-			else huffman.table = LOSSLESS_DECODER_CONFIGURATION_14;
+			else huffmanTable = LOSSLESS_DECODER_CONFIGURATION_14;
 		}
 
 		if (nikon.vPredictor == null) {
@@ -179,6 +176,7 @@ public class NikonCodec extends AbstractCodec {
 		}
 
 		final HuffmanCodec huffmanCodec = codecService.getCodec(HuffmanCodec.class);
+		HuffmanCodec.Decoder decoder = huffmanCodec.getDecoder(huffmanTable);
 
 		final byte[] pix = new byte[nikon.maxBytes];
 		in.read(pix);
@@ -193,16 +191,15 @@ public class NikonCodec extends AbstractCodec {
 		for (int row = 0; row < nikon.height; row++) {
 			if (row == nikon.split) {
 				if (!nikon.lossless) {
-					if (nikon.bitsPerSample == 12) {
-						huffman.table = SPLIT_LOSSY_DECODER_CONFIGURATION_12;
-					}
-					else huffman.table = SPLIT_LOSSY_DECODER_CONFIGURATION_14;
+					decoder = huffmanCodec.getDecoder(nikon.bitsPerSample == 12
+						? SPLIT_LOSSY_DECODER_CONFIGURATION_12
+						: SPLIT_LOSSY_DECODER_CONFIGURATION_14);
 					Arrays.fill(hPredictor, 0);
 				}
 			}
 			for (int col = 0; col < nikon.width; col++) {
 				final int cfaIndex = (2 * (row & 1)) + (col & 1);
-				final int diff = huffmanCodec.getSample(bb, huffman);
+				final int diff = decoder.getSample(bb);
 
 				if (col < 2) {
 					nikon.vPredictor[cfaIndex] += diff;
@@ -34,6 +34,8 @@ import io.scif.UnsupportedCompressionException;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.scijava.io.handle.DataHandle;
 import org.scijava.io.location.Location;
@@ -95,4 +97,39 @@ public class PackbitsCodec extends AbstractCodec {
 		if (fp + nread < in.length()) in.seek(fp + nread);
 		return output.toByteArray();
 	}
+
+	@Override
+	public int decompress(final ByteBuffer in, final byte[] out,
+		final int offset, final int length, final CodecOptions options)
+	{
+		final int limit = in.limit();
+		int pos = in.position();
+		int n = 0;
+		// Adapted from the TIFF 6.0 specification, page 42.
+		while (n < length && pos < limit) {
+			final byte b = in.get(pos++);
+			if (b >= 0) { // 0 <= n <= 127
+				final int len = Math.min(Math.min(b + 1, limit - pos), length - n);
+				if (in.hasArray()) {
+					System.arraycopy(in.array(), in.arrayOffset() + pos, out, offset + n,
+						len);
+				}
+				else {
+					for (int i = 0; i < len; i++) {
+						out[offset + n + i] = in.get(pos + i);
+					}
+				}
+				pos += b + 1;
+				n += len;
+			}
+			else if (b != -128) { // -127 <= n <= -1
+				if (pos >= limit) break;
+				final byte value = in.get(pos++);
+				final int len = Math.min(-b + 1, length - n);
+				Arrays.fill(out, offset + n, offset + n + len, value);
+				n += len;
+			}
+		}
+		return n;
+	}
 }
@@ -32,6 +32,7 @@ package io.scif.codec;
 import io.scif.FormatException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.scijava.io.handle.DataHandle;
 import org.scijava.io.location.Location;
@@ -51,6 +52,15 @@ public class PassthroughCodec extends AbstractCodec {
 		return data;
 	}
 
+	@Override
+	public int decompress(final ByteBuffer in, final byte[] out,
+		final int offset, final int length, final CodecOptions options)
+	{
+		final int n = Math.min(in.remaining(), length);
+		in.duplicate().get(out, offset, n);
+		return n;
+	}
+
 	@Override
 	public byte[] decompress(final DataHandle<Location> in,
 		final CodecOptions options) throws FormatException, IOException
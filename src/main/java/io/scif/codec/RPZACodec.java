@@ -45,10 +45,6 @@ import org.scijava.plugin.Plugin;
 @Plugin(type = Codec.class)
 public class RPZACodec extends AbstractCodec {
 
-	// -- Fields --
-
-	private int pixelPtr, rowPtr, stride;
-
 	@Override
 	public byte[] compress(final byte[] input, final CodecOptions options)
 		throws FormatException
@@ -75,7 +71,7 @@ public class RPZACodec extends AbstractCodec {
 
 		final int plane = options.width * options.height;
 
-		stride = options.width;
+		final int stride = options.width;
 		final int rowInc = stride - 4;
 		short opcode;
 		int nBlocks;
@@ -84,7 +80,7 @@ public class RPZACodec extends AbstractCodec {
 		int index, idx;
 		int ta, tb;
 		int blockPtr = 0;
-		rowPtr = pixelPtr = 0;
+		int block = 0;
 		int pixelX, pixelY;
 
 		final int[] pixels = new int[plane];
@@ -113,15 +109,13 @@ public class RPZACodec extends AbstractCodec {
 
 			switch (opcode & 0xe0) {
 				case 0x80:
-					while (nBlocks-- > 0) {
-						updateBlock(options.width);
-					}
+					block += nBlocks;
 					break;
 				case 0xa0:
 					if (in.offset() + 2 >= in.length()) break;
 					colorA = in.readShort();
 					while (nBlocks-- > 0) {
-						blockPtr = rowPtr + pixelPtr;
+						blockPtr = blockStart(block, stride);
 						for (pixelY = 0; pixelY < 4; pixelY++) {
 							for (pixelX = 0; pixelX < 4; pixelX++) {
 								if (blockPtr >= pixels.length) break;
@@ -133,7 +127,7 @@ public class RPZACodec extends AbstractCodec {
 							}
 							blockPtr += rowInc;
 						}
-						updateBlock(options.width);
+						block++;
 					}
 					break;
 				case 0xc0:
@@ -166,7 +160,7 @@ public class RPZACodec extends AbstractCodec {
 					color4[2] |= (21 * ta + 11 * tb) >> 5;
 
 					while (nBlocks-- > 0) {
-						blockPtr = rowPtr + pixelPtr;
+						blockPtr = blockStart(block, stride);
 						for (pixelY = 0; pixelY < 4; pixelY++) {
 							if (in.offset() >= in.length()) break;
 							index = in.read();
@@ -181,11 +175,11 @@ public class RPZACodec extends AbstractCodec {
 							}
 							blockPtr += rowInc;
 						}
-						updateBlock(options.width);
+						block++;
 					}
 					break;
 				case 0x00:
-					blockPtr = rowPtr + pixelPtr;
+					blockPtr = blockStart(block, stride);
 					for (pixelY = 0; pixelY < 4; pixelY++) {
 						for (pixelX = 0; pixelX < 4; pixelX++) {
 							if ((pixelY != 0) || (pixelX != 0)) {
@@ -201,7 +195,7 @@ public class RPZACodec extends AbstractCodec {
 						}
 						blockPtr += rowInc;
 					}
-					updateBlock(options.width);
+					block++;
 					break;
 			}
 		}
@@ -210,21 +204,18 @@ public class RPZACodec extends AbstractCodec {
 
 	// -- Helper methods --
 
-	private void unpack(final short s, final byte[] array, final int offset,
-		final int len)
+	private static void unpack(final short s, final byte[] array,
+		final int offset, final int len)
 	{
 		array[offset] = (byte) (255 - ((s & 0x7c00) >> 10));
 		array[offset + len] = (byte) (255 - ((s & 0x3e0) >> 5));
 		array[offset + 2 * len] = (byte) (255 - (s & 0x1f));
 	}
 
-	private void updateBlock(final int width) {
-		pixelPtr += 4;
-		if (pixelPtr >= width) {
-			pixelPtr = 0;
-			rowPtr += stride * 4;
-		}
-//		totalBlocks--;
+	/** Gets the index of the first pixel of the given 4x4 block. */
+	private static int blockStart(final int block, final int width) {
+		final int blocksPerRow = (width + 3) / 4;
+		return (block / blocksPerRow) * width * 4 + (block % blocksPerRow) * 4;
 	}
 
 }
@@ -33,7 +33,11 @@ import io.scif.FormatException;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 import org.scijava.io.handle.DataHandle;
@@ -42,39 +46,141 @@ import org.scijava.io.location.Location;
 import org.scijava.plugin.Plugin;
 
 /**
- * This class implements ZLIB decompression.
+ * This class implements ZLIB compression and decompression.
+ * <p>
+ * Each thread reuses a single {@link Deflater} and {@link Inflater}, rather
+ * than leaving one per strip for the garbage collector to release. The
+ * compression level and strategy are taken from
+ * {@link CodecOptions#compressionLevel} and
+ * {@link CodecOptions#compressionStrategy}, and decompression writes directly
+ * into an array sized from {@link CodecOptions#maxBytes}.
+ * </p>
  *
  * @author Melissa Linkert
  */
 @Plugin(type = Codec.class)
 public class ZlibCodec extends AbstractCodec {
 
+	// -- Constants --
+
+	/** The deflater of each thread, with its level and strategy. */
+	private static final ThreadLocal<PooledDeflater> DEFLATER =
+		new ThreadLocal<>();
+
+	/** The inflater of each thread. */
+	private static final ThreadLocal<Inflater> INFLATER = ThreadLocal
+		.withInitial(Inflater::new);
+
+	// -- Codec API methods --
+
 	@Override
 	public byte[] compress(final byte[] data, final CodecOptions options)
 		throws FormatException
 	{
 		if (data == null || data.length == 0) throw new IllegalArgumentException(
 			"No data to compress");
-		final Deflater deflater = new Deflater();
-		deflater.setInput(data);
-		deflater.finish();
-		final byte[] buf = new byte[8192];
-		final ByteVector bytes = new ByteVector();
-		int r = 0;
-		// compress until eof reached
-		while ((r = deflater.deflate(buf, 0, buf.length)) > 0) {
-			bytes.add(buf, 0, r);
+		final int level = options == null ? Deflater.DEFAULT_COMPRESSION
+			: options.compressionLevel;
+		final int strategy = options == null ? Deflater.DEFAULT_STRATEGY
+			: options.compressionStrategy;
+		final Deflater deflater = getDeflater(level, strategy);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			// zlib's bound on the compressed size, so that one pass usually does
+			byte[] buf = new byte[data.length + (data.length >> 12) + (data.length >>
+				14) + 64];
+			int len = 0;
+			// compress until eof reached
+			while (!deflater.finished()) {
+				if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+				len += deflater.deflate(buf, len, buf.length - len);
+			}
+			return len == buf.length ? buf : Arrays.copyOf(buf, len);
+		}
+		finally {
+			deflater.reset();
+		}
+	}
+
+	@Override
+	public byte[] decompress(final byte[] data, final CodecOptions options)
+		throws FormatException
+	{
+		if (data == null) throw new IllegalArgumentException(
+			"No data to decompress.");
+		final Inflater inflater = INFLATER.get();
+		try {
+			inflater.setInput(data);
+			// the expected size is usually known, so that one pass usually does
+			byte[] buf = new byte[options != null && options.maxBytes > 0
+				? options.maxBytes : Math.max(8192, data.length * 4)];
+			int len = 0;
+			// read until eof reached
+			while (!inflater.finished()) {
+				if (len == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+				final int r = inflater.inflate(buf, len, buf.length - len);
+				len += r;
+				if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					// truncated streams yield what could be decoded
+					break;
+				}
+			}
+			return len == buf.length ? buf : Arrays.copyOf(buf, len);
+		}
+		catch (final DataFormatException e) {
+			throw new FormatException(e);
+		}
+		finally {
+			inflater.reset();
+		}
+	}
+
+	@Override
+	public int decompress(final ByteBuffer in, final byte[] out,
+		final int offset, final int length, final CodecOptions options)
+		throws FormatException
+	{
+		final Inflater inflater = INFLATER.get();
+		try {
+			if (in.hasArray()) {
+				inflater.setInput(in.array(), in.arrayOffset() + in.position(), in
+					.remaining());
+			}
+			else {
+				// Java 8 can only inflate from arrays
+				final byte[] data = new byte[in.remaining()];
+				in.duplicate().get(data);
+				inflater.setInput(data);
+			}
+			int n = 0;
+			while (n < length && !inflater.finished()) {
+				final int r = inflater.inflate(out, offset + n, length - n);
+				n += r;
+				if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					// truncated streams yield what could be decoded
+					break;
+				}
+			}
+			return n;
+		}
+		catch (final DataFormatException e) {
+			throw new FormatException(e);
+		}
+		finally {
+			inflater.reset();
 		}
-		return bytes.toByteArray();
 	}
 
 	@Override
 	public byte[] decompress(final DataHandle<Location> in,
 		final CodecOptions options) throws FormatException, IOException
 	{
+		final Inflater inflater = INFLATER.get();
 		final InflaterInputStream i = new InflaterInputStream(
-			new DataHandleInputStream<>(in));
-		final ByteVector bytes = new ByteVector();
+			new DataHandleInputStream<>(in), inflater);
+		final ByteVector bytes = options != null && options.maxBytes > 0
+			? new ByteVector(options.maxBytes) : new ByteVector();
 		final byte[] buf = new byte[8192];
 		int r = 0;
 		// read until eof reached
@@ -83,7 +189,45 @@ public class ZlibCodec extends AbstractCodec {
 				bytes.add(buf, 0, r);
 		}
 		catch (final EOFException e) {}
+		finally {
+			inflater.reset();
+		}
 		return bytes.toByteArray();
 	}
 
+	// -- Helper methods --
+
+	/** Gets this thread's deflater, configured with the given parameters. */
+	private static Deflater getDeflater(final int level, final int strategy) {
+		PooledDeflater pooled = DEFLATER.get();
+		if (pooled == null || pooled.level != level ||
+			pooled.strategy != strategy)
+		{
+			// parameters are only set on a fresh deflater, before any input
+			if (pooled != null) pooled.deflater.end();
+			final Deflater deflater = new Deflater(level);
+			deflater.setStrategy(strategy);
+			pooled = new PooledDeflater(deflater, level, strategy);
+			DEFLATER.set(pooled);
+		}
+		return pooled.deflater;
+	}
+
+	// -- Helper classes --
+
+	private static final class PooledDeflater {
+
+		private final Deflater deflater;
+
+		private final int level, strategy;
+
+		private PooledDeflater(final Deflater deflater, final int level,
+			final int strategy)
+		{
+			this.deflater = deflater;
+			this.level = level;
+			this.strategy = strategy;
+		}
+	}
+
 }
@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.codec;
+
+import io.scif.FormatException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.location.Location;
+import org.scijava.plugin.Plugin;
+
+/**
+ * This class implements Zstandard compression and decompression, as specified
+ * by RFC 8878, in pure Java.
+ * <p>
+ * Compression writes a single frame declaring its content size, searching for
+ * matches more deeply for higher {@link CodecOptions#compressionLevel}s, from
+ * 1 to 9. Decompression reads any frames without a dictionary, such as those
+ * written by the zstd library, and skips their checksums. Each thread reuses
+ * a single encoder and decoder, and their tables.
+ * </p>
+ */
+@Plugin(type = Codec.class)
+public class ZstdCodec extends AbstractCodec {
+
+	// -- Constants --
+
+	/** The encoder of each thread. */
+	private static final ThreadLocal<ZstdEncoder> ENCODER = ThreadLocal
+		.withInitial(ZstdEncoder::new);
+
+	/** The decoder of each thread. */
+	private static final ThreadLocal<ZstdDecoder> DECODER = ThreadLocal
+		.withInitial(ZstdDecoder::new);
+
+	// -- Codec API methods --
+
+	@Override
+	public byte[] compress(final byte[] data, final CodecOptions options)
+		throws FormatException
+	{
+		if (data == null || data.length == 0) throw new IllegalArgumentException(
+			"No data to compress");
+		return ENCODER.get().compress(data, options == null ? -1
+			: options.compressionLevel);
+	}
+
+	@Override
+	public byte[] decompress(final byte[] data, final CodecOptions options)
+		throws FormatException
+	{
+		if (data == null) throw new IllegalArgumentException(
+			"No data to decompress.");
+		final ZstdDecoder decoder = DECODER.get();
+		// frames usually declare their size, so that one pass usually does; but
+		// no more than a frame of this size could hold, in case it is corrupt
+		final long contentSize = Math.min(ZstdDecoder.getContentSize(data, 0,
+			data.length), (data.length / 3 + 1L) * ZstdDecoder.MAX_BLOCK_SIZE);
+		int size = contentSize >= 0 && contentSize < Integer.MAX_VALUE / 2
+			? (int) contentSize : Math.max(8192, data.length * 4);
+		if (options != null && options.maxBytes > size) size = options.maxBytes;
+		while (true) {
+			final byte[] buf = new byte[size];
+			final int len = decoder.decode(data, 0, data.length, buf, 0, size);
+			if (!decoder.isTruncated()) {
+				return len == buf.length ? buf : Arrays.copyOf(buf, len);
+			}
+			if (size >= Integer.MAX_VALUE / 2) {
+				throw new FormatException("Zstandard content too large");
+			}
+			size = Math.max(2 * size, 8192);
+		}
+	}
+
+	@Override
+	public int decompress(final ByteBuffer in, final byte[] out,
+		final int offset, final int length, final CodecOptions options)
+		throws FormatException
+	{
+		if (in.hasArray()) {
+			return DECODER.get().decode(in.array(), in.arrayOffset() + in
+				.position(), in.remaining(), out, offset, length);
+		}
+		final byte[] data = new byte[in.remaining()];
+		in.duplicate().get(data);
+		return DECODER.get().decode(data, 0, data.length, out, offset, length);
+	}
+
+	@Override
+	public byte[] decompress(final DataHandle<Location> in,
+		final CodecOptions options) throws FormatException, IOException
+	{
+		final long remaining = in.length() - in.offset();
+		if (remaining > Integer.MAX_VALUE) {
+			throw new FormatException("Zstandard data too large");
+		}
+		final byte[] data = new byte[(int) remaining];
+		in.readFully(data);
+		return decompress(data, options);
+	}
+
+}
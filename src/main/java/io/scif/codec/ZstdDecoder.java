@@ -0,0 +1,948 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.codec;
+
+import io.scif.FormatException;
+import io.scif.UnsupportedCompressionException;
+
+import java.util.Arrays;
+
+/**
+ * Decodes Zstandard frames, as specified by RFC 8878, straight into a byte
+ * array.
+ * <p>
+ * Concatenated frames are decoded one after another, and skippable frames are
+ * ignored. Content checksums are skipped rather than verified, and frames
+ * needing a dictionary are not supported. A decoder keeps its tables between
+ * calls, so that each thread can reuse one.
+ * </p>
+ */
+final class ZstdDecoder {
+
+	// -- Constants --
+
+	static final int MAGIC = 0xFD2FB528;
+
+	/** Magic number of skippable frames, whose low four bits are free. */
+	static final int SKIPPABLE_MAGIC = 0x184D2A50;
+
+	static final int MAX_BLOCK_SIZE = 1 << 17;
+
+	/** Longest Huffman code of the literals. */
+	static final int MAX_HUFFMAN_BITS = 11;
+
+	/** Kinds of sequence fields: literal lengths, offsets and match lengths. */
+	static final int LL = 0, OF = 1, ML = 2;
+
+	static final int[] MAX_SYMBOL = { 35, 31, 52 };
+
+	static final int[] MAX_LOG = { 9, 8, 9 };
+
+	static final int[] DEFAULT_LOG = { 6, 5, 6 };
+
+	/** Predefined distributions of the sequence fields. */
+	static final short[][] DEFAULT_NORM = { { 4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2,
+		2, 2, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1, -1, -1, -1,
+		-1 }, { 1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+			1, -1, -1, -1, -1, -1 }, { 1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1,
+				1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+				1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1, -1, -1 } };
+
+	/** Smallest literal length of each code. */
+	static final int[] LL_BASE = new int[36];
+
+	/** Number of extra bits of each literal length code. */
+	static final int[] LL_BITS = new int[36];
+
+	/** Smallest match length of each code. */
+	static final int[] ML_BASE = new int[53];
+
+	/** Number of extra bits of each match length code. */
+	static final int[] ML_BITS = new int[53];
+
+	static {
+		final int[] llBits = { 1, 1, 1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12,
+			13, 14, 15, 16 };
+		final int[] mlBits = { 1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7, 8, 9, 10, 11,
+			12, 13, 14, 15, 16 };
+		for (int code = 0; code < 36; code++) {
+			LL_BITS[code] = code < 16 ? 0 : llBits[code - 16];
+			LL_BASE[code] = code < 17 ? code : LL_BASE[code - 1] + (1 <<
+				LL_BITS[code - 1]);
+		}
+		for (int code = 0; code < 53; code++) {
+			ML_BITS[code] = code < 32 ? 0 : mlBits[code - 32];
+			ML_BASE[code] = code < 33 ? code + 3 : ML_BASE[code - 1] + (1 <<
+				ML_BITS[code - 1]);
+		}
+	}
+
+	/** Decoding tables of the predefined distributions. */
+	private static final FseTable[] DEFAULT_TABLES = new FseTable[3];
+
+	static {
+		for (int kind = 0; kind < 3; kind++) {
+			DEFAULT_TABLES[kind] = new FseTable(DEFAULT_LOG[kind]);
+			DEFAULT_TABLES[kind].build(DEFAULT_NORM[kind], DEFAULT_NORM[kind].length -
+				1, DEFAULT_LOG[kind]);
+		}
+	}
+
+	// -- Fields --
+
+	private byte[] in;
+
+	/** Position of the next byte to read, and end of the input. */
+	private int pos, end;
+
+	private byte[] out;
+
+	/** Position of the next byte to write, and end of the output. */
+	private int op, outEnd;
+
+	/** Output position of the current frame's first byte. */
+	private int frameStart;
+
+	/** Whether the output was too small for the whole content. */
+	private boolean truncated;
+
+	private final int[] repeats = new int[3];
+
+	/** Sequence tables in use, and the decoder's own ones. */
+	private final FseTable[] tables = new FseTable[3];
+
+	private final FseTable[] ownTables = { new FseTable(MAX_LOG[LL]),
+		new FseTable(MAX_LOG[OF]), new FseTable(MAX_LOG[ML]) };
+
+	private final FseTable weightTable = new FseTable(6);
+
+	private final short[] norm = new short[256];
+
+	/** Table log and highest symbol of the last distribution read. */
+	private int normLog, normMaxSymbol;
+
+	/** Symbol and length of each Huffman code, indexed by its next bits. */
+	private final int[] huffmanTable = new int[1 << MAX_HUFFMAN_BITS];
+
+	/** Number of bits indexing the Huffman table, or 0 if there is none. */
+	private int huffmanLog;
+
+	private final int[] weights = new int[256];
+
+	/** Literals of the current block, which may be part of the input. */
+	private byte[] literals;
+
+	private int literalPos, literalEnd;
+
+	private final byte[] literalBuffer = new byte[MAX_BLOCK_SIZE];
+
+	// Backward bit stream: the unread bits, left-aligned, at bitPtr
+	private long bits;
+
+	private int bitsConsumed;
+
+	private int bitPtr, bitStart;
+
+	// -- ZstdDecoder methods --
+
+	/**
+	 * Decodes the frames in the given input range, stopping when the output
+	 * range is full.
+	 *
+	 * @return the number of bytes written
+	 * @throws FormatException If the input does not start with a Zstandard
+	 *           frame or is corrupt.
+	 */
+	int decode(final byte[] src, final int srcOffset, final int srcLength,
+		final byte[] dst, final int dstOffset, final int dstLength)
+		throws FormatException
+	{
+		in = src;
+		pos = srcOffset;
+		end = srcOffset + srcLength;
+		out = dst;
+		op = dstOffset;
+		outEnd = dstOffset + dstLength;
+		truncated = false;
+		try {
+			boolean first = true;
+			while (!truncated && end - pos >= 4) {
+				final int magic = readInt(pos);
+				if ((magic & 0xFFFFFFF0) == SKIPPABLE_MAGIC) {
+					final int size = end - pos < 8 ? -1 : readInt(pos + 4);
+					if (size < 0 || size > end - pos - 8) break;
+					pos += 8 + size;
+				}
+				else if (magic == MAGIC) decodeFrame();
+				else if (first) throw new FormatException("Not a Zstandard frame");
+				// data after the last frame, such as padding, is ignored
+				else break;
+				first = false;
+			}
+			return op - dstOffset;
+		}
+		catch (final ArrayIndexOutOfBoundsException e) {
+			throw new FormatException("Corrupt Zstandard data", e);
+		}
+		finally {
+			in = null;
+			out = null;
+			literals = null;
+		}
+	}
+
+	/**
+	 * Whether the last {@link #decode} stopped because the output was full
+	 * while there was more content to decode.
+	 */
+	boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Gets the content size declared by the first frame in the given data.
+	 *
+	 * @return the content size, or -1 if it is unknown
+	 */
+	static long getContentSize(final byte[] src, final int offset,
+		final int length)
+	{
+		if (length < 6 || readInt(src, offset) != MAGIC) return -1;
+		final int descriptor = src[offset + 4] & 0xff;
+		final int sizeFlag = descriptor >>> 6;
+		final boolean singleSegment = (descriptor & 0x20) != 0;
+		if (sizeFlag == 0 && !singleSegment) return -1;
+		final int dictionaryFlag = descriptor & 3;
+		final int p = offset + 5 + (singleSegment ? 0 : 1) + (dictionaryFlag == 3
+			? 4 : dictionaryFlag);
+		final int size = sizeFlag == 0 ? 1 : 1 << sizeFlag;
+		if (p + size > offset + length) return -1;
+		return readContentSize(src, p, size);
+	}
+
+	/**
+	 * Turns the offset value of a sequence into an offset, updating the repeated
+	 * offsets.
+	 *
+	 * @param offsetValue offset plus 3, or 1 to 3 for a repeated offset
+	 * @param literalLength literal length of the sequence
+	 * @return the offset, which is 0 if the repeated offsets are invalid
+	 */
+	static int applyOffset(final int[] repeats, final int offsetValue,
+		final int literalLength)
+	{
+		if (offsetValue > 3) {
+			repeats[2] = repeats[1];
+			repeats[1] = repeats[0];
+			return repeats[0] = offsetValue - 3;
+		}
+		// without literals, the repeated offsets are shifted by one
+		final int index = offsetValue - (literalLength == 0 ? 0 : 1);
+		if (index == 0) return repeats[0];
+		final int offset = index == 3 ? repeats[0] - 1 : repeats[index];
+		if (index != 1) repeats[2] = repeats[1];
+		repeats[1] = repeats[0];
+		return repeats[0] = offset;
+	}
+
+	// -- Helper methods --
+
+	private void decodeFrame() throws FormatException {
+		pos += 4;
+		final int descriptor = in[pos++] & 0xff;
+		if ((descriptor & 0x08) != 0) {
+			throw new FormatException("Reserved Zstandard frame header bit set");
+		}
+		final boolean singleSegment = (descriptor & 0x20) != 0;
+		final boolean checksum = (descriptor & 0x04) != 0;
+		if (!singleSegment) pos++;
+		final int dictionaryFlag = descriptor & 3;
+		if (dictionaryFlag != 0) {
+			final int size = dictionaryFlag == 3 ? 4 : dictionaryFlag;
+			if (readContentSize(in, pos, size) != 0) {
+				throw new UnsupportedCompressionException(
+					"Zstandard dictionaries are not supported");
+			}
+			pos += size;
+		}
+		final int sizeFlag = descriptor >>> 6;
+		if (sizeFlag != 0 || singleSegment) pos += sizeFlag == 0 ? 1
+			: 1 << sizeFlag;
+
+		frameStart = op;
+		repeats[0] = 1;
+		repeats[1] = 4;
+		repeats[2] = 8;
+		Arrays.fill(tables, null);
+		huffmanLog = 0;
+
+		boolean last = false;
+		while (!last) {
+			// truncated input yields the blocks that could be decoded
+			if (end - pos < 3) {
+				pos = end;
+				return;
+			}
+			final int header = readInt3(pos);
+			pos += 3;
+			last = (header & 1) != 0;
+			final int size = header >>> 3;
+			switch ((header >>> 1) & 3) {
+				case 0:
+					final int available = Math.min(size, end - pos);
+					final int n = Math.min(available, outEnd - op);
+					System.arraycopy(in, pos, out, op, n);
+					op += n;
+					if (available < size) {
+						pos = end;
+						return;
+					}
+					truncated = n < size;
+					pos += size;
+					break;
+				case 1:
+					if (pos >= end) return;
+					final int count = Math.min(size, outEnd - op);
+					Arrays.fill(out, op, op + count, in[pos++]);
+					op += count;
+					truncated = count < size;
+					break;
+				case 2:
+					if (size > end - pos) {
+						pos = end;
+						return;
+					}
+					if (size > MAX_BLOCK_SIZE) {
+						throw new FormatException("Zstandard block too large");
+					}
+					decodeBlock(pos + decodeLiterals(pos, pos + size), pos + size);
+					pos += size;
+					break;
+				default:
+					throw new FormatException("Reserved Zstandard block type");
+			}
+			if (truncated) return;
+		}
+		// content checksums are not verified
+		if (checksum) pos += 4;
+	}
+
+	/**
+	 * Decodes the literals section of a compressed block.
+	 *
+	 * @return the size of the literals section
+	 */
+	private int decodeLiterals(final int start, final int blockEnd)
+		throws FormatException
+	{
+		int p = start;
+		final int header = in[p] & 0xff;
+		final int type = header & 3;
+		final int sizeFormat = (header >>> 2) & 3;
+		if (type < 2) {
+			// raw or RLE literals
+			final int size;
+			if ((sizeFormat & 1) == 0) {
+				size = header >>> 3;
+				p++;
+			}
+			else if (sizeFormat == 1) {
+				size = (header >>> 4) + ((in[p + 1] & 0xff) << 4);
+				p += 2;
+			}
+			else {
+				size = (readInt3(p) >>> 4);
+				p += 3;
+			}
+			if (size > MAX_BLOCK_SIZE) {
+				throw new FormatException("Too many Zstandard literals");
+			}
+			if (type == 0) {
+				if (size > blockEnd - p) {
+					throw new FormatException("Corrupt Zstandard literals");
+				}
+				literals = in;
+				literalPos = p;
+				literalEnd = p + size;
+				return p + size - start;
+			}
+			Arrays.fill(literalBuffer, 0, size, in[p]);
+			literals = literalBuffer;
+			literalPos = 0;
+			literalEnd = size;
+			return p + 1 - start;
+		}
+
+		// Huffman coded literals, in one or four streams
+		final int headerSize = sizeFormat < 2 ? 3 : sizeFormat + 2;
+		final int sizeBits = sizeFormat < 2 ? 10 : sizeFormat * 4 + 6;
+		long value = 0;
+		for (int i = 0; i < headerSize; i++) {
+			value |= (in[p + i] & 0xffL) << (8 * i);
+		}
+		p += headerSize;
+		final int mask = (1 << sizeBits) - 1;
+		final int size = (int) (value >>> 4) & mask;
+		final int compressedSize = (int) (value >>> (4 + sizeBits)) & mask;
+		final int streamsEnd = p + compressedSize;
+		if (size > MAX_BLOCK_SIZE || streamsEnd > blockEnd) {
+			throw new FormatException("Corrupt Zstandard literals");
+		}
+		if (type == 2) p = readHuffmanTable(p, streamsEnd);
+		else if (huffmanLog == 0) {
+			throw new FormatException("No Huffman table for Zstandard literals");
+		}
+
+		if (sizeFormat == 0) decodeHuffmanStream(p, streamsEnd, 0, size);
+		else {
+			if (streamsEnd - p < 10) {
+				throw new FormatException("Corrupt Zstandard literals");
+			}
+			final int segment = (size + 3) / 4;
+			if (3 * segment > size) {
+				throw new FormatException("Corrupt Zstandard literals");
+			}
+			int streamStart = p + 6;
+			for (int i = 0; i < 4; i++) {
+				final int streamEnd = i < 3 ? streamStart + readShort(p + 2 * i)
+					: streamsEnd;
+				if (streamEnd > streamsEnd) {
+					throw new FormatException("Corrupt Zstandard literals");
+				}
+				decodeHuffmanStream(streamStart, streamEnd, i * segment, i < 3
+					? segment : size - 3 * segment);
+				streamStart = streamEnd;
+			}
+		}
+		literals = literalBuffer;
+		literalPos = 0;
+		literalEnd = size;
+		return streamsEnd - start;
+	}
+
+	/**
+	 * Reads a Huffman tree description and builds the decoding table.
+	 *
+	 * @return the position following the description
+	 */
+	private int readHuffmanTable(int p, final int limit)
+		throws FormatException
+	{
+		final int header = in[p++] & 0xff;
+		final int count;
+		if (header >= 128) {
+			// weights in four bits each
+			count = header - 127;
+			if (p + (count + 1) / 2 > limit) {
+				throw new FormatException("Corrupt Zstandard Huffman table");
+			}
+			for (int i = 0; i < count; i++) {
+				final int b = in[p + i / 2] & 0xff;
+				weights[i] = (i & 1) == 0 ? b >>> 4 : b & 15;
+			}
+			p += (count + 1) / 2;
+		}
+		else {
+			if (p + header > limit) {
+				throw new FormatException("Corrupt Zstandard Huffman table");
+			}
+			count = decodeWeights(p, p + header);
+			p += header;
+		}
+
+		final int[] rankCount = new int[MAX_HUFFMAN_BITS + 2];
+		int total = 0;
+		for (int i = 0; i < count; i++) {
+			final int weight = weights[i];
+			if (weight > MAX_HUFFMAN_BITS) {
+				throw new FormatException("Corrupt Zstandard Huffman table");
+			}
+			rankCount[weight]++;
+			if (weight > 0) total += 1 << (weight - 1);
+		}
+		if (total == 0) {
+			throw new FormatException("Corrupt Zstandard Huffman table");
+		}
+		// the last weight completes the total to a power of 2
+		final int log = highBit(total) + 1;
+		final int rest = (1 << log) - total;
+		if (log > MAX_HUFFMAN_BITS || (rest & (rest - 1)) != 0) {
+			throw new FormatException("Corrupt Zstandard Huffman table");
+		}
+		final int lastWeight = highBit(rest) + 1;
+		weights[count] = lastWeight;
+		rankCount[lastWeight]++;
+
+		// codes are ordered by weight, then by symbol
+		final int[] rankStart = new int[MAX_HUFFMAN_BITS + 2];
+		int next = 0;
+		for (int weight = 1; weight <= log; weight++) {
+			rankStart[weight] = next;
+			next += rankCount[weight] << (weight - 1);
+		}
+		for (int symbol = 0; symbol <= count; symbol++) {
+			final int weight = weights[symbol];
+			if (weight == 0) continue;
+			final int start = rankStart[weight];
+			final int length = 1 << (weight - 1);
+			Arrays.fill(huffmanTable, start, start + length, symbol << 8 | (log + 1 -
+				weight));
+			rankStart[weight] = start + length;
+		}
+		huffmanLog = log;
+		return p;
+	}
+
+	/**
+	 * Decodes FSE compressed Huffman weights.
+	 *
+	 * @return the number of weights
+	 */
+	private int decodeWeights(final int start, final int limit)
+		throws FormatException
+	{
+		final int headerSize = readDistribution(start, limit, 255, 6);
+		if (!weightTable.build(norm, normMaxSymbol, normLog)) {
+			throw new FormatException("Corrupt Zstandard Huffman table");
+		}
+		initBits(start + headerSize, limit);
+		// two interleaved states, until the bit stream is exhausted
+		int state1 = readBits(normLog);
+		int state2 = readBits(normLog);
+		final int[] entries = weightTable.entries;
+		int n = 0;
+		while (true) {
+			if (n > 253) throw new FormatException("Too many Huffman weights");
+			int entry = entries[state1];
+			weights[n++] = entry & 0xff;
+			state1 = (entry >>> 16) + readBits((entry >>> 8) & 0xff);
+			if (reload()) {
+				weights[n++] = entries[state2] & 0xff;
+				break;
+			}
+			entry = entries[state2];
+			weights[n++] = entry & 0xff;
+			state2 = (entry >>> 16) + readBits((entry >>> 8) & 0xff);
+			if (reload()) {
+				weights[n++] = entries[state1] & 0xff;
+				break;
+			}
+		}
+		return n;
+	}
+
+	private void decodeHuffmanStream(final int start, final int limit,
+		final int offset, final int count) throws FormatException
+	{
+		initBits(start, limit);
+		final int[] table = huffmanTable;
+		final int shift = 64 - huffmanLog;
+		final byte[] dst = literalBuffer;
+		for (int i = offset; i < offset + count; i++) {
+			if (bitsConsumed > 64 - MAX_HUFFMAN_BITS) reload();
+			final int entry = table[(int) ((bits << bitsConsumed) >>> shift)];
+			dst[i] = (byte) (entry >>> 8);
+			bitsConsumed += entry & 0xff;
+		}
+		reload();
+		if (bitPtr != bitStart || bitsConsumed != 64) {
+			throw new FormatException("Corrupt Zstandard literals");
+		}
+	}
+
+	/** Decodes the sequences section of a block, and executes the sequences. */
+	private void decodeBlock(int p, final int blockEnd) throws FormatException {
+		if (p >= blockEnd) throw new FormatException("Corrupt Zstandard block");
+		int count = in[p++] & 0xff;
+		if (count >= 128) {
+			if (count == 255) {
+				count = readShort(p) + 0x7F00;
+				p += 2;
+			}
+			else count = ((count - 128) << 8) + (in[p++] & 0xff);
+		}
+		if (count > 0) {
+			final int modes = in[p++] & 0xff;
+			if ((modes & 3) != 0) {
+				throw new FormatException("Reserved Zstandard sequence modes set");
+			}
+			p = readTable(LL, modes >>> 6, p, blockEnd);
+			p = readTable(OF, (modes >>> 4) & 3, p, blockEnd);
+			p = readTable(ML, (modes >>> 2) & 3, p, blockEnd);
+			decodeSequences(p, blockEnd, count);
+		}
+		if (truncated) return;
+		// the remaining literals follow the last sequence
+		final int n = literalEnd - literalPos;
+		final int room = Math.min(n, outEnd - op);
+		System.arraycopy(literals, literalPos, out, op, room);
+		op += room;
+		truncated = room < n;
+	}
+
+	/**
+	 * Selects the table of a sequence field, reading its description if the
+	 * block has one.
+	 *
+	 * @return the position following the description
+	 */
+	private int readTable(final int kind, final int mode, int p,
+		final int limit) throws FormatException
+	{
+		switch (mode) {
+			case 0:
+				tables[kind] = DEFAULT_TABLES[kind];
+				break;
+			case 1:
+				if (p >= limit || (in[p] & 0xff) > MAX_SYMBOL[kind]) {
+					throw new FormatException("Corrupt Zstandard sequences");
+				}
+				ownTables[kind].setSymbol(in[p++] & 0xff);
+				tables[kind] = ownTables[kind];
+				break;
+			case 2:
+				p += readDistribution(p, limit, MAX_SYMBOL[kind], MAX_LOG[kind]);
+				if (!ownTables[kind].build(norm, normMaxSymbol, normLog)) {
+					throw new FormatException("Corrupt Zstandard distribution");
+				}
+				tables[kind] = ownTables[kind];
+				break;
+			default:
+				if (tables[kind] == null) {
+					throw new FormatException("No table to repeat in Zstandard block");
+				}
+		}
+		return p;
+	}
+
+	private void decodeSequences(final int start, final int limit,
+		final int count) throws FormatException
+	{
+		final int[] llEntries = tables[LL].entries;
+		final int[] ofEntries = tables[OF].entries;
+		final int[] mlEntries = tables[ML].entries;
+		initBits(start, limit);
+		int llState = readBits(tables[LL].log);
+		int ofState = readBits(tables[OF].log);
+		int mlState = readBits(tables[ML].log);
+		reload();
+
+		for (int i = 0; i < count; i++) {
+			final int llEntry = llEntries[llState];
+			final int ofEntry = ofEntries[ofState];
+			final int mlEntry = mlEntries[mlState];
+			final int ofCode = ofEntry & 0xff;
+			if (ofCode > 30) throw new FormatException("Zstandard offset too large");
+			final int offsetValue = (1 << ofCode) + readBits(ofCode);
+			final int mlCode = mlEntry & 0xff;
+			final int matchLength = ML_BASE[mlCode] + readBits(ML_BITS[mlCode]);
+			reload();
+			final int llCode = llEntry & 0xff;
+			final int literalLength = LL_BASE[llCode] + readBits(LL_BITS[llCode]);
+			reload();
+			if (i < count - 1) {
+				llState = (llEntry >>> 16) + readBits((llEntry >>> 8) & 0xff);
+				mlState = (mlEntry >>> 16) + readBits((mlEntry >>> 8) & 0xff);
+				ofState = (ofEntry >>> 16) + readBits((ofEntry >>> 8) & 0xff);
+				reload();
+			}
+			final int offset = applyOffset(repeats, offsetValue, literalLength);
+			if (!execute(literalLength, offset, matchLength)) return;
+		}
+		if (bitPtr != bitStart || bitsConsumed != 64) {
+			throw new FormatException("Corrupt Zstandard sequences");
+		}
+	}
+
+	/**
+	 * Copies the literals and the match of a sequence to the output.
+	 *
+	 * @return false if the output is full
+	 */
+	private boolean execute(final int literalLength, final int offset,
+		final int matchLength) throws FormatException
+	{
+		if (literalLength > literalEnd - literalPos) {
+			throw new FormatException("Corrupt Zstandard sequences");
+		}
+		if (offset <= 0 || offset > op + literalLength - frameStart) {
+			throw new FormatException("Invalid Zstandard offset");
+		}
+		if (literalLength > outEnd - op) {
+			System.arraycopy(literals, literalPos, out, op, outEnd - op);
+			op = outEnd;
+			truncated = true;
+			return false;
+		}
+		System.arraycopy(literals, literalPos, out, op, literalLength);
+		literalPos += literalLength;
+		op += literalLength;
+
+		final int n = Math.min(matchLength, outEnd - op);
+		final int from = op - offset;
+		if (offset >= n) System.arraycopy(out, from, out, op, n);
+		else {
+			// overlapping match: repeat the pattern, doubling it each time
+			int copied = 0;
+			while (copied < n) {
+				final int length = Math.min(copied + offset, n - copied);
+				System.arraycopy(out, from, out, op + copied, length);
+				copied += length;
+			}
+		}
+		op += n;
+		truncated = n < matchLength;
+		return !truncated;
+	}
+
+	/**
+	 * Reads an FSE distribution into {@link #norm}, {@link #normLog} and
+	 * {@link #normMaxSymbol}.
+	 *
+	 * @return the size of the description
+	 */
+	private int readDistribution(final int start, final int limit,
+		final int maxSymbol, final int maxLog) throws FormatException
+	{
+		int bitPos = start * 8;
+		final int log = peekBits(bitPos, limit, 4) + 5;
+		bitPos += 4;
+		if (log > maxLog) {
+			throw new FormatException("Zstandard table log too large");
+		}
+		int remaining = (1 << log) + 1;
+		int threshold = 1 << log;
+		int nbBits = log + 1;
+		int symbol = 0;
+		boolean previousZero = false;
+		Arrays.fill(norm, (short) 0);
+		while (remaining > 1) {
+			if (previousZero) {
+				// runs of symbols without probability
+				int repeat;
+				do {
+					repeat = peekBits(bitPos, limit, 2);
+					bitPos += 2;
+					symbol += repeat;
+				}
+				while (repeat == 3);
+			}
+			if (symbol > maxSymbol) {
+				throw new FormatException("Corrupt Zstandard distribution");
+			}
+			final int max = 2 * threshold - 1 - remaining;
+			int count = peekBits(bitPos, limit, nbBits - 1);
+			if (count < max) bitPos += nbBits - 1;
+			else {
+				count = peekBits(bitPos, limit, nbBits);
+				if (count >= threshold) count -= max;
+				bitPos += nbBits;
+			}
+			count--;
+			remaining -= count < 0 ? -count : count;
+			norm[symbol++] = (short) count;
+			previousZero = count == 0;
+			if (remaining < 1) break;
+			while (remaining < threshold) {
+				nbBits--;
+				threshold >>= 1;
+			}
+		}
+		final int size = (bitPos + 7) / 8 - start;
+		if (remaining != 1 || start + size > limit) {
+			throw new FormatException("Corrupt Zstandard distribution");
+		}
+		normLog = log;
+		normMaxSymbol = symbol - 1;
+		return size;
+	}
+
+	/** Gets the bits at the given bit position, reading zeros past the limit. */
+	private int peekBits(final int bitPos, final int limit, final int n) {
+		int value = 0;
+		final int p = bitPos >>> 3;
+		for (int i = 0; i < 4 && p + i < limit; i++) {
+			value |= (in[p + i] & 0xff) << (8 * i);
+		}
+		return (value >>> (bitPos & 7)) & ((1 << n) - 1);
+	}
+
+	/** Starts reading the given range as a backward bit stream. */
+	private void initBits(final int start, final int limit)
+		throws FormatException
+	{
+		if (limit <= start || in[limit - 1] == 0) {
+			throw new FormatException("Corrupt Zstandard bit stream");
+		}
+		bitStart = start;
+		if (limit - start >= 8) {
+			bitPtr = limit - 8;
+			bits = readLong(bitPtr);
+		}
+		else {
+			bitPtr = start;
+			bits = 0;
+			for (int p = start; p < limit; p++) {
+				bits |= (in[p] & 0xffL) << (8 * (p - start));
+			}
+		}
+		// the stream ends with a 1 bit, after which the bits are padding
+		bitsConsumed = Long.numberOfLeadingZeros(bits) + 1;
+	}
+
+	/** Reads the next bits of the backward bit stream. */
+	private int readBits(final int n) {
+		if (n == 0) return 0;
+		final int value = bitsConsumed >= 64 ? 0 : (int) ((bits <<
+			bitsConsumed) >>> (64 - n));
+		bitsConsumed += n;
+		return value;
+	}
+
+	/**
+	 * Refills the bit container from the backward bit stream.
+	 *
+	 * @return whether more bits were consumed than the stream has
+	 */
+	private boolean reload() {
+		if (bitsConsumed > 64) return true;
+		if (bitPtr >= bitStart + 8) {
+			bitPtr -= bitsConsumed >>> 3;
+			bitsConsumed &= 7;
+		}
+		else if (bitPtr == bitStart) return false;
+		else {
+			final int n = Math.min(bitsConsumed >>> 3, bitPtr - bitStart);
+			bitPtr -= n;
+			bitsConsumed -= 8 * n;
+		}
+		bits = readLong(bitPtr);
+		return false;
+	}
+
+	private int readShort(final int p) {
+		return (in[p] & 0xff) | (in[p + 1] & 0xff) << 8;
+	}
+
+	private int readInt3(final int p) {
+		return readShort(p) | (in[p + 2] & 0xff) << 16;
+	}
+
+	private int readInt(final int p) {
+		return readInt(in, p);
+	}
+
+	private long readLong(final int p) {
+		return (readInt(p) & 0xffffffffL) | (long) readInt(p + 4) << 32;
+	}
+
+	private static int readInt(final byte[] b, final int p) {
+		return (b[p] & 0xff) | (b[p + 1] & 0xff) << 8 | (b[p + 2] & 0xff) << 16 |
+			b[p + 3] << 24;
+	}
+
+	private static long readContentSize(final byte[] b, final int p,
+		final int size)
+	{
+		long value = 0;
+		for (int i = 0; i < size; i++) {
+			value |= (b[p + i] & 0xffL) << (8 * i);
+		}
+		return size == 2 ? value + 256 : value;
+	}
+
+	static int highBit(final int value) {
+		return 31 - Integer.numberOfLeadingZeros(value);
+	}
+
+	// -- Helper classes --
+
+	/** FSE decoding table: the symbol, bit count and base of each state. */
+	static final class FseTable {
+
+		/** Entries packed as next state base, number of bits and symbol. */
+		final int[] entries;
+
+		int log;
+
+		FseTable(final int maxLog) {
+			entries = new int[1 << maxLog];
+		}
+
+		/** Makes the table decode the given symbol forever, reading no bits. */
+		void setSymbol(final int symbol) {
+			log = 0;
+			entries[0] = symbol;
+		}
+
+		/**
+		 * Builds the table of the given distribution.
+		 *
+		 * @return false if the distribution is invalid
+		 */
+		boolean build(final short[] norm, final int maxSymbol,
+			final int tableLog)
+		{
+			final int size = 1 << tableLog;
+			final int[] next = new int[maxSymbol + 1];
+			int high = size - 1;
+			// symbols of less than one probability go at the end
+			for (int s = 0; s <= maxSymbol; s++) {
+				if (norm[s] == -1) {
+					entries[high--] = s;
+					next[s] = 1;
+				}
+				else next[s] = norm[s];
+			}
+			final int mask = size - 1;
+			final int step = (size >>> 1) + (size >>> 3) + 3;
+			int position = 0;
+			for (int s = 0; s <= maxSymbol; s++) {
+				for (int i = 0; i < norm[s]; i++) {
+					entries[position] = s;
+					do {
+						position = (position + step) & mask;
+					}
+					while (position > high);
+				}
+			}
+			if (position != 0) return false;
+			for (int state = 0; state < size; state++) {
+				final int symbol = entries[state];
+				final int n = next[symbol]++;
+				final int nbBits = tableLog - highBit(n);
+				entries[state] = ((n << nbBits) - size) << 16 | nbBits << 8 | symbol;
+			}
+			log = tableLog;
+			return true;
+		}
+	}
+
+}
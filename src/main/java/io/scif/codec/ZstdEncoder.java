@@ -0,0 +1,1062 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.codec;
+
+import static io.scif.codec.ZstdDecoder.DEFAULT_LOG;
+import static io.scif.codec.ZstdDecoder.DEFAULT_NORM;
+import static io.scif.codec.ZstdDecoder.LL;
+import static io.scif.codec.ZstdDecoder.LL_BASE;
+import static io.scif.codec.ZstdDecoder.LL_BITS;
+import static io.scif.codec.ZstdDecoder.MAX_BLOCK_SIZE;
+import static io.scif.codec.ZstdDecoder.MAX_HUFFMAN_BITS;
+import static io.scif.codec.ZstdDecoder.MAX_LOG;
+import static io.scif.codec.ZstdDecoder.ML;
+import static io.scif.codec.ZstdDecoder.ML_BASE;
+import static io.scif.codec.ZstdDecoder.ML_BITS;
+import static io.scif.codec.ZstdDecoder.OF;
+import static io.scif.codec.ZstdDecoder.highBit;
+
+import java.util.Arrays;
+
+/**
+ * Encodes a byte array as a single Zstandard frame, as specified by RFC 8878.
+ * <p>
+ * Matches are found with a hash chain over the whole input, searched more or
+ * less deeply depending on the compression level, and the literals and
+ * sequences of each block are entropy coded with tables fitted to them. Blocks
+ * that do not shrink are stored as they are. The frame declares its content
+ * size and has no checksum. An encoder keeps its tables between calls, so that
+ * each thread can reuse one.
+ * </p>
+ */
+final class ZstdEncoder {
+
+	// -- Constants --
+
+	/** Compression level used when none is given. */
+	static final int DEFAULT_LEVEL = 3;
+
+	private static final int MIN_MATCH = 4;
+
+	private static final int MAX_HASH_LOG = 17;
+
+	/** Mask of the match chain, which also bounds the match offsets. */
+	private static final int CHAIN_MASK = (1 << 16) - 1;
+
+	private static final int MAX_SEQUENCES = MAX_BLOCK_SIZE / MIN_MATCH;
+
+	/** Code of each literal length below 64. */
+	private static final byte[] LL_CODE = new byte[64];
+
+	/** Code of each match length, minus 3, below 128. */
+	private static final byte[] ML_CODE = new byte[128];
+
+	static {
+		for (int code = 0; code < LL_BASE.length; code++) {
+			for (int i = 0; i < 1 << LL_BITS[code] && LL_BASE[code] + i < 64; i++) {
+				LL_CODE[LL_BASE[code] + i] = (byte) code;
+			}
+		}
+		for (int code = 0; code < ML_BASE.length; code++) {
+			for (int i = 0; i < 1 << ML_BITS[code] && ML_BASE[code] - 3 + i < 128;
+				i++)
+			{
+				ML_CODE[ML_BASE[code] - 3 + i] = (byte) code;
+			}
+		}
+	}
+
+	/** Encoding tables of the predefined distributions. */
+	private static final FseEncodingTable[] DEFAULT_TABLES =
+		new FseEncodingTable[3];
+
+	static {
+		for (int kind = 0; kind < 3; kind++) {
+			DEFAULT_TABLES[kind] = new FseEncodingTable(DEFAULT_LOG[kind]);
+			DEFAULT_TABLES[kind].build(DEFAULT_NORM[kind], DEFAULT_NORM[kind].length -
+				1, DEFAULT_LOG[kind]);
+		}
+	}
+
+	// -- Fields --
+
+	private byte[] src;
+
+	private byte[] dst;
+
+	// Match finder: the last position of each hash, and the previous position
+	// of each position with the same hash
+	private final int[] hashTable = new int[1 << MAX_HASH_LOG];
+
+	private final int[] chainTable = new int[CHAIN_MASK + 1];
+
+	private int hashLog;
+
+	/** Number of candidates to compare at each position. */
+	private int searchDepth;
+
+	/** Whether to try the next position before taking a match. */
+	private boolean lazy;
+
+	/** First position not yet in the hash chains. */
+	private int nextInsert;
+
+	/** Offset of the match found by {@link #findMatch}. */
+	private int matchOffset;
+
+	/** Repeated offsets, as the decoder will see them. */
+	private final int[] repeats = new int[3];
+
+	// Sequences and literals of the current block
+	private final int[] literalLengths = new int[MAX_SEQUENCES];
+
+	private final int[] matchLengths = new int[MAX_SEQUENCES];
+
+	private final int[] offsetValues = new int[MAX_SEQUENCES];
+
+	private final byte[][] codes = new byte[3][MAX_SEQUENCES];
+
+	private int sequenceCount;
+
+	private final byte[] literals = new byte[MAX_BLOCK_SIZE];
+
+	private int literalCount;
+
+	// Entropy coding
+	private final int[] histogram = new int[256];
+
+	private final short[] norm = new short[256];
+
+	private final int[] huffmanLengths = new int[256];
+
+	private final int[] huffmanCodes = new int[256];
+
+	private final int[] weights = new int[256];
+
+	/** Tables of the sequence fields, or null for a single symbol. */
+	private final FseEncodingTable[] tables = new FseEncodingTable[3];
+
+	/** Modes of the sequence field tables, as coded in the block. */
+	private final int[] modes = new int[3];
+
+	private final FseEncodingTable[] ownTables = { new FseEncodingTable(
+		MAX_LOG[LL]), new FseEncodingTable(MAX_LOG[OF]), new FseEncodingTable(
+			MAX_LOG[ML]) };
+
+	private final FseEncodingTable weightTable = new FseEncodingTable(6);
+
+	/** Space for descriptions that may not be used. */
+	private final byte[] scratch = new byte[256];
+
+	// Forward bit stream: the pending bits, right-aligned
+	private byte[] bitOut;
+
+	private long bitContainer;
+
+	private int bitCount;
+
+	private int bitPos, bitLimit;
+
+	/** Whether the bit stream went past its limit. */
+	private boolean overflow;
+
+	// -- ZstdEncoder methods --
+
+	/**
+	 * Compresses the given data.
+	 *
+	 * @param level compression level, from 1 (fastest) to 9, or -1 for the
+	 *          default
+	 */
+	byte[] compress(final byte[] data, final int level) {
+		final int effort = level < 1 ? DEFAULT_LEVEL : Math.min(level, 9);
+		searchDepth = effort == 1 ? 1 : 1 << Math.min(2 * (effort - 1), 10);
+		lazy = effort > 1;
+		hashLog = Math.max(10, Math.min(MAX_HASH_LOG, highBit(Math.max(1,
+			data.length)) + 1));
+		Arrays.fill(hashTable, 0, 1 << hashLog, -1);
+		repeats[0] = 1;
+		repeats[1] = 4;
+		repeats[2] = 8;
+		src = data;
+		// stored blocks bound the size
+		final int blocks = Math.max(1, (data.length + MAX_BLOCK_SIZE - 1) /
+			MAX_BLOCK_SIZE);
+		dst = new byte[data.length + 3 * blocks + 14];
+		try {
+			int op = writeFrameHeader(data.length);
+			int start = 0;
+			do {
+				final int blockEnd = Math.min(start + MAX_BLOCK_SIZE, data.length);
+				op = encodeBlock(start, blockEnd, blockEnd == data.length, op);
+				start = blockEnd;
+			}
+			while (start < data.length);
+			return Arrays.copyOf(dst, op);
+		}
+		finally {
+			src = null;
+			dst = null;
+			bitOut = null;
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Writes the header of a single segment frame of the given size. */
+	private int writeFrameHeader(final int size) {
+		writeInt(dst, 0, ZstdDecoder.MAGIC);
+		final int sizeFlag = size < 256 ? 0 : size < 65536 + 256 ? 1 : 2;
+		dst[4] = (byte) (sizeFlag << 6 | 0x20);
+		if (sizeFlag == 0) {
+			dst[5] = (byte) size;
+			return 6;
+		}
+		if (sizeFlag == 1) {
+			dst[5] = (byte) (size - 256);
+			dst[6] = (byte) ((size - 256) >>> 8);
+			return 7;
+		}
+		writeInt(dst, 5, size);
+		return 9;
+	}
+
+	/**
+	 * Writes a block, compressed if that makes it smaller.
+	 *
+	 * @return the position following the block
+	 */
+	private int encodeBlock(final int start, final int end, final boolean last,
+		final int op)
+	{
+		final int size = end - start;
+		final int limit = op + 3 + size;
+		boolean uniform = size > 1;
+		for (int i = start + 1; uniform && i < end; i++) {
+			uniform = src[i] == src[start];
+		}
+		if (uniform) {
+			writeBlockHeader(op, last, 1, size);
+			dst[op + 3] = src[start];
+			return op + 4;
+		}
+
+		final int[] saved = repeats.clone();
+		findSequences(start, end);
+		int p = writeLiterals(op + 3, limit);
+		if (p >= 0) p = writeSequences(p, limit);
+		if (p < 0 || p >= limit) {
+			// the decoder only updates repeated offsets in compressed blocks
+			System.arraycopy(saved, 0, repeats, 0, 3);
+			writeBlockHeader(op, last, 0, size);
+			System.arraycopy(src, start, dst, op + 3, size);
+			return limit;
+		}
+		writeBlockHeader(op, last, 2, p - op - 3);
+		return p;
+	}
+
+	private void writeBlockHeader(final int p, final boolean last,
+		final int type, final int size)
+	{
+		final int header = size << 3 | type << 1 | (last ? 1 : 0);
+		dst[p] = (byte) header;
+		dst[p + 1] = (byte) (header >>> 8);
+		dst[p + 2] = (byte) (header >>> 16);
+	}
+
+	/** Splits a block into sequences of literals followed by a match. */
+	private void findSequences(final int start, final int end) {
+		sequenceCount = 0;
+		literalCount = 0;
+		nextInsert = start;
+		final int last = end - MIN_MATCH;
+		int anchor = start;
+		int ip = start;
+		while (ip <= last) {
+			int length = findMatch(ip, end);
+			if (length < MIN_MATCH) {
+				// the longer without a match, the faster to skip ahead
+				ip += 1 + ((ip - anchor) >>> 8);
+				continue;
+			}
+			int offset = matchOffset;
+			while (lazy && ip < last) {
+				final int next = findMatch(ip + 1, end);
+				if (next <= length) break;
+				ip++;
+				length = next;
+				offset = matchOffset;
+			}
+			addSequence(anchor, ip, offset, length);
+			ip += length;
+			for (int p = nextInsert; p < ip && p <= last; p++) {
+				insert(p, readInt(src, p));
+			}
+			nextInsert = Math.max(nextInsert, ip);
+			anchor = ip;
+		}
+		System.arraycopy(src, anchor, literals, literalCount, end - anchor);
+		literalCount += end - anchor;
+	}
+
+	/**
+	 * Finds the longest match at the given position among the repeated offsets
+	 * and the chain of the position's hash, which it joins.
+	 *
+	 * @return the length of the match, with its offset in {@link #matchOffset}
+	 */
+	private int findMatch(final int ip, final int end) {
+		final int value = readInt(src, ip);
+		int best = 0;
+		for (int i = 0; i < 2; i++) {
+			final int offset = repeats[i];
+			if (offset <= ip && readInt(src, ip - offset) == value) {
+				final int length = matchLength(ip, ip - offset, end);
+				if (length > best) {
+					best = length;
+					matchOffset = offset;
+				}
+			}
+		}
+		int candidate = insert(ip, value);
+		nextInsert = ip + 1;
+		for (int i = searchDepth; i > 0 && candidate >= 0 &&
+			ip - candidate <= CHAIN_MASK && ip + best < end; i--)
+		{
+			if (src[candidate + best] == src[ip + best] && readInt(src,
+				candidate) == value)
+			{
+				final int length = matchLength(ip, candidate, end);
+				if (length > best) {
+					best = length;
+					matchOffset = ip - candidate;
+				}
+			}
+			candidate = chainTable[candidate & CHAIN_MASK];
+		}
+		return best;
+	}
+
+	/**
+	 * Adds a position to the chain of its hash.
+	 *
+	 * @return the previous position with the same hash, or -1
+	 */
+	private int insert(final int p, final int value) {
+		final int h = (value * 0x9E3779B1) >>> (32 - hashLog);
+		final int previous = hashTable[h];
+		chainTable[p & CHAIN_MASK] = previous;
+		hashTable[h] = p;
+		return previous;
+	}
+
+	private int matchLength(final int p, final int match, final int end) {
+		int n = 0;
+		while (p + n < end && src[p + n] == src[match + n]) {
+			n++;
+		}
+		return n;
+	}
+
+	private void addSequence(final int anchor, final int p, final int offset,
+		final int length)
+	{
+		final int literalLength = p - anchor;
+		System.arraycopy(src, anchor, literals, literalCount, literalLength);
+		literalCount += literalLength;
+
+		// use a repeated offset code when there is one
+		final int offsetValue;
+		if (literalLength > 0) {
+			offsetValue = offset == repeats[0] ? 1 : offset == repeats[1] ? 2
+				: offset == repeats[2] ? 3 : offset + 3;
+		}
+		else {
+			offsetValue = offset == repeats[1] ? 1 : offset == repeats[2] ? 2
+				: offset == repeats[0] - 1 ? 3 : offset + 3;
+		}
+		ZstdDecoder.applyOffset(repeats, offsetValue, literalLength);
+
+		final int n = sequenceCount++;
+		literalLengths[n] = literalLength;
+		matchLengths[n] = length;
+		offsetValues[n] = offsetValue;
+	}
+
+	/**
+	 * Writes the literals section of a compressed block.
+	 *
+	 * @return the position following the section, or -1 if past the limit
+	 */
+	private int writeLiterals(final int p, final int limit) {
+		final int n = literalCount;
+		Arrays.fill(histogram, 0);
+		int maxSymbol = 0;
+		int distinct = 0;
+		for (int i = 0; i < n; i++) {
+			final int symbol = literals[i] & 0xff;
+			if (histogram[symbol]++ == 0) distinct++;
+			if (symbol > maxSymbol) maxSymbol = symbol;
+		}
+		final int rawHeaderSize = n < 32 ? 1 : n < 4096 ? 2 : 3;
+		if (distinct == 1 && n > rawHeaderSize + 1) {
+			writeLiteralsHeader(p, 1, n);
+			dst[p + rawHeaderSize] = literals[0];
+			return p + rawHeaderSize + 1;
+		}
+		if (n >= 64) {
+			final int q = writeHuffmanLiterals(p, Math.min(limit, p +
+				rawHeaderSize + n), maxSymbol);
+			if (q >= 0) return q;
+		}
+		if (p + rawHeaderSize + n > limit) return -1;
+		writeLiteralsHeader(p, 0, n);
+		System.arraycopy(literals, 0, dst, p + rawHeaderSize, n);
+		return p + rawHeaderSize + n;
+	}
+
+	/** Writes the header of raw or RLE literals. */
+	private void writeLiteralsHeader(final int p, final int type,
+		final int size)
+	{
+		if (size < 32) dst[p] = (byte) (type | size << 3);
+		else if (size < 4096) {
+			dst[p] = (byte) (type | 1 << 2 | size << 4);
+			dst[p + 1] = (byte) (size >>> 4);
+		}
+		else {
+			dst[p] = (byte) (type | 3 << 2 | size << 4);
+			dst[p + 1] = (byte) (size >>> 4);
+			dst[p + 2] = (byte) (size >>> 12);
+		}
+	}
+
+	/**
+	 * Writes the literals Huffman coded, in one stream for few literals and in
+	 * four otherwise.
+	 *
+	 * @return the position following the section, or -1 if past the limit
+	 */
+	private int writeHuffmanLiterals(final int p, final int limit,
+		final int maxSymbol)
+	{
+		final int n = literalCount;
+		final int maxBits = buildHuffmanLengths(maxSymbol);
+
+		// weights and canonical codes, ordered by weight then by symbol
+		final int[] rankStart = new int[MAX_HUFFMAN_BITS + 2];
+		for (int s = 0; s <= maxSymbol; s++) {
+			final int length = huffmanLengths[s];
+			weights[s] = length == 0 ? 0 : maxBits + 1 - length;
+			if (length > 0) rankStart[weights[s]] += 1 << (weights[s] - 1);
+		}
+		for (int w = 1, next = 0; w <= maxBits; w++) {
+			final int count = rankStart[w];
+			rankStart[w] = next;
+			next += count;
+		}
+		for (int s = 0; s <= maxSymbol; s++) {
+			final int w = weights[s];
+			if (w == 0) continue;
+			huffmanCodes[s] = rankStart[w] >>> (w - 1);
+			rankStart[w] += 1 << (w - 1);
+		}
+
+		final int streams = n <= 255 ? 1 : 4;
+		final int sizeFormat = streams == 1 ? 0 : n <= 1023 ? 1 : n <= 16383
+			? 2 : 3;
+		final int headerSize = sizeFormat < 2 ? 3 : sizeFormat + 2;
+		int q = writeHuffmanTree(p + headerSize, limit, maxSymbol);
+		if (q < 0) return -1;
+		if (streams == 1) q = writeHuffmanStream(q, limit, 0, n);
+		else {
+			final int jumpTable = q;
+			q += 6;
+			final int segment = (n + 3) / 4;
+			for (int i = 0; i < 4 && q >= 0; i++) {
+				final int streamStart = q;
+				q = writeHuffmanStream(q, limit, i * segment, Math.min(n, (i + 1) *
+					segment));
+				if (i < 3 && q >= 0) {
+					dst[jumpTable + 2 * i] = (byte) (q - streamStart);
+					dst[jumpTable + 2 * i + 1] = (byte) ((q - streamStart) >>> 8);
+				}
+			}
+		}
+		if (q < 0) return -1;
+
+		final int sizeBits = sizeFormat < 2 ? 10 : sizeFormat * 4 + 6;
+		final long header = 2 | sizeFormat << 2 | (long) n << 4 |
+			(long) (q - p - headerSize) << (4 + sizeBits);
+		for (int i = 0; i < headerSize; i++) {
+			dst[p + i] = (byte) (header >>> (8 * i));
+		}
+		return q;
+	}
+
+	/**
+	 * Computes Huffman code lengths of the literals, no longer than
+	 * {@link ZstdDecoder#MAX_HUFFMAN_BITS}.
+	 *
+	 * @return the longest length
+	 */
+	private int buildHuffmanLengths(final int maxSymbol) {
+		// symbols by increasing frequency
+		int n = 0;
+		final int[] symbols = new int[maxSymbol + 1];
+		for (int s = 0; s <= maxSymbol; s++) {
+			huffmanLengths[s] = 0;
+			if (histogram[s] > 0) symbols[n++] = s;
+		}
+		final long[] keys = new long[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = (long) histogram[symbols[i]] << 8 | symbols[i];
+		}
+		Arrays.sort(keys);
+
+		// Huffman tree, with the leaves and then the inner nodes in order of
+		// increasing weight, so that two queues give the lightest nodes
+		final long[] weight = new long[2 * n - 1];
+		final int[] parent = new int[2 * n - 1];
+		for (int i = 0; i < n; i++) {
+			weight[i] = keys[i] >>> 8;
+		}
+		int leaf = 0;
+		int inner = n;
+		for (int node = n; node < 2 * n - 1; node++) {
+			weight[node] = 0;
+			for (int k = 0; k < 2; k++) {
+				final int child = leaf < n && (inner == node ||
+					weight[leaf] <= weight[inner]) ? leaf++ : inner++;
+				weight[node] += weight[child];
+				parent[child] = node;
+			}
+		}
+		final int[] depth = new int[2 * n - 1];
+		for (int node = 2 * n - 3; node >= 0; node--) {
+			depth[node] = depth[parent[node]] + 1;
+		}
+
+		// limit the lengths, then make the code complete again
+		final int max = MAX_HUFFMAN_BITS;
+		int total = 0;
+		for (int i = 0; i < n; i++) {
+			depth[i] = Math.min(depth[i], max);
+			total += 1 << (max - depth[i]);
+		}
+		while (total > 1 << max) {
+			// lengthen the rarest of the longest codes that can be
+			int longest = -1;
+			for (int i = 0; i < n; i++) {
+				if (depth[i] < max && (longest < 0 || depth[i] > depth[longest])) {
+					longest = i;
+				}
+			}
+			depth[longest]++;
+			total -= 1 << (max - depth[longest]);
+		}
+		while (total < 1 << max) {
+			// shorten the most frequent codes that fit
+			for (int i = n - 1; i >= 0; i--) {
+				if (total + (1 << (max - depth[i])) <= 1 << max) {
+					total += 1 << (max - depth[i]);
+					depth[i]--;
+				}
+			}
+		}
+		int maxBits = 0;
+		for (int i = 0; i < n; i++) {
+			huffmanLengths[(int) (keys[i] & 0xff)] = depth[i];
+			maxBits = Math.max(maxBits, depth[i]);
+		}
+		return maxBits;
+	}
+
+	/**
+	 * Writes the Huffman tree description: the weights of all symbols but the
+	 * last, FSE coded when that is smaller.
+	 *
+	 * @return the position following the description, or -1 if it cannot be
+	 *         written
+	 */
+	private int writeHuffmanTree(final int p, final int limit,
+		final int maxSymbol)
+	{
+		final int count = maxSymbol;
+		final int fseSize = compressWeights(count);
+		final int directSize = count <= 128 ? 1 + (count + 1) / 2 : -1;
+		if (fseSize > 0 && (directSize < 0 || fseSize + 1 < directSize)) {
+			if (p + 1 + fseSize > limit) return -1;
+			dst[p] = (byte) fseSize;
+			System.arraycopy(scratch, 0, dst, p + 1, fseSize);
+			return p + 1 + fseSize;
+		}
+		if (directSize < 0 || p + directSize > limit) return -1;
+		dst[p] = (byte) (127 + count);
+		for (int i = 0; i < count; i += 2) {
+			dst[p + 1 + i / 2] = (byte) (weights[i] << 4 | (i + 1 < count
+				? weights[i + 1] : 0));
+		}
+		return p + directSize;
+	}
+
+	/**
+	 * FSE codes the given number of weights into {@link #scratch}.
+	 *
+	 * @return the compressed size, or -1 if they cannot be FSE coded
+	 */
+	private int compressWeights(final int count) {
+		if (count < 3) return -1;
+		final int[] counts = new int[MAX_HUFFMAN_BITS + 1];
+		int maxWeight = 0;
+		int distinct = 0;
+		for (int i = 0; i < count; i++) {
+			if (counts[weights[i]]++ == 0) distinct++;
+			maxWeight = Math.max(maxWeight, weights[i]);
+		}
+		if (distinct == 1) return -1;
+		final int log = optimalLog(count, maxWeight, 6);
+		normalize(counts, maxWeight, count, log);
+		final int headerSize = writeDistribution(scratch, 0, maxWeight, log);
+		weightTable.build(norm, maxWeight, log);
+
+		// two interleaved states, the first ending with the first weight
+		startBits(scratch, headerSize, 127);
+		final FseEncodingTable t = weightTable;
+		int i = count;
+		int state1, state2;
+		if ((count & 1) != 0) {
+			state1 = t.initialState(weights[--i]);
+			state2 = t.initialState(weights[--i]);
+			state1 = encodeSymbol(t, state1, weights[--i]);
+		}
+		else {
+			state2 = t.initialState(weights[--i]);
+			state1 = t.initialState(weights[--i]);
+		}
+		while (i > 0) {
+			state2 = encodeSymbol(t, state2, weights[--i]);
+			state1 = encodeSymbol(t, state1, weights[--i]);
+			flushBits();
+		}
+		addBits(state2, log);
+		addBits(state1, log);
+		final int end = closeBits();
+		return end < 0 ? -1 : end;
+	}
+
+	/** Writes one Huffman stream of the given literals, last one first. */
+	private int writeHuffmanStream(final int p, final int limit,
+		final int from, final int to)
+	{
+		startBits(dst, p, limit);
+		for (int i = to - 1; i >= from; i--) {
+			final int symbol = literals[i] & 0xff;
+			addBits(huffmanCodes[symbol], huffmanLengths[symbol]);
+			if (((to - i) & 3) == 0) flushBits();
+		}
+		return closeBits();
+	}
+
+	/**
+	 * Writes the sequences section of a compressed block.
+	 *
+	 * @return the position following the section, or -1 if past the limit
+	 */
+	private int writeSequences(int p, final int limit) {
+		final int n = sequenceCount;
+		if (p + 4 > limit) return -1;
+		if (n < 128) dst[p++] = (byte) n;
+		else if (n < 0x7F00) {
+			dst[p++] = (byte) ((n >>> 8) + 128);
+			dst[p++] = (byte) n;
+		}
+		else {
+			dst[p++] = (byte) 255;
+			dst[p++] = (byte) (n - 0x7F00);
+			dst[p++] = (byte) ((n - 0x7F00) >>> 8);
+		}
+		if (n == 0) return p;
+
+		final byte[] llCodes = codes[LL], ofCodes = codes[OF], mlCodes = codes[ML];
+		for (int i = 0; i < n; i++) {
+			final int ll = literalLengths[i];
+			llCodes[i] = ll < 64 ? LL_CODE[ll] : (byte) (highBit(ll) + 19);
+			final int ml = matchLengths[i] - 3;
+			mlCodes[i] = ml < 128 ? ML_CODE[ml] : (byte) (highBit(ml) + 36);
+			ofCodes[i] = (byte) highBit(offsetValues[i]);
+		}
+		final int modesPos = p++;
+		for (int kind = 0; kind < 3 && p >= 0; kind++) {
+			p = selectTable(kind, p, limit);
+		}
+		if (p < 0) return -1;
+		dst[modesPos] = (byte) (modes[LL] << 6 | modes[OF] << 4 | modes[ML] << 2);
+
+		// sequences are written last one first, each field's extra bits
+		// following its state transition
+		startBits(dst, p, limit);
+		int last = n - 1;
+		int llState = initialState(LL, llCodes[last]);
+		int ofState = initialState(OF, ofCodes[last]);
+		int mlState = initialState(ML, mlCodes[last]);
+		writeExtraBits(last);
+		for (int i = n - 2; i >= 0; i--) {
+			ofState = encodeSymbol(tables[OF], ofState, ofCodes[i]);
+			mlState = encodeSymbol(tables[ML], mlState, mlCodes[i]);
+			llState = encodeSymbol(tables[LL], llState, llCodes[i]);
+			flushBits();
+			writeExtraBits(i);
+		}
+		if (tables[ML] != null) addBits(mlState, tables[ML].log);
+		if (tables[OF] != null) addBits(ofState, tables[OF].log);
+		if (tables[LL] != null) addBits(llState, tables[LL].log);
+		return closeBits();
+	}
+
+	private void writeExtraBits(final int i) {
+		final int llCode = codes[LL][i];
+		final int mlCode = codes[ML][i];
+		addBits(literalLengths[i] - LL_BASE[llCode], LL_BITS[llCode]);
+		addBits(matchLengths[i] - ML_BASE[mlCode], ML_BITS[mlCode]);
+		flushBits();
+		addBits(offsetValues[i], codes[OF][i]);
+		flushBits();
+	}
+
+	/**
+	 * Chooses the table of a sequence field: a single symbol, the predefined
+	 * distribution or one fitted to the block, whichever is smallest.
+	 *
+	 * @return the position following the table description, or -1 if past the
+	 *         limit
+	 */
+	private int selectTable(final int kind, final int p, final int limit) {
+		final byte[] symbols = codes[kind];
+		final int n = sequenceCount;
+		Arrays.fill(histogram, 0);
+		int maxSymbol = 0;
+		int distinct = 0;
+		for (int i = 0; i < n; i++) {
+			final int symbol = symbols[i];
+			if (histogram[symbol]++ == 0) distinct++;
+			if (symbol > maxSymbol) maxSymbol = symbol;
+		}
+		if (distinct == 1) {
+			if (p + 1 > limit) return -1;
+			dst[p] = (byte) maxSymbol;
+			tables[kind] = null;
+			modes[kind] = 1;
+			return p + 1;
+		}
+		final double defaultCost = maxSymbol < DEFAULT_NORM[kind].length ? cost(
+			DEFAULT_NORM[kind], DEFAULT_LOG[kind], maxSymbol) : Double.MAX_VALUE;
+		final int log = optimalLog(n, maxSymbol, MAX_LOG[kind]);
+		normalize(histogram, maxSymbol, n, log);
+		final int size = writeDistribution(scratch, 0, maxSymbol, log);
+		if (defaultCost <= cost(norm, log, maxSymbol) + 8 * size) {
+			tables[kind] = DEFAULT_TABLES[kind];
+			modes[kind] = 0;
+			return p;
+		}
+		if (p + size > limit) return -1;
+		System.arraycopy(scratch, 0, dst, p, size);
+		ownTables[kind].build(norm, maxSymbol, log);
+		tables[kind] = ownTables[kind];
+		modes[kind] = 2;
+		return p + size;
+	}
+
+	/** Estimates the bits needed to code {@link #histogram} with a table. */
+	private double cost(final short[] distribution, final int log,
+		final int maxSymbol)
+	{
+		double bits = 0;
+		for (int s = 0; s <= maxSymbol; s++) {
+			if (histogram[s] == 0) continue;
+			final int count = distribution[s];
+			if (count == 0) return Double.MAX_VALUE;
+			bits += histogram[s] * (log - Math.log(count < 0 ? 1 : count) / Math
+				.log(2));
+		}
+		return bits;
+	}
+
+	/** Chooses a table log for the given number of symbols, as zstd does. */
+	private static int optimalLog(final int total, final int maxSymbol,
+		final int maxLog)
+	{
+		int log = Math.min(maxLog, highBit(total - 1) - 2);
+		final int minLog = Math.min(highBit(total) + 1, highBit(maxSymbol) + 2);
+		log = Math.max(log, minLog);
+		return Math.max(5, Math.min(log, maxLog));
+	}
+
+	/**
+	 * Scales the given counts to a distribution summing to 2^log in
+	 * {@link #norm}, keeping every symbol that occurs.
+	 */
+	private void normalize(final int[] counts, final int maxSymbol,
+		final int total, final int log)
+	{
+		final int size = 1 << log;
+		int sum = 0;
+		int largest = 0;
+		for (int s = 0; s <= maxSymbol; s++) {
+			if (counts[s] == 0) norm[s] = 0;
+			else {
+				norm[s] = (short) Math.max(1, (long) counts[s] * size / total);
+				sum += norm[s];
+				if (counts[s] > counts[largest]) largest = s;
+			}
+		}
+		norm[largest] += size - sum;
+		while (norm[largest] < 1) {
+			// rounding up the rare symbols took too much: take from the others
+			int most = -1;
+			for (int s = 0; s <= maxSymbol; s++) {
+				if (s != largest && (most < 0 || norm[s] > norm[most])) most = s;
+			}
+			norm[most]--;
+			norm[largest]++;
+		}
+	}
+
+	/**
+	 * Writes the distribution in {@link #norm}, the inverse of
+	 * {@code ZstdDecoder.readDistribution}.
+	 *
+	 * @return the size of the description
+	 */
+	private int writeDistribution(final byte[] out, final int start,
+		final int maxSymbol, final int log)
+	{
+		int p = start;
+		long bitStream = log - 5;
+		int nbBitsOut = 4;
+		int remaining = (1 << log) + 1;
+		int threshold = 1 << log;
+		int nbBits = log + 1;
+		int symbol = 0;
+		boolean previousZero = false;
+		while (symbol <= maxSymbol && remaining > 1) {
+			if (previousZero) {
+				int runStart = symbol;
+				while (norm[symbol] == 0) {
+					symbol++;
+				}
+				while (symbol >= runStart + 3) {
+					runStart += 3;
+					bitStream |= 3L << nbBitsOut;
+					nbBitsOut += 2;
+					if (nbBitsOut > 48) {
+						out[p++] = (byte) bitStream;
+						out[p++] = (byte) (bitStream >>> 8);
+						bitStream >>>= 16;
+						nbBitsOut -= 16;
+					}
+				}
+				bitStream |= (long) (symbol - runStart) << nbBitsOut;
+				nbBitsOut += 2;
+			}
+			int count = norm[symbol++];
+			final int max = 2 * threshold - 1 - remaining;
+			remaining -= count < 0 ? -count : count;
+			count++;
+			if (count >= threshold) count += max;
+			bitStream |= (long) count << nbBitsOut;
+			nbBitsOut += count < max ? nbBits - 1 : nbBits;
+			previousZero = count == 1;
+			while (remaining < threshold) {
+				nbBits--;
+				threshold >>= 1;
+			}
+			while (nbBitsOut >= 16) {
+				out[p++] = (byte) bitStream;
+				out[p++] = (byte) (bitStream >>> 8);
+				bitStream >>>= 16;
+				nbBitsOut -= 16;
+			}
+		}
+		while (nbBitsOut > 0) {
+			out[p++] = (byte) bitStream;
+			bitStream >>>= 8;
+			nbBitsOut -= 8;
+		}
+		return p - start;
+	}
+
+	private int initialState(final int kind, final int symbol) {
+		return tables[kind] == null ? 0 : tables[kind].initialState(symbol);
+	}
+
+	/** Writes the transition of a state to the given symbol. */
+	private int encodeSymbol(final FseEncodingTable table, final int state,
+		final int symbol)
+	{
+		if (table == null) return state;
+		final int nbBitsOut = (state + table.deltaNbBits[symbol]) >>> 16;
+		addBits(state, nbBitsOut);
+		return table.stateTable[(state >> nbBitsOut) +
+			table.deltaFindState[symbol]];
+	}
+
+	private void startBits(final byte[] out, final int p, final int limit) {
+		bitOut = out;
+		bitPos = p;
+		bitLimit = limit;
+		bitContainer = 0;
+		bitCount = 0;
+		overflow = false;
+	}
+
+	private void addBits(final int value, final int n) {
+		bitContainer |= (value & ((1L << n) - 1)) << bitCount;
+		bitCount += n;
+	}
+
+	/** Writes the complete bytes of the bit container. */
+	private void flushBits() {
+		final int n = bitCount >>> 3;
+		if (bitPos + n > bitLimit) {
+			overflow = true;
+			bitPos = bitLimit - n;
+		}
+		for (int i = 0; i < n; i++) {
+			bitOut[bitPos++] = (byte) bitContainer;
+			bitContainer >>>= 8;
+		}
+		bitCount &= 7;
+	}
+
+	/**
+	 * Ends the bit stream with a 1 bit.
+	 *
+	 * @return the position following the stream, or -1 if past the limit
+	 */
+	private int closeBits() {
+		addBits(1, 1);
+		flushBits();
+		if (bitCount > 0) {
+			if (bitPos >= bitLimit) return -1;
+			bitOut[bitPos++] = (byte) bitContainer;
+		}
+		return overflow ? -1 : bitPos;
+	}
+
+	private static int readInt(final byte[] b, final int p) {
+		return (b[p] & 0xff) | (b[p + 1] & 0xff) << 8 | (b[p + 2] & 0xff) << 16 |
+			b[p + 3] << 24;
+	}
+
+	private static void writeInt(final byte[] b, final int p, final int value) {
+		b[p] = (byte) value;
+		b[p + 1] = (byte) (value >>> 8);
+		b[p + 2] = (byte) (value >>> 16);
+		b[p + 3] = (byte) (value >>> 24);
+	}
+
+	// -- Helper classes --
+
+	/** FSE encoding table, built as zstd does. */
+	private static final class FseEncodingTable {
+
+		private final int[] stateTable;
+
+		private final int[] deltaNbBits = new int[256];
+
+		private final int[] deltaFindState = new int[256];
+
+		private int log;
+
+		private FseEncodingTable(final int maxLog) {
+			stateTable = new int[1 << maxLog];
+		}
+
+		private void build(final short[] norm, final int maxSymbol,
+			final int tableLog)
+		{
+			final int size = 1 << tableLog;
+			final int[] symbols = new int[size];
+			final int[] cumulative = new int[maxSymbol + 2];
+			int high = size - 1;
+			for (int s = 0; s <= maxSymbol; s++) {
+				if (norm[s] == -1) {
+					cumulative[s + 1] = cumulative[s] + 1;
+					symbols[high--] = s;
+				}
+				else cumulative[s + 1] = cumulative[s] + norm[s];
+			}
+			final int mask = size - 1;
+			final int step = (size >>> 1) + (size >>> 3) + 3;
+			int position = 0;
+			for (int s = 0; s <= maxSymbol; s++) {
+				for (int i = 0; i < norm[s]; i++) {
+					symbols[position] = s;
+					do {
+						position = (position + step) & mask;
+					}
+					while (position > high);
+				}
+			}
+			for (int u = 0; u < size; u++) {
+				stateTable[cumulative[symbols[u]]++] = size + u;
+			}
+			int total = 0;
+			for (int s = 0; s <= maxSymbol; s++) {
+				final int count = norm[s];
+				if (count == 0) {
+					deltaNbBits[s] = ((tableLog + 1) << 16) - size;
+				}
+				else if (count == -1 || count == 1) {
+					deltaNbBits[s] = (tableLog << 16) - size;
+					deltaFindState[s] = total - 1;
+					total++;
+				}
+				else {
+					final int maxBitsOut = tableLog - highBit(count - 1);
+					deltaNbBits[s] = (maxBitsOut << 16) - (count << maxBitsOut);
+					deltaFindState[s] = total - count;
+					total += count;
+				}
+			}
+			log = tableLog;
+		}
+
+		/** Gets the state after the first symbol, which writes no bits. */
+		private int initialState(final int symbol) {
+			final int nbBitsOut = (deltaNbBits[symbol] + (1 << 15)) >>> 16;
+			final int value = (nbBitsOut << 16) - deltaNbBits[symbol];
+			return stateTable[(value >> nbBitsOut) + deltaFindState[symbol]];
+		}
+	}
+
+}
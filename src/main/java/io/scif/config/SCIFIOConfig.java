@@ -43,6 +43,7 @@ import io.scif.img.Range;
 import io.scif.img.converters.PlaneConverter;
 
 import java.awt.image.ColorModel;
+import java.io.File;
 import java.util.HashMap;
 
 import net.imglib2.img.array.ArrayImgFactory;
@@ -88,6 +89,15 @@ public class SCIFIOConfig extends HashMap<String, Object> {
 
 	private boolean saveOriginalMetadata;
 
+	// Reader
+	private int readerThreads = 1;
+
+	private long tileCacheSize = 0;
+
+	private boolean memoryMapping = false;
+
+	private File indexCacheDirectory = null;
+
 	// Writer
 	private boolean writeSequential = false;
 
@@ -101,6 +111,8 @@ public class SCIFIOConfig extends HashMap<String, Object> {
 
 	private CodecOptions options = null;
 
+	private int writerThreads = 1;
+
 	// Groupable
 	/** Whether or not to group multi-file formats. */
 	private boolean group = false;
@@ -167,12 +179,17 @@ public class SCIFIOConfig extends HashMap<String, Object> {
 		level = config.level;
 		filterMetadata = config.filterMetadata;
 		saveOriginalMetadata = config.saveOriginalMetadata;
+		readerThreads = config.readerThreads;
+		tileCacheSize = config.tileCacheSize;
+		memoryMapping = config.memoryMapping;
+		indexCacheDirectory = config.indexCacheDirectory;
 		writeSequential = config.writeSequential;
 		failIfOverwriting = config.failIfOverwriting;
 		model = config.model;
 		fps = config.fps;
 		compression = config.compression;
 		options = config.options;
+		writerThreads = config.writerThreads;
 		group = config.group;
 		imgModes = config.imgModes;
 		range = config.range;
@@ -256,6 +273,97 @@ public class SCIFIOConfig extends HashMap<String, Object> {
 		return this;
 	}
 
+	// -- Reader methods --
+
+	/**
+	 * Sets the number of threads a reader may use to decode a single plane.
+	 * Formats storing planes as independently compressed tiles or strips (such
+	 * as TIFF) can read and decompress several of them concurrently. A value of
+	 * 1 (the default) keeps decoding on the calling thread.
+	 *
+	 * @param threads Maximum number of threads to decode a plane with.
+	 * @return This SCIFIOConfig for method chaining.
+	 */
+	public SCIFIOConfig readerSetThreads(final int threads) {
+		readerThreads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * @return The maximum number of threads readers may use to decode a plane.
+	 *         Default: 1
+	 */
+	public int readerGetThreads() {
+		return readerThreads;
+	}
+
+	/**
+	 * Sets the size of the cache of decoded tiles kept by readers of tiled
+	 * formats (such as TIFF). Repeated reads of overlapping regions are then
+	 * served from the cache instead of decoding the same tiles again.
+	 *
+	 * @param bytes Maximum number of bytes of decoded tiles to cache, or 0 (the
+	 *          default) to disable tile caching.
+	 * @return This SCIFIOConfig for method chaining.
+	 */
+	public SCIFIOConfig readerSetTileCacheSize(final long bytes) {
+		tileCacheSize = Math.max(0, bytes);
+		return this;
+	}
+
+	/**
+	 * @return The maximum number of bytes of decoded tiles readers should cache.
+	 *         Default: 0 (disabled)
+	 */
+	public long readerGetTileCacheSize() {
+		return tileCacheSize;
+	}
+
+	/**
+	 * Sets whether or not readers should access pixel data of local files
+	 * through a read-only memory mapping, where supported (e.g., for TIFF). This
+	 * speeds up reading large uncompressed data sets, but the files must not be
+	 * modified while they are open.
+	 *
+	 * @param memoryMapping Whether or not to memory map local files.
+	 * @return This SCIFIOConfig for method chaining.
+	 */
+	public SCIFIOConfig readerSetMemoryMapping(final boolean memoryMapping) {
+		this.memoryMapping = memoryMapping;
+		return this;
+	}
+
+	/**
+	 * @return True if readers should memory map local files. Default: false
+	 */
+	public boolean readerIsMemoryMapping() {
+		return memoryMapping;
+	}
+
+	/**
+	 * Sets a directory in which readers may persist an index of each parsed
+	 * file, such as the offsets and entries of its TIFF IFDs. Reopening an
+	 * unchanged file then loads the index instead of walking the file's
+	 * structure again. Index files are keyed by path, size and modification
+	 * time, and the directory may be shared by concurrent processes.
+	 *
+	 * @param directory Directory for index files, or null (the default) to
+	 *          disable index caching.
+	 * @return This SCIFIOConfig for method chaining.
+	 */
+	public SCIFIOConfig readerSetIndexCacheDirectory(final File directory) {
+		indexCacheDirectory = directory;
+		return this;
+	}
+
+	/**
+	 * @return The directory in which readers persist file indices, or null if
+	 *         index caching is disabled. Default: null
+	 */
+	public File readerGetIndexCacheDirectory() {
+		return indexCacheDirectory;
+	}
+
 	// -- Writer methods --
 
 	/**
@@ -365,6 +473,28 @@ public class SCIFIOConfig extends HashMap<String, Object> {
 		return options;
 	}
 
+	/**
+	 * Sets the number of threads a writer may use to encode a single plane.
+	 * Formats storing planes as independently compressed tiles or strips (such
+	 * as TIFF) can compress several of them concurrently. A value of 1 (the
+	 * default) keeps encoding on the calling thread.
+	 *
+	 * @param threads Maximum number of threads to encode a plane with.
+	 * @return This SCIFIOConfig for method chaining.
+	 */
+	public SCIFIOConfig writerSetThreads(final int threads) {
+		writerThreads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * @return The maximum number of threads writers may use to encode a plane.
+	 *         Default: 1
+	 */
+	public int writerGetThreads() {
+		return writerThreads;
+	}
+
 	// -- Groupable methods --
 
 	/**
@@ -453,7 +583,9 @@ public class SCIFIOConfig extends HashMap<String, Object> {
 
 	/**
 	 * @param planeConverter Sets a PlaneConverter to use when opening datasets.
-	 *          This is useful when using a custom Img type.
+	 *          This is useful when using a custom Img type. Planes too large to
+	 *          open in one piece (about 2 GB) are copied into the image a band
+	 *          of rows at a time, without the converter.
 	 * @return This SCIFIOConfig for method chaining.
 	 */
 	public SCIFIOConfig imgOpenerSetPlaneConverter(
@@ -258,6 +258,38 @@ public abstract class AbstractReaderFilter extends AbstractFilter<Reader>
 		return getParent().fileGroupOption(id);
 	}
 
+	@Override
+	public int getResolutionCount(final int imageIndex) {
+		// a filter which transforms the metadata only knows its full resolution
+		return hasParentMetadata() ? getParent().getResolutionCount(imageIndex)
+			: 1;
+	}
+
+	@Override
+	public long[] getResolutionDimensions(final int imageIndex,
+		final int resolution)
+	{
+		if (resolution == 0) {
+			return getMetadata().get(imageIndex).getAxesLengthsPlanar();
+		}
+		checkResolution(resolution);
+		return getParent().getResolutionDimensions(imageIndex, resolution);
+	}
+
+	@Override
+	public Plane openPlane(final int imageIndex, final long planeIndex,
+		final int resolution, final Interval bounds, final SCIFIOConfig config)
+		throws FormatException, IOException
+	{
+		if (resolution == 0) {
+			return openPlane(imageIndex, planeIndex, bounds, config);
+		}
+		checkResolution(resolution);
+		openPlaneHelper();
+		return getParent().openPlane(imageIndex, planeIndex, resolution, bounds,
+			config);
+	}
+
 	@Override
 	public Location getCurrentLocation() {
 		return getParent().getCurrentLocation();
@@ -432,6 +464,28 @@ public abstract class AbstractReaderFilter extends AbstractFilter<Reader>
 
 	// -- Helper methods --
 
+	/**
+	 * Returns true if this filter passes its parent's metadata through
+	 * unchanged, so that the parent's planes are also this filter's planes.
+	 */
+	private boolean hasParentMetadata() {
+		return getMetadata() == getParent().getMetadata();
+	}
+
+	/**
+	 * Sub-resolution levels are read from the parent, which is only correct if
+	 * this filter does not change the plane layout.
+	 *
+	 * @throws IllegalArgumentException If this filter transforms the metadata.
+	 */
+	private void checkResolution(final int resolution) {
+		if (!hasParentMetadata()) {
+			throw new IllegalArgumentException(getClass().getSimpleName() +
+				" does not support resolution level " + resolution +
+				"; only level 0 can be read through it");
+		}
+	}
+
 	/*
 	 * Returns true if this filter's metdata can be cast to
 	 * ChannelFillerMetadata
@@ -51,7 +51,9 @@ import io.scif.codec.JPEG2000CodecOptions;
 import io.scif.codec.JPEG2000SegmentMarker;
 import io.scif.config.SCIFIOConfig;
 import io.scif.util.FormatTools;
+import io.scif.util.SCIFIOMetadataTools;
 
+import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -786,6 +788,28 @@ public class JPEG2000Format extends AbstractFormat {
 
 			getHandle().seek(meta.getPixelsOffset());
 			final JPEG2000Codec codec = codecService.getCodec(JPEG2000Codec.class);
+
+			final ImageMetadata iMeta = meta.get(imageIndex);
+			final int cIndex = iMeta.getAxisIndex(Axes.CHANNEL);
+			final boolean allChannels = cIndex < 0 || (bounds.min(cIndex) == 0 &&
+				bounds.dimension(cIndex) == iMeta.getAxisLength(Axes.CHANNEL));
+			if (allChannels && !SCIFIOMetadataTools.wholePlane(imageIndex, meta,
+				bounds))
+			{
+				// decode only the requested region, which is laid out just as the
+				// plane is; the whole plane is left to be decoded and cached when
+				// it is needed
+				final int xIndex = iMeta.getAxisIndex(Axes.X);
+				final int yIndex = iMeta.getAxisIndex(Axes.Y);
+				options.sourceRegion = new Rectangle((int) bounds.min(xIndex),
+					(int) bounds.min(yIndex), (int) bounds.dimension(xIndex),
+					(int) bounds.dimension(yIndex));
+				final byte[] region = codec.decompress(getHandle(), options);
+				System.arraycopy(region, 0, buf, 0, Math.min(region.length,
+					buf.length));
+				return plane;
+			}
+
 			final byte[] lastIndexPlane = codec.decompress(getHandle(), options);
 			meta.setLastIndexBytes(lastIndexPlane);
 			final DataHandle<Location> s = dataHandleService.create(new BytesLocation(
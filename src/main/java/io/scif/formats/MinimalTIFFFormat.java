@@ -45,10 +45,13 @@ import io.scif.formats.tiff.IFD;
 import io.scif.formats.tiff.IFDList;
 import io.scif.formats.tiff.PhotoInterp;
 import io.scif.formats.tiff.TiffCompression;
+import io.scif.formats.tiff.TiffIndexCache;
 import io.scif.formats.tiff.TiffParser;
+import io.scif.formats.tiff.TiffTileCache;
 import io.scif.services.FormatService;
 import io.scif.util.FormatTools;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -62,6 +65,7 @@ import net.imglib2.display.ColorTable8;
 import org.scijava.Priority;
 import org.scijava.io.handle.DataHandle;
 import org.scijava.io.handle.DataHandle.ByteOrder;
+import org.scijava.io.location.FileLocation;
 import org.scijava.io.location.Location;
 import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
@@ -105,7 +109,7 @@ public class MinimalTIFFFormat extends AbstractFormat {
 		 * List of sub-resolution IFDs for each IFD in the current TIFF with the
 		 * same order as {@code ifds}.
 		 */
-		private List<IFDList> subResolutionIFDs;
+		private List<IFDList> subResolutionIFDs = new ArrayList<>();
 
 		private TiffParser tiffParser;
 
@@ -149,6 +153,32 @@ public class MinimalTIFFFormat extends AbstractFormat {
 			this.subResolutionIFDs = subResolutionIFDs;
 		}
 
+		/**
+		 * Gets the number of resolution levels of the given plane, including the
+		 * full resolution level.
+		 */
+		public int getResolutionCount(final long planeIndex) {
+			if (subResolutionIFDs == null || planeIndex >= subResolutionIFDs
+				.size()) return 1;
+			return subResolutionIFDs.get((int) planeIndex).size() + 1;
+		}
+
+		/**
+		 * Gets the IFD of the given plane at the given resolution level, where
+		 * level 0 is the full resolution IFD.
+		 *
+		 * @throws IllegalArgumentException If the resolution level is out of
+		 *           range.
+		 */
+		public IFD getIFD(final long planeIndex, final int resolution) {
+			if (resolution < 0 || resolution >= getResolutionCount(planeIndex)) {
+				throw new IllegalArgumentException("Invalid resolution level: " +
+					resolution);
+			}
+			if (resolution == 0) return ifds.get((int) planeIndex);
+			return subResolutionIFDs.get((int) planeIndex).get(resolution - 1);
+		}
+
 		public TiffParser getTiffParser() {
 			return tiffParser;
 		}
@@ -251,15 +281,13 @@ public class MinimalTIFFFormat extends AbstractFormat {
 
 				// New core metadata now that we know how many sub-resolutions
 				// we have.
-				if (resolutionLevels != null && subResolutionIFDs.size() > 0) {
+				// JPEG 2000 resolution levels are also exposed as flattened images,
+				// in addition to the Reader's resolution level API
+				if (resolutionLevels != null && subResolutionIFDs.size() > 0 &&
+					!subResolutionIFDs.get(0).isEmpty())
+				{
 					final IFDList ifds = subResolutionIFDs.get(0);
 
-					// FIXME: support sub resolutions in SCIFIO.. or something..
-					// int seriesCount = ifds.size() + 1;
-					// if (!hasFlattenedResolutions()) {
-					// ms0.resolutionCount = seriesCount;
-					// }
-
 					if (ifds.size() + 1 < ms0.getAxisLength(Axes.TIME)) {
 						ms0.setAxisLength(Axes.TIME, ms0.getAxisLength(Axes.TIME) - (ifds
 							.size() + 1));
@@ -274,8 +302,6 @@ public class MinimalTIFFFormat extends AbstractFormat {
 						ms.setThumbnail(true);
 						ms.setThumbSizeX(ms0.getThumbSizeX());
 						ms.setThumbSizeY(ms0.getThumbSizeY());
-						// TODO subresolutions
-						// ms.resolutionCount = 1;
 					}
 
 				}
@@ -405,6 +431,11 @@ public class MinimalTIFFFormat extends AbstractFormat {
 			final TiffParser tiffParser = new TiffParser(getContext(), stream);
 			tiffParser.setDoCaching(false);
 			tiffParser.setUse64BitOffsets(meta.isUse64Bit());
+			if (config.readerGetTileCacheSize() > 0) {
+				tiffParser.setTileCache(new TiffTileCache(config
+					.readerGetTileCacheSize()));
+			}
+			tiffParser.setMemoryMapping(config.readerIsMemoryMapping());
 			meta.setTiffParser(tiffParser);
 
 			final Boolean littleEndian = tiffParser.checkHeader();
@@ -417,7 +448,16 @@ public class MinimalTIFFFormat extends AbstractFormat {
 
 			log().debug("Reading IFDs");
 
-			final IFDList allIFDs = tiffParser.getIFDs();
+			final File file = stream.get() instanceof FileLocation
+				? ((FileLocation) stream.get()).getFile() : null;
+			final TiffIndexCache indexCache = file == null || config
+				.readerGetIndexCacheDirectory() == null ? null : new TiffIndexCache(
+					config.readerGetIndexCacheDirectory(), log());
+
+			IFDList allIFDs = indexCache == null ? null : indexCache.load(file);
+			final boolean indexed = allIFDs != null;
+			if (indexed) log().debug("Loaded IFDs from index");
+			else allIFDs = tiffParser.getIFDs();
 
 			if (allIFDs == null || allIFDs.isEmpty()) {
 				throw new FormatException("No IFDs found");
@@ -443,8 +483,12 @@ public class MinimalTIFFFormat extends AbstractFormat {
 			log().debug("Populating metadata");
 
 			tiffParser.setAssumeEqualStrips(meta.isEqualStrips());
+			final List<IFDList> subResolutionIFDs = new ArrayList<>();
+			meta.setSubResolutionIFDs(subResolutionIFDs);
 			for (final IFD ifd : ifds) {
 				tiffParser.fillInIFD(ifd);
+				final IFDList theseSubResolutionIFDs = new IFDList();
+				subResolutionIFDs.add(theseSubResolutionIFDs);
 				if (ifd.getCompression() == TiffCompression.JPEG_2000 || ifd
 					.getCompression() == TiffCompression.JPEG_2000_LOSSY)
 				{
@@ -472,8 +516,6 @@ public class MinimalTIFFFormat extends AbstractFormat {
 											.getImageLength(), ifd.getTileWidth(), ifd
 												.getTileLength()));
 							}
-							final IFDList theseSubResolutionIFDs = new IFDList();
-							meta.getSubResolutionIFDs().add(theseSubResolutionIFDs);
 							for (int level = 1; level <= meta
 								.getResolutionLevels(); level++)
 							{
@@ -522,6 +564,46 @@ public class MinimalTIFFFormat extends AbstractFormat {
 						log().warn("IFD has no strip offsets!");
 					}
 				}
+				else if (ifd.containsKey(IFD.SUB_IFD)) {
+					addSubIFDs(ifd, thumbnailIFDs, theseSubResolutionIFDs, tiffParser);
+				}
+			}
+
+			if (indexCache != null && !indexed) indexCache.save(file, allIFDs);
+		}
+
+		// -- Helper methods --
+
+		/**
+		 * Collects the reduced resolution SubIFDs of the given IFD, i.e. the levels
+		 * of a pyramidal TIFF, in order of decreasing size.
+		 */
+		private void addSubIFDs(final IFD ifd, final IFDList thumbnailIFDs,
+			final IFDList subResolutionIFDs, final TiffParser tiffParser)
+			throws FormatException, IOException
+		{
+			final long[] subOffsets = ifd.getIFDLongArray(IFD.SUB_IFD);
+			if (subOffsets == null) return;
+			for (final long subOffset : subOffsets) {
+				for (final IFD thumbnailIFD : thumbnailIFDs) {
+					if (thumbnailIFD.getIFDLongValue(IFD.IFD_OFFSET, -1) != subOffset) {
+						continue;
+					}
+					tiffParser.fillInIFD(thumbnailIFD);
+					final long width = thumbnailIFD.getImageWidth();
+					int index = subResolutionIFDs.size();
+					while (index > 0 && subResolutionIFDs.get(index - 1)
+						.getImageWidth() < width)
+					{
+						index--;
+					}
+					subResolutionIFDs.add(index, thumbnailIFD);
+					break;
+				}
+			}
+			if (log().isDebug() && !subResolutionIFDs.isEmpty()) {
+				log().debug("Found " + subResolutionIFDs.size() +
+					" sub-resolution IFDs");
 			}
 		}
 
@@ -542,6 +624,134 @@ public class MinimalTIFFFormat extends AbstractFormat {
 		public ByteArrayPlane openPlane(final int imageIndex, final long planeIndex,
 			final ByteArrayPlane plane, final Interval bounds,
 			final SCIFIOConfig config) throws FormatException, IOException
+		{
+			final Metadata meta = getMetadata();
+			FormatTools.checkPlaneForReading(meta, imageIndex, planeIndex, plane
+				.getBytes().length, bounds);
+
+			// JPEG 2000 sub-resolutions are also flattened into separate images
+			final int resolution = imageIndex > 0 && imageIndex < meta
+				.getResolutionCount(planeIndex) ? imageIndex : 0;
+			return openResolutionPlane(imageIndex, planeIndex, resolution, plane,
+				bounds, config);
+		}
+
+		@Override
+		public int getResolutionCount(final int imageIndex) {
+			// flattened sub-resolution images have no further levels
+			if (imageIndex > 0) return 1;
+			return getMetadata().getResolutionCount(0);
+		}
+
+		@Override
+		public long[] getResolutionDimensions(final int imageIndex,
+			final int resolution)
+		{
+			final Metadata meta = getMetadata();
+			final long[] lengths = meta.get(imageIndex).getAxesLengthsPlanar();
+			if (resolution == 0) return lengths;
+			if (imageIndex > 0) {
+				throw new IllegalArgumentException("Invalid resolution level: " +
+					resolution);
+			}
+			final IFD ifd = meta.getIFD(0, resolution);
+			try {
+				lengths[meta.get(imageIndex).getAxisIndex(Axes.X)] = ifd
+					.getImageWidth();
+				lengths[meta.get(imageIndex).getAxisIndex(Axes.Y)] = ifd
+					.getImageLength();
+			}
+			catch (final FormatException e) {
+				throw new IllegalStateException("Invalid sub-resolution IFD", e);
+			}
+			return lengths;
+		}
+
+		@Override
+		public ByteArrayPlane openPlane(final int imageIndex, final long planeIndex,
+			final int resolution, final Interval bounds, final SCIFIOConfig config)
+			throws FormatException, IOException
+		{
+			if (resolution == 0) {
+				return openPlane(imageIndex, planeIndex, bounds, config);
+			}
+			final Metadata meta = getMetadata();
+			FormatTools.checkPlaneNumber(meta, imageIndex, planeIndex);
+			final long[] lengths = getResolutionDimensions(imageIndex, resolution);
+			for (int d = 0; d < lengths.length; d++) {
+				if (bounds.min(d) < 0 || bounds.max(d) >= lengths[d]) {
+					throw new FormatException("Invalid bounds for resolution level " +
+						resolution + ": " + bounds.min(d) + "-" + bounds.max(d) +
+						" exceeds axis length " + lengths[d]);
+				}
+			}
+			return openResolutionPlane(imageIndex, planeIndex, resolution,
+				createPlane(bounds), bounds, config);
+		}
+
+		@Override
+		public long getOptimalTileWidth(final int imageIndex) {
+			FormatTools.assertId(getHandle().get().getName(), true, 1);
+			try {
+				return getMetadata().getIfds().get(0).getTileWidth();
+			}
+			catch (final FormatException e) {
+				log().debug("Could not retrieve tile width", e);
+			}
+			return super.getOptimalTileWidth(imageIndex);
+		}
+
+		@Override
+		public long getOptimalTileHeight(final int imageIndex) {
+			FormatTools.assertId(getHandle().get().getName(), true, 1);
+			try {
+				return getMetadata().getIfds().get(0).getTileLength();
+			}
+			catch (final FormatException e) {
+				log().debug("Could not retrieve tile height", e);
+			}
+			return super.getOptimalTileHeight(imageIndex);
+		}
+
+		/**
+		 * Sets the full resolution level when we have JPEG 2000 compressed data.
+		 *
+		 * @param ifd The active IFD that is being used in our current
+		 *          {@code openBytes()} calling context.
+		 */
+		protected void setResolutionLevel(final IFD ifd) {
+			setResolutionLevel(ifd, 0);
+		}
+
+		/**
+		 * Sets the resolution level when we have JPEG 2000 compressed data.
+		 *
+		 * @param ifd The active IFD that is being used in our current
+		 *          {@code openBytes()} calling context. It will be the
+		 *          sub-resolution IFD if {@code resolution > 0}.
+		 * @param resolution The resolution level being read, where 0 is the full
+		 *          resolution.
+		 */
+		protected void setResolutionLevel(final IFD ifd, final int resolution) {
+			final Metadata meta = getMetadata();
+			final JPEG2000CodecOptions j2kCodecOptions = meta.getJ2kCodecOptions();
+			j2kCodecOptions.resolution = Math.abs(resolution - meta
+				.getResolutionLevels());
+			log().debug("Using JPEG 2000 resolution level " +
+				j2kCodecOptions.resolution);
+			meta.getTiffParser().setCodecOptions(j2kCodecOptions);
+		}
+
+		// -- Helper methods --
+
+		/**
+		 * Reads the given region of a plane at the given resolution level into the
+		 * given plane. The bounds must already have been validated.
+		 */
+		private ByteArrayPlane openResolutionPlane(final int imageIndex,
+			final long planeIndex, final int resolution, final ByteArrayPlane plane,
+			final Interval bounds, final SCIFIOConfig config) throws FormatException,
+			IOException
 		{
 			final Metadata meta = getMetadata();
 			plane.setColorTable(meta.getColorTable(imageIndex, planeIndex));
@@ -554,23 +764,18 @@ public class MinimalTIFFFormat extends AbstractFormat {
 			final int y = (int) bounds.min(yIndex);
 			final int w = (int) bounds.dimension(xIndex);
 			final int h = (int) bounds.dimension(yIndex);
-			FormatTools.checkPlaneForReading(meta, imageIndex, planeIndex, buf.length,
-				bounds);
 
 			final IFD firstIFD = ifds.get(0);
 			meta.setLastPlane(planeIndex);
-			final IFD ifd = ifds.get((int) planeIndex);
+			final IFD ifd = meta.getIFD(planeIndex, resolution);
 			if ((firstIFD.getCompression() == TiffCompression.JPEG_2000 || firstIFD
 				.getCompression() == TiffCompression.JPEG_2000_LOSSY) && meta
 					.getResolutionLevels() != null)
 			{
-				// FIXME: resolution levels
-//        if (getCoreIndex() > 0) {
-//          ifd = meta.getSubResolutionIFDs().get(planeIndex).get(getCoreIndex() - 1);
-//        }
-				setResolutionLevel(ifd);
+				setResolutionLevel(ifd, resolution);
 			}
 
+			tiffParser.setThreadCount(config.readerGetThreads());
 			tiffParser.getSamples(ifd, buf, x, y, w, h);
 
 			final boolean float16 = meta.get(imageIndex)
@@ -628,46 +833,5 @@ public class MinimalTIFFFormat extends AbstractFormat {
 			return plane;
 		}
 
-		@Override
-		public long getOptimalTileWidth(final int imageIndex) {
-			FormatTools.assertId(getHandle().get().getName(), true, 1);
-			try {
-				return getMetadata().getIfds().get(0).getTileWidth();
-			}
-			catch (final FormatException e) {
-				log().debug("Could not retrieve tile width", e);
-			}
-			return super.getOptimalTileWidth(imageIndex);
-		}
-
-		@Override
-		public long getOptimalTileHeight(final int imageIndex) {
-			FormatTools.assertId(getHandle().get().getName(), true, 1);
-			try {
-				return getMetadata().getIfds().get(0).getTileLength();
-			}
-			catch (final FormatException e) {
-				log().debug("Could not retrieve tile height", e);
-			}
-			return super.getOptimalTileHeight(imageIndex);
-		}
-
-		/**
-		 * Sets the resolution level when we have JPEG 2000 compressed data.
-		 *
-		 * @param ifd The active IFD that is being used in our current
-		 *          {@code openBytes()} calling context. It will be the
-		 *          sub-resolution IFD if {@code currentSeries > 0}.
-		 */
-		protected void setResolutionLevel(final IFD ifd) {
-			final Metadata meta = getMetadata();
-			final JPEG2000CodecOptions j2kCodecOptions = meta.getJ2kCodecOptions();
-			j2kCodecOptions.resolution = 0;
-			// FIXME: resolution levels
-//      j2kCodecOptions.resolution = Math.abs(getCoreIndex() - resolutionLevels);
-			log().debug("Using JPEG 2000 resolution level " +
-				j2kCodecOptions.resolution);
-			meta.getTiffParser().setCodecOptions(j2kCodecOptions);
-		}
 	}
 }
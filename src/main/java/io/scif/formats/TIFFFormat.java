@@ -48,7 +48,6 @@ import io.scif.formats.tiff.IFD;
 import io.scif.formats.tiff.IFDList;
 import io.scif.formats.tiff.PhotoInterp;
 import io.scif.formats.tiff.TiffCompression;
-import io.scif.formats.tiff.TiffParser;
 import io.scif.formats.tiff.TiffRational;
 import io.scif.formats.tiff.TiffSaver;
 import io.scif.gui.AWTImageTools;
@@ -1140,6 +1139,9 @@ public class TIFFFormat extends AbstractFormat {
 				case 2:
 					predictor = "Horizontal differencing";
 					break;
+				case 3:
+					predictor = "Floating point differencing";
+					break;
 			}
 			table.put("Predictor", predictor);
 
@@ -1362,6 +1364,15 @@ public class TIFFFormat extends AbstractFormat {
 		public static final String COMPRESSION_JPEG = //
 			CompressionType.JPEG.getCompression();
 
+		public static final String COMPRESSION_ZLIB = //
+			CompressionType.ZLIB.getCompression();
+
+		public static final String COMPRESSION_ZSTD = //
+			CompressionType.ZSTD.getCompression();
+
+		public static final String COMPRESSION_LZ4 = //
+			CompressionType.LZ4.getCompression();
+
 		public static final String BIG_TIFF_KEY = "WRITE_BIG_TIFF";
 
 		// -- Fields --
@@ -1369,6 +1380,9 @@ public class TIFFFormat extends AbstractFormat {
 		/** Whether or not the output file is a BigTIFF file. */
 		private Boolean isBigTIFF = null;
 
+		/** Predictor applied to compressed planes. */
+		private int predictor = 1;
+
 		/** The TiffSaver that will do most of the writing. */
 		private TiffSaver tiffSaver;
 
@@ -1383,7 +1397,8 @@ public class TIFFFormat extends AbstractFormat {
 		@Override
 		protected String[] makeCompressionTypes() {
 			return new String[] { COMPRESSION_UNCOMPRESSED, COMPRESSION_LZW,
-				COMPRESSION_J2K, COMPRESSION_J2K_LOSSY, COMPRESSION_JPEG };
+				COMPRESSION_J2K, COMPRESSION_J2K_LOSSY, COMPRESSION_JPEG,
+				COMPRESSION_ZLIB, COMPRESSION_ZSTD, COMPRESSION_LZ4 };
 		}
 
 		// -- TIFFWriter API Methods --
@@ -1403,6 +1418,25 @@ public class TIFFFormat extends AbstractFormat {
 			return isBigTIFF == null ? false : isBigTIFF;
 		}
 
+		/**
+		 * Sets the predictor applied to planes before they are compressed: 1 for
+		 * none, 2 for horizontal differencing, or 3 for floating point
+		 * differencing, which suits floating point data best. Only planes
+		 * compressed with LZW, Deflate, Zstandard or LZ4 are differenced. This
+		 * flag is not reset when close() is called.
+		 */
+		public void setPredictor(final int predictor) {
+			if (predictor < 1 || predictor > 3) {
+				throw new IllegalArgumentException("Invalid predictor: " + predictor);
+			}
+			this.predictor = predictor;
+		}
+
+		/** @return The predictor applied to planes before they are compressed. */
+		public int getPredictor() {
+			return predictor;
+		}
+
 		/**
 		 * Saves the given image to the specified series in the current file. The
 		 * IFD hashtable allows specification of TIFF parameters such as bit depth,
@@ -1487,6 +1521,7 @@ public class TIFFFormat extends AbstractFormat {
 
 			synchronized (this) {
 				setupTiffSaver(dest, imageIndex);
+				tiffSaver.setThreadCount(config.writerGetThreads());
 			}
 		}
 
@@ -1497,20 +1532,9 @@ public class TIFFFormat extends AbstractFormat {
 		{
 			IFD ifd = new IFD(log());
 			if (!writeSequential()) {
-				final TiffParser parser = new TiffParser(getContext(), getHandle()
-					.get());
-				try {
-					final long[] ifdOffsets = parser.getIFDOffsets();
-					if (planeIndex < ifdOffsets.length) {
-						ifd = parser.getIFD(ifdOffsets[(int) planeIndex]);
-					}
-				}
-				finally {
-					final DataHandle<Location> tiffHandle = parser.getStream();
-					if (tiffHandle != null) {
-						tiffHandle.close();
-					}
-				}
+				// the saver tracks IFD offsets, so this does not walk the IFD chain
+				final IFD existing = tiffSaver.getIFD(planeIndex);
+				if (existing != null) ifd = existing;
 			}
 			if (planeIndex == 0) addDimensionalAxisInfo(ifd, imageIndex);
 
@@ -1568,9 +1592,30 @@ public class TIFFFormat extends AbstractFormat {
 				else if (getCompression().equals(COMPRESSION_JPEG)) {
 					compressType = TiffCompression.JPEG;
 				}
+				else if (getCompression().equals(COMPRESSION_ZLIB)) {
+					compressType = TiffCompression.DEFLATE;
+				}
+				else if (getCompression().equals(COMPRESSION_ZSTD)) {
+					compressType = TiffCompression.ZSTD;
+				}
+				else if (getCompression().equals(COMPRESSION_LZ4)) {
+					compressType = TiffCompression.LZ4;
+				}
 			}
 			final Object v = ifd.get(IFD.COMPRESSION);
 			if (v == null) ifd.put(IFD.COMPRESSION, compressType.getCode());
+			// only lossless compression benefits from differencing
+			final int code = ifd.getIFDIntValue(IFD.COMPRESSION);
+			if (predictor != 1 && ifd.get(IFD.PREDICTOR) == null &&
+				(code == TiffCompression.LZW.getCode() ||
+					code == TiffCompression.DEFLATE.getCode() ||
+					code == TiffCompression.PROPRIETARY_DEFLATE.getCode() ||
+					code == TiffCompression.ZSTD.getCode() ||
+					code == TiffCompression.OLD_ZSTD.getCode() ||
+					code == TiffCompression.LZ4.getCode()))
+			{
+				ifd.put(IFD.PREDICTOR, predictor);
+			}
 		}
 
 		/**
@@ -36,73 +36,316 @@ import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 import org.scijava.service.AbstractService;
 import org.scijava.service.Service;
-import org.scijava.util.Bytes;
 
 /**
  * Default service for working with TIFF files.
+ * <p>
+ * Both the horizontal differencing predictor (2) and the floating point
+ * predictor (3) are supported. Each row of a strip or tile is processed with a
+ * loop specialized for the size of its samples, and no memory is allocated
+ * beyond a scratch row per thread for the floating point predictor.
+ * </p>
  *
  * @author Curtis Rueden
  */
 @Plugin(type = Service.class)
 public class DefaultTiffService extends AbstractService implements TiffService {
 
+	// -- Constants --
+
+	/** Scratch row used to shuffle the bytes of floating point samples. */
+	private static final ThreadLocal<byte[]> ROW_BUFFER = new ThreadLocal<>();
+
+	// -- Fields --
+
 	@Parameter
 	private LogService log;
 
+	// -- TiffService methods --
+
 	@Override
 	public void difference(final byte[] input, final IFD ifd)
 		throws FormatException
+	{
+		difference(input, 0, input.length, ifd);
+	}
+
+	@Override
+	public void undifference(final byte[] input, final IFD ifd)
+		throws FormatException
+	{
+		undifference(input, 0, input.length, ifd);
+	}
+
+	@Override
+	public void difference(final byte[] input, final int offset,
+		final int length, final IFD ifd) throws FormatException
 	{
 		final int predictor = ifd.getIFDIntValue(IFD.PREDICTOR, 1);
+		if (predictor == 1) return;
+		checkPredictor(predictor);
+
+		final int bytes = ifd.getBytesPerSample()[0];
+		final int stride = getStride(ifd);
+		final int rowLen = (int) ifd.getTileWidth() * stride * bytes;
+		final boolean little = ifd.isLittleEndian();
+		final int end = offset + length;
 		if (predictor == 2) {
 			log.debug("performing horizontal differencing");
-			final int[] bitsPerSample = ifd.getBitsPerSample();
-			final long width = ifd.getImageWidth();
-			final boolean little = ifd.isLittleEndian();
-			final int planarConfig = ifd.getPlanarConfiguration();
-			final int bytes = ifd.getBytesPerSample()[0];
-			final int len = bytes * (planarConfig == 2 ? 1 : bitsPerSample.length);
-
-			for (int b = input.length - bytes; b >= 0; b -= bytes) {
-				if (b / len % width == 0) continue;
-				int value = Bytes.toInt(input, b, bytes, little);
-				value -= Bytes.toInt(input, b - len, bytes, little);
-				Bytes.unpack(value, input, b, bytes, little);
+			for (int row = offset; row < end; row += rowLen) {
+				difference(input, row, Math.min(rowLen, end - row), stride, bytes,
+					little);
 			}
 		}
-		else if (predictor != 1) {
-			throw new FormatException("Unknown Predictor (" + predictor + ")");
+		else {
+			log.debug("performing floating point differencing");
+			final byte[] scratch = getRowBuffer(rowLen);
+			for (int row = offset; row + rowLen <= end; row += rowLen) {
+				differenceFloatingPoint(input, row, rowLen, stride, bytes, little,
+					scratch);
+			}
 		}
 	}
 
 	@Override
-	public void undifference(final byte[] input, final IFD ifd)
-		throws FormatException
+	public void undifference(final byte[] input, final int offset,
+		final int length, final IFD ifd) throws FormatException
 	{
 		final int predictor = ifd.getIFDIntValue(IFD.PREDICTOR, 1);
+		if (predictor == 1) return;
+		checkPredictor(predictor);
+
+		final int bytes = ifd.getBytesPerSample()[0];
+		final int stride = getStride(ifd);
+		final int rowLen = (int) ifd.getTileWidth() * stride * bytes;
+		final boolean little = ifd.isLittleEndian();
+		final int end = offset + length;
 		if (predictor == 2) {
 			log.debug("reversing horizontal differencing");
-			final int[] bitsPerSample = ifd.getBitsPerSample();
-			int len = bitsPerSample.length;
-			final long width = ifd.getImageWidth();
-			final boolean little = ifd.isLittleEndian();
-			final int planarConfig = ifd.getPlanarConfiguration();
-
-			final int bytes = ifd.getBytesPerSample()[0];
-
-			if (planarConfig == 2 || bitsPerSample[len - 1] == 0) len = 1;
-			len *= bytes;
-
-			for (int b = 0; b <= input.length - bytes; b += bytes) {
-				if (b / len % width == 0) continue;
-				int value = Bytes.toInt(input, b, bytes, little);
-				value += Bytes.toInt(input, b - len, bytes, little);
-				Bytes.unpack(value, input, b, bytes, little);
+			for (int row = offset; row < end; row += rowLen) {
+				undifference(input, row, Math.min(rowLen, end - row), stride, bytes,
+					little);
 			}
 		}
-		else if (predictor != 1) {
+		else {
+			log.debug("reversing floating point differencing");
+			final byte[] scratch = getRowBuffer(rowLen);
+			for (int row = offset; row + rowLen <= end; row += rowLen) {
+				undifferenceFloatingPoint(input, row, rowLen, stride, bytes, little,
+					scratch);
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	private void checkPredictor(final int predictor) throws FormatException {
+		if (predictor != 2 && predictor != 3) {
 			throw new FormatException("Unknown Predictor (" + predictor + ")");
 		}
 	}
 
+	/** Gets the number of samples between neighbouring samples of a channel. */
+	private int getStride(final IFD ifd) throws FormatException {
+		final int[] bitsPerSample = ifd.getBitsPerSample();
+		if (ifd.getPlanarConfiguration() == 2 ||
+			bitsPerSample[bitsPerSample.length - 1] == 0)
+		{
+			return 1;
+		}
+		return bitsPerSample.length;
+	}
+
+	private byte[] getRowBuffer(final int length) {
+		byte[] buffer = ROW_BUFFER.get();
+		if (buffer == null || buffer.length < length) {
+			buffer = new byte[length];
+			ROW_BUFFER.set(buffer);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Replaces each sample of a row with its difference from the previous sample
+	 * of the same channel.
+	 */
+	private static void difference(final byte[] buf, final int off,
+		final int len, final int stride, final int bytes, final boolean little)
+	{
+		final int step = stride * bytes;
+		final int end = off + len - len % bytes;
+		switch (bytes) {
+			case 1:
+				for (int b = end - 1; b >= off + step; b--) {
+					buf[b] -= buf[b - step];
+				}
+				break;
+			case 2:
+				for (int b = end - 2; b >= off + step; b -= 2) {
+					putShort(buf, b, getShort(buf, b, little) - getShort(buf, b - step,
+						little), little);
+				}
+				break;
+			case 4:
+				for (int b = end - 4; b >= off + step; b -= 4) {
+					putInt(buf, b, getInt(buf, b, little) - getInt(buf, b - step,
+						little), little);
+				}
+				break;
+			case 8:
+				for (int b = end - 8; b >= off + step; b -= 8) {
+					putLong(buf, b, getLong(buf, b, little) - getLong(buf, b - step,
+						little), little);
+				}
+				break;
+			default:
+				for (int b = end - bytes; b >= off + step; b -= bytes) {
+					putBytes(buf, b, bytes, getBytes(buf, b, bytes, little) - getBytes(
+						buf, b - step, bytes, little), little);
+				}
+		}
+	}
+
+	/** Reverses {@link #difference(byte[], int, int, int, int, boolean)}. */
+	private static void undifference(final byte[] buf, final int off,
+		final int len, final int stride, final int bytes, final boolean little)
+	{
+		final int step = stride * bytes;
+		final int end = off + len - len % bytes;
+		switch (bytes) {
+			case 1:
+				for (int b = off + step; b < end; b++) {
+					buf[b] += buf[b - step];
+				}
+				break;
+			case 2:
+				for (int b = off + step; b < end; b += 2) {
+					putShort(buf, b, getShort(buf, b, little) + getShort(buf, b - step,
+						little), little);
+				}
+				break;
+			case 4:
+				for (int b = off + step; b < end; b += 4) {
+					putInt(buf, b, getInt(buf, b, little) + getInt(buf, b - step,
+						little), little);
+				}
+				break;
+			case 8:
+				for (int b = off + step; b < end; b += 8) {
+					putLong(buf, b, getLong(buf, b, little) + getLong(buf, b - step,
+						little), little);
+				}
+				break;
+			default:
+				for (int b = off + step; b < end; b += bytes) {
+					putBytes(buf, b, bytes, getBytes(buf, b, bytes, little) + getBytes(
+						buf, b - step, bytes, little), little);
+				}
+		}
+	}
+
+	/**
+	 * Applies the floating point predictor to a row: the bytes of its samples
+	 * are split into planes, most significant first, which are then differenced
+	 * byte by byte.
+	 */
+	private static void differenceFloatingPoint(final byte[] buf,
+		final int off, final int len, final int stride, final int bytes,
+		final boolean little, final byte[] scratch)
+	{
+		final int count = len / bytes;
+		for (int plane = 0; plane < bytes; plane++) {
+			final int src = off + (little ? bytes - 1 - plane : plane);
+			final int dest = plane * count;
+			for (int i = 0; i < count; i++) {
+				scratch[dest + i] = buf[src + i * bytes];
+			}
+		}
+		buf[off] = scratch[0];
+		for (int i = 1; i < len; i++) {
+			buf[off + i] = (byte) (scratch[i] - (i < stride ? 0 : scratch[i -
+				stride]));
+		}
+	}
+
+	/**
+	 * Reverses
+	 * {@link #differenceFloatingPoint(byte[], int, int, int, int, boolean, byte[])}.
+	 */
+	private static void undifferenceFloatingPoint(final byte[] buf,
+		final int off, final int len, final int stride, final int bytes,
+		final boolean little, final byte[] scratch)
+	{
+		final int count = len / bytes;
+		System.arraycopy(buf, off, scratch, 0, Math.min(stride, len));
+		for (int i = stride; i < len; i++) {
+			scratch[i] = (byte) (buf[off + i] + scratch[i - stride]);
+		}
+		for (int plane = 0; plane < bytes; plane++) {
+			final int dest = off + (little ? bytes - 1 - plane : plane);
+			final int src = plane * count;
+			for (int i = 0; i < count; i++) {
+				buf[dest + i * bytes] = scratch[src + i];
+			}
+		}
+	}
+
+	private static int getShort(final byte[] buf, final int off,
+		final boolean little)
+	{
+		return little ? (buf[off] & 0xff) | buf[off + 1] << 8 : buf[off] << 8 |
+			(buf[off + 1] & 0xff);
+	}
+
+	private static void putShort(final byte[] buf, final int off,
+		final int value, final boolean little)
+	{
+		buf[off + (little ? 0 : 1)] = (byte) value;
+		buf[off + (little ? 1 : 0)] = (byte) (value >> 8);
+	}
+
+	private static int getInt(final byte[] buf, final int off,
+		final boolean little)
+	{
+		return (int) getBytes(buf, off, 4, little);
+	}
+
+	private static void putInt(final byte[] buf, final int off,
+		final int value, final boolean little)
+	{
+		putBytes(buf, off, 4, value, little);
+	}
+
+	private static long getLong(final byte[] buf, final int off,
+		final boolean little)
+	{
+		return getBytes(buf, off, 8, little);
+	}
+
+	private static void putLong(final byte[] buf, final int off,
+		final long value, final boolean little)
+	{
+		putBytes(buf, off, 8, value, little);
+	}
+
+	private static long getBytes(final byte[] buf, final int off,
+		final int bytes, final boolean little)
+	{
+		long value = 0;
+		for (int i = 0; i < bytes; i++) {
+			final int b = buf[off + (little ? bytes - 1 - i : i)] & 0xff;
+			value = value << 8 | b;
+		}
+		return value;
+	}
+
+	private static void putBytes(final byte[] buf, final int off,
+		final int bytes, long value, final boolean little)
+	{
+		for (int i = 0; i < bytes; i++) {
+			buf[off + (little ? i : bytes - 1 - i)] = (byte) value;
+			value >>= 8;
+		}
+	}
+
 }
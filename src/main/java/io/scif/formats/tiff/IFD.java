@@ -33,22 +33,46 @@ import io.scif.FormatException;
 import io.scif.util.FormatTools;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import org.scijava.log.LogService;
 import org.scijava.util.DebugUtils;
 
 /**
  * Data structure for working with TIFF Image File Directories (IFDs).
+ * <p>
+ * Directory entries are kept in a pair of parallel arrays sorted by tag, rather
+ * than in a hash table of boxed keys. A typical IFD has a few dozen entries at
+ * most, so a binary search over the primitive tag array is as fast as hashing,
+ * while the per-entry overhead drops from a map node plus a boxed key to a
+ * single int. Files with hundreds of thousands of planes therefore need far
+ * less memory to hold their IFD lists.
+ * </p>
+ * <p>
+ * Values are stored as they are put. Strip and tile offsets and byte counts
+ * are already primitive {@code long[]} arrays; scalar values such as the image
+ * width and length stay boxed, since {@link #getIFDValue(int)} would otherwise
+ * have to box them again on every read. Common small scalars share the JVM's
+ * cached boxes.
+ * </p>
  *
  * @author Curtis Rueden
  * @author Eric Kjellman
  * @author Melissa Linkert
  * @author Chris Allan
  */
-public class IFD extends HashMap<Integer, Object> {
+public class IFD extends AbstractMap<Integer, Object> implements Cloneable,
+	Serializable
+{
 
 	// -- Constants --
 
@@ -59,6 +83,8 @@ public class IFD extends HashMap<Integer, Object> {
 
 	public static final int REUSE = 3;
 
+	public static final int IFD_OFFSET = 4;
+
 	// IFD tags
 	public static final int NEW_SUBFILE_TYPE = 254;
 
@@ -321,20 +347,44 @@ public class IFD extends HashMap<Integer, Object> {
 
 	public static final int SUBJECT_DISTANCE_RANGE = 41996;
 
+	/** Initial capacity of the directory entry arrays. */
+	private static final int DEFAULT_CAPACITY = 8;
+
+	private static final long serialVersionUID = 6280925845290493012L;
+
 	// -- Fields --
 
-	private final LogService log;
+	private final transient LogService log;
+
+	/** Tags of the directory entries, in ascending order. */
+	private int[] tags;
+
+	/** Values of the directory entries, parallel to {@link #tags}. */
+	private Object[] values;
+
+	/** Number of directory entries. */
+	private int size;
+
+	/** Number of structural modifications, for fail-fast iteration. */
+	private transient int modCount;
+
+	private transient Set<Map.Entry<Integer, Object>> entrySet;
 
 	// -- Constructors --
 
 	public IFD(final LogService log) {
 		super();
 		this.log = log;
+		tags = new int[DEFAULT_CAPACITY];
+		values = new Object[DEFAULT_CAPACITY];
 	}
 
 	public IFD(final IFD ifd, final LogService log) {
-		super(ifd);
+		super();
 		this.log = log;
+		size = ifd.size;
+		tags = Arrays.copyOf(ifd.tags, Math.max(size, DEFAULT_CAPACITY));
+		values = Arrays.copyOf(ifd.values, tags.length);
 	}
 
 	// -- Tag retrieval methods --
@@ -351,7 +401,8 @@ public class IFD extends HashMap<Integer, Object> {
 
 	/** Gets the given directory entry value from this IFD. */
 	public Object getIFDValue(final int tag) {
-		return get(new Integer(tag));
+		final int index = indexOf(tag);
+		return index < 0 ? null : values[index];
 	}
 
 	/**
@@ -361,7 +412,7 @@ public class IFD extends HashMap<Integer, Object> {
 	public Object getIFDValue(final int tag, final Class<?> checkClass)
 		throws FormatException
 	{
-		Object value = get(new Integer(tag));
+		Object value = getIFDValue(tag);
 		if (checkClass != null && value != null && !checkClass.isInstance(value)) {
 			// wrap object in array of length 1, if appropriate
 			final Class<?> cType = checkClass.getComponentType();
@@ -654,8 +705,8 @@ public class IFD extends HashMap<Integer, Object> {
 	}
 
 	public boolean isTiled() {
-		final Object offsets = get(new Integer(STRIP_OFFSETS));
-		final Object tileWidth = get(new Integer(TILE_WIDTH));
+		final Object offsets = getIFDValue(STRIP_OFFSETS);
+		final Object tileWidth = getIFDValue(TILE_WIDTH);
 		return offsets == null && tileWidth != null;
 	}
 
@@ -888,11 +939,8 @@ public class IFD extends HashMap<Integer, Object> {
 		long[] offsets = null;
 		final OnDemandLongArray compressedOffsets = getOnDemandStripOffsets();
 		if (compressedOffsets != null) {
-			offsets = new long[(int) compressedOffsets.size()];
 			try {
-				for (int q = 0; q < offsets.length; q++) {
-					offsets[q] = compressedOffsets.get(q);
-				}
+				offsets = compressedOffsets.toArray();
 			}
 			catch (final IOException e) {
 				throw new FormatException("Failed to retrieve offset", e);
@@ -1096,22 +1144,73 @@ public class IFD extends HashMap<Integer, Object> {
 
 	/** Adds a directory entry to this IFD. */
 	public void putIFDValue(final int tag, final Object value) {
-		put(new Integer(tag), value);
+		putValue(tag, value);
 	}
 
 	/** Adds a directory entry of type BYTE to this IFD. */
 	public void putIFDValue(final int tag, final short value) {
-		putIFDValue(tag, new Short(value));
+		putIFDValue(tag, Short.valueOf(value));
 	}
 
 	/** Adds a directory entry of type SHORT to this IFD. */
 	public void putIFDValue(final int tag, final int value) {
-		putIFDValue(tag, new Integer(value));
+		putIFDValue(tag, Integer.valueOf(value));
 	}
 
 	/** Adds a directory entry of type LONG to this IFD. */
 	public void putIFDValue(final int tag, final long value) {
-		putIFDValue(tag, new Long(value));
+		putIFDValue(tag, Long.valueOf(value));
+	}
+
+	// -- Map API methods --
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(final Object key) {
+		return key instanceof Integer && indexOf(((Integer) key).intValue()) >= 0;
+	}
+
+	@Override
+	public Object get(final Object key) {
+		if (!(key instanceof Integer)) return null;
+		return getIFDValue(((Integer) key).intValue());
+	}
+
+	@Override
+	public Object put(final Integer key, final Object value) {
+		return putValue(key.intValue(), value);
+	}
+
+	@Override
+	public Object remove(final Object key) {
+		if (!(key instanceof Integer)) return null;
+		final int index = indexOf(((Integer) key).intValue());
+		if (index < 0) return null;
+		final Object old = values[index];
+		removeAt(index);
+		return old;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, Object>> entrySet() {
+		if (entrySet == null) entrySet = new EntrySet();
+		return entrySet;
+	}
+
+	@Override
+	public IFD clone() {
+		return new IFD(this, log);
 	}
 
 	// -- Debugging --
@@ -1164,4 +1263,169 @@ public class IFD extends HashMap<Integer, Object> {
 		return DebugUtils.getFieldName(IFD.class, value);
 	}
 
+	// -- Helper methods --
+
+	/** Gets the index of the given tag, or a negative number if absent. */
+	private int indexOf(final int tag) {
+		return Arrays.binarySearch(tags, 0, size, tag);
+	}
+
+	private Object putValue(final int tag, final Object value) {
+		final Object v = canonicalize(value);
+		int index = indexOf(tag);
+		if (index >= 0) {
+			final Object old = values[index];
+			values[index] = v;
+			return old;
+		}
+		index = -index - 1;
+		if (size == tags.length) {
+			final int capacity = size + (size >> 1) + 1;
+			tags = Arrays.copyOf(tags, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		System.arraycopy(tags, index, tags, index + 1, size - index);
+		System.arraycopy(values, index, values, index + 1, size - index);
+		tags[index] = tag;
+		values[index] = v;
+		size++;
+		modCount++;
+		return null;
+	}
+
+	private void removeAt(final int index) {
+		System.arraycopy(tags, index + 1, tags, index, size - index - 1);
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		values[--size] = null;
+		modCount++;
+	}
+
+	/**
+	 * Replaces small boxed scalars with the shared instances from the JVM's box
+	 * caches, so that the many IFDs of a large file do not each hold their own
+	 * copies of common values such as compression and sample counts.
+	 */
+	private static Object canonicalize(final Object value) {
+		if (value instanceof Integer) {
+			final int v = ((Integer) value).intValue();
+			if (v >= -128 && v <= 127) return Integer.valueOf(v);
+		}
+		else if (value instanceof Long) {
+			final long v = ((Long) value).longValue();
+			if (v >= -128 && v <= 127) return Long.valueOf(v);
+		}
+		else if (value instanceof Short) {
+			final short v = ((Short) value).shortValue();
+			if (v >= -128 && v <= 127) return Short.valueOf(v);
+		}
+		else if (value instanceof Boolean) {
+			return Boolean.valueOf(((Boolean) value).booleanValue());
+		}
+		return value;
+	}
+
+	// -- Helper classes --
+
+	private class EntrySet extends AbstractSet<Map.Entry<Integer, Object>> {
+
+		@Override
+		public Iterator<Map.Entry<Integer, Object>> iterator() {
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			IFD.this.clear();
+		}
+	}
+
+	private class EntryIterator implements Iterator<Map.Entry<Integer, Object>> {
+
+		private int next;
+
+		private int last = -1;
+
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		@Override
+		public Map.Entry<Integer, Object> next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= size) throw new NoSuchElementException();
+			last = next++;
+			return new TagEntry(last);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) throw new IllegalStateException();
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			removeAt(last);
+			next = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	private class TagEntry implements Map.Entry<Integer, Object> {
+
+		private final int tag;
+
+		private Object value;
+
+		private TagEntry(final int index) {
+			tag = tags[index];
+			value = values[index];
+		}
+
+		@Override
+		public Integer getKey() {
+			return tag;
+		}
+
+		@Override
+		public Object getValue() {
+			return value;
+		}
+
+		@Override
+		public Object setValue(final Object v) {
+			final Object old = value;
+			value = v;
+			putValue(tag, v);
+			return old;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			final Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			return getKey().equals(e.getKey()) && (value == null ? e
+				.getValue() == null : value.equals(e.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			return tag ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return tag + "=" + value;
+		}
+	}
+
 }
@@ -0,0 +1,114 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only memory mapping of a whole file, used by {@link TiffParser} to
+ * transfer strip and tile data straight into its destination buffers.
+ * <p>
+ * Files larger than a single {@link MappedByteBuffer} can address are mapped
+ * as a series of consecutive segments. Reads are thread-safe.
+ * </p>
+ */
+final class MappedFile {
+
+	/** Size of each mapped segment (1 GB). */
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	/** Length of the file at the time it was mapped. */
+	private final long length;
+
+	/** Mapped segments of the file, in order. */
+	private final MappedByteBuffer[] segments;
+
+	/**
+	 * Maps the given file into memory.
+	 *
+	 * @param file The file to map.
+	 * @throws IOException If the file cannot be mapped.
+	 */
+	MappedFile(final File file) throws IOException {
+		try (final FileChannel channel = FileChannel.open(file.toPath(),
+			StandardOpenOption.READ))
+		{
+			length = channel.size();
+			segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) /
+				SEGMENT_SIZE)];
+			for (int i = 0; i < segments.length; i++) {
+				final long start = i * SEGMENT_SIZE;
+				segments[i] = channel.map(MapMode.READ_ONLY, start, Math.min(
+					SEGMENT_SIZE, length - start));
+			}
+		}
+	}
+
+	/** Gets the length of the mapped file. */
+	long length() {
+		return length;
+	}
+
+	/**
+	 * Copies bytes from the mapped file into the given buffer.
+	 *
+	 * @param offset File offset of the first byte to copy.
+	 * @param buf The destination buffer.
+	 * @param off Offset into {@code buf} of the first byte to copy.
+	 * @param len Maximum number of bytes to copy.
+	 * @return The number of bytes copied, which is less than {@code len} only
+	 *         if the end of the file is reached, or -1 if {@code offset} lies
+	 *         beyond the end of the file.
+	 */
+	int read(long offset, final byte[] buf, final int off, int len) {
+		if (offset < 0 || offset >= length) return -1;
+		len = (int) Math.min(len, length - offset);
+		int read = 0;
+		while (read < len) {
+			// NB: duplicate, so that concurrent reads do not share a position
+			final ByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)]
+				.duplicate();
+			final int position = (int) (offset % SEGMENT_SIZE);
+			final int n = Math.min(len - read, segment.capacity() - position);
+			segment.position(position);
+			segment.get(buf, off + read, n);
+			read += n;
+			offset += n;
+		}
+		return read;
+	}
+
+}
@@ -30,36 +30,132 @@
 package io.scif.formats.tiff;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.scijava.io.handle.DataHandle;
 import org.scijava.io.location.Location;
 
 /**
+ * An array of unsigned integers that is read from a stream when needed, rather
+ * than being held in memory, e.g. the strip offsets of a very large TIFF.
+ * <p>
+ * Values are read in fixed-size pages, of which a bounded number are cached
+ * in least-recently-used order, so that walking through the array costs one
+ * bulk read per page rather than several stream operations per value. Both
+ * 4-byte (LONG) and 8-byte (LONG8) values are supported.
+ * </p>
+ *
  * @author Melissa Linkert
  */
 public class OnDemandLongArray {
 
+	/** Number of values in each page. */
+	public static final int PAGE_SIZE = 4096;
+
+	/** Default maximum number of cached pages. */
+	public static final int DEFAULT_MAX_PAGES = 16;
+
 	private DataHandle<Location> stream;
 
 	private int size;
 
 	private long start;
 
+	private final int bytesPerValue;
+
+	private int maxPages = DEFAULT_MAX_PAGES;
+
+	/** Cached pages of values, in least- to most-recently used order. */
+	private final LinkedHashMap<Integer, long[]> pages = new LinkedHashMap<
+		Integer, long[]>(16, 0.75f, true)
+	{
+
+		@Override
+		protected boolean removeEldestEntry(
+			final Map.Entry<Integer, long[]> eldest)
+		{
+			return size() > maxPages;
+		}
+	};
+
+	/** Buffer into which pages are read. */
+	private byte[] pageBytes;
+
+	/**
+	 * Constructs an array of 8-byte values starting at the stream's current
+	 * offset.
+	 */
 	public OnDemandLongArray(final DataHandle<Location> in) throws IOException {
+		this(in, 8);
+	}
+
+	/**
+	 * Constructs an array of values starting at the stream's current offset.
+	 *
+	 * @param bytesPerValue Size of each value: 4 for LONG, or 8 for LONG8.
+	 */
+	public OnDemandLongArray(final DataHandle<Location> in,
+		final int bytesPerValue) throws IOException
+	{
+		if (bytesPerValue != 4 && bytesPerValue != 8) {
+			throw new IllegalArgumentException("Unsupported value size: " +
+				bytesPerValue);
+		}
 		stream = in;
 		start = stream.offset();
+		this.bytesPerValue = bytesPerValue;
 	}
 
 	public void setSize(final int size) {
 		this.size = size;
 	}
 
-	public long get(final int index) throws IOException {
-		final long fp = stream.offset();
-		stream.seek(start + index * 8);
-		final long value = stream.readLong();
-		stream.seek(fp);
-		return value;
+	/** Sets the maximum number of pages of values kept in memory. */
+	public synchronized void setMaxPages(final int maxPages) {
+		this.maxPages = Math.max(1, maxPages);
+		while (pages.size() > this.maxPages) {
+			pages.remove(pages.keySet().iterator().next());
+		}
+	}
+
+	/** Gets the maximum number of pages of values kept in memory. */
+	public int getMaxPages() {
+		return maxPages;
+	}
+
+	/** Gets the offset in the stream of the first value. */
+	public long getOffset() {
+		return start;
+	}
+
+	/** Gets the size in bytes of each value. */
+	public int getBytesPerValue() {
+		return bytesPerValue;
+	}
+
+	public synchronized long get(final int index) throws IOException {
+		final Integer page = index / PAGE_SIZE;
+		long[] values = pages.get(page);
+		if (values == null) {
+			values = readPage(page);
+			pages.put(page, values);
+		}
+		return values[index % PAGE_SIZE];
+	}
+
+	/** Reads every value into a new array. */
+	public synchronized long[] toArray() throws IOException {
+		final long[] values = new long[size];
+		for (int page = 0; page * PAGE_SIZE < size; page++) {
+			long[] pageValues = pages.get(page);
+			if (pageValues == null) pageValues = readPage(page);
+			System.arraycopy(pageValues, 0, values, page * PAGE_SIZE, Math.min(
+				PAGE_SIZE, size - page * PAGE_SIZE));
+		}
+		return values;
 	}
 
 	public long size() {
@@ -71,6 +167,51 @@ public class OnDemandLongArray {
 		stream = null;
 		size = 0;
 		start = 0;
+		pages.clear();
+		pageBytes = null;
+	}
+
+	// -- Helper methods --
+
+	/** Reads the given page of values, restoring the stream's offset after. */
+	private long[] readPage(final int page) throws IOException {
+		final int first = page * PAGE_SIZE;
+		final int count = Math.max(0, Math.min(PAGE_SIZE, size - first));
+		final long[] values = new long[count];
+		if (count == 0) return values;
+
+		final int length = count * bytesPerValue;
+		if (pageBytes == null || pageBytes.length < length) {
+			pageBytes = new byte[length];
+		}
+		final long fp = stream.offset();
+		int read = 0;
+		try {
+			stream.seek(start + (long) first * bytesPerValue);
+			while (read < length) {
+				final int n = stream.read(pageBytes, read, length - read);
+				if (n <= 0) break;
+				read += n;
+			}
+		}
+		finally {
+			stream.seek(fp);
+		}
+
+		final ByteBuffer buffer = ByteBuffer.wrap(pageBytes, 0, read).order(stream
+			.isLittleEndian() ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		final int n = read / bytesPerValue;
+		if (bytesPerValue == 8) {
+			for (int i = 0; i < n; i++) {
+				values[i] = buffer.getLong(i * 8);
+			}
+		}
+		else {
+			for (int i = 0; i < n; i++) {
+				values[i] = buffer.getInt(i * 4) & 0xffffffffL;
+			}
+		}
+		return values;
 	}
 
 }
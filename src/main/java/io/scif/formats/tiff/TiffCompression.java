@@ -37,12 +37,14 @@ import io.scif.codec.CodecService;
 import io.scif.codec.JPEG2000Codec;
 import io.scif.codec.JPEG2000CodecOptions;
 import io.scif.codec.JPEGCodec;
+import io.scif.codec.LZ4Codec;
 import io.scif.codec.LZWCodec;
 import io.scif.codec.LuraWaveCodec;
 import io.scif.codec.NikonCodec;
 import io.scif.codec.PackbitsCodec;
 import io.scif.codec.PassthroughCodec;
 import io.scif.codec.ZlibCodec;
+import io.scif.codec.ZstdCodec;
 import io.scif.enumeration.CodedEnum;
 import io.scif.enumeration.EnumException;
 
@@ -187,8 +189,13 @@ public enum TiffCompression implements CodedEnum {
 			}
 
 		},
-		NIKON(34713, NikonCodec.class, "Nikon"), LURAWAVE(65535,
-			LuraWaveCodec.class, "LuraWave");
+		NIKON(34713, NikonCodec.class, "Nikon"),
+		// 50000 is libtiff's Zstandard code; 34926 an earlier one, still read
+		OLD_ZSTD(34926, ZstdCodec.class, "Zstandard"), ZSTD(50000,
+			ZstdCodec.class, "Zstandard"),
+		// no common code exists for LZ4, so other readers may not know this one
+		LZ4(50004, LZ4Codec.class, "LZ4"), LURAWAVE(65535, LuraWaveCodec.class,
+			"LuraWave");
 
 	// -- Fields --
 
@@ -274,6 +281,25 @@ public enum TiffCompression implements CodedEnum {
 		return codec.decompress(input, options);
 	}
 
+	/**
+	 * Decodes a strip of data into the given buffer.
+	 *
+	 * @return The number of bytes decoded.
+	 * @see Codec#decompress(ByteBuffer, byte[], int, int, CodecOptions)
+	 */
+	public int decompress(final CodecService codecService, final ByteBuffer input,
+		final byte[] output, final int offset, final int length,
+		final CodecOptions options) throws FormatException
+	{
+		if (codecClass == null) {
+			throw new UnsupportedCompressionException("Sorry, " + getCodecName() +
+				" compression mode is not supported");
+		}
+
+		final Codec codec = codecService.getCodec(codecClass);
+		return codec.decompress(input, output, offset, length, options);
+	}
+
 	// -- TiffCompression methods - compression --
 
 	/**
@@ -0,0 +1,513 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import io.scif.common.Constants;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+import org.scijava.log.LogService;
+
+/**
+ * A persistent, on-disk cache of the parsed IFDs of TIFF files.
+ * <p>
+ * Walking the IFD chain of a TIFF with many thousands of planes means one
+ * small read per directory, which dominates the time needed to open it. This
+ * class stores the parsed {@link IFDList} of a file in an index file within a
+ * cache directory, so that reopening the same file can load every IFD with a
+ * single sequential read. An index is only used while the path, length and
+ * modification time of the TIFF match those recorded when it was written.
+ * </p>
+ * <p>
+ * Index files are written to a temporary file first and then moved into
+ * place, so a cache directory may be shared by concurrent processes. Any
+ * failure to read or write an index is logged and otherwise ignored.
+ * </p>
+ */
+public class TiffIndexCache {
+
+	// -- Constants --
+
+	private static final int MAGIC = 0x49464458; // "IFDX"
+
+	private static final int VERSION = 1;
+
+	private static final String SUFFIX = ".ifdx";
+
+	// value types
+	private static final int NULL = 0;
+
+	private static final int BOOLEAN = 1;
+
+	private static final int BYTE = 2;
+
+	private static final int SHORT = 3;
+
+	private static final int INT = 4;
+
+	private static final int LONG = 5;
+
+	private static final int FLOAT = 6;
+
+	private static final int DOUBLE = 7;
+
+	private static final int STRING = 8;
+
+	private static final int RATIONAL = 9;
+
+	private static final int ENTRY = 10;
+
+	private static final int BYTE_ARRAY = 11;
+
+	private static final int SHORT_ARRAY = 12;
+
+	private static final int INT_ARRAY = 13;
+
+	private static final int LONG_ARRAY = 14;
+
+	private static final int FLOAT_ARRAY = 15;
+
+	private static final int DOUBLE_ARRAY = 16;
+
+	private static final int STRING_ARRAY = 17;
+
+	private static final int RATIONAL_ARRAY = 18;
+
+	// -- Fields --
+
+	private final File directory;
+
+	private final LogService log;
+
+	// -- Constructor --
+
+	/**
+	 * Constructs a cache storing its index files in the given directory, which
+	 * is created on demand.
+	 */
+	public TiffIndexCache(final File directory, final LogService log) {
+		this.directory = directory;
+		this.log = log;
+	}
+
+	// -- TiffIndexCache methods --
+
+	/** Gets the directory in which index files are stored. */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Loads the cached IFDs of the given TIFF file.
+	 *
+	 * @return The IFDs of the file, or null if no up-to-date index exists.
+	 */
+	public IFDList load(final File file) {
+		final File index = getIndexFile(file);
+		if (index == null || !index.isFile()) return null;
+		// the whole index is read at once, so that every length read from it can
+		// be checked against the bytes that are left
+		try (final DataInputStream in = new DataInputStream(
+			new ByteArrayInputStream(Files.readAllBytes(index.toPath()))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a TIFF index of version " + VERSION);
+			}
+			if (!in.readUTF().equals(file.getAbsolutePath()) || in
+				.readLong() != file.length() || in.readLong() != file.lastModified())
+			{
+				return null;
+			}
+			// each IFD holds at least its entry count
+			final int ifdCount = readLength(in, 4);
+			final IFDList ifds = new IFDList();
+			for (int i = 0; i < ifdCount; i++) {
+				final IFD ifd = new IFD(log);
+				// each entry holds at least its tag and value type
+				final int entryCount = readLength(in, 5);
+				for (int e = 0; e < entryCount; e++) {
+					final int tag = in.readInt();
+					ifd.putIFDValue(tag, readValue(in));
+				}
+				ifds.add(ifd);
+			}
+			return ifds;
+		}
+		catch (final IOException | RuntimeException exc) {
+			// a corrupt or foreign index would otherwise fail every time
+			debug("Discarding unreadable TIFF index " + index, exc);
+			index.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the given IFDs as the index of the given TIFF file, replacing any
+	 * existing index.
+	 *
+	 * @return True if the index was written; false if it could not be, e.g.
+	 *         because an IFD holds a value that cannot be persisted.
+	 */
+	public boolean save(final File file, final IFDList ifds) {
+		final File index = getIndexFile(file);
+		if (index == null) return false;
+		if (!directory.isDirectory() && !directory.mkdirs() && !directory
+			.isDirectory())
+		{
+			debug("Could not create TIFF index directory " + directory, null);
+			return false;
+		}
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(index.getName(), ".tmp", directory);
+			try (final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(file.getAbsolutePath());
+				out.writeLong(file.length());
+				out.writeLong(file.lastModified());
+				out.writeInt(ifds.size());
+				for (final IFD ifd : ifds) {
+					out.writeInt(ifd.size());
+					for (final Map.Entry<Integer, Object> e : ifd.entrySet()) {
+						out.writeInt(e.getKey());
+						Object value = e.getValue();
+						if (value instanceof OnDemandLongArray) {
+							// persist a reference to the values, as they were found
+							final OnDemandLongArray array = (OnDemandLongArray) value;
+							value = new TiffIFDEntry(e.getKey(), array
+								.getBytesPerValue() == 8 ? IFDType.LONG8 : IFDType.LONG,
+								(int) array.size(), array.getOffset());
+						}
+						if (!writeValue(out, value)) {
+							debug("Not indexing " + file + ": cannot persist " + IFD
+								.getIFDTagName(e.getKey()), null);
+							return false;
+						}
+					}
+				}
+			}
+			try {
+				Files.move(tmp.toPath(), index.toPath(),
+					StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (final AtomicMoveNotSupportedException exc) {
+				Files.move(tmp.toPath(), index.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+			}
+			tmp = null;
+			return true;
+		}
+		catch (final IOException exc) {
+			debug("Could not write TIFF index " + index, exc);
+			return false;
+		}
+		finally {
+			if (tmp != null) tmp.delete();
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Logs a failure, if this cache has a log. */
+	private void debug(final String message, final Throwable exc) {
+		if (log != null) log.debug(message, exc);
+	}
+
+	/** Gets the index file of the given TIFF, named after its path's digest. */
+	private File getIndexFile(final File file) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			final byte[] hash = digest.digest(file.getAbsolutePath().getBytes(
+				Constants.ENCODING));
+			final StringBuilder sb = new StringBuilder();
+			for (final byte b : hash) {
+				sb.append(String.format("%02x", b & 0xff));
+			}
+			return new File(directory, sb.append(SUFFIX).toString());
+		}
+		catch (final NoSuchAlgorithmException | IOException exc) {
+			debug("Could not name TIFF index", exc);
+			return null;
+		}
+	}
+
+	private static boolean writeValue(final DataOutputStream out,
+		final Object value) throws IOException
+	{
+		if (value == null) {
+			out.writeByte(NULL);
+		}
+		else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		}
+		else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			out.writeShort((Short) value);
+		}
+		else if (value instanceof Integer) {
+			out.writeByte(INT);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		}
+		else if (value instanceof TiffRational) {
+			out.writeByte(RATIONAL);
+			writeRational(out, (TiffRational) value);
+		}
+		else if (value instanceof TiffIFDEntry) {
+			final TiffIFDEntry entry = (TiffIFDEntry) value;
+			out.writeByte(ENTRY);
+			out.writeInt(entry.getTag());
+			out.writeInt(entry.getType().getCode());
+			out.writeInt(entry.getValueCount());
+			out.writeLong(entry.getValueOffset());
+		}
+		else if (value instanceof byte[]) {
+			final byte[] v = (byte[]) value;
+			out.writeByte(BYTE_ARRAY);
+			out.writeInt(v.length);
+			out.write(v);
+		}
+		else if (value instanceof short[]) {
+			final short[] v = (short[]) value;
+			out.writeByte(SHORT_ARRAY);
+			out.writeInt(v.length);
+			for (final short s : v) out.writeShort(s);
+		}
+		else if (value instanceof int[]) {
+			final int[] v = (int[]) value;
+			out.writeByte(INT_ARRAY);
+			out.writeInt(v.length);
+			for (final int i : v) out.writeInt(i);
+		}
+		else if (value instanceof long[]) {
+			final long[] v = (long[]) value;
+			out.writeByte(LONG_ARRAY);
+			out.writeInt(v.length);
+			for (final long l : v) out.writeLong(l);
+		}
+		else if (value instanceof float[]) {
+			final float[] v = (float[]) value;
+			out.writeByte(FLOAT_ARRAY);
+			out.writeInt(v.length);
+			for (final float f : v) out.writeFloat(f);
+		}
+		else if (value instanceof double[]) {
+			final double[] v = (double[]) value;
+			out.writeByte(DOUBLE_ARRAY);
+			out.writeInt(v.length);
+			for (final double d : v) out.writeDouble(d);
+		}
+		else if (value instanceof String[]) {
+			final String[] v = (String[]) value;
+			out.writeByte(STRING_ARRAY);
+			out.writeInt(v.length);
+			for (final String s : v) writeString(out, s);
+		}
+		else if (value instanceof TiffRational[]) {
+			final TiffRational[] v = (TiffRational[]) value;
+			out.writeByte(RATIONAL_ARRAY);
+			out.writeInt(v.length);
+			for (final TiffRational r : v) writeRational(out, r);
+		}
+		else {
+			return false;
+		}
+		return true;
+	}
+
+	private static Object readValue(final DataInputStream in)
+		throws IOException
+	{
+		final int type = in.readByte();
+		switch (type) {
+			case NULL:
+				return null;
+			case BOOLEAN:
+				return in.readBoolean();
+			case BYTE:
+				return in.readByte();
+			case SHORT:
+				return in.readShort();
+			case INT:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case FLOAT:
+				return in.readFloat();
+			case DOUBLE:
+				return in.readDouble();
+			case STRING:
+				return readString(in);
+			case RATIONAL:
+				return readRational(in);
+			case ENTRY: {
+				final int tag = in.readInt();
+				final IFDType ifdType = IFDType.get(in.readInt());
+				final int count = in.readInt();
+				return new TiffIFDEntry(tag, ifdType, count, in.readLong());
+			}
+			case BYTE_ARRAY: {
+				final byte[] v = new byte[readLength(in, 1)];
+				in.readFully(v);
+				return v;
+			}
+			case SHORT_ARRAY: {
+				final short[] v = new short[readLength(in, 2)];
+				for (int i = 0; i < v.length; i++) v[i] = in.readShort();
+				return v;
+			}
+			case INT_ARRAY: {
+				final int[] v = new int[readLength(in, 4)];
+				for (int i = 0; i < v.length; i++) v[i] = in.readInt();
+				return v;
+			}
+			case LONG_ARRAY: {
+				final long[] v = new long[readLength(in, 8)];
+				for (int i = 0; i < v.length; i++) v[i] = in.readLong();
+				return v;
+			}
+			case FLOAT_ARRAY: {
+				final float[] v = new float[readLength(in, 4)];
+				for (int i = 0; i < v.length; i++) v[i] = in.readFloat();
+				return v;
+			}
+			case DOUBLE_ARRAY: {
+				final double[] v = new double[readLength(in, 8)];
+				for (int i = 0; i < v.length; i++) v[i] = in.readDouble();
+				return v;
+			}
+			case STRING_ARRAY: {
+				final String[] v = new String[readLength(in, 4)];
+				for (int i = 0; i < v.length; i++) v[i] = readString(in);
+				return v;
+			}
+			case RATIONAL_ARRAY: {
+				final TiffRational[] v = new TiffRational[readLength(in,
+					16)];
+				for (int i = 0; i < v.length; i++) v[i] = readRational(in);
+				return v;
+			}
+			default:
+				throw new IOException("Unknown index value type: " + type);
+		}
+	}
+
+	/** Writes a string of any length, unlike {@link DataOutputStream#writeUTF}. */
+	private static void writeString(final DataOutputStream out, final String s)
+		throws IOException
+	{
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		final byte[] bytes = s.getBytes(Constants.ENCODING);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(final DataInputStream in)
+		throws IOException
+	{
+		final int length = in.readInt();
+		if (length < 0) return null;
+		final byte[] bytes = new byte[checkLength(in, length, 1)];
+		in.readFully(bytes);
+		return new String(bytes, Constants.ENCODING);
+	}
+
+	/**
+	 * Reads the length of an array, checking that the index still holds enough
+	 * bytes for that many elements of the given size.
+	 */
+	private static int readLength(final DataInputStream in,
+		final int elementSize) throws IOException
+	{
+		return checkLength(in, in.readInt(), elementSize);
+	}
+
+	private static int checkLength(final DataInputStream in, final int length,
+		final int elementSize) throws IOException
+	{
+		if (length < 0 || (long) length * elementSize > in.available()) {
+			throw new IOException("Invalid length in TIFF index: " + length);
+		}
+		return length;
+	}
+
+	private static void writeRational(final DataOutputStream out,
+		final TiffRational r) throws IOException
+	{
+		out.writeLong(r.getNumerator());
+		out.writeLong(r.getDenominator());
+	}
+
+	private static TiffRational readRational(final DataInputStream in)
+		throws IOException
+	{
+		final long numer = in.readLong();
+		return new TiffRational(numer, in.readLong());
+	}
+
+}
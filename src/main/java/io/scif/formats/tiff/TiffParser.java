@@ -33,17 +33,27 @@ import io.scif.FormatException;
 import io.scif.SCIFIO;
 import io.scif.codec.BitBuffer;
 import io.scif.codec.CodecOptions;
+import io.scif.codec.JPEG2000CodecOptions;
 import io.scif.common.Constants;
 import io.scif.enumeration.EnumException;
 
+import java.awt.Rectangle;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.scijava.AbstractContextual;
 import org.scijava.Context;
 import org.scijava.io.handle.DataHandle;
 import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
 import org.scijava.io.location.Location;
 import org.scijava.log.LogService;
 import org.scijava.util.Bytes;
@@ -59,6 +69,31 @@ import org.scijava.util.IntRect;
  */
 public class TiffParser extends AbstractContextual {
 
+	// -- Constants --
+
+	/** Maximum number of bytes of IFD values to read in a single batch. */
+	private static final int MAX_BATCH_SIZE = 1024 * 1024;
+
+	/**
+	 * Maximum number of unused bytes between two IFD values read in the same
+	 * batch.
+	 */
+	private static final int MAX_BATCH_GAP = 16 * 1024;
+
+	/** Maximum number of bytes of contiguous tiles to read in a single run. */
+	private static final int MAX_RUN_SIZE = 16 * 1024 * 1024;
+
+	/** Largest tile for which a thread keeps its decoding buffers. */
+	private static final int MAX_SCRATCH_SIZE = 16 * 1024 * 1024;
+
+	/** Reusable buffer of each thread holding a compressed tile. */
+	private static final ThreadLocal<byte[]> COMPRESSED_BUFFER =
+		new ThreadLocal<>();
+
+	/** Reusable buffer of each thread holding a decompressed tile. */
+	private static final ThreadLocal<byte[]> DECOMPRESSED_BUFFER =
+		new ThreadLocal<>();
+
 	// -- Fields --
 
 	/** Input source from which to parse TIFF data. */
@@ -67,6 +102,9 @@ public class TiffParser extends AbstractContextual {
 	/** Cached tile buffer to avoid re-allocations when reading tiles. */
 	private byte[] cachedTileBuffer;
 
+	/** Reusable buffer holding a run of contiguous compressed tiles. */
+	private byte[] runBuffer;
+
 	/** Whether or not the TIFF file contains BigTIFF data. */
 	private boolean bigTiff;
 
@@ -92,6 +130,21 @@ public class TiffParser extends AbstractContextual {
 	/** Codec options to be used when decoding compressed pixel data. */
 	private CodecOptions codecOptions = CodecOptions.getDefaultOptions();
 
+	/** Maximum number of threads to use when decoding the tiles of a plane. */
+	private int threadCount = 1;
+
+	/** Cache of decoded tiles, or null if decoded tiles are not cached. */
+	private TiffTileCache tileCache;
+
+	/** Memory mapping of the input file, or null if it is not mapped. */
+	private MappedFile mappedFile;
+
+	/**
+	 * Region of the image being read by {@link #getSamples}, when only the part
+	 * of each JPEG 2000 tile within it needs to be decoded; null otherwise.
+	 */
+	private IntRect j2kRegion;
+
 	// -- Constructors --
 
 	/** Constructs a new TIFF parser from the given file name. */
@@ -144,6 +197,66 @@ public class TiffParser extends AbstractContextual {
 		return codecOptions;
 	}
 
+	/**
+	 * Sets the maximum number of threads used by {@link #getSamples} to read and
+	 * decompress the tiles of a plane. With more than one thread, intersecting
+	 * tiles are decoded concurrently, each worker reading through its own handle
+	 * on the source.
+	 *
+	 * @param threadCount Maximum number of decoding threads; 1 to decode tiles
+	 *          serially on the calling thread.
+	 */
+	public void setThreadCount(final int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/** Gets the maximum number of threads used to decode the tiles of a plane. */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * Sets the cache consulted by {@link #getTile} before reading and decoding
+	 * a tile. The cache must only be shared with parsers of the same file.
+	 *
+	 * @param tileCache Cache of decoded tiles, or null to disable tile caching.
+	 */
+	public void setTileCache(final TiffTileCache tileCache) {
+		this.tileCache = tileCache;
+	}
+
+	/** Gets the cache of decoded tiles, or null if tiles are not cached. */
+	public TiffTileCache getTileCache() {
+		return tileCache;
+	}
+
+	/**
+	 * Sets whether or not strip and tile data should be read through a
+	 * read-only memory mapping of the input file, rather than through the input
+	 * handle. Pixel data is then copied straight from the mapping into the
+	 * destination buffers, avoiding a system call and an intermediate copy per
+	 * strip. This has no effect if the input is not a local file. The file
+	 * must not be modified while it is mapped.
+	 *
+	 * @param memoryMapping Whether or not to memory map the input file.
+	 * @throws IOException If the input file cannot be mapped.
+	 */
+	public void setMemoryMapping(final boolean memoryMapping)
+		throws IOException
+	{
+		if (!memoryMapping) {
+			mappedFile = null;
+		}
+		else if (mappedFile == null && in.get() instanceof FileLocation) {
+			mappedFile = new MappedFile(((FileLocation) in.get()).getFile());
+		}
+	}
+
+	/** Gets whether or not pixel data is read through a memory mapping. */
+	public boolean isMemoryMapping() {
+		return mappedFile != null;
+	}
+
 	/** Sets whether or not IFD entries should be cached. */
 	public void setDoCaching(final boolean doCaching) {
 		this.doCaching = doCaching;
@@ -378,6 +491,7 @@ public class TiffParser extends AbstractContextual {
 		ifd.put(new Integer(IFD.LITTLE_ENDIAN), Boolean.valueOf(in
 			.isLittleEndian()));
 		ifd.put(new Integer(IFD.BIG_TIFF), Boolean.valueOf(bigTiff));
+		ifd.put(new Integer(IFD.IFD_OFFSET), Long.valueOf(offset));
 
 		// read in directory entries for this IFD
 		log.trace("getIFDs: seeking IFD at " + offset);
@@ -389,17 +503,23 @@ public class TiffParser extends AbstractContextual {
 		final int bytesPerEntry = bigTiff ? TiffConstants.BIG_TIFF_BYTES_PER_ENTRY
 			: TiffConstants.BYTES_PER_ENTRY;
 		final int baseOffset = bigTiff ? 8 : 2;
+		final int threshhold = bigTiff ? 8 : 4;
+		final long inputLen = in.length();
+
+		// read the whole entry table, including the offset of the next IFD, in
+		// one go, and decode the entries from memory
+		final long tableOffset = offset + baseOffset;
+		final long tableLength = Math.min(numEntries * bytesPerEntry + (bigTiff ||
+			fakeBigTiff ? 8 : 4), inputLen - tableOffset);
+		final ByteBuffer table = wrap(readBytes(tableOffset, tableLength));
 
+		final List<TiffIFDEntry> entries = new ArrayList<>();
+		final List<Boolean> inline = new ArrayList<>();
 		for (int i = 0; i < numEntries; i++) {
-			in.seek(offset + baseOffset + bytesPerEntry * i);
+			final int position = i * bytesPerEntry;
+			if (position + bytesPerEntry > table.limit()) break;
 
-			TiffIFDEntry entry = null;
-			try {
-				entry = readTiffIFDEntry();
-			}
-			catch (final EnumException e) {
-				log.debug("", e);
-			}
+			TiffIFDEntry entry = readTiffIFDEntry(table, position, tableOffset);
 			if (entry == null) break;
 			int count = entry.getValueCount();
 			final int tag = entry.getTag();
@@ -408,13 +528,10 @@ public class TiffParser extends AbstractContextual {
 
 			if (count < 0 || bpe <= 0) {
 				// invalid data
-				in.skipBytes(bytesPerEntry - 4 - (bigTiff ? 8 : 4));
 				continue;
 			}
-			Object value = null;
 
-			final long inputLen = in.length();
-			if (count * bpe + pointer > inputLen) {
+			if ((long) count * bpe + pointer > inputLen) {
 				final int oldCount = count;
 				count = (int) ((inputLen - pointer) / bpe);
 				log.trace("getIFDs: truncated " + (oldCount - count) +
@@ -423,15 +540,39 @@ public class TiffParser extends AbstractContextual {
 				entry = new TiffIFDEntry(entry.getTag(), entry.getType(), count, entry
 					.getValueOffset());
 			}
-			if (count < 0 || count > in.length()) break;
+			if (count < 0 || count > inputLen) break;
+
+			entries.add(entry);
+			inline.add((long) entry.getValueCount() * bpe <= threshhold &&
+				pointer == tableOffset + position + bytesPerEntry - threshhold);
+		}
 
-			if (pointer != in.offset() && !doCaching) {
-				value = entry;
+		// values stored within the table are decoded directly; the remaining
+		// values are read in as few batches as possible
+		final Object[] values = new Object[entries.size()];
+		final List<TiffIFDEntry> outOfLine = new ArrayList<>();
+		final List<Integer> outOfLineIndices = new ArrayList<>();
+		for (int i = 0; i < values.length; i++) {
+			final TiffIFDEntry entry = entries.get(i);
+			if (inline.get(i)) {
+				values[i] = decodeIFDValue(table, (int) (entry.getValueOffset() -
+					tableOffset), entry);
+			}
+			else if (!doCaching) values[i] = entry;
+			else {
+				outOfLine.add(entry);
+				outOfLineIndices.add(i);
 			}
-			else value = getIFDValue(entry);
+		}
+		final Object[] outOfLineValues = getIFDValues(outOfLine);
+		for (int i = 0; i < outOfLineValues.length; i++) {
+			values[outOfLineIndices.get(i)] = outOfLineValues[i];
+		}
 
-			if (value != null && !ifd.containsKey(new Integer(tag))) {
-				ifd.put(new Integer(tag), value);
+		for (int i = 0; i < values.length; i++) {
+			final Integer tag = new Integer(entries.get(i).getTag());
+			if (values[i] != null && !ifd.containsKey(tag)) {
+				ifd.put(tag, values[i]);
 			}
 		}
 
@@ -449,11 +590,17 @@ public class TiffParser extends AbstractContextual {
 			}
 		}
 
+		final List<TiffIFDEntry> toRead = new ArrayList<>();
 		for (final TiffIFDEntry entry : entries) {
 			if (entry.getValueCount() < 10 * 1024 * 1024 || entry.getTag() < 32768) {
-				ifd.put(new Integer(entry.getTag()), getIFDValue(entry));
+				toRead.add(entry);
 			}
 		}
+
+		final Object[] values = getIFDValues(toRead);
+		for (int i = 0; i < values.length; i++) {
+			ifd.put(new Integer(toRead.get(i).getTag()), values[i]);
+		}
 	}
 
 	/** Retrieve the value corresponding to the given TiffIFDEntry. */
@@ -465,155 +612,20 @@ public class TiffParser extends AbstractContextual {
 		log.trace("Reading entry " + entry.getTag() + " from " + offset +
 			"; type=" + type + ", count=" + count);
 
-		if (offset >= in.length()) {
+		if (offset < 0 || offset >= in.length()) {
 			return null;
 		}
 
-		if (offset != in.offset()) {
+		if (isOnDemand(entry)) {
 			in.seek(offset);
+			final OnDemandLongArray offsets = new OnDemandLongArray(in, type
+				.getBytesPerElement());
+			offsets.setSize(count);
+			return offsets;
 		}
 
-		if (type == IFDType.BYTE) {
-			// 8-bit unsigned integer
-			if (count == 1) return new Short(in.readByte());
-			final byte[] bytes = new byte[count];
-			in.readFully(bytes);
-			// bytes are unsigned, so use shorts
-			final short[] shorts = new short[count];
-			for (int j = 0; j < count; j++)
-				shorts[j] = (short) (bytes[j] & 0xff);
-			return shorts;
-		}
-		else if (type == IFDType.ASCII) {
-			// 8-bit byte that contain a 7-bit ASCII code;
-			// the last byte must be NUL (binary zero)
-			final byte[] ascii = new byte[count];
-			in.read(ascii);
-
-			// count number of null terminators
-			int nullCount = 0;
-			for (int j = 0; j < count; j++) {
-				if (ascii[j] == 0 || j == count - 1) nullCount++;
-			}
-
-			// convert character array to array of strings
-			final String[] strings = nullCount == 1 ? null : new String[nullCount];
-			String s = null;
-			int c = 0, ndx = -1;
-			for (int j = 0; j < count; j++) {
-				if (ascii[j] == 0) {
-					s = new String(ascii, ndx + 1, j - ndx - 1, Constants.ENCODING);
-					ndx = j;
-				}
-				else if (j == count - 1) {
-					// handle non-null-terminated strings
-					s = new String(ascii, ndx + 1, j - ndx, Constants.ENCODING);
-				}
-				else s = null;
-				if (strings != null && s != null) strings[c++] = s;
-			}
-			return strings == null ? (Object) s : strings;
-		}
-		else if (type == IFDType.SHORT) {
-			// 16-bit (2-byte) unsigned integer
-			if (count == 1) return new Integer(in.readUnsignedShort());
-			final int[] shorts = new int[count];
-			for (int j = 0; j < count; j++) {
-				shorts[j] = in.readUnsignedShort();
-			}
-			return shorts;
-		}
-		else if (type == IFDType.LONG || type == IFDType.IFD) {
-			// 32-bit (4-byte) unsigned integer
-			if (count == 1) return new Long(in.readInt());
-			final long[] longs = new long[count];
-			for (int j = 0; j < count; j++) {
-				if (in.offset() + 4 <= in.length()) {
-					longs[j] = in.readInt();
-				}
-			}
-			return longs;
-		}
-		else if (type == IFDType.LONG8 || type == IFDType.SLONG8 ||
-			type == IFDType.IFD8)
-		{
-			if (count == 1) return new Long(in.readLong());
-			long[] longs = null;
-
-			if (equalStrips && (entry.getTag() == IFD.STRIP_BYTE_COUNTS || entry
-				.getTag() == IFD.TILE_BYTE_COUNTS))
-			{
-				longs = new long[1];
-				longs[0] = in.readLong();
-			}
-			else if (equalStrips && (entry.getTag() == IFD.STRIP_OFFSETS || entry
-				.getTag() == IFD.TILE_OFFSETS))
-			{
-				final OnDemandLongArray offsets = new OnDemandLongArray(in);
-				offsets.setSize(count);
-				return offsets;
-			}
-			else {
-				longs = new long[count];
-				for (int j = 0; j < count; j++)
-					longs[j] = in.readLong();
-			}
-			return longs;
-		}
-		else if (type == IFDType.RATIONAL || type == IFDType.SRATIONAL) {
-			// Two LONGs or SLONGs: the first represents the numerator
-			// of a fraction; the second, the denominator
-			if (count == 1) return new TiffRational(in.readInt(), in.readInt());
-			final TiffRational[] rationals = new TiffRational[count];
-			for (int j = 0; j < count; j++) {
-				rationals[j] = new TiffRational(in.readInt(), in.readInt());
-			}
-			return rationals;
-		}
-		else if (type == IFDType.SBYTE || type == IFDType.UNDEFINED) {
-			// SBYTE: An 8-bit signed (twos-complement) integer
-			// UNDEFINED: An 8-bit byte that may contain anything,
-			// depending on the definition of the field
-			if (count == 1) return new Byte(in.readByte());
-			final byte[] sbytes = new byte[count];
-			in.read(sbytes);
-			return sbytes;
-		}
-		else if (type == IFDType.SSHORT) {
-			// A 16-bit (2-byte) signed (twos-complement) integer
-			if (count == 1) return new Short(in.readShort());
-			final short[] sshorts = new short[count];
-			for (int j = 0; j < count; j++)
-				sshorts[j] = in.readShort();
-			return sshorts;
-		}
-		else if (type == IFDType.SLONG) {
-			// A 32-bit (4-byte) signed (twos-complement) integer
-			if (count == 1) return new Integer(in.readInt());
-			final int[] slongs = new int[count];
-			for (int j = 0; j < count; j++)
-				slongs[j] = in.readInt();
-			return slongs;
-		}
-		else if (type == IFDType.FLOAT) {
-			// Single precision (4-byte) IEEE format
-			if (count == 1) return new Float(in.readFloat());
-			final float[] floats = new float[count];
-			for (int j = 0; j < count; j++)
-				floats[j] = in.readFloat();
-			return floats;
-		}
-		else if (type == IFDType.DOUBLE) {
-			// Double precision (8-byte) IEEE format
-			if (count == 1) return new Double(in.readDouble());
-			final double[] doubles = new double[count];
-			for (int j = 0; j < count; j++) {
-				doubles[j] = in.readDouble();
-			}
-			return doubles;
-		}
-
-		return null;
+		final byte[] bytes = readBytes(offset, getValueLength(entry));
+		return decodeIFDValue(wrap(bytes), 0, entry);
 	}
 
 	/** Convenience method for obtaining a stream's first ImageDescription. */
@@ -628,39 +640,10 @@ public class TiffParser extends AbstractContextual {
 
 	// -- TiffParser methods - image reading --
 
-	public byte[] getTile(final IFD ifd, byte[] buf, final int row, final int col)
-		throws FormatException, IOException
+	public byte[] getTile(final IFD ifd, final byte[] buf, final int row,
+		final int col) throws FormatException, IOException
 	{
-		final byte[] jpegTable = (byte[]) ifd.getIFDValue(IFD.JPEG_TABLES);
-
-		codecOptions.interleaved = true;
-		codecOptions.littleEndian = ifd.isLittleEndian();
-
-		final long tileWidth = ifd.getTileWidth();
-		final long tileLength = ifd.getTileLength();
-		final int samplesPerPixel = ifd.getSamplesPerPixel();
-		final int planarConfig = ifd.getPlanarConfiguration();
-		final TiffCompression compression = ifd.getCompression();
-
-		final long numTileCols = ifd.getTilesPerRow();
-
-		final int pixel = ifd.getBytesPerSample()[0];
-		final int effectiveChannels = planarConfig == 2 ? 1 : samplesPerPixel;
-
-		final long[] stripByteCounts = ifd.getStripByteCounts();
-		final long[] rowsPerStrip = ifd.getRowsPerStrip();
-
-		final int offsetIndex = (int) (row * numTileCols + col);
-		int countIndex = offsetIndex;
-		if (equalStrips) {
-			countIndex = 0;
-		}
-		if (stripByteCounts[countIndex] == (rowsPerStrip[0] * tileWidth) &&
-			pixel > 1)
-		{
-			stripByteCounts[countIndex] *= pixel;
-		}
-
+		final int offsetIndex = (int) (row * ifd.getTilesPerRow() + col);
 		long stripOffset = 0;
 		long nStrips = 0;
 
@@ -674,33 +657,154 @@ public class TiffParser extends AbstractContextual {
 			stripOffset = stripOffsets[offsetIndex];
 			nStrips = stripOffsets.length;
 		}
+		final long byteCount = getTileByteCount(ifd, ifd.getStripByteCounts(),
+			offsetIndex);
+
+		return getTile(in, codecOptions, ifd, buf, row, col, stripOffset,
+			byteCount, nStrips);
+	}
+
+	/**
+	 * Reads and decodes a single tile (or strip) from the given handle.
+	 *
+	 * @param handle The handle from which to read the compressed tile.
+	 * @param options The codec options to decode with; these are not modified,
+	 *          so that they can be shared by threads decoding other tiles.
+	 * @param ifd The IFD containing the tile.
+	 * @param buf The buffer into which the tile is decoded, or null.
+	 * @param row The row of the tile.
+	 * @param col The column of the tile.
+	 * @param stripOffset The file offset of the tile.
+	 * @param byteCount The number of compressed bytes in the tile, as given by
+	 *          {@link #getTileByteCount}.
+	 * @param nStrips The total number of tiles or strips in the IFD.
+	 * @return The buffer containing the decoded tile.
+	 */
+	private byte[] getTile(final DataHandle<Location> handle,
+		final CodecOptions options, final IFD ifd, final byte[] buf,
+		final int row, final int col, final long stripOffset,
+		final long byteCount, final long nStrips) throws FormatException,
+		IOException
+	{
+		return getTile(handle, options, ifd, buf, row, col, stripOffset,
+			byteCount, nStrips, null, 0);
+	}
+
+	/**
+	 * Decodes a single tile (or strip), taking its compressed bytes from the
+	 * given run of previously read tiles if one is provided.
+	 *
+	 * @param run Buffer containing the compressed tile, or null to read the
+	 *          tile from the handle.
+	 * @param runOffset Position of the compressed tile within {@code run}.
+	 * @see #getTile(DataHandle, CodecOptions, IFD, byte[], int, int, long,
+	 *      long, long)
+	 */
+	private byte[] getTile(final DataHandle<Location> handle,
+		final CodecOptions sharedOptions, final IFD ifd, byte[] buf,
+		final int row, final int col, final long stripOffset,
+		final long byteCount, final long nStrips, final byte[] run,
+		final int runOffset) throws FormatException, IOException
+	{
+		// JPEG 2000 tiles decode differently depending on the resolution level
+		final long ifdOffset = tileCache == null ||
+			sharedOptions instanceof JPEG2000CodecOptions ? -1 : ifd
+				.getIFDLongValue(IFD.IFD_OFFSET, -1);
+		if (ifdOffset >= 0) {
+			final byte[] cached = tileCache.get(ifdOffset, row, col, buf);
+			if (cached != null) return cached;
+		}
+
+		final byte[] jpegTable = (byte[]) ifd.getIFDValue(IFD.JPEG_TABLES);
+
+		// the per-tile settings go into a copy of the options
+		final CodecOptions options = copyOptions(sharedOptions);
+		options.interleaved = true;
+		options.littleEndian = ifd.isLittleEndian();
+
+		final long tileWidth = ifd.getTileWidth();
+		final long tileLength = ifd.getTileLength();
+		final int samplesPerPixel = ifd.getSamplesPerPixel();
+		final int planarConfig = ifd.getPlanarConfiguration();
+		final TiffCompression compression = ifd.getCompression();
+
+		final int pixel = ifd.getBytesPerSample()[0];
+		final int effectiveChannels = planarConfig == 2 ? 1 : samplesPerPixel;
 
 		final int size = (int) (tileWidth * tileLength * pixel * effectiveChannels);
 
 		if (buf == null) buf = new byte[size];
-		if (stripByteCounts[countIndex] == 0 || stripOffset >= in.length()) {
+		if (byteCount == 0 || stripOffset >= handle.length()) {
 			return buf;
 		}
-		byte[] tile = new byte[(int) stripByteCounts[countIndex]];
+		final int byteLength = (int) byteCount;
 
-		log.debug("Reading tile Length " + tile.length + " Offset " + stripOffset);
-		in.seek(stripOffset);
-		in.read(tile);
-
-		codecOptions.maxBytes = Math.max(size, tile.length);
-		codecOptions.ycbcr = ifd
-			.getPhotometricInterpretation() == PhotoInterp.Y_CB_CR && ifd
-				.getIFDIntValue(IFD.Y_CB_CR_SUB_SAMPLING) == 1 && ycbcrCorrection;
+		// the compressed tile, preceded by the JPEG tables if there are any
+		final ByteBuffer tile;
+		if (run != null && jpegTable == null) {
+			tile = ByteBuffer.wrap(run, runOffset, byteLength);
+		}
+		else {
+			// the tables end, and the tile starts, with a 2 byte marker
+			final int tableLength = jpegTable == null ? 0 : jpegTable.length - 2;
+			final int tileStart = jpegTable == null ? 0 : tableLength - 2;
+			final byte[] compressed = getScratch(COMPRESSED_BUFFER, tileStart +
+				byteLength);
+			if (run != null) {
+				System.arraycopy(run, runOffset, compressed, tileStart, byteLength);
+			}
+			else {
+				log.debug("Reading tile Length " + byteLength + " Offset " +
+					stripOffset);
+				read(handle, stripOffset, compressed, tileStart, byteLength);
+			}
+			if (jpegTable != null) {
+				System.arraycopy(jpegTable, 0, compressed, 0, tableLength);
+			}
+			tile = ByteBuffer.wrap(compressed, 0, tileStart + byteLength);
+		}
 
-		if (jpegTable != null) {
-			final byte[] q = new byte[jpegTable.length + tile.length - 4];
-			System.arraycopy(jpegTable, 0, q, 0, jpegTable.length - 2);
-			System.arraycopy(tile, 2, q, jpegTable.length - 2, tile.length - 2);
-			tile = compression.decompress(scifio.codec(), q, codecOptions);
+		options.maxBytes = Math.max(size, byteLength);
+		options.ycbcr = ifd.getPhotometricInterpretation() == PhotoInterp.Y_CB_CR &&
+			ifd.getIFDIntValue(IFD.Y_CB_CR_SUB_SAMPLING) == 1 && ycbcrCorrection;
+
+		final int filled = Math.min(size, buf.length);
+		final Rectangle region = getJ2KRegion(options, compression, row, col,
+			tileWidth, tileLength);
+		if (region != null) {
+			// decode only the part of the tile that is needed, after the space
+			// for the whole tile, and then lay it out within the blank tile
+			final int rowLength = (int) tileWidth * pixel * effectiveChannels;
+			final int regionRowLength = region.width * pixel * effectiveChannels;
+			final byte[] decompressed = getScratch(DECOMPRESSED_BUFFER, size +
+				region.height * regionRowLength);
+			((JPEG2000CodecOptions) options).sourceRegion = region;
+			compression.decompress(scifio.codec(), tile, decompressed, size,
+				region.height * regionRowLength, options);
+			Arrays.fill(decompressed, 0, size, (byte) 0);
+			for (int r = 0; r < region.height; r++) {
+				System.arraycopy(decompressed, size + r * regionRowLength,
+					decompressed, (region.y + r) * rowLength + region.x * pixel *
+						effectiveChannels, regionRowLength);
+			}
+			unpackBytes(buf, 0, decompressed, size, ifd);
+		}
+		else if (canDecodeDirectly(ifd)) {
+			// the decoded samples need no unpacking
+			final int n = compression.decompress(scifio.codec(), tile, buf, 0,
+				buf.length, options);
+			if (n < filled) Arrays.fill(buf, n, filled, (byte) 0);
+			scifio.tiff().undifference(buf, 0, n, ifd);
+		}
+		else {
+			final byte[] decompressed = getScratch(DECOMPRESSED_BUFFER,
+				options.maxBytes);
+			final int n = compression.decompress(scifio.codec(), tile, decompressed,
+				0, options.maxBytes, options);
+			if (n < filled) Arrays.fill(buf, 0, filled, (byte) 0);
+			scifio.tiff().undifference(decompressed, 0, n, ifd);
+			unpackBytes(buf, 0, decompressed, n, ifd);
 		}
-		else tile = compression.decompress(scifio.codec(), tile, codecOptions);
-		scifio.tiff().undifference(tile, ifd);
-		unpackBytes(buf, 0, tile, ifd);
 
 		if (planarConfig == 2 && !ifd.isTiled() && ifd.getSamplesPerPixel() > 1) {
 			final int channel = (int) (row % nStrips);
@@ -723,6 +827,10 @@ public class TiffParser extends AbstractContextual {
 			}
 		}
 
+		if (ifdOffset >= 0) {
+			tileCache.put(ifdOffset, row, col, buf, Math.min(size, buf.length));
+		}
+
 		return buf;
 	}
 
@@ -822,7 +930,11 @@ public class TiffParser extends AbstractContextual {
 					column);
 				lastTile = Math.min(lastTile, stripOffsets.length - 1);
 
+				// strips which follow each other in the file are read together
 				int offset = 0;
+				long runStart = 0;
+				int runOffset = 0;
+				int runLength = 0;
 				for (int tile = firstTile; tile <= lastTile; tile++) {
 					long byteCount = equalStrips ? stripByteCounts[0]
 						: stripByteCounts[tile];
@@ -830,11 +942,19 @@ public class TiffParser extends AbstractContextual {
 						byteCount *= pixel;
 					}
 
-					in.seek(stripOffsets[tile]);
 					final int len = (int) Math.min(buf.length - offset, byteCount);
-					in.read(buf, offset, len);
+					if (runLength > 0 && runStart + runLength == stripOffsets[tile]) {
+						runLength += len;
+					}
+					else {
+						if (runLength > 0) read(in, runStart, buf, runOffset, runLength);
+						runStart = stripOffsets[tile];
+						runOffset = offset;
+						runLength = len;
+					}
 					offset += len;
 				}
+				if (runLength > 0) read(in, runStart, buf, runOffset, runLength);
 			}
 			return adjustFillOrder(ifd, buf);
 		}
@@ -847,11 +967,6 @@ public class TiffParser extends AbstractContextual {
 		final int endX = (int) width + x;
 		final int endY = (int) height + y;
 
-		final long w = tileWidth;
-		final long h = tileLength;
-		final int rowLen = pixel * (int) w;// tileWidth;
-		final int tileSize = (int) (rowLen * h);// tileLength);
-
 		final int planeSize = (int) (width * height * pixel);
 		final int outputRowLen = (int) (pixel * width);
 
@@ -863,6 +978,15 @@ public class TiffParser extends AbstractContextual {
 
 		cachedTileBuffer = new byte[bufferSize];
 
+		final TileCopier copier = new TileCopier(x, y, endX, endY, tileWidth,
+			tileLength, overlapX, overlapY, pixel, effectiveChannels, planarConfig,
+			nrows, planeSize, outputRowLen);
+
+		// tiles can only be decoded out of order if they do not overlap
+		final boolean parallel = threadCount > 1 && overlapX == 0 &&
+			overlapY == 0;
+		final List<int[]> tiles = new ArrayList<>();
+
 		final IntRect tileBounds = new IntRect(0, 0, (int) tileWidth,
 			(int) tileLength);
 
@@ -887,57 +1011,180 @@ public class TiffParser extends AbstractContextual {
 
 				if (!imageBounds.intersects(tileBounds)) continue;
 
-				getTile(ifd, cachedTileBuffer, row, col);
-
-				// adjust tile bounds, if necessary
+				tiles.add(new int[] { row, col, tileBounds.x, tileBounds.y });
+			}
+		}
 
-				final int tileX = Math.max(tileBounds.x, x);
-				final int tileY = Math.max(tileBounds.y, y);
-				int realX = tileX % (int) (tileWidth - overlapX);
-				int realY = tileY % (int) (tileLength - overlapY);
+		// JPEG 2000 tiles need only decode the part of themselves that is read
+		if (codecOptions instanceof JPEG2000CodecOptions && isJPEG2000(ifd
+			.getCompression()) && overlapX == 0 && overlapY == 0 &&
+			planarConfig != 2 && ifd.getIFDIntValue(IFD.PREDICTOR, 1) == 1)
+		{
+			j2kRegion = imageBounds;
+		}
+		try {
+			if (parallel) getTiles(ifd, buf, tiles, copier, bufferSize);
+			else readTiles(ifd, buf, tiles, copier);
+		}
+		finally {
+			j2kRegion = null;
+		}
 
-				int twidth = (int) Math.min(endX - tileX, tileWidth - realX);
-				if (twidth <= 0) {
-					twidth = (int) Math.max(endX - tileX, tileWidth - realX);
-				}
-				int theight = (int) Math.min(endY - tileY, tileLength - realY);
-				if (theight <= 0) {
-					theight = (int) Math.max(endY - tileY, tileLength - realY);
-				}
+		return adjustFillOrder(ifd, buf);
+	}
 
-				// copy appropriate portion of the tile to the output buffer
+	/**
+	 * Reads and decodes the given tiles in order, copying each one into the
+	 * output buffer. Tiles stored back to back in the file are fetched together
+	 * with a single read, and then decoded from slices of that run.
+	 *
+	 * @param ifd The IFD containing the tiles.
+	 * @param buf The output buffer.
+	 * @param tiles Row, column and bounds origin of each tile to read.
+	 * @param copier Copies decoded tiles into the output buffer.
+	 */
+	private void readTiles(final IFD ifd, final byte[] buf,
+		final List<int[]> tiles, final TileCopier copier) throws FormatException,
+		IOException
+	{
+		final long numTileCols = ifd.getTilesPerRow();
+		final OnDemandLongArray onDemandOffsets = ifd.getOnDemandStripOffsets();
+		final long[] stripOffsets = onDemandOffsets == null ? ifd
+			.getStripOffsets() : null;
+		final long nStrips = onDemandOffsets == null ? stripOffsets.length
+			: onDemandOffsets.size();
 
-				final int copy = pixel * twidth;
+		final long[] stripByteCounts = ifd.getStripByteCounts();
+		final long[] offsets = new long[tiles.size()];
+		final long[] byteCounts = new long[tiles.size()];
+		for (int i = 0; i < offsets.length; i++) {
+			final int[] t = tiles.get(i);
+			final int offsetIndex = (int) (t[0] * numTileCols + t[1]);
+			offsets[i] = onDemandOffsets == null ? stripOffsets[offsetIndex]
+				: onDemandOffsets.get(offsetIndex);
+			byteCounts[i] = getTileByteCount(ifd, stripByteCounts, offsetIndex);
+		}
 
-				realX *= pixel;
-				realY *= rowLen;
+		// a memory mapped file gains nothing from larger reads
+		final boolean coalesce = mappedFile == null;
+		final long inputLen = in.length();
+		int i = 0;
+		while (i < offsets.length) {
+			final long start = offsets[i];
+			long end = start + byteCounts[i];
+			int last = i + 1;
+			if (coalesce && byteCounts[i] > 0 && end <= inputLen) {
+				// gather the following tiles, as long as each one starts exactly
+				// where the previous one ends
+				while (last < offsets.length && offsets[last] == end &&
+					byteCounts[last] > 0 && end + byteCounts[last] <= inputLen &&
+					end + byteCounts[last] - start <= MAX_RUN_SIZE)
+				{
+					end += byteCounts[last++];
+				}
+			}
+
+			if (last - i == 1) {
+				final int[] t = tiles.get(i);
+				getTile(in, codecOptions, ifd, cachedTileBuffer, t[0], t[1], start,
+					byteCounts[i], nStrips);
+				copier.copy(cachedTileBuffer, buf, t[0], t[2], t[3]);
+				i++;
+				continue;
+			}
+
+			final int runLength = (int) (end - start);
+			if (runBuffer == null || runBuffer.length < runLength) {
+				runBuffer = new byte[runLength];
+			}
+			log.debug("Reading " + (last - i) + " tiles Length " + runLength +
+				" Offset " + start);
+			read(in, start, runBuffer, 0, runLength);
+
+			for (; i < last; i++) {
+				final int[] t = tiles.get(i);
+				getTile(in, codecOptions, ifd, cachedTileBuffer, t[0], t[1],
+					offsets[i], byteCounts[i], nStrips, runBuffer, (int) (offsets[i] -
+						start));
+				copier.copy(cachedTileBuffer, buf, t[0], t[2], t[3]);
+			}
+		}
+	}
+
+	/**
+	 * Reads and decodes the given tiles concurrently, copying each one into the
+	 * output buffer as soon as it is decoded. Every worker thread reads through
+	 * its own handle on the source, with its own tile buffer and codec options.
+	 * Falls back to reading the tiles serially if the source cannot be reopened.
+	 * If any tile fails, the other workers stop, and all of them have finished
+	 * with the output buffer by the time the failure is thrown.
+	 *
+	 * @param ifd The IFD containing the tiles.
+	 * @param buf The output buffer.
+	 * @param tiles Row, column and bounds origin of each tile to read.
+	 * @param copier Copies decoded tiles into the output buffer.
+	 * @param bufferSize Size in bytes of a decoded tile.
+	 */
+	private void getTiles(final IFD ifd, final byte[] buf,
+		final List<int[]> tiles, final TileCopier copier, final int bufferSize)
+		throws FormatException, IOException
+	{
+		final Location location = in.get();
+		final int nThreads = Math.min(threadCount, tiles.size());
+		if (nThreads <= 1 || location == null) {
+			for (final int[] t : tiles) {
+				getTile(ifd, cachedTileBuffer, t[0], t[1]);
+				copier.copy(cachedTileBuffer, buf, t[0], t[2], t[3]);
+			}
+			return;
+		}
 
-				for (int q = 0; q < effectiveChannels; q++) {
-					int src = q * tileSize + realX + realY;
-					int dest = q * planeSize + pixel * (tileX - x) + outputRowLen *
-						(tileY - y);
-					if (planarConfig == 2) dest += (planeSize * (row / nrows));
+		// resolve the tile offsets and byte counts up front: on-demand offset
+		// arrays read from the shared input handle, and byte counts may need
+		// correcting, so neither is left to the workers
+		final long[] offsets = new long[tiles.size()];
+		final long[] byteCounts = new long[tiles.size()];
+		final long numTileCols = ifd.getTilesPerRow();
+		final OnDemandLongArray onDemandOffsets = ifd.getOnDemandStripOffsets();
+		final long[] stripOffsets = onDemandOffsets == null ? ifd
+			.getStripOffsets() : null;
+		final long nStrips = onDemandOffsets == null ? stripOffsets.length
+			: onDemandOffsets.size();
+		final long[] stripByteCounts = ifd.getStripByteCounts();
+		for (int i = 0; i < offsets.length; i++) {
+			final int[] t = tiles.get(i);
+			final int offsetIndex = (int) (t[0] * numTileCols + t[1]);
+			offsets[i] = onDemandOffsets == null ? stripOffsets[offsetIndex]
+				: onDemandOffsets.get(offsetIndex);
+			byteCounts[i] = getTileByteCount(ifd, stripByteCounts, offsetIndex);
+		}
 
-					// copying the tile directly will only work if there is no
-					// overlap;
-					// otherwise, we may be overwriting a previous tile
-					// (or the current tile may be overwritten by a subsequent
-					// tile)
-					if (rowLen == outputRowLen && overlapX == 0 && overlapY == 0) {
-						System.arraycopy(cachedTileBuffer, src, buf, dest, copy * theight);
+		final DataHandleService dataHandleService = getContext().service(
+			DataHandleService.class);
+		final AtomicInteger nextTile = new AtomicInteger();
+		final List<Future<Void>> futures = new ArrayList<>();
+		for (int thread = 0; thread < nThreads; thread++) {
+			futures.add(scifio.thread().run(() -> {
+				try (final DataHandle<Location> handle = dataHandleService.create(
+					location))
+				{
+					if (handle == null) {
+						throw new IOException("Cannot reopen " + location);
 					}
-					else {
-						for (int tileRow = 0; tileRow < theight; tileRow++) {
-							System.arraycopy(cachedTileBuffer, src, buf, dest, copy);
-							src += rowLen;
-							dest += outputRowLen;
-						}
+					final byte[] tileBuffer = new byte[bufferSize];
+					int i;
+					while ((i = nextTile.getAndIncrement()) < offsets.length) {
+						final int[] t = tiles.get(i);
+						getTile(handle, codecOptions, ifd, tileBuffer, t[0], t[1],
+							offsets[i], byteCounts[i], nStrips);
+						copier.copy(tileBuffer, buf, t[0], t[2], t[3]);
 					}
 				}
-			}
+				return null;
+			}));
 		}
 
-		return adjustFillOrder(ifd, buf);
+		TiffWorkers.awaitAll(futures, nextTile, offsets.length, "decoding tiles");
 	}
 
 	public TiffIFDEntry readTiffIFDEntry() throws IOException {
@@ -967,15 +1214,440 @@ public class TiffParser extends AbstractContextual {
 		return new TiffIFDEntry(entryTag, entryType, valueCount, offset);
 	}
 
+	// -- Helper methods --
+
+	/**
+	 * Decodes a directory entry from an in-memory copy of an IFD's entry table,
+	 * in the same way as {@link #readTiffIFDEntry()} reads one from the input.
+	 *
+	 * @param table The entry table.
+	 * @param position The position of the entry within the table.
+	 * @param tableOffset The file offset of the entry table.
+	 * @return The entry, or null if its type is invalid.
+	 */
+	private TiffIFDEntry readTiffIFDEntry(final ByteBuffer table,
+		final int position, final long tableOffset)
+	{
+		final int entryTag = table.getShort(position) & 0xffff;
+
+		// Parse the entry's "Type"
+		IFDType entryType;
+		try {
+			entryType = IFDType.get(table.getShort(position + 2) & 0xffff);
+		}
+		catch (final EnumException e) {
+			log.error("Error reading IFD type at: " + (tableOffset + position + 2));
+			log.debug("", e);
+			return null;
+		}
+
+		// Parse the entry's "ValueCount"
+		final int valueCount = bigTiff ? (int) table.getLong(position + 4) : table
+			.getInt(position + 4);
+		if (valueCount < 0) {
+			throw new RuntimeException("Count of '" + valueCount + "' unexpected.");
+		}
+
+		final int nValueBytes = valueCount * entryType.getBytesPerElement();
+		final int threshhold = bigTiff ? 8 : 4;
+		final int valuePosition = position + (bigTiff ? 12 : 8);
+		long offset = tableOffset + valuePosition;
+		if (nValueBytes > threshhold) {
+			if (bigTiff || fakeBigTiff) {
+				offset = valuePosition + 8 <= table.limit() ? table.getLong(
+					valuePosition) : -1;
+			}
+			else offset = table.getInt(valuePosition) & 0xffffffffL;
+		}
+
+		return new TiffIFDEntry(entryTag, entryType, valueCount, offset);
+	}
+
+	/**
+	 * Reads the values of the given entries. Values stored close to each other
+	 * are read in a single batch, rather than seeking to each one in turn.
+	 *
+	 * @param entries The entries whose values should be read.
+	 * @return The values, in the same order as {@code entries}.
+	 */
+	private Object[] getIFDValues(final List<TiffIFDEntry> entries)
+		throws IOException
+	{
+		final Object[] values = new Object[entries.size()];
+		final Integer[] order = new Integer[values.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(entries.get(a).getValueOffset(),
+			entries.get(b).getValueOffset()));
+
+		final long inputLen = in.length();
+		int i = 0;
+		while (i < order.length) {
+			final TiffIFDEntry first = entries.get(order[i]);
+			if (first.getValueOffset() < 0 || first.getValueOffset() >= inputLen ||
+				isOnDemand(first) || getValueLength(first) > MAX_BATCH_SIZE)
+			{
+				values[order[i++]] = getIFDValue(first);
+				continue;
+			}
+
+			// gather the following values, as long as they are close enough
+			final long start = first.getValueOffset();
+			long end = start + getValueLength(first);
+			int last = i + 1;
+			while (last < order.length) {
+				final TiffIFDEntry entry = entries.get(order[last]);
+				final long entryEnd = Math.max(end, entry.getValueOffset() +
+					getValueLength(entry));
+				if (entry.getValueOffset() >= inputLen || isOnDemand(entry) || entry
+					.getValueOffset() - end > MAX_BATCH_GAP || entryEnd -
+						start > MAX_BATCH_SIZE)
+				{
+					break;
+				}
+				end = entryEnd;
+				last++;
+			}
+
+			final ByteBuffer batch = wrap(readBytes(start, end - start));
+			for (; i < last; i++) {
+				final TiffIFDEntry entry = entries.get(order[i]);
+				log.trace("Reading entry " + entry.getTag() + " from " + entry
+					.getValueOffset() + "; type=" + entry.getType() + ", count=" + entry
+						.getValueCount());
+				values[order[i]] = decodeIFDValue(batch, (int) (entry.getValueOffset() -
+					start), entry);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Decodes the value of a directory entry from memory.
+	 *
+	 * @param buffer Buffer containing the value.
+	 * @param position Position of the value within the buffer.
+	 * @param entry The entry whose value is decoded.
+	 * @return The decoded value.
+	 */
+	private Object decodeIFDValue(final ByteBuffer buffer, final int position,
+		final TiffIFDEntry entry)
+	{
+		final IFDType type = entry.getType();
+		final int count = entry.getValueCount();
+
+		if (type == IFDType.BYTE) {
+			// 8-bit unsigned integer
+			if (count == 1) return new Short(buffer.get(position));
+			// bytes are unsigned, so use shorts
+			final short[] shorts = new short[count];
+			for (int j = 0; j < count; j++)
+				shorts[j] = (short) (buffer.get(position + j) & 0xff);
+			return shorts;
+		}
+		else if (type == IFDType.ASCII) {
+			// 8-bit byte that contain a 7-bit ASCII code;
+			// the last byte must be NUL (binary zero)
+			final byte[] ascii = new byte[count];
+			for (int j = 0; j < count; j++)
+				ascii[j] = buffer.get(position + j);
+
+			// count number of null terminators
+			int nullCount = 0;
+			for (int j = 0; j < count; j++) {
+				if (ascii[j] == 0 || j == count - 1) nullCount++;
+			}
+
+			// convert character array to array of strings
+			final String[] strings = nullCount == 1 ? null : new String[nullCount];
+			String s = null;
+			int c = 0, ndx = -1;
+			for (int j = 0; j < count; j++) {
+				if (ascii[j] == 0) {
+					s = new String(ascii, ndx + 1, j - ndx - 1, Constants.ENCODING);
+					ndx = j;
+				}
+				else if (j == count - 1) {
+					// handle non-null-terminated strings
+					s = new String(ascii, ndx + 1, j - ndx, Constants.ENCODING);
+				}
+				else s = null;
+				if (strings != null && s != null) strings[c++] = s;
+			}
+			return strings == null ? (Object) s : strings;
+		}
+		else if (type == IFDType.SHORT) {
+			// 16-bit (2-byte) unsigned integer
+			if (count == 1) return new Integer(buffer.getShort(position) & 0xffff);
+			final int[] shorts = new int[count];
+			for (int j = 0; j < count; j++) {
+				shorts[j] = buffer.getShort(position + 2 * j) & 0xffff;
+			}
+			return shorts;
+		}
+		else if (type == IFDType.LONG || type == IFDType.IFD) {
+			// 32-bit (4-byte) unsigned integer
+			if (count == 1) return new Long(buffer.getInt(position));
+			final long[] longs = new long[count];
+			for (int j = 0; j < count; j++) {
+				longs[j] = buffer.getInt(position + 4 * j);
+			}
+			return longs;
+		}
+		else if (type == IFDType.LONG8 || type == IFDType.SLONG8 ||
+			type == IFDType.IFD8)
+		{
+			if (count == 1) return new Long(buffer.getLong(position));
+			long[] longs = null;
+
+			if (equalStrips && (entry.getTag() == IFD.STRIP_BYTE_COUNTS || entry
+				.getTag() == IFD.TILE_BYTE_COUNTS))
+			{
+				longs = new long[1];
+				longs[0] = buffer.getLong(position);
+			}
+			else {
+				longs = new long[count];
+				for (int j = 0; j < count; j++)
+					longs[j] = buffer.getLong(position + 8 * j);
+			}
+			return longs;
+		}
+		else if (type == IFDType.RATIONAL || type == IFDType.SRATIONAL) {
+			// Two LONGs or SLONGs: the first represents the numerator
+			// of a fraction; the second, the denominator
+			if (count == 1) {
+				return new TiffRational(buffer.getInt(position), buffer.getInt(
+					position + 4));
+			}
+			final TiffRational[] rationals = new TiffRational[count];
+			for (int j = 0; j < count; j++) {
+				rationals[j] = new TiffRational(buffer.getInt(position + 8 * j), buffer
+					.getInt(position + 8 * j + 4));
+			}
+			return rationals;
+		}
+		else if (type == IFDType.SBYTE || type == IFDType.UNDEFINED) {
+			// SBYTE: An 8-bit signed (twos-complement) integer
+			// UNDEFINED: An 8-bit byte that may contain anything,
+			// depending on the definition of the field
+			if (count == 1) return new Byte(buffer.get(position));
+			final byte[] sbytes = new byte[count];
+			for (int j = 0; j < count; j++)
+				sbytes[j] = buffer.get(position + j);
+			return sbytes;
+		}
+		else if (type == IFDType.SSHORT) {
+			// A 16-bit (2-byte) signed (twos-complement) integer
+			if (count == 1) return new Short(buffer.getShort(position));
+			final short[] sshorts = new short[count];
+			for (int j = 0; j < count; j++)
+				sshorts[j] = buffer.getShort(position + 2 * j);
+			return sshorts;
+		}
+		else if (type == IFDType.SLONG) {
+			// A 32-bit (4-byte) signed (twos-complement) integer
+			if (count == 1) return new Integer(buffer.getInt(position));
+			final int[] slongs = new int[count];
+			for (int j = 0; j < count; j++)
+				slongs[j] = buffer.getInt(position + 4 * j);
+			return slongs;
+		}
+		else if (type == IFDType.FLOAT) {
+			// Single precision (4-byte) IEEE format
+			if (count == 1) return new Float(buffer.getFloat(position));
+			final float[] floats = new float[count];
+			for (int j = 0; j < count; j++)
+				floats[j] = buffer.getFloat(position + 4 * j);
+			return floats;
+		}
+		else if (type == IFDType.DOUBLE) {
+			// Double precision (8-byte) IEEE format
+			if (count == 1) return new Double(buffer.getDouble(position));
+			final double[] doubles = new double[count];
+			for (int j = 0; j < count; j++) {
+				doubles[j] = buffer.getDouble(position + 8 * j);
+			}
+			return doubles;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Whether the value of the given entry is an offset array to be read on
+	 * demand, rather than all at once.
+	 */
+	private boolean isOnDemand(final TiffIFDEntry entry) {
+		final IFDType type = entry.getType();
+		final int tag = entry.getTag();
+		return equalStrips && entry.getValueCount() != 1 && (type ==
+			IFDType.LONG8 || type == IFDType.SLONG8 || type == IFDType.IFD8 ||
+			type == IFDType.LONG || type == IFDType.IFD) &&
+			(tag == IFD.STRIP_OFFSETS || tag == IFD.TILE_OFFSETS);
+	}
+
+	/** Gets the number of bytes occupied by the value of the given entry. */
+	private long getValueLength(final TiffIFDEntry entry) {
+		return (long) entry.getValueCount() * entry.getType().getBytesPerElement();
+	}
+
+	/**
+	 * Reads a block of bytes from the input. Any part of the block lying beyond
+	 * the end of the input is left zeroed.
+	 */
+	private byte[] readBytes(final long offset, final long length)
+		throws IOException
+	{
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Cannot read " + length + " bytes at once");
+		}
+		final byte[] bytes = new byte[(int) Math.max(length, 0)];
+		final int available = (int) Math.min(bytes.length, in.length() - offset);
+		if (available > 0) {
+			in.seek(offset);
+			in.readFully(bytes, 0, available);
+		}
+		return bytes;
+	}
+
+	/** Wraps the given bytes in a buffer with the input's byte order. */
+	private ByteBuffer wrap(final byte[] bytes) {
+		return ByteBuffer.wrap(bytes).order(in.isLittleEndian()
+			? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * Gets the number of compressed bytes in the given tile (or strip),
+	 * correcting byte counts which were mistakenly written as sample counts.
+	 * The correction is stored back into the given array, so worker threads
+	 * must be handed byte counts resolved by the calling thread instead.
+	 *
+	 * @param ifd The IFD containing the tile.
+	 * @param stripByteCounts The IFD's strip byte counts.
+	 * @param offsetIndex The index of the tile.
+	 */
+	private long getTileByteCount(final IFD ifd, final long[] stripByteCounts,
+		final int offsetIndex) throws FormatException
+	{
+		final long[] rowsPerStrip = ifd.getRowsPerStrip();
+		final int pixel = ifd.getBytesPerSample()[0];
+
+		final int countIndex = equalStrips ? 0 : offsetIndex;
+		if (stripByteCounts[countIndex] == (rowsPerStrip[0] * ifd
+			.getTileWidth()) && pixel > 1)
+		{
+			stripByteCounts[countIndex] *= pixel;
+		}
+		return stripByteCounts[countIndex];
+	}
+
+	/**
+	 * Reads raw strip or tile data, from the memory mapping of the input file
+	 * if there is one, or otherwise from the given handle.
+	 */
+	private void read(final DataHandle<Location> handle, final long offset,
+		final byte[] buf, final int off, final int len) throws IOException
+	{
+		final MappedFile mapped = mappedFile;
+		if (mapped != null && offset + len <= mapped.length()) {
+			mapped.read(offset, buf, off, len);
+		}
+		else {
+			handle.seek(offset);
+			handle.read(buf, off, len);
+		}
+	}
+
 	// -- Helper methods - byte stream decoding --
 
+	/**
+	 * Gets a buffer of at least the given length, reusing the calling thread's
+	 * buffer unless it is too small, or the length is too large to keep.
+	 */
+	private static byte[] getScratch(final ThreadLocal<byte[]> scratch,
+		final int length)
+	{
+		if (length > MAX_SCRATCH_SIZE) return new byte[length];
+		byte[] buffer = scratch.get();
+		if (buffer == null || buffer.length < length) {
+			buffer = new byte[length];
+			scratch.set(buffer);
+		}
+		return buffer;
+	}
+
+	/** Copies the given codec options, keeping their JPEG 2000 settings. */
+	private static CodecOptions copyOptions(final CodecOptions options) {
+		if (options instanceof JPEG2000CodecOptions) {
+			return new JPEG2000CodecOptions(options);
+		}
+		return new CodecOptions(options);
+	}
+
+	/**
+	 * Returns the part of the given JPEG 2000 tile that lies within the region
+	 * being read, in the coordinates of the tile, or null if the whole tile
+	 * must be decoded.
+	 */
+	private Rectangle getJ2KRegion(final CodecOptions options,
+		final TiffCompression compression, final int row, final int col,
+		final long tileWidth, final long tileLength)
+	{
+		final IntRect bounds = j2kRegion;
+		if (bounds == null || !(options instanceof JPEG2000CodecOptions) ||
+			!isJPEG2000(compression))
+		{
+			return null;
+		}
+		final long tileX = col * tileWidth;
+		final long tileY = row * tileLength;
+		final long minX = Math.max(bounds.x, tileX);
+		final long minY = Math.max(bounds.y, tileY);
+		final long maxX = Math.min(bounds.x + bounds.width, tileX + tileWidth);
+		final long maxY = Math.min(bounds.y + bounds.height, tileY + tileLength);
+		if (maxX <= minX || maxY <= minY) return null;
+		if (maxX - minX == tileWidth && maxY - minY == tileLength) return null;
+		return new Rectangle((int) (minX - tileX), (int) (minY - tileY),
+			(int) (maxX - minX), (int) (maxY - minY));
+	}
+
+	/** Whether the given compression is one of the JPEG 2000 schemes. */
+	private static boolean isJPEG2000(final TiffCompression compression) {
+		return compression == TiffCompression.JPEG_2000 ||
+			compression == TiffCompression.JPEG_2000_LOSSY ||
+			compression == TiffCompression.ALT_JPEG2000 ||
+			compression == TiffCompression.OLYMPUS_JPEG2000;
+	}
+
+	/**
+	 * Whether decoded tiles of the given IFD are already laid out as
+	 * {@link #unpackBytes} would lay them out, so that they can be decoded
+	 * directly into the output buffer.
+	 */
+	private boolean canDecodeDirectly(final IFD ifd) throws FormatException {
+		final int[] bitsPerSample = ifd.getBitsPerSample();
+		if (bitsPerSample[0] != 8 && bitsPerSample[0] != 16) return false;
+		if (ifd.getPlanarConfiguration() != 2 && bitsPerSample.length != 1) {
+			return false;
+		}
+		PhotoInterp photoInterp = ifd.getPhotometricInterpretation();
+		if (ifd.getCompression() == TiffCompression.JPEG) {
+			photoInterp = PhotoInterp.RGB;
+		}
+		return photoInterp != PhotoInterp.WHITE_IS_ZERO &&
+			photoInterp != PhotoInterp.CMYK && photoInterp != PhotoInterp.Y_CB_CR;
+	}
+
 	/**
 	 * Extracts pixel information from the given byte array according to the bits
 	 * per sample, photometric interpretation and color map IFD directory entry
 	 * values, and the specified byte ordering. No error checking is performed.
 	 */
 	private void unpackBytes(final byte[] samples, final int startIndex,
-		final byte[] bytes, final IFD ifd) throws FormatException
+		final byte[] bytes, final int length, final IFD ifd)
+		throws FormatException
 	{
 		final boolean planar = ifd.getPlanarConfiguration() == 2;
 
@@ -986,7 +1658,7 @@ public class TiffParser extends AbstractContextual {
 		final int[] bitsPerSample = ifd.getBitsPerSample();
 		int nChannels = bitsPerSample.length;
 
-		int sampleCount = (int) (((long) 8 * bytes.length) / bitsPerSample[0]);
+		int sampleCount = (int) (((long) 8 * length) / bitsPerSample[0]);
 		if (photoInterp == PhotoInterp.Y_CB_CR) sampleCount *= 3;
 		if (planar) {
 			nChannels = 1;
@@ -997,7 +1669,7 @@ public class TiffParser extends AbstractContextual {
 
 		log.trace("unpacking " + sampleCount + " samples (startIndex=" +
 			startIndex + "; totalBits=" + (nChannels * bitsPerSample[0]) +
-			"; numBytes=" + bytes.length + ")");
+			"; numBytes=" + length + ")");
 
 		final long imageWidth = ifd.getImageWidth();
 		final long imageHeight = ifd.getImageLength();
@@ -1023,11 +1695,11 @@ public class TiffParser extends AbstractContextual {
 		// semi-large datasets this can save **billions** of method calls.
 		// Wed Aug 5 19:04:59 BST 2009
 		// Chris Allan <callan@glencoesoftware.com>
-		if ((bps8 || bps16) && bytes.length <= samples.length && nChannels == 1 &&
+		if ((bps8 || bps16) && length <= samples.length && nChannels == 1 &&
 			photoInterp != PhotoInterp.WHITE_IS_ZERO &&
 			photoInterp != PhotoInterp.CMYK && photoInterp != PhotoInterp.Y_CB_CR)
 		{
-			System.arraycopy(bytes, 0, samples, 0, bytes.length);
+			System.arraycopy(bytes, 0, samples, 0, length);
 			return;
 		}
 
@@ -1035,7 +1707,7 @@ public class TiffParser extends AbstractContextual {
 		if (photoInterp == PhotoInterp.CMYK) maxValue = Integer.MAX_VALUE;
 
 		int skipBits = (int) (8 - ((imageWidth * bps0 * nChannels) % 8));
-		if (skipBits == 8 || (bytes.length * 8 < bps0 * (nChannels * imageWidth +
+		if (skipBits == 8 || (length * 8 < bps0 * (nChannels * imageWidth +
 			imageHeight)))
 		{
 			skipBits = 0;
@@ -1111,7 +1783,7 @@ public class TiffParser extends AbstractContextual {
 						final int lumaIndex = sample + (2 * (sample / block));
 						final int chromaIndex = (sample / block) * (block + 2) + block;
 
-						if (chromaIndex + 1 >= bytes.length) break;
+						if (chromaIndex + 1 >= length) break;
 
 						final int tile = ndx / block;
 						final int pixel = ndx % block;
@@ -1200,4 +1872,111 @@ public class TiffParser extends AbstractContextual {
 		return buf;
 	}
 
+	// -- Helper classes --
+
+	/**
+	 * Copies the relevant portion of a decoded tile into the output buffer of
+	 * {@link TiffParser#getSamples}. Tiles that do not overlap touch disjoint
+	 * regions of the output buffer, so copies may run concurrently.
+	 */
+	private static final class TileCopier {
+
+		private final int x, y, endX, endY;
+
+		private final long tileWidth, tileLength;
+
+		private final int overlapX, overlapY;
+
+		private final int pixel, rowLen, tileSize;
+
+		private final int effectiveChannels, planarConfig;
+
+		private final long nrows;
+
+		private final int planeSize, outputRowLen;
+
+		private TileCopier(final int x, final int y, final int endX,
+			final int endY, final long tileWidth, final long tileLength,
+			final int overlapX, final int overlapY, final int pixel,
+			final int effectiveChannels, final int planarConfig, final long nrows,
+			final int planeSize, final int outputRowLen)
+		{
+			this.x = x;
+			this.y = y;
+			this.endX = endX;
+			this.endY = endY;
+			this.tileWidth = tileWidth;
+			this.tileLength = tileLength;
+			this.overlapX = overlapX;
+			this.overlapY = overlapY;
+			this.pixel = pixel;
+			this.effectiveChannels = effectiveChannels;
+			this.planarConfig = planarConfig;
+			this.nrows = nrows;
+			this.planeSize = planeSize;
+			this.outputRowLen = outputRowLen;
+			rowLen = pixel * (int) tileWidth;
+			tileSize = (int) (rowLen * tileLength);
+		}
+
+		/**
+		 * Copies a decoded tile into the output buffer.
+		 *
+		 * @param tile The decoded tile.
+		 * @param buf The output buffer.
+		 * @param row The tile row (including the channel, for planar data).
+		 * @param boundsX The X coordinate of the tile within the image.
+		 * @param boundsY The Y coordinate of the tile within the image.
+		 */
+		private void copy(final byte[] tile, final byte[] buf, final int row,
+			final int boundsX, final int boundsY)
+		{
+			// adjust tile bounds, if necessary
+
+			final int tileX = Math.max(boundsX, x);
+			final int tileY = Math.max(boundsY, y);
+			int realX = tileX % (int) (tileWidth - overlapX);
+			int realY = tileY % (int) (tileLength - overlapY);
+
+			int twidth = (int) Math.min(endX - tileX, tileWidth - realX);
+			if (twidth <= 0) {
+				twidth = (int) Math.max(endX - tileX, tileWidth - realX);
+			}
+			int theight = (int) Math.min(endY - tileY, tileLength - realY);
+			if (theight <= 0) {
+				theight = (int) Math.max(endY - tileY, tileLength - realY);
+			}
+
+			// copy appropriate portion of the tile to the output buffer
+
+			final int copy = pixel * twidth;
+
+			realX *= pixel;
+			realY *= rowLen;
+
+			for (int q = 0; q < effectiveChannels; q++) {
+				int src = q * tileSize + realX + realY;
+				int dest = q * planeSize + pixel * (tileX - x) + outputRowLen *
+					(tileY - y);
+				if (planarConfig == 2) dest += (planeSize * (row / nrows));
+
+				// copying the tile directly will only work if there is no
+				// overlap;
+				// otherwise, we may be overwriting a previous tile
+				// (or the current tile may be overwritten by a subsequent
+				// tile)
+				if (rowLen == outputRowLen && overlapX == 0 && overlapY == 0) {
+					System.arraycopy(tile, src, buf, dest, copy * theight);
+				}
+				else {
+					for (int tileRow = 0; tileRow < theight; tileRow++) {
+						System.arraycopy(tile, src, buf, dest, copy);
+						src += rowLen;
+						dest += outputRowLen;
+					}
+				}
+			}
+		}
+	}
+
 }
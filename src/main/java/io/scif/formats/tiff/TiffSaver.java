@@ -34,14 +34,14 @@ import io.scif.SCIFIO;
 import io.scif.codec.CodecOptions;
 import io.scif.util.FormatTools;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.TreeSet;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.scijava.AbstractContextual;
 import org.scijava.Context;
@@ -84,6 +84,16 @@ public class TiffSaver extends AbstractContextual {
 	/** The codec options if set. */
 	private CodecOptions options;
 
+	/** Maximum number of threads to use when compressing the tiles of a plane. */
+	private int threadCount = 1;
+
+	/**
+	 * Offsets of the IFDs in the output, in file order. Read from the output
+	 * the first time they are needed, and kept up to date as planes are
+	 * written.
+	 */
+	private List<Long> ifdOffsets;
+
 	private SCIFIO scifio;
 
 	@Parameter
@@ -205,8 +215,73 @@ public class TiffSaver extends AbstractContextual {
 		this.options = options;
 	}
 
+	/**
+	 * Sets the maximum number of threads used to compress the strips or tiles of
+	 * a plane. With more than one thread, the strips of each plane are
+	 * differenced and compressed concurrently; they are still written to the
+	 * file in order.
+	 *
+	 * @param threadCount Maximum number of compression threads; 1 to compress
+	 *          strips serially on the calling thread.
+	 */
+	public void setThreadCount(final int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/**
+	 * Gets the maximum number of threads used to compress the strips or tiles of
+	 * a plane.
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * Gets the offset of the IFD of the given plane in the output. The offsets
+	 * of existing IFDs are read from the output once; afterwards they are
+	 * tracked as planes are written, so that this lookup does not depend on the
+	 * number of IFDs in the file.
+	 *
+	 * @param planeIndex The index of the plane within the file.
+	 * @return The offset of the plane's IFD, or -1 if it has not been written.
+	 */
+	public synchronized long getIFDOffset(final long planeIndex)
+		throws IOException
+	{
+		if (ifdOffsets == null) {
+			ifdOffsets = new ArrayList<>();
+			try (final DataHandle<Location> in = openInput()) {
+				final long[] offsets = new TiffParser(getContext(), in)
+					.getIFDOffsets();
+				log.debug("IFD offsets: " + Arrays.toString(offsets));
+				for (final long offset : offsets) {
+					ifdOffsets.add(offset);
+				}
+			}
+		}
+		return planeIndex < ifdOffsets.size() ? ifdOffsets.get((int) planeIndex)
+			: -1;
+	}
+
+	/**
+	 * Reads the IFD of the given plane back from the output.
+	 *
+	 * @param planeIndex The index of the plane within the file.
+	 * @return The plane's IFD, or null if it has not been written.
+	 */
+	public synchronized IFD getIFD(final long planeIndex) throws IOException {
+		final long ifdOffset = getIFDOffset(planeIndex);
+		if (ifdOffset < 0) return null;
+		try (final DataHandle<Location> in = openInput()) {
+			return new TiffParser(getContext(), in).getIFD(ifdOffset);
+		}
+	}
+
 	/** Writes the TIFF file header. */
 	public void writeHeader() throws IOException {
+		// a new header starts a new IFD chain
+		ifdOffsets = null;
+
 		// write endianness indicator
 		out.seek(0);
 		if (isLittleEndian()) {
@@ -310,106 +385,67 @@ public class TiffSaver extends AbstractContextual {
 
 		// These operations are synchronized
 		TiffCompression compression;
-		int tileWidth, tileHeight, nStrips;
+		int tileWidth, tileHeight, tilesPerRow, nStrips;
 		boolean interleaved;
-		ByteArrayOutputStream[] stripBuf;
+		final int bytesPerPixel = FormatTools.getBytesPerPixel(pixelType);
 		synchronized (this) {
-			final int bytesPerPixel = FormatTools.getBytesPerPixel(pixelType);
-			final int blockSize = w * h * bytesPerPixel;
 			if (nChannels == null) {
 				nChannels = buf.length / (w * h * bytesPerPixel);
 			}
 			interleaved = ifd.getPlanarConfiguration() == 1;
 
 			makeValidIFD(ifd, pixelType, nChannels);
-
-			// create pixel output buffers
+			// the predictor works in the byte order of the output
+			ifd.put(IFD.LITTLE_ENDIAN, isLittleEndian());
 
 			compression = ifd.getCompression();
 			tileWidth = (int) ifd.getTileWidth();
 			tileHeight = (int) ifd.getTileLength();
-			final int tilesPerRow = (int) ifd.getTilesPerRow();
-			final int rowsPerStrip = (int) ifd.getRowsPerStrip()[0];
-			int stripSize = rowsPerStrip * tileWidth * bytesPerPixel;
+			tilesPerRow = (int) ifd.getTilesPerRow();
 			nStrips = ((w + tileWidth - 1) / tileWidth) * ((h + tileHeight - 1) /
 				tileHeight);
+			if (!interleaved) nStrips *= nChannels;
+		}
 
-			if (interleaved) stripSize *= nChannels;
-			else nStrips *= nChannels;
-
-			stripBuf = new ByteArrayOutputStream[nStrips];
-			final DataOutputStream[] stripOut = new DataOutputStream[nStrips];
-			for (int strip = 0; strip < nStrips; strip++) {
-				stripBuf[strip] = new ByteArrayOutputStream(stripSize);
-				stripOut[strip] = new DataOutputStream(stripBuf[strip]);
-			}
-			final int[] bps = ifd.getBitsPerSample();
-			int off;
-
-			// write pixel strips to output buffers
-			final int effectiveStrips = !interleaved ? nStrips / nChannels : nStrips;
-			if (effectiveStrips == 1 && copyDirectly) {
-				stripOut[0].write(buf);
+		// pack pixel strips into output buffers; this only touches local state
+		final byte[][] strips = new byte[nStrips][];
+		final int effectiveStrips = !interleaved ? nStrips / nChannels : nStrips;
+		if (effectiveStrips == 1 && copyDirectly) {
+			strips[0] = buf.clone();
+			for (int strip = 1; strip < nStrips; strip++) {
+				strips[strip] = new byte[0];
 			}
-			else {
-				for (int strip = 0; strip < effectiveStrips; strip++) {
-					final int xOffset = (strip % tilesPerRow) * tileWidth;
-					final int yOffset = (strip / tilesPerRow) * tileHeight;
-					for (int row = 0; row < tileHeight; row++) {
-						for (int col = 0; col < tileWidth; col++) {
-							final int ndx = ((row + yOffset) * w + col + xOffset) *
-								bytesPerPixel;
-							for (int c = 0; c < nChannels; c++) {
-								for (int n = 0; n < bps[c] / 8; n++) {
-									if (interleaved) {
-										off = ndx * nChannels + c * bytesPerPixel + n;
-										if (row >= h || col >= w) {
-											stripOut[strip].writeByte(0);
-										}
-										else {
-											stripOut[strip].writeByte(buf[off]);
-										}
-									}
-									else {
-										off = c * blockSize + ndx + n;
-										if (row >= h || col >= w) {
-											stripOut[strip].writeByte(0);
-										}
-										else {
-											stripOut[c * (nStrips / nChannels) + strip].writeByte(
-												buf[off]);
-										}
-									}
-								}
-							}
-						}
-					}
+		}
+		else {
+			final int samples = interleaved ? nChannels : 1;
+			final int blockSize = w * h * bytesPerPixel;
+			for (int strip = 0; strip < effectiveStrips; strip++) {
+				final int xOffset = (strip % tilesPerRow) * tileWidth;
+				final int yOffset = (strip / tilesPerRow) * tileHeight;
+				for (int c = 0; c < nChannels / samples; c++) {
+					strips[c * effectiveStrips + strip] = packTile(buf, c * blockSize, w,
+						h, xOffset, yOffset, tileWidth, tileHeight, bytesPerPixel *
+							samples);
 				}
 			}
 		}
 
 		// Compress strips according to given differencing and compression
-		// schemes,
-		// this operation is NOT synchronized and is the ONLY portion of the
-		// TiffWriter.saveBytes() --> TiffSaver.writeImage() stack that is NOT
-		// synchronized.
-		final byte[][] strips = new byte[nStrips][];
-		for (int strip = 0; strip < nStrips; strip++) {
-			strips[strip] = stripBuf[strip].toByteArray();
-			scifio.tiff().difference(strips[strip], ifd);
-			final CodecOptions codecOptions = compression.getCompressionCodecOptions(
-				ifd, options);
-			codecOptions.height = tileHeight;
-			codecOptions.width = tileWidth;
-			codecOptions.channels = interleaved ? nChannels : 1;
-
-			strips[strip] = compression.compress(scifio.codec(), strips[strip],
-				codecOptions);
-			if (log.isDebug()) {
-				log.debug(String.format("Compressed strip %d/%d length %d", strip + 1,
-					nStrips, strips[strip].length));
+		// schemes. Like the packing above, this operation is NOT synchronized;
+		// these are the ONLY portions of the TiffWriter.saveBytes() -->
+		// TiffSaver.writeImage() stack that are NOT synchronized.
+		final int nThreads = Math.min(threadCount, nStrips);
+		final int channels = interleaved ? nChannels : 1;
+		if (nThreads <= 1) {
+			for (int strip = 0; strip < nStrips; strip++) {
+				compressStrip(strips, strip, ifd, compression, tileWidth, tileHeight,
+					channels);
 			}
 		}
+		else {
+			compressStrips(strips, nThreads, ifd, compression, tileWidth, tileHeight,
+				channels);
+		}
 
 		// This operation is synchronized
 		synchronized (this) {
@@ -442,33 +478,12 @@ public class TiffSaver extends AbstractContextual {
 		final boolean isTiled = ifd.isTiled();
 
 		if (!sequentialWrite) {
-			DataHandle<Location> in = null;
-			if (loc != null) {
-				in = dataHandleService.create(loc);
-			}
-			else if (out != null) {
-				in = dataHandleService.create(out.get());
-			}
-			else if (bytes != null) {
-				in = dataHandleService.create(bytes);
-			}
-			else {
-				throw new IllegalArgumentException(
-					"Filename and bytes are null, cannot create new input stream!");
-			}
-			try {
-				final TiffParser parser = new TiffParser(getContext(), in);
-				final long[] ifdOffsets = parser.getIFDOffsets();
-				log.debug("IFD offsets: " + Arrays.toString(ifdOffsets));
-				if (planeIndex < ifdOffsets.length) {
-					out.seek(ifdOffsets[(int) planeIndex]);
-					log.debug("Reading IFD from " + ifdOffsets[(int) planeIndex] +
-						" in non-sequential write.");
-					ifd = parser.getIFD(ifdOffsets[(int) planeIndex]);
-				}
-			}
-			finally {
-				in.close();
+			final long ifdOffset = getIFDOffset(planeIndex);
+			if (ifdOffset >= 0) {
+				out.seek(ifdOffset);
+				log.debug("Reading IFD from " + ifdOffset +
+					" in non-sequential write.");
+				ifd = getIFD(planeIndex);
 			}
 		}
 
@@ -526,6 +541,13 @@ public class TiffSaver extends AbstractContextual {
 
 		final long fp = out.offset();
 		writeIFD(ifd, 0);
+		if (ifdOffsets != null) {
+			// new IFDs are appended to the end of the chain
+			if (planeIndex < ifdOffsets.size()) {
+				ifdOffsets.set((int) planeIndex, fp);
+			}
+			else ifdOffsets.add(fp);
+		}
 
 		for (int i = 0; i < strips.length; i++) {
 			out.seek(out.length());
@@ -575,6 +597,7 @@ public class TiffSaver extends AbstractContextual {
 		if (ifd.containsKey(IFD.LITTLE_ENDIAN)) keyCount--;
 		if (ifd.containsKey(IFD.BIG_TIFF)) keyCount--;
 		if (ifd.containsKey(IFD.REUSE)) keyCount--;
+		if (ifd.containsKey(IFD.IFD_OFFSET)) keyCount--;
 
 		final long fp = out.offset();
 		final int bytesPerEntry = bigTiff ? TiffConstants.BIG_TIFF_BYTES_PER_ENTRY
@@ -590,7 +613,7 @@ public class TiffSaver extends AbstractContextual {
 		{
 			for (final Integer key : keys) {
 				if (key.equals(IFD.LITTLE_ENDIAN) || key.equals(IFD.BIG_TIFF) || key
-					.equals(IFD.REUSE)) continue;
+					.equals(IFD.REUSE) || key.equals(IFD.IFD_OFFSET)) continue;
 
 				final Object value = ifd.get(key);
 				writeIFDValue(extraHandle, ifdBytes + fp, key.intValue(), value);
@@ -995,4 +1018,109 @@ public class TiffSaver extends AbstractContextual {
 		}
 	}
 
+	/** Opens a new handle for reading back the output. */
+	private DataHandle<Location> openInput() {
+		if (loc != null) {
+			return dataHandleService.create(loc);
+		}
+		else if (out != null) {
+			return dataHandleService.create(out.get());
+		}
+		else if (bytes != null) {
+			return dataHandleService.create(bytes);
+		}
+		throw new IllegalArgumentException(
+			"Filename and bytes are null, cannot create new input stream!");
+	}
+
+	/**
+	 * Differences and compresses a single strip (or tile) in place.
+	 *
+	 * @param strips The strips of the plane.
+	 * @param strip The index of the strip to compress.
+	 * @param ifd The IFD of the plane.
+	 * @param compression The compression scheme to use.
+	 * @param tileWidth The width of the strip.
+	 * @param tileHeight The height of the strip.
+	 * @param channels The number of samples stored for each pixel.
+	 */
+	private void compressStrip(final byte[][] strips, final int strip,
+		final IFD ifd, final TiffCompression compression, final int tileWidth,
+		final int tileHeight, final int channels) throws FormatException
+	{
+		scifio.tiff().difference(strips[strip], ifd);
+		final CodecOptions codecOptions = compression.getCompressionCodecOptions(
+			ifd, options);
+		codecOptions.height = tileHeight;
+		codecOptions.width = tileWidth;
+		codecOptions.channels = channels;
+
+		strips[strip] = compression.compress(scifio.codec(), strips[strip],
+			codecOptions);
+		if (log.isDebug()) {
+			log.debug(String.format("Compressed strip %d/%d length %d", strip + 1,
+				strips.length, strips[strip].length));
+		}
+	}
+
+	/**
+	 * Differences and compresses the given strips (or tiles) concurrently. Each
+	 * compressed strip replaces its input in the array, so the strips keep
+	 * their order.
+	 *
+	 * @param nThreads The number of threads to compress with.
+	 * @see #compressStrip(byte[][], int, IFD, TiffCompression, int, int, int)
+	 */
+	private void compressStrips(final byte[][] strips, final int nThreads,
+		final IFD ifd, final TiffCompression compression, final int tileWidth,
+		final int tileHeight, final int channels) throws FormatException,
+		IOException
+	{
+		final AtomicInteger nextStrip = new AtomicInteger();
+		final List<Future<Void>> futures = new ArrayList<>();
+		for (int thread = 0; thread < nThreads; thread++) {
+			futures.add(scifio.thread().run(() -> {
+				int strip;
+				while ((strip = nextStrip.getAndIncrement()) < strips.length) {
+					compressStrip(strips, strip, ifd, compression, tileWidth,
+						tileHeight, channels);
+				}
+				return null;
+			}));
+		}
+
+		TiffWorkers.awaitAll(futures, nextStrip, strips.length,
+			"compressing strips");
+	}
+
+	/**
+	 * Copies one tile (or strip) of a plane into a new buffer, a whole row at a
+	 * time. Parts of the tile which lie outside of the plane are left as zeros.
+	 *
+	 * @param buf The plane to copy from.
+	 * @param offset The offset of the plane (or channel) within {@code buf}.
+	 * @param w The width of the plane.
+	 * @param h The height of the plane.
+	 * @param xOffset The X-coordinate of the tile within the plane.
+	 * @param yOffset The Y-coordinate of the tile within the plane.
+	 * @param tileWidth The width of the tile.
+	 * @param tileHeight The height of the tile.
+	 * @param pixelSize The number of bytes stored for each pixel.
+	 * @return The packed tile.
+	 */
+	static byte[] packTile(final byte[] buf, final int offset,
+		final int w, final int h, final int xOffset, final int yOffset,
+		final int tileWidth, final int tileHeight, final int pixelSize)
+	{
+		final int tileRowLen = tileWidth * pixelSize;
+		final byte[] tile = new byte[tileRowLen * tileHeight];
+		final int rows = Math.min(tileHeight, h - yOffset);
+		final int rowLen = Math.min(tileWidth, w - xOffset) * pixelSize;
+		for (int row = 0; row < rows; row++) {
+			System.arraycopy(buf, offset + ((row + yOffset) * w + xOffset) *
+				pixelSize, tile, row * tileRowLen, rowLen);
+		}
+		return tile;
+	}
+
 }
@@ -32,6 +32,8 @@ package io.scif.formats.tiff;
 import io.scif.FormatException;
 import io.scif.SCIFIOService;
 
+import java.util.Arrays;
+
 /**
  * Interface for services that work with TIFF files.
  *
@@ -45,4 +47,38 @@ public interface TiffService extends SCIFIOService {
 	/** Undoes in-place differencing according to the given predictor value. */
 	void undifference(byte[] input, IFD ifd) throws FormatException;
 
+	/**
+	 * Performs in-place differencing of the given range of bytes according to
+	 * the given predictor value. By default, the range is copied out,
+	 * differenced with {@link #difference(byte[], IFD)} and copied back.
+	 */
+	default void difference(final byte[] input, final int offset,
+		final int length, final IFD ifd) throws FormatException
+	{
+		if (offset == 0 && length == input.length) {
+			difference(input, ifd);
+			return;
+		}
+		final byte[] range = Arrays.copyOfRange(input, offset, offset + length);
+		difference(range, ifd);
+		System.arraycopy(range, 0, input, offset, length);
+	}
+
+	/**
+	 * Undoes in-place differencing of the given range of bytes according to the
+	 * given predictor value. By default, the range is copied out, undifferenced
+	 * with {@link #undifference(byte[], IFD)} and copied back.
+	 */
+	default void undifference(final byte[] input, final int offset,
+		final int length, final IFD ifd) throws FormatException
+	{
+		if (offset == 0 && length == input.length) {
+			undifference(input, ifd);
+			return;
+		}
+		final byte[] range = Arrays.copyOfRange(input, offset, offset + length);
+		undifference(range, ifd);
+		System.arraycopy(range, 0, input, offset, length);
+	}
+
 }
@@ -0,0 +1,216 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A bounded, least-recently-used cache of decoded TIFF tiles and strips.
+ * <p>
+ * Tiles are keyed by the file offset of their IFD together with their tile row
+ * and column, so a cache must only be shared between {@link TiffParser}s
+ * reading the same file. The total size of the cached tiles is kept below a
+ * fixed byte budget by evicting the least recently used tiles first. All
+ * methods are thread-safe.
+ * </p>
+ *
+ * @see TiffParser#setTileCache(TiffTileCache)
+ */
+public class TiffTileCache {
+
+	// -- Fields --
+
+	/** Maximum number of bytes of decoded tiles to retain. */
+	private final long maxBytes;
+
+	/** Decoded tiles, in least- to most-recently used order. */
+	private final LinkedHashMap<TileKey, byte[]> tiles = new LinkedHashMap<>(16,
+		0.75f, true);
+
+	/** Number of bytes of decoded tiles currently retained. */
+	private long bytes;
+
+	private long hits;
+
+	private long misses;
+
+	private long evictions;
+
+	// -- Constructor --
+
+	/**
+	 * Creates a new tile cache.
+	 *
+	 * @param maxBytes Maximum number of bytes of decoded tiles to retain.
+	 */
+	public TiffTileCache(final long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	// -- TiffTileCache methods --
+
+	/**
+	 * Copies a cached tile into the given buffer.
+	 *
+	 * @param ifdOffset File offset of the IFD containing the tile.
+	 * @param row Row of the tile.
+	 * @param col Column of the tile.
+	 * @param buf Buffer into which the tile is copied, or null to allocate one.
+	 * @return The buffer containing the tile, or null if the tile is not cached.
+	 */
+	public synchronized byte[] get(final long ifdOffset, final int row,
+		final int col, byte[] buf)
+	{
+		final byte[] tile = tiles.get(new TileKey(ifdOffset, row, col));
+		if (tile == null || (buf != null && buf.length < tile.length)) {
+			misses++;
+			return null;
+		}
+		hits++;
+		if (buf == null) buf = new byte[tile.length];
+		System.arraycopy(tile, 0, buf, 0, tile.length);
+		return buf;
+	}
+
+	/**
+	 * Stores a copy of a decoded tile, evicting the least recently used tiles
+	 * if needed to stay within the byte budget. Tiles larger than the whole
+	 * budget are not cached.
+	 *
+	 * @param ifdOffset File offset of the IFD containing the tile.
+	 * @param row Row of the tile.
+	 * @param col Column of the tile.
+	 * @param tile Buffer containing the decoded tile.
+	 * @param length Number of bytes of {@code tile} to store.
+	 */
+	public synchronized void put(final long ifdOffset, final int row,
+		final int col, final byte[] tile, final int length)
+	{
+		if (length > maxBytes) return;
+		final byte[] copy = new byte[length];
+		System.arraycopy(tile, 0, copy, 0, length);
+		final byte[] old = tiles.put(new TileKey(ifdOffset, row, col), copy);
+		if (old != null) bytes -= old.length;
+		bytes += length;
+
+		final Iterator<byte[]> iter = tiles.values().iterator();
+		while (bytes > maxBytes && iter.hasNext()) {
+			bytes -= iter.next().length;
+			iter.remove();
+			evictions++;
+		}
+	}
+
+	/** Removes all tiles from the cache. Statistics are not reset. */
+	public synchronized void clear() {
+		tiles.clear();
+		bytes = 0;
+	}
+
+	/** Resets the hit, miss and eviction counters. */
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	/** Gets the maximum number of bytes of decoded tiles to retain. */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/** Gets the number of bytes of decoded tiles currently retained. */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/** Gets the number of tiles currently retained. */
+	public synchronized int getTileCount() {
+		return tiles.size();
+	}
+
+	/** Gets the number of lookups that found their tile in the cache. */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/** Gets the number of lookups that did not find their tile in the cache. */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/** Gets the number of tiles evicted to stay within the byte budget. */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "TiffTileCache[tiles=" + tiles.size() + ", bytes=" + bytes + "/" +
+			maxBytes + ", hits=" + hits + ", misses=" + misses + ", evictions=" +
+			evictions + "]";
+	}
+
+	// -- Helper classes --
+
+	/** Identifies a tile by its IFD offset, row and column. */
+	private static final class TileKey {
+
+		private final long ifdOffset;
+
+		private final int row, col;
+
+		private TileKey(final long ifdOffset, final int row, final int col) {
+			this.ifdOffset = ifdOffset;
+			this.row = row;
+			this.col = col;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (!(o instanceof TileKey)) return false;
+			final TileKey key = (TileKey) o;
+			return ifdOffset == key.ifdOffset && row == key.row && col == key.col;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = Long.hashCode(ifdOffset);
+			hash = 31 * hash + row;
+			hash = 31 * hash + col;
+			return hash;
+		}
+	}
+
+}
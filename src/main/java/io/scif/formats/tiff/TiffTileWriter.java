@@ -0,0 +1,773 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import io.scif.FormatException;
+import io.scif.SCIFIO;
+import io.scif.codec.CodecOptions;
+import io.scif.util.FormatTools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.scijava.AbstractContextual;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.location.Location;
+import org.scijava.util.Bytes;
+
+/**
+ * Writes tiled TIFF images one tile at a time, so that images much larger
+ * than memory can be exported without ever holding a whole plane.
+ * <p>
+ * Each image is started with {@link #startImage}, after which its tiles may be
+ * written in any order with {@link #writeTile} or a row of tiles at a time
+ * with {@link #writeTileRow}. Tiles are compressed and appended to the output
+ * as soon as they arrive; only their offsets and byte counts are kept, and
+ * are written to the image's IFD by {@link #endImage}. Tiles which were never
+ * written all refer to a single blank tile.
+ * </p>
+ * <p>
+ * If {@link #setPyramidLevels pyramid levels} are requested, each tile is also
+ * averaged down by a factor of two into the matching quarter of a tile of the
+ * next level, which is compressed and written as soon as all of its quarters
+ * have arrived, and in turn reduced into the level above it. The whole
+ * pyramid is thus built in a single pass over the data, holding only the
+ * partially filled tiles of each level. The levels are written as SubIFDs of
+ * the full resolution image, with a {@link IFD#NEW_SUBFILE_TYPE} of 1.
+ * </p>
+ * <p>
+ * Tiles may be written concurrently from several threads; they are then
+ * reduced and compressed in parallel, and only appending them to the output
+ * is serialized. Samples are always stored interleaved.
+ * </p>
+ */
+public class TiffTileWriter extends AbstractContextual implements Closeable {
+
+	// -- Constants --
+
+	/** Images larger than this are written as BigTIFF unless told otherwise. */
+	private static final long BIG_TIFF_THRESHOLD = 2147483648L;
+
+	/** Largest offset which can be stored in a classic TIFF. */
+	private static final long MAX_TIFF_OFFSET = 0xffffffffL;
+
+	/** Tags which are copied from an image to its pyramid levels. */
+	private static final int[] LEVEL_TAGS = { IFD.BITS_PER_SAMPLE,
+		IFD.SAMPLES_PER_PIXEL, IFD.PLANAR_CONFIGURATION, IFD.SAMPLE_FORMAT,
+		IFD.COMPRESSION, IFD.PHOTOMETRIC_INTERPRETATION, IFD.PREDICTOR,
+		IFD.FILL_ORDER, IFD.JPEG_TABLES };
+
+	// -- Fields --
+
+	/** Output stream to which TIFF data is written. */
+	private final DataHandle<Location> out;
+
+	/** Saver used to write the header and IFDs. */
+	private final TiffSaver saver;
+
+	private final SCIFIO scifio;
+
+	/** Whether to write BigTIFF data, or null to decide from the first image. */
+	private Boolean bigTiff;
+
+	/** The codec options if set. */
+	private CodecOptions options;
+
+	/** Number of downsampled levels to write below each image. */
+	private int pyramidLevels;
+
+	/** Number of threads used by {@link #writeTileRow}. */
+	private int threadCount = 1;
+
+	/** Offset of the pointer to update with the offset of the next IFD. */
+	private long nextIFDPointer = -1;
+
+	/** The image being written, or null if there is none. */
+	private Image image;
+
+	// -- Constructors --
+
+	/**
+	 * Constructs a new tiled TIFF writer, writing to the given output. Any
+	 * existing content of the output is overwritten.
+	 */
+	public TiffTileWriter(final Context ctx, final DataHandle<Location> out) {
+		setContext(ctx);
+		this.out = out;
+		scifio = new SCIFIO(ctx);
+		saver = new TiffSaver(ctx, out);
+		saver.setWritingSequentially(true);
+	}
+
+	// -- TiffTileWriter methods --
+
+	/** Sets whether or not little-endian data should be written. */
+	public void setLittleEndian(final boolean littleEndian) {
+		out.setLittleEndian(littleEndian);
+	}
+
+	/**
+	 * Sets whether or not BigTIFF data should be written. By default, BigTIFF
+	 * is used if the first image is larger than 2 GB before compression.
+	 *
+	 * @param bigTiff Whether to write BigTIFF data, or null to decide
+	 *          automatically.
+	 */
+	public void setBigTiff(final Boolean bigTiff) {
+		if (nextIFDPointer >= 0) {
+			throw new IllegalStateException("The TIFF header was already written");
+		}
+		this.bigTiff = bigTiff;
+	}
+
+	/** Returns whether or not BigTIFF data is written. */
+	public boolean isBigTiff() {
+		return bigTiff == null ? false : bigTiff;
+	}
+
+	/** Sets the codec options used to compress tiles. */
+	public void setCodecOptions(final CodecOptions options) {
+		this.options = options;
+	}
+
+	/**
+	 * Sets the number of downsampled levels written below each subsequently
+	 * started image, each half the width and height of the one before. No more
+	 * levels are written than are needed to reduce the image to a single
+	 * pixel.
+	 */
+	public void setPyramidLevels(final int pyramidLevels) {
+		if (pyramidLevels < 0) {
+			throw new IllegalArgumentException("Invalid number of pyramid levels: " +
+				pyramidLevels);
+		}
+		this.pyramidLevels = pyramidLevels;
+	}
+
+	/** Gets the number of downsampled levels written below each image. */
+	public int getPyramidLevels() {
+		return pyramidLevels;
+	}
+
+	/**
+	 * Sets the number of threads with which {@link #writeTileRow} reduces and
+	 * compresses the tiles of a row.
+	 */
+	public void setThreadCount(final int threadCount) {
+		this.threadCount = Math.max(1, threadCount);
+	}
+
+	/** Gets the number of threads used by {@link #writeTileRow}. */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	/**
+	 * Starts a new image. The TIFF header is written before the first image.
+	 *
+	 * @param imageIFD IFD containing any additional tags of the image, such as
+	 *          {@link IFD#COMPRESSION}, or null.
+	 * @param width The width of the image.
+	 * @param length The height of the image.
+	 * @param tileWidth The width of each tile; a multiple of 16.
+	 * @param tileLength The height of each tile; a multiple of 16.
+	 * @param pixelType The pixel type, as defined in {@link FormatTools}.
+	 * @param samplesPerPixel The number of samples of each pixel.
+	 */
+	public synchronized void startImage(final IFD imageIFD, final long width,
+		final long length, final int tileWidth, final int tileLength,
+		final int pixelType, final int samplesPerPixel) throws FormatException,
+		IOException
+	{
+		if (image != null) endImage();
+		if (tileWidth <= 0 || tileLength <= 0 || tileWidth % 16 != 0 ||
+			tileLength % 16 != 0)
+		{
+			throw new FormatException("Tile dimensions must be positive multiples " +
+				"of 16 (" + tileWidth + " x " + tileLength + ")");
+		}
+		final long tileCount = ((width + tileWidth - 1) / tileWidth) * ((length +
+			tileLength - 1) / tileLength);
+		if (tileCount > Integer.MAX_VALUE) {
+			throw new FormatException("Too many tiles: " + tileCount);
+		}
+
+		final int bytesPerPixel = FormatTools.getBytesPerPixel(pixelType);
+		if (nextIFDPointer < 0) {
+			if (bigTiff == null) {
+				bigTiff = width * length * samplesPerPixel *
+					bytesPerPixel > BIG_TIFF_THRESHOLD;
+			}
+			saver.setBigTiff(bigTiff);
+			saver.writeHeader();
+			// the header points to the first IFD
+			nextIFDPointer = bigTiff ? 8 : 4;
+		}
+
+		final IFD ifd = imageIFD == null ? new IFD(scifio.log()) : imageIFD;
+		final int[] bps = new int[samplesPerPixel];
+		for (int c = 0; c < bps.length; c++) {
+			bps[c] = bytesPerPixel * 8;
+		}
+		ifd.putIFDValue(IFD.BITS_PER_SAMPLE, bps);
+		ifd.putIFDValue(IFD.SAMPLES_PER_PIXEL, samplesPerPixel);
+		ifd.putIFDValue(IFD.PLANAR_CONFIGURATION, 1);
+		int sampleFormat = 1;
+		if (FormatTools.isSigned(pixelType)) sampleFormat = 2;
+		if (FormatTools.isFloatingPoint(pixelType)) sampleFormat = 3;
+		ifd.putIFDValue(IFD.SAMPLE_FORMAT, sampleFormat);
+		if (ifd.getIFDValue(IFD.COMPRESSION) == null) {
+			ifd.putIFDValue(IFD.COMPRESSION, TiffCompression.UNCOMPRESSED
+				.getCode());
+		}
+		if (ifd.getIFDValue(IFD.PHOTOMETRIC_INTERPRETATION) == null) {
+			final PhotoInterp pi = samplesPerPixel >= 3 ? PhotoInterp.RGB
+				: PhotoInterp.BLACK_IS_ZERO;
+			ifd.putIFDValue(IFD.PHOTOMETRIC_INTERPRETATION, pi.getCode());
+		}
+		// the predictor works in the byte order of the output
+		ifd.put(IFD.LITTLE_ENDIAN, out.isLittleEndian());
+
+		final List<Level> levels = new ArrayList<>();
+		levels.add(new Level(ifd, width, length, tileWidth, tileLength));
+		long w = width, h = length;
+		while (levels.size() <= pyramidLevels && (w > 1 || h > 1)) {
+			w = (w + 1) / 2;
+			h = (h + 1) / 2;
+			final IFD levelIFD = new IFD(scifio.log());
+			levelIFD.put(IFD.LITTLE_ENDIAN, out.isLittleEndian());
+			levelIFD.putIFDValue(IFD.NEW_SUBFILE_TYPE, 1L);
+			for (final int tag : LEVEL_TAGS) {
+				final Object value = ifd.getIFDValue(tag);
+				if (value != null) levelIFD.putIFDValue(tag, value);
+			}
+			levels.add(new Level(levelIFD, w, h, tileWidth, tileLength));
+		}
+
+		image = new Image(ifd.getCompression(), tileWidth, tileLength, pixelType,
+			samplesPerPixel, out.isLittleEndian(), levels.toArray(
+				new Level[levels.size()]));
+	}
+
+	/**
+	 * Writes a single tile of the current image.
+	 *
+	 * @param col The column of the tile.
+	 * @param row The row of the tile.
+	 * @param buf The interleaved samples of the tile. Tiles on the right and
+	 *          bottom edges of the image may either be given in full, or
+	 *          clipped to the image.
+	 */
+	public void writeTile(final int col, final int row, final byte[] buf)
+		throws FormatException, IOException
+	{
+		writeTile(col, row, buf, false);
+	}
+
+	/**
+	 * Writes a whole row of tiles of the current image. The tiles are reduced
+	 * and compressed by as many threads as {@link #setThreadCount} allows.
+	 *
+	 * @param row The row of tiles.
+	 * @param buf The interleaved samples of the full width of the image, for
+	 *          each image row covered by this row of tiles. The last row of
+	 *          tiles may either be given in full, or clipped to the image.
+	 */
+	public void writeTileRow(final int row, final byte[] buf)
+		throws FormatException, IOException
+	{
+		final Image current;
+		final int threads;
+		synchronized (this) {
+			checkTile(0, row);
+			current = image;
+			threads = threadCount;
+		}
+		final Level full = current.levels[0];
+		final int width = (int) full.width;
+		final int tw = current.tileWidth, th = current.tileLength;
+		final int size = current.pixelSize;
+		final int h = (int) Math.min(th, full.length - (long) row * th);
+		final long rowLen = (long) width * size;
+		if (buf.length != rowLen * th && buf.length != rowLen * h) {
+			throw new FormatException("Expected a row of tiles of " + rowLen * th +
+				" or " + rowLen * h + " bytes, but got " + buf.length);
+		}
+		final int bandHeight = (int) (buf.length / rowLen);
+		final int cols = full.tilesPerRow;
+
+		if (threads <= 1 || cols <= 1) {
+			for (int col = 0; col < cols; col++) {
+				writeTile(col, row, TiffSaver.packTile(buf, 0, width, bandHeight,
+					col * tw, 0, tw, th, size), true);
+			}
+			return;
+		}
+
+		final AtomicInteger next = new AtomicInteger();
+		final List<Future<Void>> futures = new ArrayList<>();
+		for (int t = 0; t < Math.min(threads, cols); t++) {
+			futures.add(scifio.thread().run(() -> {
+				try {
+					int col;
+					while ((col = next.getAndIncrement()) < cols) {
+						writeTile(col, row, TiffSaver.packTile(buf, 0, width,
+							bandHeight, col * tw, 0, tw, th, size), true);
+					}
+				}
+				catch (final FormatException | IOException | RuntimeException e) {
+					// stop the other workers as soon as possible
+					next.set(cols);
+					throw e;
+				}
+				return null;
+			}));
+		}
+		TiffWorkers.awaitAll(futures, next, cols, "writing tiles");
+	}
+
+	/**
+	 * Finishes the current image, writing its IFD with the offsets and byte
+	 * counts of all of its tiles, preceded by the SubIFDs of its pyramid
+	 * levels.
+	 */
+	public synchronized void endImage() throws FormatException, IOException {
+		if (image == null) return;
+		final Level[] levels = image.levels;
+
+		// tiles of the pyramid still missing some of their quarters are written
+		// as they are, from the bottom up so that they reach the levels above
+		for (int l = 1; l < levels.length; l++) {
+			final Map<Integer, PendingTile> pending = levels[l].pending;
+			while (!pending.isEmpty()) {
+				final int index = pending.keySet().iterator().next();
+				final PendingTile tile = pending.remove(index);
+				storeTile(image, l, index % levels[l].tilesPerRow, index /
+					levels[l].tilesPerRow, tile.data);
+			}
+		}
+
+		// tiles which were never written share a single blank tile
+		long blankOffset = -1, blankByteCount = 0;
+		for (final Level level : levels) {
+			for (int i = 0; i < level.tileOffsets.length; i++) {
+				if (level.tileByteCounts[i] > 0) continue;
+				if (blankOffset < 0) {
+					final byte[] blank = compress(image, level.ifd, new byte[image
+						.tileWidth * image.tileLength * image.pixelSize]);
+					blankOffset = append(blank);
+					blankByteCount = blank.length;
+				}
+				level.tileOffsets[i] = blankOffset;
+				level.tileByteCounts[i] = blankByteCount;
+			}
+		}
+
+		final long[] subIFDOffsets = new long[levels.length - 1];
+		for (int l = 1; l < levels.length; l++) {
+			subIFDOffsets[l - 1] = writeIFD(levels[l]);
+		}
+		final IFD ifd = levels[0].ifd;
+		if (subIFDOffsets.length > 0) ifd.putIFDValue(IFD.SUB_IFD, subIFDOffsets);
+		final long ifdOffset = writeIFD(levels[0]);
+
+		// link the new IFD into the chain
+		out.seek(nextIFDPointer);
+		if (bigTiff) out.writeLong(ifdOffset);
+		else out.writeInt((int) ifdOffset);
+		nextIFDPointer = ifdOffset + (bigTiff ? 8 : 2) + getEntryCount(ifd) *
+			(bigTiff ? TiffConstants.BIG_TIFF_BYTES_PER_ENTRY
+				: TiffConstants.BYTES_PER_ENTRY);
+
+		image = null;
+	}
+
+	// -- Closeable methods --
+
+	/** Finishes the current image, and closes the output. */
+	@Override
+	public void close() throws IOException {
+		try {
+			endImage();
+		}
+		catch (final FormatException e) {
+			throw new IOException(e);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Writes a single tile of the current image.
+	 *
+	 * @param owned Whether the buffer may be modified, rather than copied.
+	 */
+	private void writeTile(final int col, final int row, final byte[] buf,
+		final boolean owned) throws FormatException, IOException
+	{
+		// the tile is processed outside of the lock, using the state of the
+		// image at the time it was submitted
+		final Image current;
+		synchronized (this) {
+			checkTile(col, row);
+			current = image;
+		}
+		final Level full = current.levels[0];
+		final int tw = current.tileWidth, th = current.tileLength;
+		final int size = current.pixelSize;
+		final int w = full.getTileWidth(col, tw);
+		final int h = full.getTileLength(row, th);
+
+		final byte[] tile;
+		final int tileSize = tw * th * size;
+		if (buf.length != tileSize) {
+			if (buf.length != w * h * size) {
+				throw new FormatException("Expected a tile of " + tileSize + " or " +
+					w * h * size + " bytes, but got " + buf.length);
+			}
+			tile = TiffSaver.packTile(buf, 0, w, h, 0, 0, tw, th, size);
+		}
+		else {
+			// differencing and some codecs work in place
+			tile = owned ? buf : buf.clone();
+		}
+		storeTile(current, 0, col, row, tile);
+	}
+
+	/**
+	 * Compresses and appends a complete tile of the given level, then reduces
+	 * it into the next level, writing any tiles of that level it completes.
+	 */
+	private void storeTile(final Image current, final int levelIndex,
+		final int col, final int row, final byte[] tile) throws FormatException,
+		IOException
+	{
+		final Level level = current.levels[levelIndex];
+		final boolean reduce = levelIndex + 1 < current.levels.length;
+		// the tile is reduced before compressing it, which may modify it
+		final byte[] quarter = reduce ? downsample(current, tile, level
+			.getTileWidth(col, current.tileWidth), level.getTileLength(row,
+				current.tileLength)) : null;
+
+		final byte[] compressed = compress(current, level.ifd, tile);
+		final int index = row * level.tilesPerRow + col;
+		synchronized (this) {
+			if (current != image) {
+				throw new FormatException("The image was ended while writing a tile");
+			}
+			level.tileOffsets[index] = append(compressed);
+			level.tileByteCounts[index] = compressed.length;
+		}
+		if (!reduce) return;
+
+		final Level parent = current.levels[levelIndex + 1];
+		final int parentCol = col / 2, parentRow = row / 2;
+		final int parentIndex = parentRow * parent.tilesPerRow + parentCol;
+		final PendingTile done;
+		synchronized (this) {
+			PendingTile pending = parent.pending.get(parentIndex);
+			if (pending == null) {
+				final int quarters = Math.min(2, level.tilesPerRow - parentCol * 2) *
+					Math.min(2, level.tilesPerColumn - parentRow * 2);
+				pending = new PendingTile(new byte[tile.length], quarters);
+				parent.pending.put(parentIndex, pending);
+			}
+			final int halfWidth = current.tileWidth / 2;
+			final int halfLength = current.tileLength / 2;
+			final int rowLen = halfWidth * current.pixelSize;
+			final int xOffset = (col % 2) * rowLen;
+			final int yOffset = (row % 2) * halfLength;
+			for (int y = 0; y < halfLength; y++) {
+				System.arraycopy(quarter, y * rowLen, pending.data, (yOffset + y) *
+					rowLen * 2 + xOffset, rowLen);
+			}
+			done = --pending.remaining == 0 ? parent.pending.remove(parentIndex)
+				: null;
+		}
+		if (done != null) {
+			storeTile(current, levelIndex + 1, parentCol, parentRow, done.data);
+		}
+	}
+
+	/**
+	 * Averages each 2 x 2 block of pixels of the given tile, of which only the
+	 * given width and length lie within the image.
+	 *
+	 * @return A tile of half the width and length.
+	 */
+	private byte[] downsample(final Image current, final byte[] tile,
+		final int width, final int length)
+	{
+		final int tw = current.tileWidth;
+		final int channels = current.samplesPerPixel;
+		final int bpp = current.bytesPerSample;
+		final int halfWidth = tw / 2;
+		final byte[] quarter = new byte[tile.length / 4];
+		final int w = (width + 1) / 2, h = (length + 1) / 2;
+		for (int y = 0; y < h; y++) {
+			final int rows = Math.min(2, length - y * 2);
+			for (int x = 0; x < w; x++) {
+				final int cols = Math.min(2, width - x * 2);
+				for (int c = 0; c < channels; c++) {
+					double sum = 0;
+					for (int dy = 0; dy < rows; dy++) {
+						for (int dx = 0; dx < cols; dx++) {
+							final int index = ((y * 2 + dy) * tw + x * 2 + dx) * channels + c;
+							sum += getSample(current, tile, index * bpp);
+						}
+					}
+					final int index = (y * halfWidth + x) * channels + c;
+					setSample(current, quarter, index * bpp, sum / (rows * cols));
+				}
+			}
+		}
+		return quarter;
+	}
+
+	private double getSample(final Image current, final byte[] buf,
+		final int offset)
+	{
+		final boolean little = current.littleEndian;
+		switch (current.pixelType) {
+			case FormatTools.INT8:
+				return buf[offset];
+			case FormatTools.UINT8:
+				return buf[offset] & 0xff;
+			case FormatTools.INT16:
+				return Bytes.toShort(buf, offset, little);
+			case FormatTools.UINT16:
+				return Bytes.toShort(buf, offset, little) & 0xffff;
+			case FormatTools.INT32:
+				return Bytes.toInt(buf, offset, little);
+			case FormatTools.UINT32:
+				return Bytes.toInt(buf, offset, little) & 0xffffffffL;
+			case FormatTools.FLOAT:
+				return Bytes.toFloat(buf, offset, little);
+			case FormatTools.DOUBLE:
+				return Bytes.toDouble(buf, offset, little);
+			default:
+				throw new IllegalArgumentException("Unsupported pixel type: " +
+					current.pixelType);
+		}
+	}
+
+	private void setSample(final Image current, final byte[] buf,
+		final int offset, final double value)
+	{
+		final int bpp = current.bytesPerSample;
+		final boolean little = current.littleEndian;
+		switch (current.pixelType) {
+			case FormatTools.FLOAT:
+				Bytes.unpack(Float.floatToIntBits((float) value), buf, offset, bpp,
+					little);
+				break;
+			case FormatTools.DOUBLE:
+				Bytes.unpack(Double.doubleToLongBits(value), buf, offset, bpp, little);
+				break;
+			default:
+				Bytes.unpack(Math.round(value), buf, offset, bpp, little);
+		}
+	}
+
+	private void checkTile(final int col, final int row) throws FormatException {
+		if (image == null) {
+			throw new FormatException("No image has been started");
+		}
+		final Level full = image.levels[0];
+		if (col < 0 || col >= full.tilesPerRow || row < 0 ||
+			row >= full.tilesPerColumn)
+		{
+			throw new FormatException("Invalid tile: column " + col + ", row " +
+				row + " (image has " + full.tilesPerRow + " x " +
+				full.tilesPerColumn + " tiles)");
+		}
+	}
+
+	/** Differences and compresses the given tile of the given image. */
+	private byte[] compress(final Image current, final IFD levelIFD,
+		final byte[] tile) throws FormatException
+	{
+		scifio.tiff().difference(tile, levelIFD);
+		final CodecOptions codecOptions = current.compression
+			.getCompressionCodecOptions(levelIFD, options);
+		codecOptions.width = current.tileWidth;
+		codecOptions.height = current.tileLength;
+		codecOptions.channels = current.samplesPerPixel;
+		return current.compression.compress(scifio.codec(), tile, codecOptions);
+	}
+
+	/** Appends the given bytes to the output, returning their offset. */
+	private long append(final byte[] bytes) throws FormatException,
+		IOException
+	{
+		final long offset = out.length();
+		checkOffset(offset + bytes.length);
+		out.seek(offset);
+		out.write(bytes);
+		return offset;
+	}
+
+	/**
+	 * Appends the IFD of the given level, with the offsets and byte counts of
+	 * its tiles, returning its offset.
+	 */
+	private long writeIFD(final Level level) throws FormatException,
+		IOException
+	{
+		level.ifd.putIFDValue(IFD.TILE_OFFSETS, level.tileOffsets);
+		level.ifd.putIFDValue(IFD.TILE_BYTE_COUNTS, level.tileByteCounts);
+
+		// IFDs must begin on a word boundary
+		out.seek(out.length());
+		if (out.offset() % 2 != 0) out.writeByte(0);
+		final long offset = out.offset();
+		checkOffset(offset);
+		saver.writeIFD(level.ifd, 0);
+		return offset;
+	}
+
+	private void checkOffset(final long offset) throws FormatException {
+		if (!bigTiff && offset > MAX_TIFF_OFFSET) {
+			throw new FormatException("File is too large for 32-bit TIFF but " +
+				"BigTIFF was disabled. Please enable it with setBigTiff(true).");
+		}
+	}
+
+	/** Gets the number of entries {@link TiffSaver#writeIFD} writes. */
+	private int getEntryCount(final IFD imageIFD) {
+		int count = imageIFD.size();
+		if (imageIFD.containsKey(IFD.LITTLE_ENDIAN)) count--;
+		if (imageIFD.containsKey(IFD.BIG_TIFF)) count--;
+		if (imageIFD.containsKey(IFD.REUSE)) count--;
+		if (imageIFD.containsKey(IFD.IFD_OFFSET)) count--;
+		return count;
+	}
+
+	// -- Helper classes --
+
+	/** State of the image being written, shared by all of its levels. */
+	private static final class Image {
+
+		private final TiffCompression compression;
+
+		private final int tileWidth, tileLength;
+
+		private final int pixelType, samplesPerPixel, bytesPerSample;
+
+		/** Number of bytes stored for each pixel. */
+		private final int pixelSize;
+
+		private final boolean littleEndian;
+
+		/** The full resolution image, followed by its downsampled levels. */
+		private final Level[] levels;
+
+		private Image(final TiffCompression compression, final int tileWidth,
+			final int tileLength, final int pixelType, final int samplesPerPixel,
+			final boolean littleEndian, final Level[] levels)
+		{
+			this.compression = compression;
+			this.tileWidth = tileWidth;
+			this.tileLength = tileLength;
+			this.pixelType = pixelType;
+			this.samplesPerPixel = samplesPerPixel;
+			bytesPerSample = FormatTools.getBytesPerPixel(pixelType);
+			pixelSize = bytesPerSample * samplesPerPixel;
+			this.littleEndian = littleEndian;
+			this.levels = levels;
+		}
+	}
+
+	/** A single resolution level of an image. */
+	private static final class Level {
+
+		private final IFD ifd;
+
+		private final long width, length;
+
+		private final int tilesPerRow, tilesPerColumn;
+
+		private final long[] tileOffsets, tileByteCounts;
+
+		/** Tiles still waiting for some of their quarters, by tile index. */
+		private final Map<Integer, PendingTile> pending = new HashMap<>();
+
+		private Level(final IFD ifd, final long width, final long length,
+			final int tileWidth, final int tileLength)
+		{
+			this.ifd = ifd;
+			this.width = width;
+			this.length = length;
+			ifd.put(IFD.IMAGE_WIDTH, width);
+			ifd.put(IFD.IMAGE_LENGTH, length);
+			ifd.putIFDValue(IFD.TILE_WIDTH, tileWidth);
+			ifd.putIFDValue(IFD.TILE_LENGTH, tileLength);
+			tilesPerRow = (int) ((width + tileWidth - 1) / tileWidth);
+			tilesPerColumn = (int) ((length + tileLength - 1) / tileLength);
+			tileOffsets = new long[tilesPerRow * tilesPerColumn];
+			tileByteCounts = new long[tilesPerRow * tilesPerColumn];
+		}
+
+		/** Gets the width of the given column of tiles within the level. */
+		private int getTileWidth(final int col, final int tileWidth) {
+			return (int) Math.min(tileWidth, width - (long) col * tileWidth);
+		}
+
+		/** Gets the length of the given row of tiles within the level. */
+		private int getTileLength(final int row, final int tileLength) {
+			return (int) Math.min(tileLength, length - (long) row * tileLength);
+		}
+	}
+
+	/** A tile of a pyramid level which is being assembled from its quarters. */
+	private static final class PendingTile {
+
+		private final byte[] data;
+
+		/** Number of quarters which have yet to arrive. */
+		private int remaining;
+
+		private PendingTile(final byte[] data, final int remaining) {
+			this.data = data;
+			this.remaining = remaining;
+		}
+	}
+
+}
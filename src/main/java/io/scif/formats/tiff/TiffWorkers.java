@@ -0,0 +1,96 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import io.scif.FormatException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Waits for the workers used to read and write TIFF strips and tiles, which
+ * claim their strips or tiles one at a time from a shared counter.
+ */
+final class TiffWorkers {
+
+	private TiffWorkers() {
+		// NB: Prevent instantiation of utility class.
+	}
+
+	/**
+	 * Waits for all of the given workers. After a failure, the remaining tasks
+	 * are cancelled by claiming them all, so that each worker stops after its
+	 * current task; every worker is still waited for, since they all share the
+	 * caller's buffers. The first failure is then rethrown, and the interrupt
+	 * status restored if the wait was interrupted.
+	 *
+	 * @param futures The workers.
+	 * @param next The counter from which the workers claim their tasks.
+	 * @param count The number of tasks.
+	 * @param action What the workers do, for the message of an interrupt.
+	 */
+	static void awaitAll(final List<Future<Void>> futures,
+		final AtomicInteger next, final int count, final String action)
+		throws FormatException, IOException
+	{
+		Throwable failure = null;
+		boolean interrupted = false;
+		for (final Future<Void> future : futures) {
+			while (true) {
+				try {
+					future.get();
+					break;
+				}
+				catch (final InterruptedException e) {
+					interrupted = true;
+					if (failure == null) failure = e;
+					next.set(count);
+				}
+				catch (final ExecutionException e) {
+					if (failure == null) failure = e.getCause();
+					next.set(count);
+					break;
+				}
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		if (failure == null) return;
+		if (failure instanceof InterruptedException) {
+			throw new IOException("Interrupted while " + action, failure);
+		}
+		if (failure instanceof FormatException) throw (FormatException) failure;
+		if (failure instanceof IOException) throw (IOException) failure;
+		throw new FormatException(failure);
+	}
+
+}
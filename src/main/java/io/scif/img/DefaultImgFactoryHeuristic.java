@@ -32,7 +32,6 @@ package io.scif.img;
 import io.scif.Metadata;
 import io.scif.config.SCIFIOConfig.ImgMode;
 import io.scif.img.cell.SCIFIOCellImgFactory;
-import io.scif.util.FormatTools;
 import io.scif.util.MemoryTools;
 
 import java.util.ArrayList;
@@ -55,7 +54,8 @@ import org.scijava.util.ArrayUtils;
  * <ul>
  * <li>Check each ImgMode in order</li>
  * <li>If ImgMode.ARRAY, select if dataset size &lt; 2GB</li>
- * <li>If ImgMode.PLANAR, select if plane size &lt; 2GB and dataset fits memory.
+ * <li>If ImgMode.PLANAR, select if each plane has fewer than 2^31 elements
+ * and dataset fits memory.
  * <li>
  * <li>If ImgMode.CELL, return a SCIFIOCellImgFactory.</li>
  * <li>If ImgMode.AUTO or none of the requested types could be selected, check
@@ -95,7 +95,7 @@ public class DefaultImgFactoryHeuristic implements ImgFactoryHeuristic {
 		final Metadata m, final ImgMode[] imgModes, final T type)
 		throws IncompatibleTypeException
 	{
-		// Max size of a plane of a PlanarImg, or total dataset for ArrayImg.
+		// Max size of the total dataset for ArrayImg.
 		// 2GB.
 		final long maxSize = ArrayUtils.safeMultiply64(2, 1024, 1024, 1024);
 
@@ -106,10 +106,11 @@ public class DefaultImgFactoryHeuristic implements ImgFactoryHeuristic {
 		// check for overflow
 		if (datasetSize <= 0) datasetSize = Long.MAX_VALUE;
 
-		// divide by 1024 to compare to max_size and avoid overflow
-		final long planeSize = m.get(0).getAxisLength(Axes.X) * //
-			m.get(0).getAxisLength(Axes.Y) * //
-			FormatTools.getBytesPerPixel(m.get(0).getPixelType());
+		// PlanarImg stores each plane in one primitive array, so its limit is
+		// on the element count rather than the byte count of a plane
+		final long planeElements = m.get(0).getAxisLength(Axes.X) * //
+			m.get(0).getAxisLength(Axes.Y);
+		final boolean planeFitsArray = planeElements < Integer.MAX_VALUE;
 
 		final boolean fitsInMemory = availableMem > datasetSize;
 
@@ -126,13 +127,14 @@ public class DefaultImgFactoryHeuristic implements ImgFactoryHeuristic {
 					// Isn't guaranteed to handle all images well (e.g. RGB).
 					//if (planeSize < maxSize) return new PlanarImgFactory<>(type);
 					//return new CellImgFactory<>(type);
-					return new PlanarImgFactory<>(type);
+					if (planeFitsArray) return new PlanarImgFactory<>(type);
+					return new SCIFIOCellImgFactory<>(type);
 				case ARRAY:
 					if (datasetSize < maxSize && fitsInMemory)
 						return new ArrayImgFactory<>(type);
 					break;
 				case PLANAR:
-					if (planeSize < maxSize && fitsInMemory)
+					if (planeFitsArray && fitsInMemory)
 						return new PlanarImgFactory<>(type);
 					break;
 				case CELL:
@@ -32,6 +32,7 @@ package io.scif.img;
 import static org.scijava.util.ListUtils.first;
 
 import io.scif.FormatException;
+import io.scif.ImageMetadata;
 import io.scif.Metadata;
 import io.scif.Plane;
 import io.scif.Reader;
@@ -49,6 +50,8 @@ import io.scif.util.FormatTools;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -58,15 +61,21 @@ import net.imagej.ImgPlus;
 import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
 import net.imagej.axis.CalibratedAxis;
+import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.basictypeaccess.PlanarAccess;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.Type;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
 
 import org.scijava.Context;
 import org.scijava.app.StatusService;
@@ -84,6 +93,17 @@ import org.scijava.plugin.Parameter;
  */
 public class ImgOpener extends AbstractImgIOComponent {
 
+	// -- Constants --
+
+	/**
+	 * Planar regions larger than this many bytes cannot be held in a single
+	 * {@link Plane}, and are read in bands of rows instead.
+	 */
+	private static final long MAX_PLANE_BYTES = Integer.MAX_VALUE - 8;
+
+	/** Target size in bytes of each band when reading very large planes. */
+	private static final long BAND_BYTES = 256 * 1024 * 1024;
+
 	@Parameter
 	private StatusService statusService;
 
@@ -96,6 +116,12 @@ public class ImgOpener extends AbstractImgIOComponent {
 	@Parameter
 	private LocationService locationService;
 
+	/** Largest planar region read in one piece; settable by tests. */
+	long maxPlaneBytes = MAX_PLANE_BYTES;
+
+	/** Size of each band of a larger planar region; settable by tests. */
+	long bandBytes = BAND_BYTES;
+
 	// -- Constructors --
 
 	public ImgOpener() {
@@ -742,6 +768,14 @@ public class ImgOpener extends AbstractImgIOComponent {
 			if (config.imgOpenerIsComputeMinMax()) {
 				populateMinMax(r, imgPlus, imageIndex);
 			}
+			final int bpp = FormatTools.getBytesPerPixel(r.getMetadata().get(
+				imageIndex).getPixelType());
+			if (Intervals.numElements(bounds) * bpp > maxPlaneBytes) {
+				readBands(imageIndex, imgPlus, r, config, bounds, planeIndex,
+					planeCount[0]);
+				planeCount[0]++;
+				return tmpPlane;
+			}
 			// FIXME: what if tmpPlane length does not match bounds size?
 			// Invent a utility method for checking tmpPlane vs. bounds.
 			if (tmpPlane == null) {
@@ -766,6 +800,151 @@ public class ImgOpener extends AbstractImgIOComponent {
 		return tmpPlane;
 	}
 
+	/**
+	 * Reads a plane too large for a single {@link Plane} into the given
+	 * {@link ImgPlus}, one band of rows at a time. The samples are copied
+	 * directly, so no {@link PlaneConverter} is used, not even a custom one.
+	 */
+	private <T extends RealType<T>> void readBands(final int imageIndex,
+		final ImgPlus<T> imgPlus, final Reader r, final SCIFIOConfig config,
+		final Interval bounds, final int planeIndex, final int planeCount)
+		throws FormatException, IOException
+	{
+		final ImageMetadata meta = r.getMetadata().get(imageIndex);
+		final int pixelType = meta.getPixelType();
+		final boolean little = meta.isLittleEndian();
+		final int bpp = FormatTools.getBytesPerPixel(pixelType);
+		final int yIndex = meta.getAxisIndex(Axes.Y);
+		final int planarCount = bounds.numDimensions();
+
+		// position of this plane along the non-planar dimensions of the image
+		final long[] npDims = new long[imgPlus.numDimensions() - planarCount];
+		final long[] npPos = new long[npDims.length];
+		for (int d = 0; d < npDims.length; d++) {
+			npDims[d] = imgPlus.dimension(planarCount + d);
+		}
+		IntervalIndexer.indexToPosition(planeCount, npDims, npPos);
+
+		// samples per row, and number of row blocks along slower planar axes
+		long rowLength = 1, blocks = 1;
+		for (int d = 0; d < planarCount; d++) {
+			if (d < yIndex) rowLength *= bounds.dimension(d);
+			else if (d > yIndex) blocks *= bounds.dimension(d);
+		}
+		final long height = bounds.dimension(yIndex);
+		final long rowBytes = rowLength * blocks * bpp;
+		final long bandRows = Math.max(1, bandBytes / rowBytes);
+
+		// primitive array holding this plane's samples, if there is one
+		final Object samples = sampleArray(imgPlus, pixelType, planeCount);
+		final long samplesOffset = utils().getPlanarAccess(imgPlus) == null
+			? planeCount * rowLength * height * blocks : 0;
+		final ByteOrder order = little ? ByteOrder.LITTLE_ENDIAN
+			: ByteOrder.BIG_ENDIAN;
+
+		final long[] bandMin = Intervals.minAsLongArray(bounds);
+		final long[] bandMax = Intervals.maxAsLongArray(bounds);
+		final long[] imgMin = new long[imgPlus.numDimensions()];
+		final long[] imgMax = new long[imgPlus.numDimensions()];
+		for (int d = 0; d < planarCount; d++) {
+			imgMax[d] = bounds.dimension(d) - 1;
+		}
+		for (int d = 0; d < npPos.length; d++) {
+			imgMin[planarCount + d] = imgMax[planarCount + d] = npPos[d];
+		}
+
+		Plane band = null;
+		for (long y = bounds.min(yIndex); y <= bounds.max(yIndex); y += bandRows) {
+			bandMin[yIndex] = y;
+			bandMax[yIndex] = Math.min(y + bandRows - 1, bounds.max(yIndex));
+			final Interval bandBounds = new FinalInterval(bandMin, bandMax);
+			// the band buffer is reused; only the last band may be shorter
+			band = band == null ? r.openPlane(imageIndex, planeIndex, bandBounds,
+				config) : r.openPlane(imageIndex, planeIndex, band, bandBounds,
+					config);
+			final byte[] bytes = band.getBytes();
+
+			final long rows = bandMax[yIndex] - bandMin[yIndex] + 1;
+			final long top = bandMin[yIndex] - bounds.min(yIndex);
+			if (samples != null) {
+				final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(order);
+				final int count = (int) (rowLength * rows);
+				for (long block = 0; block < blocks; block++) {
+					buffer.position((int) (block * count * bpp));
+					copySamples(buffer, samples, (int) (samplesOffset + (block *
+						height + top) * rowLength), count);
+				}
+			}
+			else {
+				// no backing array; go through the image's cursor instead
+				imgMin[yIndex] = top;
+				imgMax[yIndex] = top + rows - 1;
+				final Cursor<T> cursor = Views.flatIterable(Views.interval(imgPlus,
+					imgMin, imgMax)).cursor();
+				int index = 0;
+				while (cursor.hasNext()) {
+					cursor.next().setReal(utils().decodeWord(bytes, index++, pixelType,
+						little));
+				}
+			}
+		}
+
+		imgPlus.setColorTable(band.getColorTable(), planeCount);
+	}
+
+	/**
+	 * Gets the primitive array backing the given plane of the image, if the
+	 * image is planar or array based and its type matches the pixel type.
+	 * Planar images hold one array per plane; array images hold all planes in a
+	 * single array.
+	 */
+	private Object sampleArray(final ImgPlus<?> imgPlus, final int pixelType,
+		final int planeCount)
+	{
+		final Type<?> inputType = utils().makeType(pixelType);
+		if (!imgPlus.firstElement().getClass().isAssignableFrom(inputType
+			.getClass()))
+		{
+			return null;
+		}
+		final PlanarAccess<ArrayDataAccess<?>> planarAccess = utils()
+			.getPlanarAccess(imgPlus);
+		final ArrayImg<?, ?> arrayImg = utils().getArrayAccess(imgPlus);
+		final Object store;
+		if (planarAccess != null) store = planarAccess.getPlane(planeCount);
+		else if (arrayImg != null) store = arrayImg.update(null);
+		else return null;
+		if (!(store instanceof ArrayDataAccess)) return null;
+		final Object array = ((ArrayDataAccess<?>) store).getCurrentStorageArray();
+		final boolean supported = array instanceof byte[] ||
+			array instanceof short[] || array instanceof int[] ||
+			array instanceof float[] || array instanceof double[];
+		return supported ? array : null;
+	}
+
+	/**
+	 * Copies samples from the buffer's position into the given primitive array.
+	 */
+	private static void copySamples(final ByteBuffer buffer, final Object array,
+		final int offset, final int count)
+	{
+		if (array instanceof byte[]) {
+			buffer.get((byte[]) array, offset, count);
+		}
+		else if (array instanceof short[]) {
+			buffer.asShortBuffer().get((short[]) array, offset, count);
+		}
+		else if (array instanceof int[]) {
+			buffer.asIntBuffer().get((int[]) array, offset, count);
+		}
+		else if (array instanceof float[]) {
+			buffer.asFloatBuffer().get((float[]) array, offset, count);
+		}
+		else {
+			buffer.asDoubleBuffer().get((double[]) array, offset, count);
+		}
+	}
+
 	private void populateMinMax(final Reader r, final ImgPlus<?> imgPlus,
 		final int imageIndex)
 	{
@@ -136,6 +136,9 @@ public class JAIIIOServiceImpl extends AbstractService implements
 		if (options.resolution != null) {
 			param.setResolution(options.resolution.intValue());
 		}
+		if (options.sourceRegion != null) {
+			param.setSourceRegion(options.sourceRegion);
+		}
 		return reader.read(0, param);
 	}
 
@@ -159,6 +162,9 @@ public class JAIIIOServiceImpl extends AbstractService implements
 		if (options.resolution != null) {
 			param.setResolution(options.resolution.intValue());
 		}
+		if (options.sourceRegion != null) {
+			param.setSourceRegion(options.sourceRegion);
+		}
 		return reader.readRaster(0, param);
 	}
 
@@ -97,4 +97,26 @@ public class BitBufferTest {
 			fail("-1 expected at end of buffer, " + read + " received.");
 		}
 	}
+
+	/** Tests looking at bits before consuming them, up to the end. */
+	@Test
+	public void testPeekAndConsume() {
+		final byte[] bytes = new byte[19];
+		new Random(3).nextBytes(bytes);
+		final BitBuffer reference = new BitBuffer(bytes);
+		final BitBuffer bb = new BitBuffer(bytes);
+		int remaining = bytes.length * 8;
+		for (int n = 1; remaining > 0; n = n % 32 + 1) {
+			final int count = Math.min(n, remaining);
+			final int expected = reference.getBits(count);
+			final int peeked = bb.peekBits(n);
+			if (peeked >>> (n - count) != expected) {
+				fail("Peeked " + peeked + ", expected " + expected);
+			}
+			if (bb.consumeBits(n) != count) fail("Consumed wrong bit count");
+			remaining -= count;
+		}
+		if (bb.consumeBits(1) != 0) fail("Consumed bits past end of buffer");
+		if (-1 != bb.getBits(1)) fail("-1 expected at end of buffer");
+	}
 }
@@ -0,0 +1,191 @@
+/*-
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import io.scif.FormatException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests decoding with {@link Codec#decompress(ByteBuffer, byte[], int, int,
+ * CodecOptions)}.
+ */
+public class CodecBufferTest {
+
+	private Context context;
+
+	private CodecService codecService;
+
+	@Before
+	public void setUp() {
+		context = new Context();
+		codecService = context.service(CodecService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testPassthrough() throws FormatException {
+		assertDecodes(PassthroughCodec.class, data(5000), data(5000));
+	}
+
+	@Test
+	public void testPackbits() throws FormatException {
+		assertDecodes(PackbitsCodec.class, packbits(data(5000)), data(5000));
+	}
+
+	@Test
+	public void testLZW() throws FormatException {
+		final Codec codec = codecService.getCodec(LZWCodec.class);
+		assertDecodes(LZWCodec.class, codec.compress(data(50000), null),
+			data(50000));
+	}
+
+	@Test
+	public void testZlib() throws FormatException {
+		final Codec codec = codecService.getCodec(ZlibCodec.class);
+		final byte[] compressed = codec.compress(data(50000), null);
+		assertDecodes(ZlibCodec.class, compressed, data(50000));
+
+		// direct buffers have no backing array
+		final ByteBuffer direct = ByteBuffer.allocateDirect(compressed.length);
+		direct.put(compressed).flip();
+		final byte[] out = new byte[50000];
+		assertEquals(out.length, codec.decompress(direct, out, 0, out.length,
+			options(out.length)));
+		assertEquals(0, direct.position());
+		assertArrayEquals(data(50000), out);
+	}
+
+	@Test
+	public void testZstd() throws FormatException {
+		final Codec codec = codecService.getCodec(ZstdCodec.class);
+		assertDecodes(ZstdCodec.class, codec.compress(data(50000), null),
+			data(50000));
+	}
+
+	@Test
+	public void testLZ4() throws FormatException {
+		final Codec codec = codecService.getCodec(LZ4Codec.class);
+		assertDecodes(LZ4Codec.class, codec.compress(data(50000), null),
+			data(50000));
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Checks that the given data decodes into part of a larger buffer, without
+	 * touching the rest of the buffer.
+	 */
+	private void assertDecodes(final Class<? extends Codec> codecClass,
+		final byte[] compressed, final byte[] expected) throws FormatException
+	{
+		final Codec codec = codecService.getCodec(codecClass);
+		assertArrayEquals(expected, codec.decompress(compressed, options(
+			expected.length)));
+
+		// the compressed data sits in the middle of a larger array
+		final byte[] input = new byte[compressed.length + 20];
+		System.arraycopy(compressed, 0, input, 10, compressed.length);
+		final ByteBuffer in = ByteBuffer.wrap(input, 10, compressed.length);
+
+		final byte[] out = new byte[expected.length + 30];
+		Arrays.fill(out, (byte) 0x55);
+		final int n = codec.decompress(in, out, 10, expected.length + 10,
+			options(expected.length));
+		assertEquals(expected.length, n);
+		assertEquals(10, in.position());
+		assertArrayEquals(expected, Arrays.copyOfRange(out, 10, 10 + n));
+		for (int i = 0; i < 10; i++) {
+			assertEquals(0x55, out[i]);
+			assertEquals(0x55, out[out.length - 1 - i]);
+		}
+
+		// output that does not fit is clipped
+		final byte[] small = new byte[expected.length / 2];
+		assertEquals(small.length, codec.decompress(in, small, 0, small.length,
+			options(expected.length)));
+		assertArrayEquals(Arrays.copyOf(expected, small.length), small);
+	}
+
+	private CodecOptions options(final int maxBytes) {
+		final CodecOptions options = new CodecOptions();
+		options.maxBytes = maxBytes;
+		return options;
+	}
+
+	/** Encodes the given data with PackBits. */
+	private byte[] packbits(final byte[] data) {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int i = 0;
+		while (i < data.length) {
+			int run = 1;
+			while (i + run < data.length && run < 128 && data[i + run] == data[i]) {
+				run++;
+			}
+			if (run > 2) {
+				out.write(1 - run);
+				out.write(data[i]);
+				i += run;
+			}
+			else {
+				final int literal = Math.min(128, data.length - i);
+				out.write(literal - 1);
+				out.write(data, i, literal);
+				i += literal;
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/** Creates somewhat compressible test data. */
+	private byte[] data(final int length) {
+		final byte[] data = new byte[length];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ((i / 7) ^ (i * i >> 9));
+		}
+		return data;
+	}
+
+}
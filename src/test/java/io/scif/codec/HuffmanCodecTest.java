@@ -0,0 +1,140 @@
+/*-
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import io.scif.FormatException;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link HuffmanCodec}.
+ */
+public class HuffmanCodecTest {
+
+	/**
+	 * A lossless JPEG table with code lengths from 2 to 14 bits, so that both
+	 * short codes and codes longer than the lookup table are decoded.
+	 */
+	private static final short[] TABLE = { 0, 1, 5, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+		1, 1, 0, 0, 4, 3, 5, 2, 6, 1, 7, 0, 8, 9, 10, 11, 12, 13, 14, 15, 16 };
+
+	private Context context;
+
+	private HuffmanCodec codec;
+
+	@Before
+	public void setUp() {
+		context = new Context();
+		codec = context.service(CodecService.class).getCodec(HuffmanCodec.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	/** Tests decoding samples of every bit count, up to the end of the data. */
+	@Test
+	public void testSamples() throws FormatException {
+		final Random random = new Random(7);
+		final int[][] codes = codes(TABLE);
+		final int[] samples = new int[2000];
+		final BitWriter out = new BitWriter();
+		for (int i = 0; i < samples.length; i++) {
+			final int bitCount = random.nextInt(17);
+			// a 16-bit sample is always 0x8000, with no further bits
+			int sample = 0x8000;
+			if (bitCount < 16) {
+				sample = bitCount == 0 ? 0 : (1 << (bitCount - 1)) + random.nextInt(
+					1 << (bitCount - 1));
+				if (random.nextBoolean()) sample = -sample;
+			}
+			samples[i] = sample;
+
+			out.write(codes[bitCount][0], codes[bitCount][1]);
+			if (bitCount > 0 && bitCount < 16) {
+				out.write(sample < 0 ? sample - 1 : sample, bitCount);
+			}
+		}
+		final byte[] data = out.toByteArray();
+
+		final HuffmanCodecOptions options = new HuffmanCodecOptions();
+		options.table = TABLE;
+		BitBuffer bb = new BitBuffer(data);
+		for (final int sample : samples) {
+			assertEquals(sample, codec.getSample(bb, options));
+		}
+		bb.skipBits(8);
+		assertEquals(0, codec.getSample(bb, options));
+
+		for (final HuffmanCodec.Decoder decoder : new HuffmanCodec.Decoder[] {
+			codec.getDecoder(TABLE), HuffmanCodec.createDecoder(TABLE) })
+		{
+			bb = new BitBuffer(data);
+			for (final int sample : samples) {
+				assertEquals(sample, decoder.getSample(bb));
+			}
+		}
+	}
+
+	/** Tests that only decoders got from the codec are cached. */
+	@Test
+	public void testCachedDecoders() {
+		assertSame(codec.getDecoder(TABLE), codec.getDecoder(TABLE));
+		assertNotSame(codec.getDecoder(TABLE), HuffmanCodec.createDecoder(TABLE));
+	}
+
+	// -- Helper methods --
+
+	/** Returns the canonical code and its length for each value of a table. */
+	private static int[][] codes(final short[] table) {
+		final int[][] codes = new int[17][];
+		int code = 0;
+		int k = 16;
+		for (int length = 1; length <= 16; length++) {
+			for (int i = 0; i < table[length - 1]; i++) {
+				codes[table[k++]] = new int[] { code++, length };
+			}
+			code <<= 1;
+		}
+		return codes;
+	}
+
+}
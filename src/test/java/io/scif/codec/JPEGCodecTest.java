@@ -0,0 +1,249 @@
+/*-
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import io.scif.FormatException;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests {@link JPEGCodec}, comparing the images it decodes with those decoded
+ * by ImageIO.
+ */
+public class JPEGCodecTest {
+
+	private Context context;
+
+	private Codec codec;
+
+	@Before
+	public void setUp() {
+		context = new Context();
+		codec = context.service(CodecService.class).getCodec(JPEGCodec.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testBaseline() throws FormatException, IOException {
+		for (final int type : new int[] { BufferedImage.TYPE_BYTE_GRAY,
+			BufferedImage.TYPE_3BYTE_BGR })
+		{
+			// sizes that are not multiples of the block size, too
+			assertDecodes(encode(image(64, 48, type), false));
+			assertDecodes(encode(image(37, 23, type), false));
+			assertDecodes(encode(image(1, 1, type), false));
+		}
+	}
+
+	@Test
+	public void testProgressive() throws FormatException, IOException {
+		for (final int type : new int[] { BufferedImage.TYPE_BYTE_GRAY,
+			BufferedImage.TYPE_3BYTE_BGR })
+		{
+			assertDecodes(encode(image(64, 48, type), true));
+			assertDecodes(encode(image(37, 23, type), true));
+		}
+	}
+
+	/**
+	 * Tests decoding an image whose tables are given separately, as in a TIFF
+	 * file's JPEG_TABLES.
+	 */
+	@Test
+	public void testAbbreviatedTables() throws FormatException, IOException {
+		final byte[] jpeg = encode(image(50, 40, BufferedImage.TYPE_3BYTE_BGR),
+			false);
+
+		// move the table segments to a stream of their own
+		final ByteArrayOutputStream tables = new ByteArrayOutputStream();
+		final ByteArrayOutputStream image = new ByteArrayOutputStream();
+		tables.write(jpeg, 0, 2);
+		image.write(jpeg, 0, 2);
+		int pos = 2;
+		while ((jpeg[pos + 1] & 0xff) != 0xda) {
+			final int length = ((jpeg[pos + 2] & 0xff) << 8) | (jpeg[pos + 3] &
+				0xff);
+			final int marker = jpeg[pos + 1] & 0xff;
+			final boolean table = marker == 0xdb || marker == 0xc4;
+			(table ? tables : image).write(jpeg, pos, length + 2);
+			pos += length + 2;
+		}
+		image.write(jpeg, pos, jpeg.length - pos);
+		tables.write(0xff);
+		tables.write(0xd9);
+
+		final ByteArrayOutputStream abbreviated = new ByteArrayOutputStream();
+		abbreviated.write(tables.toByteArray());
+		abbreviated.write(image.toByteArray());
+		final CodecOptions options = new CodecOptions();
+		options.interleaved = true;
+		assertArrayEquals(codec.decompress(jpeg, options), codec.decompress(
+			abbreviated.toByteArray(), options));
+	}
+
+	/** Tests decoding into part of a larger buffer, both interleaved or not. */
+	@Test
+	public void testBuffer() throws FormatException, IOException {
+		final byte[] jpeg = encode(image(30, 20, BufferedImage.TYPE_3BYTE_BGR),
+			false);
+		final CodecOptions options = new CodecOptions();
+		for (final boolean interleaved : new boolean[] { false, true }) {
+			options.interleaved = interleaved;
+			final byte[] expected = codec.decompress(jpeg, options);
+			final byte[] out = new byte[expected.length + 20];
+			assertEquals(expected.length, codec.decompress(ByteBuffer.wrap(jpeg), out,
+				10, expected.length, options));
+			assertArrayEquals(expected, Arrays.copyOfRange(out, 10, 10 +
+				expected.length));
+		}
+	}
+
+	/** Tests decoding reduced images. */
+	@Test
+	public void testScale() throws FormatException, IOException {
+		final byte[] jpeg = encode(image(100, 60, BufferedImage.TYPE_BYTE_GRAY),
+			false);
+		final JPEGCodecOptions options = new JPEGCodecOptions();
+		final byte[] full = codec.decompress(jpeg, options);
+		for (final int scale : new int[] { 2, 4, 8 }) {
+			options.scale = scale;
+			final int width = (100 + scale - 1) / scale;
+			final int height = (60 + scale - 1) / scale;
+			final byte[] reduced = codec.decompress(jpeg, options);
+			assertEquals(width * height, reduced.length);
+
+			// each sample is about the mean of those it replaces
+			for (int y = 0; y < 60 / scale; y++) {
+				for (int x = 0; x < 100 / scale; x++) {
+					double mean = 0;
+					for (int dy = 0; dy < scale; dy++) {
+						for (int dx = 0; dx < scale; dx++) {
+							mean += full[(y * scale + dy) * 100 + x * scale + dx] & 0xff;
+						}
+					}
+					mean /= scale * scale;
+					assertEquals(mean, reduced[y * width + x] & 0xff, 6);
+				}
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Checks that the given image decodes exactly as with ImageIO. */
+	private void assertDecodes(final byte[] jpeg) throws FormatException,
+		IOException
+	{
+		final Raster expected = ImageIO.read(new ByteArrayInputStream(jpeg))
+			.getRaster();
+		final int width = expected.getWidth();
+		final int height = expected.getHeight();
+		final int channels = expected.getNumBands();
+
+		final CodecOptions options = new CodecOptions();
+		options.interleaved = true;
+		final byte[] decoded = codec.decompress(jpeg, options);
+		assertEquals(width * height * channels, decoded.length);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				for (int c = 0; c < channels; c++) {
+					assertEquals(expected.getSample(x, y, c), decoded[(y * width + x) *
+						channels + c] & 0xff);
+				}
+			}
+		}
+	}
+
+	/** Creates a smooth image with some noise. */
+	private BufferedImage image(final int width, final int height,
+		final int type)
+	{
+		final Random random = new Random(42);
+		final BufferedImage image = new BufferedImage(width, height, type);
+		final WritableRaster raster = image.getRaster();
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				for (int c = 0; c < raster.getNumBands(); c++) {
+					raster.setSample(x, y, c, (int) (128 + 100 * Math.sin(x / 7.0 + c) *
+						Math.cos(y / 5.0 - c)) + random.nextInt(9));
+				}
+			}
+		}
+		return image;
+	}
+
+	private byte[] encode(final BufferedImage image, final boolean progressive)
+		throws IOException
+	{
+		final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg")
+			.next();
+		final ImageWriteParam param = writer.getDefaultWriteParam();
+		if (progressive) param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (final ImageOutputStream stream = ImageIO.createImageOutputStream(
+			out))
+		{
+			writer.setOutput(stream);
+			writer.write(null, new IIOImage(image, null, null), param);
+		}
+		finally {
+			writer.dispose();
+		}
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.scif.FormatException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.BytesLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * Tests {@link LZ4Codec}.
+ */
+public class LZ4CodecTest {
+
+	/** {@link #text(int)} of 300 bytes, compressed by the lz4 library. */
+	private static final String REFERENCE = "04224d18604082a800" +
+		"0000d2706978656c2030203d20303b200d006431203d2033370e006432203d203734" +
+		"0e005533203d20312a005534203d20342a005535203d20382a005536203d20322a00" +
+		"5537203d20352a005538203d20392a0010397000052a0010318c0015362b0011318e" +
+		"00047f0010318e0016342c00008f0016372c0000900016312d0000910016352d0000" +
+		"920016382d0000930016322d0000940016362d0000950015392d00603230203d2033" +
+		"00000000";
+
+	private Context context;
+
+	private Codec codec;
+
+	@Before
+	public void setUp() {
+		context = new Context();
+		codec = context.service(CodecService.class).getCodec(LZ4Codec.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	/** Tests data spanning several blocks. */
+	@Test
+	public void testLarge() throws FormatException {
+		final byte[] data = text(10000000);
+		final byte[] compressed = codec.compress(data, null);
+		assertTrue(compressed.length < data.length);
+		assertArrayEquals(data, codec.decompress(compressed, null));
+	}
+
+	/** Tests data that is uniform, incompressible or tiny. */
+	@Test
+	public void testEdgeCases() throws FormatException {
+		final byte[] random = new byte[200000];
+		new Random(1).nextBytes(random);
+		for (final byte[] data : new byte[][] { new byte[200000], random,
+			text(1000), { 42 }, Arrays.copyOf(random, 5) })
+		{
+			assertArrayEquals(data, codec.decompress(codec.compress(data, null),
+				null));
+		}
+		assertTrue(codec.compress(new byte[200000], null).length < 1000);
+	}
+
+	/** Tests decoding data compressed by the reference implementation. */
+	@Test
+	public void testReference() throws FormatException {
+		assertArrayEquals(text(300), codec.decompress(hex(REFERENCE), null));
+	}
+
+	/** Tests decompressing with a wrong or missing expected size. */
+	@Test
+	public void testMaxBytes() throws FormatException {
+		final byte[] data = data(50000);
+		final byte[] compressed = codec.compress(data, null);
+		final CodecOptions options = new CodecOptions();
+		assertArrayEquals(data, codec.decompress(compressed, options));
+		options.maxBytes = 1000;
+		assertArrayEquals(data, codec.decompress(compressed, options));
+		options.maxBytes = data.length * 2;
+		assertArrayEquals(data, codec.decompress(compressed, options));
+	}
+
+	/** Tests that a truncated stream yields the blocks that could be decoded. */
+	@Test
+	public void testTruncated() throws FormatException {
+		final byte[] data = text(10000000);
+		final byte[] compressed = codec.compress(data, null);
+		final byte[] partial = codec.decompress(Arrays.copyOf(compressed,
+			compressed.length / 2), null);
+		assertTrue(partial.length > 0 && partial.length < data.length);
+		assertArrayEquals(Arrays.copyOf(data, partial.length), partial);
+	}
+
+	/** Tests decompressing from a data handle. */
+	@Test
+	public void testHandle() throws FormatException, IOException {
+		final byte[] data = data(50000);
+		final byte[] compressed = codec.compress(data, null);
+		final CodecOptions options = new CodecOptions();
+		options.maxBytes = data.length;
+		try (final DataHandle<Location> handle = context.service(
+			DataHandleService.class).create(new BytesLocation(compressed)))
+		{
+			assertArrayEquals(data, codec.decompress(handle, options));
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Creates somewhat compressible test data. */
+	private byte[] data(final int length) {
+		final byte[] data = new byte[length];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ((i / 7) ^ (i * i >> 9));
+		}
+		return data;
+	}
+
+	/** Creates repetitive ASCII text. */
+	private byte[] text(final int length) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < length; i++) {
+			sb.append("pixel " + i + " = " + i * 37 % 101 + "; ");
+		}
+		return Arrays.copyOf(sb.toString().getBytes(), length);
+	}
+
+	private byte[] hex(final String s) {
+		final byte[] bytes = new byte[s.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,149 @@
+/*-
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.scif.FormatException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.BytesLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * Tests {@link ZlibCodec}.
+ */
+public class ZlibCodecTest {
+
+	private Context context;
+
+	private Codec codec;
+
+	@Before
+	public void setUp() {
+		context = new Context();
+		codec = context.service(CodecService.class).getCodec(ZlibCodec.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	/** Tests that every level and strategy round trips. */
+	@Test
+	public void testLevels() throws FormatException {
+		final byte[] data = data(100000);
+		final CodecOptions options = new CodecOptions();
+		for (int level = -1; level <= 9; level++) {
+			for (final int strategy : new int[] { Deflater.DEFAULT_STRATEGY,
+				Deflater.FILTERED, Deflater.HUFFMAN_ONLY })
+			{
+				options.compressionLevel = level;
+				options.compressionStrategy = strategy;
+				final byte[] compressed = codec.compress(data, options);
+				assertArrayEquals(data, codec.decompress(compressed, options));
+			}
+		}
+	}
+
+	/** Tests that a higher level compresses better. */
+	@Test
+	public void testLevelRatio() throws FormatException {
+		final byte[] data = data(100000);
+		final CodecOptions options = new CodecOptions();
+		options.compressionLevel = 0;
+		final int stored = codec.compress(data, options).length;
+		options.compressionLevel = 9;
+		final int best = codec.compress(data, options).length;
+		assertTrue(stored > data.length);
+		assertTrue(best < stored);
+	}
+
+	/** Tests decompressing with a wrong or missing expected size. */
+	@Test
+	public void testMaxBytes() throws FormatException {
+		final byte[] data = data(50000);
+		final byte[] compressed = codec.compress(data, null);
+		final CodecOptions options = new CodecOptions();
+		assertArrayEquals(data, codec.decompress(compressed, options));
+		options.maxBytes = 1000;
+		assertArrayEquals(data, codec.decompress(compressed, options));
+		options.maxBytes = data.length * 2;
+		assertArrayEquals(data, codec.decompress(compressed, options));
+	}
+
+	/** Tests that a truncated stream yields what could be decoded. */
+	@Test
+	public void testTruncated() throws FormatException {
+		final byte[] data = data(50000);
+		final byte[] compressed = codec.compress(data, null);
+		final byte[] partial = codec.decompress(Arrays.copyOf(compressed,
+			compressed.length / 2), null);
+		assertTrue(partial.length > 0 && partial.length < data.length);
+		assertArrayEquals(Arrays.copyOf(data, partial.length), partial);
+	}
+
+	/** Tests decompressing from a data handle. */
+	@Test
+	public void testHandle() throws FormatException, IOException {
+		final byte[] data = data(50000);
+		final byte[] compressed = codec.compress(data, null);
+		final CodecOptions options = new CodecOptions();
+		options.maxBytes = data.length;
+		try (final DataHandle<Location> handle = context.service(
+			DataHandleService.class).create(new BytesLocation(compressed)))
+		{
+			assertArrayEquals(data, codec.decompress(handle, options));
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Creates somewhat compressible test data. */
+	private byte[] data(final int length) {
+		final byte[] data = new byte[length];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ((i / 7) ^ (i * i >> 9));
+		}
+		return data;
+	}
+
+}
@@ -29,10 +29,24 @@
 
 package io.scif.formats;
 
+import static org.junit.Assert.assertArrayEquals;
+
+import io.scif.FormatException;
+import io.scif.ImageMetadata;
+import io.scif.Reader;
+import io.scif.SCIFIO;
+import io.scif.codec.JPEG2000Codec;
+import io.scif.codec.JPEG2000CodecOptions;
+
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
 
 import net.imagej.axis.Axes;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 
 import org.junit.Test;
 import org.scijava.io.http.HTTPLocation;
@@ -63,4 +77,81 @@ public class JPEG2000FormatTest extends AbstractFormatTest {
 		testImg(baseFolder().child("scifio-test-with-alpha.jp2"), hash, meta,
 			new int[] { 500, 500, 4 }, Axes.X, Axes.Y, Axes.CHANNEL);
 	}
+
+	/**
+	 * Tests that reading part of a plane, which decodes just that part, gives
+	 * the same samples as cropping the whole plane.
+	 */
+	@Test
+	public void testRegion() throws FormatException, IOException {
+		final int width = 120, height = 100;
+		final byte[] pixels = new byte[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) (i % width * 2 + i / width * 3 + i * 7 % 13);
+		}
+		final int[][] regions = { { 5, 7, 60, 50 }, { 0, 0, 1, 1 }, { 100, 90,
+			20, 10 } };
+
+		final SCIFIO scifio = new SCIFIO();
+		final File file = File.createTempFile("region", ".jp2");
+		try {
+			final JPEG2000CodecOptions options = JPEG2000CodecOptions
+				.getDefaultOptions();
+			options.width = width;
+			options.height = height;
+			options.channels = 1;
+			options.bitsPerSample = 8;
+			options.lossless = true;
+			Files.write(file.toPath(), scifio.codec().getCodec(JPEG2000Codec.class)
+				.compress(pixels, options));
+
+			final FileLocation location = new FileLocation(file);
+			final Reader reader = scifio.format().getFormat(location)
+				.createReader();
+			reader.setSource(location);
+			final ImageMetadata meta = reader.getMetadata().get(0);
+			// read the regions first, so they are not cut from a cached plane
+			final byte[][] parts = new byte[regions.length][];
+			for (int r = 0; r < regions.length; r++) {
+				parts[r] = reader.openPlane(0, 0, bounds(meta, regions[r]))
+					.getBytes();
+			}
+			final byte[] plane = reader.openPlane(0, 0).getBytes();
+			assertArrayEquals(pixels, plane);
+			for (int r = 0; r < regions.length; r++) {
+				assertArrayEquals(crop(plane, width, regions[r]), parts[r]);
+			}
+			reader.close();
+		}
+		finally {
+			scifio.dispose();
+			file.delete();
+		}
+	}
+
+	/** Gets the planar bounds of the given x, y, width and height. */
+	private Interval bounds(final ImageMetadata meta, final int[] region) {
+		final long[] min = new long[meta.getPlanarAxisCount()];
+		final long[] max = meta.getAxesLengthsPlanar();
+		for (int d = 0; d < max.length; d++) {
+			max[d]--;
+		}
+		final int xIndex = meta.getAxisIndex(Axes.X);
+		final int yIndex = meta.getAxisIndex(Axes.Y);
+		min[xIndex] = region[0];
+		min[yIndex] = region[1];
+		max[xIndex] = region[0] + region[2] - 1;
+		max[yIndex] = region[1] + region[3] - 1;
+		return new FinalInterval(min, max);
+	}
+
+	/** Copies the given x, y, width and height out of an 8-bit plane. */
+	private byte[] crop(final byte[] plane, final int width, final int[] region) {
+		final byte[] crop = new byte[region[2] * region[3]];
+		for (int row = 0; row < region[3]; row++) {
+			System.arraycopy(plane, (region[1] + row) * width + region[0], crop, row *
+				region[2], region[2]);
+		}
+		return crop;
+	}
 }
@@ -0,0 +1,248 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import io.scif.FormatException;
+import io.scif.Reader;
+import io.scif.SCIFIO;
+import io.scif.config.SCIFIOConfig;
+import io.scif.filters.PlaneSeparator;
+import io.scif.filters.ReaderFilter;
+import io.scif.formats.tiff.IFD;
+import io.scif.formats.tiff.TiffCompression;
+import io.scif.formats.tiff.TiffTileWriter;
+import io.scif.util.FormatTools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import net.imagej.axis.Axes;
+import net.imglib2.FinalInterval;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+
+/**
+ * Tests reading the resolution levels of a pyramidal TIFF with
+ * {@link MinimalTIFFFormat.Reader}.
+ */
+public class MinimalTIFFFormatTest {
+
+	private static final int WIDTH = 50;
+
+	private static final int HEIGHT = 40;
+
+	private static final int TILE = 16;
+
+	private SCIFIO scifio;
+
+	private File file;
+
+	private FileLocation location;
+
+	/** The expected interleaved RGB samples of each level. */
+	private final byte[][] levels = new byte[3][];
+
+	@Before
+	public void setUp() throws FormatException, IOException {
+		scifio = new SCIFIO();
+		file = File.createTempFile("pyramid", ".tif");
+		location = new FileLocation(file);
+
+		levels[0] = new byte[WIDTH * HEIGHT * 3];
+		for (int i = 0; i < levels[0].length; i++) {
+			levels[0][i] = (byte) (i * 7 + i / 150);
+		}
+		levels[1] = downsample(levels[0], WIDTH, HEIGHT);
+		levels[2] = downsample(levels[1], 25, 20);
+
+		try (final TiffTileWriter writer = new TiffTileWriter(scifio.getContext(),
+			scifio.getContext().service(DataHandleService.class).create(location)))
+		{
+			writer.setPyramidLevels(2);
+			final IFD ifd = new IFD(null);
+			ifd.putIFDValue(IFD.COMPRESSION, TiffCompression.DEFLATE.getCode());
+			writer.startImage(ifd, WIDTH, HEIGHT, TILE, TILE, FormatTools.UINT8, 3);
+			for (int row = 0; row < 3; row++) {
+				final int h = Math.min(TILE, HEIGHT - row * TILE);
+				final byte[] band = new byte[WIDTH * 3 * h];
+				System.arraycopy(levels[0], row * TILE * WIDTH * 3, band, 0,
+					band.length);
+				writer.writeTileRow(row, band);
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		scifio.dispose();
+		file.delete();
+	}
+
+	/** Tests reading each level from the format's reader itself. */
+	@Test
+	public void testLevels() throws FormatException, IOException {
+		final Reader reader = scifio.format().getFormat(location).createReader();
+		reader.setSource(location);
+		assertLevels(reader);
+		reader.close();
+	}
+
+	/** Tests reading each level through a reader filter. */
+	@Test
+	public void testFilteredLevels() throws FormatException, IOException {
+		final ReaderFilter filter = scifio.initializer().initializeReader(
+			location);
+		assertLevels(filter);
+		filter.close();
+	}
+
+	/**
+	 * Tests that a filter which changes the plane layout still transforms full
+	 * resolution planes, and refuses the other levels.
+	 */
+	@Test
+	public void testTransformingFilter() throws FormatException, IOException {
+		final ReaderFilter filter = scifio.initializer().initializeReader(
+			location);
+		filter.enable(PlaneSeparator.class).separate(Axes.CHANNEL);
+		assertEquals(1, filter.getResolutionCount(0));
+
+		// the green channel, which is now a plane of its own
+		final long[] lengths = filter.getResolutionDimensions(0, 0);
+		assertArrayEquals(new long[] { WIDTH, HEIGHT }, lengths);
+		final byte[] green = Arrays.copyOfRange(planar(levels[0], WIDTH, 0, 0,
+			WIDTH, HEIGHT), WIDTH * HEIGHT, 2 * WIDTH * HEIGHT);
+		assertArrayEquals(green, filter.openPlane(0, 1, 0, new FinalInterval(
+			lengths), new SCIFIOConfig()).getBytes());
+		assertArrayEquals(green, filter.openPlane(0, 1).getBytes());
+
+		try {
+			filter.openPlane(0, 0, 1, new FinalInterval(13, 10), new SCIFIOConfig());
+			throw new AssertionError("Expected IllegalArgumentException");
+		}
+		catch (final IllegalArgumentException e) {
+			// expected
+		}
+		filter.close();
+	}
+
+	// -- Helper methods --
+
+	/** Checks the dimensions, full planes and a region of every level. */
+	private void assertLevels(final Reader reader) throws FormatException,
+		IOException
+	{
+		assertEquals(1, reader.getImageCount());
+		assertEquals(3, reader.getResolutionCount(0));
+		final int c = reader.getMetadata().get(0).getAxisIndex(Axes.CHANNEL);
+		final int x = reader.getMetadata().get(0).getAxisIndex(Axes.X);
+		final int y = reader.getMetadata().get(0).getAxisIndex(Axes.Y);
+
+		int width = WIDTH, height = HEIGHT;
+		for (int level = 0; level < levels.length; level++) {
+			final long[] lengths = reader.getResolutionDimensions(0, level);
+			assertEquals(3, lengths[c]);
+			assertEquals(width, lengths[x]);
+			assertEquals(height, lengths[y]);
+			assertArrayEquals(planar(levels[level], width, 0, 0, width, height),
+				reader.openPlane(0, 0, level, new FinalInterval(lengths),
+					new SCIFIOConfig()).getBytes());
+
+			// a region in the coordinates of the level
+			final long[] min = new long[3], max = new long[3];
+			min[x] = width / 4;
+			min[y] = height / 3;
+			max[c] = 2;
+			max[x] = width - 2;
+			max[y] = height / 2;
+			assertArrayEquals(planar(levels[level], width, (int) min[x],
+				(int) min[y], (int) (max[x] - min[x] + 1), (int) (max[y] - min[y] +
+					1)), reader.openPlane(0, 0, level, new FinalInterval(min, max),
+						new SCIFIOConfig()).getBytes());
+
+			width = (width + 1) / 2;
+			height = (height + 1) / 2;
+		}
+		assertArrayEquals(planar(levels[0], WIDTH, 0, 0, WIDTH, HEIGHT), reader
+			.openPlane(0, 0).getBytes());
+	}
+
+	/** Averages each 2 x 2 block of an RGB plane, clipped to the plane. */
+	private byte[] downsample(final byte[] pixels, final int width,
+		final int height)
+	{
+		final int w = (width + 1) / 2, h = (height + 1) / 2;
+		final byte[] half = new byte[w * h * 3];
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				for (int c = 0; c < 3; c++) {
+					double sum = 0;
+					int count = 0;
+					for (int yy = y * 2; yy < Math.min(height, y * 2 + 2); yy++) {
+						for (int xx = x * 2; xx < Math.min(width, x * 2 + 2); xx++) {
+							sum += pixels[(yy * width + xx) * 3 + c] & 0xff;
+							count++;
+						}
+					}
+					half[(y * w + x) * 3 + c] = (byte) Math.round(sum / count);
+				}
+			}
+		}
+		return half;
+	}
+
+	/**
+	 * Copies a region out of an interleaved RGB plane, one channel after the
+	 * other, as the reader returns it.
+	 */
+	private byte[] planar(final byte[] pixels, final int width, final int x,
+		final int y, final int w, final int h)
+	{
+		final byte[] region = new byte[w * h * 3];
+		int i = 0;
+		for (int c = 0; c < 3; c++) {
+			for (int row = 0; row < h; row++) {
+				for (int col = 0; col < w; col++) {
+					region[i++] = pixels[((y + row) * width + x + col) * 3 + c];
+				}
+			}
+		}
+		return region;
+	}
+
+}
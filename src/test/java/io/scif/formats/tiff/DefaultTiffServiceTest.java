@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import io.scif.FormatException;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+
+/**
+ * Tests the predictors of {@link DefaultTiffService}.
+ */
+public class DefaultTiffServiceTest {
+
+	private Context context;
+
+	private TiffService tiffService;
+
+	@Before
+	public void setUp() {
+		context = new Context();
+		tiffService = context.service(TiffService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	/** Tests reversing the horizontal predictor for all sample sizes. */
+	@Test
+	public void testHorizontalRoundTrip() throws FormatException {
+		for (final int bytes : new int[] { 1, 2, 3, 4, 8 }) {
+			assertRoundTrip(2, bytes, 3, true);
+			assertRoundTrip(2, bytes, 1, false);
+		}
+	}
+
+	/** Tests reversing the floating point predictor for all sample sizes. */
+	@Test
+	public void testFloatingPointRoundTrip() throws FormatException {
+		for (final int bytes : new int[] { 2, 4, 8 }) {
+			assertRoundTrip(3, bytes, 3, true);
+			assertRoundTrip(3, bytes, 1, false);
+		}
+	}
+
+	/**
+	 * Tests that the floating point predictor stores the bytes of each row most
+	 * significant first, differenced byte by byte.
+	 */
+	@Test
+	public void testFloatingPointLayout() throws FormatException {
+		final IFD ifd = createIFD(3, 2, 2, 1, true);
+		final byte[] row = { 0x04, 0x03, 0x02, 0x01, 0x14, 0x13, 0x12, 0x11 };
+		tiffService.difference(row, ifd);
+		// byte planes: 01 11 02 12 03 13 04 14
+		assertArrayEquals(new byte[] { 0x01, 0x10, -0x0f, 0x10, -0x0f, 0x10, -0x0f,
+			0x10 }, row);
+	}
+
+	/** Tests that the horizontal predictor restarts at each row. */
+	@Test
+	public void testHorizontalRows() throws FormatException {
+		final IFD ifd = createIFD(2, 1, 3, 1, true);
+		final byte[] rows = { 1, 2, 4, 10, 20, 40 };
+		tiffService.difference(rows, ifd);
+		assertArrayEquals(new byte[] { 1, 1, 2, 10, 10, 20 }, rows);
+	}
+
+	// -- Helper methods --
+
+	private IFD createIFD(final int predictor, final int bytes, final int width,
+		final int samplesPerPixel, final boolean little)
+	{
+		final IFD ifd = new IFD(null);
+		final int[] bitsPerSample = new int[samplesPerPixel];
+		Arrays.fill(bitsPerSample, bytes * 8);
+		ifd.putIFDValue(IFD.BITS_PER_SAMPLE, bitsPerSample);
+		ifd.putIFDValue(IFD.SAMPLES_PER_PIXEL, samplesPerPixel);
+		ifd.putIFDValue(IFD.IMAGE_WIDTH, width);
+		ifd.putIFDValue(IFD.PREDICTOR, predictor);
+		ifd.put(IFD.LITTLE_ENDIAN, little);
+		return ifd;
+	}
+
+	/** Differences and undifferences several rows of pseudo-random samples. */
+	private void assertRoundTrip(final int predictor, final int bytes,
+		final int samplesPerPixel, final boolean little) throws FormatException
+	{
+		final int width = 7, rows = 5;
+		final IFD ifd = createIFD(predictor, bytes, width, samplesPerPixel, little);
+		final byte[] data = new byte[width * rows * samplesPerPixel * bytes];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i * i * 31 + i);
+		}
+		final byte[] copy = data.clone();
+		tiffService.difference(copy, ifd);
+		assertFalse(Arrays.equals(data, copy));
+		tiffService.undifference(copy, ifd);
+		assertArrayEquals(data, copy);
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the map behavior of {@link IFD}.
+ */
+public class IFDTest {
+
+	@Test
+	public void testPutAndGet() {
+		final IFD ifd = new IFD(null);
+		ifd.putIFDValue(IFD.IMAGE_WIDTH, 512);
+		ifd.putIFDValue(IFD.COMPRESSION, 1);
+		ifd.put(IFD.IMAGE_LENGTH, 256);
+
+		assertEquals(3, ifd.size());
+		assertEquals(512, ifd.getIFDValue(IFD.IMAGE_WIDTH));
+		assertEquals(256, ifd.get(IFD.IMAGE_LENGTH));
+		assertTrue(ifd.containsKey(IFD.COMPRESSION));
+		assertFalse(ifd.containsKey(IFD.TILE_WIDTH));
+		assertNull(ifd.getIFDValue(IFD.TILE_WIDTH));
+		assertNull(ifd.get("256"));
+
+		assertEquals(512, ifd.put(IFD.IMAGE_WIDTH, 1024));
+		assertEquals(3, ifd.size());
+		assertEquals(1024, ifd.getIFDValue(IFD.IMAGE_WIDTH));
+	}
+
+	@Test
+	public void testSortedIteration() {
+		final IFD ifd = new IFD(null);
+		final int[] tags = { IFD.SOFTWARE, IFD.IMAGE_WIDTH, IFD.LITTLE_ENDIAN,
+			IFD.STRIP_OFFSETS, IFD.COPYRIGHT, IFD.BITS_PER_SAMPLE, IFD.ARTIST,
+			IFD.IMAGE_LENGTH, IFD.COMPRESSION, IFD.ROWS_PER_STRIP };
+		for (final int tag : tags) {
+			ifd.putIFDValue(tag, tag);
+		}
+
+		final List<Integer> keys = new ArrayList<>(ifd.keySet());
+		final int[] sorted = tags.clone();
+		Arrays.sort(sorted);
+		assertEquals(sorted.length, keys.size());
+		for (int i = 0; i < sorted.length; i++) {
+			assertEquals(sorted[i], keys.get(i).intValue());
+		}
+	}
+
+	@Test
+	public void testRemove() {
+		final IFD ifd = new IFD(null);
+		for (int tag = 256; tag < 266; tag++) {
+			ifd.putIFDValue(tag, tag);
+		}
+		assertEquals(258, ifd.remove(258));
+		assertNull(ifd.remove(258));
+		assertEquals(9, ifd.size());
+
+		final Iterator<Integer> iter = ifd.keySet().iterator();
+		while (iter.hasNext()) {
+			if (iter.next() % 2 == 0) iter.remove();
+		}
+		assertEquals(5, ifd.size());
+		for (int tag = 256; tag < 266; tag++) {
+			assertEquals(tag % 2 != 0, ifd.containsKey(tag));
+		}
+
+		ifd.clear();
+		assertTrue(ifd.isEmpty());
+	}
+
+	@Test
+	public void testCopy() {
+		final IFD ifd = new IFD(null);
+		final long[] offsets = { 8, 16, 24 };
+		ifd.putIFDValue(IFD.STRIP_OFFSETS, offsets);
+		ifd.putIFDValue(IFD.IMAGE_WIDTH, 64);
+
+		final IFD copy = new IFD(ifd, null);
+		assertEquals(ifd, copy);
+		assertSame(offsets, copy.getIFDValue(IFD.STRIP_OFFSETS));
+
+		copy.putIFDValue(IFD.IMAGE_LENGTH, 32);
+		assertFalse(ifd.containsKey(IFD.IMAGE_LENGTH));
+		assertEquals(3, copy.size());
+		assertEquals(2, ifd.size());
+	}
+
+	@Test
+	public void testSerialization() throws IOException, ClassNotFoundException {
+		final IFD ifd = new IFD(null);
+		ifd.putIFDValue(IFD.STRIP_OFFSETS, new long[] { 8, 16, 24 });
+		ifd.putIFDValue(IFD.IMAGE_WIDTH, 64);
+		ifd.putIFDValue(IFD.SOFTWARE, "SCIFIO");
+		final IFDList ifds = new IFDList();
+		ifds.add(ifd);
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(ifds);
+		}
+		final IFDList copies;
+		try (final ObjectInputStream in = new ObjectInputStream(
+			new ByteArrayInputStream(bytes.toByteArray())))
+		{
+			copies = (IFDList) in.readObject();
+		}
+
+		assertEquals(1, copies.size());
+		final IFD copy = copies.get(0);
+		assertEquals(3, copy.size());
+		assertEquals(64, copy.getIFDValue(IFD.IMAGE_WIDTH));
+		assertEquals("SCIFIO", copy.getIFDValue(IFD.SOFTWARE));
+		assertArrayEquals(new long[] { 8, 16, 24 }, (long[]) copy.getIFDValue(
+			IFD.STRIP_OFFSETS));
+
+		// the copy is still fully usable as a map
+		copy.putIFDValue(IFD.IMAGE_LENGTH, 32);
+		assertEquals(32, copy.getIFDValue(IFD.IMAGE_LENGTH));
+		assertEquals(4, copy.keySet().size());
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.BytesLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * Tests {@link OnDemandLongArray}.
+ */
+public class OnDemandLongArrayTest {
+
+	private static final int HEADER = 16;
+
+	private static final int COUNT = 3 * OnDemandLongArray.PAGE_SIZE + 17;
+
+	private Context context;
+
+	@Before
+	public void setUp() {
+		context = new Context(DataHandleService.class);
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testLong8() throws IOException {
+		final long[] expected = new long[COUNT];
+		final ByteBuffer buffer = ByteBuffer.allocate(HEADER + 8 * COUNT).order(
+			ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < COUNT; i++) {
+			expected[i] = 0x100000000L * i + 7;
+			buffer.putLong(HEADER + 8 * i, expected[i]);
+		}
+		assertValues(buffer.array(), 8, expected);
+	}
+
+	@Test
+	public void testLong() throws IOException {
+		final long[] expected = new long[COUNT];
+		final ByteBuffer buffer = ByteBuffer.allocate(HEADER + 4 * COUNT).order(
+			ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i < COUNT; i++) {
+			// exercise values that do not fit in a signed int
+			expected[i] = 0xfffff000L + i;
+			buffer.putInt(HEADER + 4 * i, (int) expected[i]);
+		}
+		assertValues(buffer.array(), 4, expected);
+	}
+
+	private void assertValues(final byte[] bytes, final int bytesPerValue,
+		final long[] expected) throws IOException
+	{
+		final DataHandleService dataHandleService = context.service(
+			DataHandleService.class);
+		try (final DataHandle<Location> handle = dataHandleService.create(
+			new BytesLocation(bytes)))
+		{
+			handle.setLittleEndian(true);
+			handle.seek(HEADER);
+			final OnDemandLongArray array = new OnDemandLongArray(handle,
+				bytesPerValue);
+			array.setSize(COUNT);
+			array.setMaxPages(2);
+			handle.seek(3);
+
+			// walk backwards, so that pages are evicted and read again
+			for (int i = COUNT - 1; i >= 0; i -= 5) {
+				assertEquals(expected[i], array.get(i));
+			}
+			assertEquals(expected[0], array.get(0));
+			assertEquals(expected[COUNT - 1], array.get(COUNT - 1));
+			assertArrayEquals(expected, array.toArray());
+
+			// reading values must not move the stream
+			assertEquals(3, handle.offset());
+		}
+	}
+
+}
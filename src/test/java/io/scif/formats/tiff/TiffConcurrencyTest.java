@@ -0,0 +1,235 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import io.scif.FormatException;
+import io.scif.util.FormatTools;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.BytesLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * Tests decoding TIFF tiles from several threads at once, with the codecs of
+ * one context shared between them.
+ */
+public class TiffConcurrencyTest {
+
+	private static final int WIDTH = 200;
+
+	private static final int HEIGHT = 150;
+
+	private static final int TILE = 32;
+
+	private static final int THREADS = 8;
+
+	private static final int READS = 25;
+
+	private static final TiffCompression[] COMPRESSIONS = {
+		TiffCompression.LZW, TiffCompression.DEFLATE, TiffCompression.JPEG };
+
+	private Context context;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		context = new Context();
+		executor = Executors.newFixedThreadPool(THREADS);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		context.dispose();
+	}
+
+	/** Tests reading regions with one parser per thread. */
+	@Test
+	public void testParserPerThread() throws Exception {
+		for (final TiffCompression compression : COMPRESSIONS) {
+			final BytesLocation location = write(compression);
+			final byte[] expected = read(location, 1);
+			final List<Callable<Void>> tasks = new ArrayList<>();
+			for (int thread = 0; thread < THREADS; thread++) {
+				final int seed = thread;
+				tasks.add(() -> {
+					final TiffParser parser = new TiffParser(context, location);
+					final IFD ifd = parser.getFirstIFD();
+					final Random random = new Random(seed);
+					for (int i = 0; i < READS; i++) {
+						final int x = random.nextInt(WIDTH), y = random.nextInt(HEIGHT);
+						final int w = 1 + random.nextInt(WIDTH - x);
+						final int h = 1 + random.nextInt(HEIGHT - y);
+						assertArrayEquals(compression + " region " + x + "," + y + " " +
+							w + "x" + h, region(expected, x, y, w, h), parser.getSamples(ifd,
+								new byte[w * h], x, y, w, h));
+					}
+					return null;
+				});
+			}
+			runAll(tasks);
+		}
+	}
+
+	/**
+	 * Tests reading whole planes from several threads at once, each with its own
+	 * parser decoding tiles on several worker threads.
+	 */
+	@Test
+	public void testWorkerThreadsPerParser() throws Exception {
+		for (final TiffCompression compression : COMPRESSIONS) {
+			final BytesLocation location = write(compression);
+			final byte[] expected = read(location, 1);
+			final List<Callable<Void>> tasks = new ArrayList<>();
+			for (int thread = 0; thread < THREADS / 2; thread++) {
+				tasks.add(() -> {
+					for (int i = 0; i < READS; i++) {
+						assertArrayEquals(compression.toString(), expected, read(location,
+							4));
+					}
+					return null;
+				});
+			}
+			runAll(tasks);
+		}
+	}
+
+	/** Tests that decoding a tile leaves the parser's codec options as is. */
+	@Test
+	public void testTileOptionsUnchanged() throws FormatException,
+		IOException
+	{
+		final TiffParser parser = new TiffParser(context, write(
+			TiffCompression.DEFLATE));
+		final IFD ifd = parser.getFirstIFD();
+		parser.getSamples(ifd, new byte[WIDTH * HEIGHT]);
+		final int maxBytes = parser.getCodecOptions().maxBytes;
+		final byte[] tile = parser.getTile(ifd, null, 1, 2);
+		assertEquals(TILE * TILE, tile.length);
+		assertEquals(maxBytes, parser.getCodecOptions().maxBytes);
+	}
+
+	// -- Helper methods --
+
+	/** Writes an 8-bit tiled TIFF of smooth gradients. */
+	private BytesLocation write(final TiffCompression compression)
+		throws FormatException, IOException
+	{
+		final byte[] pixels = new byte[WIDTH * HEIGHT];
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				pixels[y * WIDTH + x] = (byte) (x + 2 * y + (x * y) / 64);
+			}
+		}
+
+		final BytesLocation location = new BytesLocation(1024);
+		final DataHandle<Location> handle = context.service(
+			DataHandleService.class).create(location);
+		try (final TiffTileWriter writer = new TiffTileWriter(context, handle)) {
+			final IFD ifd = new IFD(null);
+			ifd.putIFDValue(IFD.COMPRESSION, compression.getCode());
+			writer.startImage(ifd, WIDTH, HEIGHT, TILE, TILE, FormatTools.UINT8, 1);
+			for (int row = 0; row * TILE < HEIGHT; row++) {
+				final int h = Math.min(TILE, HEIGHT - row * TILE);
+				final byte[] band = new byte[WIDTH * h];
+				System.arraycopy(pixels, row * TILE * WIDTH, band, 0, band.length);
+				writer.writeTileRow(row, band);
+			}
+		}
+		return location;
+	}
+
+	/** Reads the first plane of the given TIFF with the given thread count. */
+	private byte[] read(final Location location, final int threadCount)
+		throws FormatException, IOException
+	{
+		final TiffParser parser = new TiffParser(context, location);
+		parser.setThreadCount(threadCount);
+		return parser.getSamples(parser.getFirstIFD(), new byte[WIDTH * HEIGHT]);
+	}
+
+	/** Copies a region out of an 8-bit plane. */
+	private byte[] region(final byte[] plane, final int x, final int y,
+		final int w, final int h)
+	{
+		final byte[] region = new byte[w * h];
+		for (int row = 0; row < h; row++) {
+			System.arraycopy(plane, (y + row) * WIDTH + x, region, row * w, w);
+		}
+		return region;
+	}
+
+	/**
+	 * Runs the given tasks at the same time, rethrowing the first failure.
+	 */
+	private void runAll(final List<Callable<Void>> tasks) throws Exception {
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Future<Void>> futures = new ArrayList<>();
+		for (final Callable<Void> task : tasks) {
+			futures.add(executor.submit(() -> {
+				start.await();
+				return task.call();
+			}));
+		}
+		start.countDown();
+		for (final Future<Void> future : futures) {
+			try {
+				future.get();
+			}
+			catch (final ExecutionException e) {
+				final Throwable cause = e.getCause();
+				if (cause instanceof Error) throw (Error) cause;
+				throw (Exception) cause;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TiffIndexCache}.
+ */
+public class TiffIndexCacheTest {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		final File dir = Files.createTempDirectory("scifio-index").toFile();
+		final File tiff = File.createTempFile("index", ".tif");
+		tiff.deleteOnExit();
+		Files.write(tiff.toPath(), new byte[] { 'I', 'I', 42, 0 });
+
+		final IFD ifd = new IFD(null);
+		ifd.putIFDValue(IFD.LITTLE_ENDIAN, Boolean.TRUE);
+		ifd.putIFDValue(IFD.IFD_OFFSET, 8L);
+		ifd.putIFDValue(IFD.IMAGE_WIDTH, 512);
+		ifd.putIFDValue(IFD.IMAGE_DESCRIPTION, "a description");
+		ifd.putIFDValue(IFD.STRIP_OFFSETS, new long[] { 100, 200, 300 });
+		ifd.putIFDValue(IFD.BITS_PER_SAMPLE, new int[] { 8, 8, 8 });
+		ifd.putIFDValue(IFD.X_RESOLUTION, new TiffRational(72, 1));
+		ifd.putIFDValue(IFD.MAKER_NOTE, new TiffIFDEntry(IFD.MAKER_NOTE,
+			IFDType.UNDEFINED, 1024, 4096));
+		final IFDList ifds = new IFDList();
+		ifds.add(ifd);
+
+		final TiffIndexCache cache = new TiffIndexCache(dir, null);
+		assertNull(cache.load(tiff));
+		assertTrue(cache.save(tiff, ifds));
+
+		final IFDList loaded = cache.load(tiff);
+		assertNotNull(loaded);
+		assertEquals(1, loaded.size());
+		final IFD copy = loaded.get(0);
+		assertEquals(ifd.size(), copy.size());
+		assertEquals(Boolean.TRUE, copy.getIFDValue(IFD.LITTLE_ENDIAN));
+		assertEquals(8L, copy.getIFDValue(IFD.IFD_OFFSET));
+		assertEquals(512, copy.getIFDValue(IFD.IMAGE_WIDTH));
+		assertEquals("a description", copy.getIFDValue(IFD.IMAGE_DESCRIPTION));
+		assertArrayEquals(new long[] { 100, 200, 300 }, (long[]) copy.getIFDValue(
+			IFD.STRIP_OFFSETS));
+		assertArrayEquals(new int[] { 8, 8, 8 }, (int[]) copy.getIFDValue(
+			IFD.BITS_PER_SAMPLE));
+		assertEquals(new TiffRational(72, 1), copy.getIFDValue(IFD.X_RESOLUTION));
+		final TiffIFDEntry entry = (TiffIFDEntry) copy.getIFDValue(IFD.MAKER_NOTE);
+		assertEquals(IFDType.UNDEFINED, entry.getType());
+		assertEquals(1024, entry.getValueCount());
+		assertEquals(4096, entry.getValueOffset());
+	}
+
+	@Test
+	public void testStaleIndex() throws IOException {
+		final File dir = Files.createTempDirectory("scifio-index").toFile();
+		final File tiff = File.createTempFile("index", ".tif");
+		tiff.deleteOnExit();
+		Files.write(tiff.toPath(), new byte[] { 'I', 'I', 42, 0 });
+
+		final IFD ifd = new IFD(null);
+		ifd.putIFDValue(IFD.IMAGE_WIDTH, 512);
+		final IFDList ifds = new IFDList();
+		ifds.add(ifd);
+
+		final TiffIndexCache cache = new TiffIndexCache(dir, null);
+		assertTrue(cache.save(tiff, ifds));
+		assertNotNull(cache.load(tiff));
+
+		// growing the file invalidates its index
+		Files.write(tiff.toPath(), new byte[] { 'I', 'I', 42, 0, 0 });
+		assertNull(cache.load(tiff));
+	}
+
+	/** Tests that corrupt indices are discarded instead of failing the open. */
+	@Test
+	public void testCorruptIndex() throws IOException {
+		final File dir = Files.createTempDirectory("scifio-index").toFile();
+		final File tiff = File.createTempFile("index", ".tif");
+		tiff.deleteOnExit();
+		Files.write(tiff.toPath(), new byte[] { 'I', 'I', 42, 0 });
+		final TiffIndexCache cache = new TiffIndexCache(dir, null);
+
+		// the first value follows the header, the IFD and entry counts, the tag
+		// and the value type
+		final int valueStart = 4 + 4 + 2 + tiff.getAbsolutePath().getBytes(
+			StandardCharsets.UTF_8).length + 8 + 8 + 4 + 4 + 4 + 1;
+
+		// an array longer than the index itself
+		final IFD ifd = new IFD(null);
+		ifd.putIFDValue(IFD.STRIP_OFFSETS, new long[] { 100, 200, 300 });
+		assertCorrupt(cache, tiff, ifd, valueStart, Integer.MAX_VALUE);
+		assertCorrupt(cache, tiff, ifd, valueStart, -1);
+
+		// an entry of an unknown IFD type, after its tag
+		final IFD entryIFD = new IFD(null);
+		entryIFD.putIFDValue(IFD.MAKER_NOTE, new TiffIFDEntry(IFD.MAKER_NOTE,
+			IFDType.UNDEFINED, 1024, 4096));
+		assertCorrupt(cache, tiff, entryIFD, valueStart + 4, 12345);
+
+		// a file which is not an index at all
+		assertTrue(cache.save(tiff, list(ifd)));
+		final File index = indexFile(dir);
+		Files.write(index.toPath(), new byte[] { 1, 2, 3 });
+		assertNull(cache.load(tiff));
+		assertFalse(index.exists());
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Saves an index of the given IFD, overwrites an int within it, and checks
+	 * that the index is then ignored and deleted, and can be written again.
+	 */
+	private void assertCorrupt(final TiffIndexCache cache, final File tiff,
+		final IFD ifd, final int offset, final int value) throws IOException
+	{
+		assertTrue(cache.save(tiff, list(ifd)));
+		final File index = indexFile(cache.getDirectory());
+		final byte[] bytes = Files.readAllBytes(index.toPath());
+		ByteBuffer.wrap(bytes).putInt(offset, value);
+		Files.write(index.toPath(), bytes);
+
+		assertNull(cache.load(tiff));
+		assertFalse(index.exists());
+		assertTrue(cache.save(tiff, list(ifd)));
+		assertNotNull(cache.load(tiff));
+	}
+
+	private IFDList list(final IFD ifd) {
+		final IFDList ifds = new IFDList();
+		ifds.add(ifd);
+		return ifds;
+	}
+
+	/** Gets the only index file in the given directory. */
+	private File indexFile(final File dir) {
+		final File[] files = dir.listFiles();
+		assertEquals(1, files.length);
+		return files[0];
+	}
+
+}
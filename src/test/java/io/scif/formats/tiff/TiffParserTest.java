@@ -0,0 +1,341 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.scif.FormatException;
+import io.scif.codec.JPEG2000CodecOptions;
+import io.scif.util.FormatTools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.BytesLocation;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * Tests {@link TiffParser}.
+ */
+public class TiffParserTest {
+
+	private static final int WIDTH = 64;
+
+	private static final int HEIGHT = 64;
+
+	private Context context;
+
+	@Before
+	public void setUp() {
+		context = new Context();
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	/** Tests reading strips which follow each other in the file. */
+	@Test
+	public void testContiguousStrips() throws FormatException, IOException {
+		final byte[] pixels = new byte[WIDTH * HEIGHT];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) (i * 7 % 251);
+		}
+		final BytesLocation location = write(pixels, TiffCompression.DEFLATE);
+
+		final TiffParser parser = new TiffParser(context, location);
+		final IFD ifd = parser.getFirstIFD();
+		assertArrayEquals(pixels, parser.getSamples(ifd, new byte[pixels.length]));
+
+		// a region whose rows span several strips
+		final int x = 5, y = 7, w = 10, h = 20;
+		final byte[] expected = new byte[w * h];
+		for (int row = 0; row < h; row++) {
+			System.arraycopy(pixels, (y + row) * WIDTH + x, expected, row * w, w);
+		}
+		assertArrayEquals(expected, parser.getSamples(ifd, new byte[w * h], x, y,
+			w, h));
+	}
+
+	/** Tests reading uncompressed strips directly into the output buffer. */
+	@Test
+	public void testUncompressedStrips() throws FormatException, IOException {
+		final byte[] pixels = new byte[WIDTH * HEIGHT];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) i;
+		}
+		final BytesLocation location = write(pixels,
+			TiffCompression.UNCOMPRESSED);
+
+		final TiffParser parser = new TiffParser(context, location);
+		final IFD ifd = parser.getFirstIFD();
+		assertArrayEquals(pixels, parser.getSamples(ifd, new byte[pixels.length]));
+	}
+
+	/** Tests reading Zstandard and LZ4 compressed strips. */
+	@Test
+	public void testZstdAndLZ4Strips() throws FormatException, IOException {
+		final byte[] pixels = new byte[WIDTH * HEIGHT];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) (i / 3 % 17);
+		}
+		for (final TiffCompression compression : new TiffCompression[] {
+			TiffCompression.ZSTD, TiffCompression.LZ4 })
+		{
+			final BytesLocation location = write(pixels, compression);
+			final TiffParser parser = new TiffParser(context, location);
+			final IFD ifd = parser.getFirstIFD();
+			assertEquals(compression, ifd.getCompression());
+			assertArrayEquals(pixels, parser.getSamples(ifd,
+				new byte[pixels.length]));
+		}
+	}
+
+	/** Tests decoding strips on several threads. */
+	@Test
+	public void testThreadedStrips() throws FormatException, IOException {
+		final byte[] pixels = new byte[WIDTH * HEIGHT];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) (i * 7 % 251);
+		}
+		final BytesLocation location = write(pixels, TiffCompression.DEFLATE);
+
+		final TiffParser parser = new TiffParser(context, location);
+		parser.setThreadCount(4);
+		final IFD ifd = parser.getFirstIFD();
+		assertArrayEquals(pixels, parser.getSamples(ifd, new byte[pixels.length]));
+		assertArrayEquals(crop(pixels, 1, 3, 10, 50, 10), parser.getSamples(ifd,
+			new byte[50 * 10], 3, 10, 50, 10));
+	}
+
+	/**
+	 * Tests decoding strips on several threads when all strips share one byte
+	 * count, which was written as a sample count and must be corrected once.
+	 */
+	@Test
+	public void testThreadedEqualStrips() throws FormatException, IOException {
+		final byte[] pixels = new byte[WIDTH * HEIGHT * 2];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) (i * 7 % 251);
+		}
+		final BytesLocation location = write(pixels, TiffCompression.UNCOMPRESSED,
+			FormatTools.UINT16);
+
+		final TiffParser parser = new TiffParser(context, location);
+		parser.setAssumeEqualStrips(true);
+		parser.setThreadCount(4);
+		final IFD ifd = parser.getFirstIFD();
+		final long[] sampleCounts = new long[HEIGHT / 4];
+		Arrays.fill(sampleCounts, WIDTH * 4);
+		ifd.putIFDValue(IFD.STRIP_BYTE_COUNTS, sampleCounts);
+		// a region which is not read directly into the output buffer
+		final int w = WIDTH - 1;
+		for (int i = 0; i < 3; i++) {
+			assertArrayEquals(crop(pixels, 2, 1, 0, w, HEIGHT), parser.getSamples(
+				ifd, new byte[w * HEIGHT * 2], 1, 0, w, HEIGHT));
+		}
+	}
+
+	/**
+	 * Tests that regions of JPEG 2000 tiles, which decode only the part of each
+	 * tile being read, match the same region of the whole plane.
+	 */
+	@Test
+	public void testJPEG2000TileRegions() throws FormatException, IOException {
+		final byte[] pixels = new byte[WIDTH * HEIGHT];
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				pixels[y * WIDTH + x] = (byte) (x + 2 * y + (x * y) / 64);
+			}
+		}
+		final BytesLocation location = writeTiles(pixels,
+			TiffCompression.JPEG_2000, 32);
+
+		final TiffParser parser = new TiffParser(context, location);
+		parser.setCodecOptions(JPEG2000CodecOptions.getDefaultOptions());
+		final IFD ifd = parser.getFirstIFD();
+		final int[][] regions = { { 5, 7, 50, 40 }, { 3, 4, 20, 10 },
+			{ 40, 0, 24, 64 }, { 63, 63, 1, 1 } };
+		for (final int[] r : regions) {
+			assertArrayEquals(crop(pixels, 1, r[0], r[1], r[2], r[3]), parser
+				.getSamples(ifd, new byte[r[2] * r[3]], r[0], r[1], r[2], r[3]));
+		}
+		assertArrayEquals(pixels, parser.getSamples(ifd, new byte[pixels.length]));
+	}
+
+	/**
+	 * Tests that regions of other tiles are decoded whole, even when the parser
+	 * was set up for JPEG 2000.
+	 */
+	@Test
+	public void testJPEG2000OptionsOtherTiles() throws FormatException,
+		IOException
+	{
+		final byte[] pixels = new byte[WIDTH * HEIGHT];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) (i * 7 % 251);
+		}
+		final TiffParser parser = new TiffParser(context, writeTiles(pixels,
+			TiffCompression.DEFLATE, 32));
+		parser.setCodecOptions(JPEG2000CodecOptions.getDefaultOptions());
+		final IFD ifd = parser.getFirstIFD();
+		assertArrayEquals(crop(pixels, 1, 5, 7, 50, 40), parser.getSamples(ifd,
+			new byte[50 * 40], 5, 7, 50, 40));
+	}
+
+	/**
+	 * Tests that strips and tiles read through a memory mapping of the file
+	 * match those read through the input handle.
+	 */
+	@Test
+	public void testMemoryMapping() throws FormatException, IOException {
+		final byte[] pixels = new byte[WIDTH * HEIGHT];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) (i * 7 % 251);
+		}
+		final BytesLocation[] sources = { write(pixels,
+			TiffCompression.UNCOMPRESSED), write(pixels, TiffCompression.DEFLATE),
+			writeTiles(pixels, TiffCompression.DEFLATE, 16) };
+		final int x = 5, y = 7, w = 30, h = 20;
+		for (final BytesLocation source : sources) {
+			final File file = File.createTempFile("mapped", ".tif");
+			file.deleteOnExit();
+			Files.write(file.toPath(), bytes(source));
+
+			final TiffParser parser = new TiffParser(context, new FileLocation(
+				file));
+			try {
+				final IFD ifd = parser.getFirstIFD();
+				parser.setMemoryMapping(true);
+				assertTrue(parser.isMemoryMapping());
+				final byte[] mapped = parser.getSamples(ifd, new byte[pixels.length]);
+				final byte[] mappedRegion = parser.getSamples(ifd, new byte[w * h], x,
+					y, w, h);
+				parser.setMemoryMapping(false);
+				assertFalse(parser.isMemoryMapping());
+				final byte[] read = parser.getSamples(ifd, new byte[pixels.length]);
+				assertArrayEquals(pixels, read);
+				assertArrayEquals(read, mapped);
+				assertArrayEquals(crop(pixels, 1, x, y, w, h), mappedRegion);
+			}
+			finally {
+				parser.getStream().close();
+			}
+		}
+	}
+
+	// -- Helper methods --
+
+	/** Writes an 8-bit TIFF with four rows per strip. */
+	private BytesLocation write(final byte[] pixels,
+		final TiffCompression compression) throws FormatException, IOException
+	{
+		return write(pixels, compression, FormatTools.UINT8);
+	}
+
+	/** Writes a TIFF with four rows per strip. */
+	private BytesLocation write(final byte[] pixels,
+		final TiffCompression compression, final int pixelType)
+		throws FormatException, IOException
+	{
+		final BytesLocation location = new BytesLocation(1024);
+		final IFD ifd = new IFD(null);
+		ifd.putIFDValue(IFD.IMAGE_WIDTH, WIDTH);
+		ifd.putIFDValue(IFD.IMAGE_LENGTH, HEIGHT);
+		ifd.putIFDValue(IFD.ROWS_PER_STRIP, 4);
+		ifd.putIFDValue(IFD.COMPRESSION, compression.getCode());
+
+		final TiffSaver saver = new TiffSaver(context, location);
+		saver.setLittleEndian(true);
+		saver.writeHeader();
+		saver.writeImage(pixels, ifd, 0, pixelType, true);
+		return location;
+	}
+
+	/** Writes an 8-bit TIFF of square tiles with the given size. */
+	private BytesLocation writeTiles(final byte[] pixels,
+		final TiffCompression compression, final int tileSize)
+		throws FormatException, IOException
+	{
+		final BytesLocation location = new BytesLocation(1024);
+		final DataHandle<Location> handle = context.service(
+			DataHandleService.class).create(location);
+		try (final TiffTileWriter writer = new TiffTileWriter(context, handle)) {
+			final IFD ifd = new IFD(null);
+			ifd.putIFDValue(IFD.COMPRESSION, compression.getCode());
+			writer.startImage(ifd, WIDTH, HEIGHT, tileSize, tileSize,
+				FormatTools.UINT8, 1);
+			for (int row = 0; row * tileSize < HEIGHT; row++) {
+				final int h = Math.min(tileSize, HEIGHT - row * tileSize);
+				final byte[] band = new byte[WIDTH * h];
+				System.arraycopy(pixels, row * tileSize * WIDTH, band, 0, band.length);
+				writer.writeTileRow(row, band);
+			}
+		}
+		return location;
+	}
+
+	/** Gets the bytes written to the given location. */
+	private byte[] bytes(final BytesLocation location) throws IOException {
+		try (final DataHandle<Location> handle = context.service(
+			DataHandleService.class).create(location))
+		{
+			final byte[] bytes = new byte[(int) handle.length()];
+			handle.readFully(bytes);
+			return bytes;
+		}
+	}
+
+	/** Copies a region out of a plane with the given bytes per pixel. */
+	private byte[] crop(final byte[] pixels, final int bpp, final int x,
+		final int y, final int w, final int h)
+	{
+		final byte[] region = new byte[w * h * bpp];
+		for (int row = 0; row < h; row++) {
+			System.arraycopy(pixels, ((y + row) * WIDTH + x) * bpp, region, row * w *
+				bpp, w * bpp);
+		}
+		return region;
+	}
+
+}
@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import io.scif.FormatException;
+import io.scif.util.FormatTools;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.location.BytesLocation;
+
+/**
+ * Tests {@link TiffSaver}.
+ */
+public class TiffSaverTest {
+
+	private Context context;
+
+	@Before
+	public void setUp() {
+		context = new Context();
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	/** Tests writing strips whose last one extends past the image. */
+	@Test
+	public void testStrips() throws FormatException, IOException {
+		final IFD ifd = new IFD(null);
+		ifd.putIFDValue(IFD.ROWS_PER_STRIP, new long[] { 7 });
+		assertRoundTrip(ifd, 50, 40);
+	}
+
+	/** Tests writing tiles, including partial tiles on the right and bottom. */
+	@Test
+	public void testTiles() throws FormatException, IOException {
+		final IFD ifd = new IFD(null);
+		ifd.putIFDValue(IFD.TILE_WIDTH, 16);
+		ifd.putIFDValue(IFD.TILE_LENGTH, 16);
+		assertRoundTrip(ifd, 50, 40);
+	}
+
+	/** Tests compressing tiles on several threads. */
+	@Test
+	public void testParallelCompression() throws FormatException, IOException {
+		final IFD ifd = new IFD(null);
+		ifd.putIFDValue(IFD.TILE_WIDTH, 16);
+		ifd.putIFDValue(IFD.TILE_LENGTH, 16);
+		ifd.putIFDValue(IFD.COMPRESSION, TiffCompression.DEFLATE.getCode());
+		assertRoundTrip(ifd, 50, 40, 4);
+	}
+
+	/** Tests writing tiles with the horizontal differencing predictor. */
+	@Test
+	public void testHorizontalPredictor() throws FormatException, IOException {
+		final IFD ifd = new IFD(null);
+		ifd.putIFDValue(IFD.TILE_WIDTH, 16);
+		ifd.putIFDValue(IFD.TILE_LENGTH, 16);
+		ifd.putIFDValue(IFD.COMPRESSION, TiffCompression.DEFLATE.getCode());
+		ifd.putIFDValue(IFD.PREDICTOR, 2);
+		assertRoundTrip(ifd, 50, 40);
+	}
+
+	/** Tests writing strips with the floating point predictor. */
+	@Test
+	public void testFloatingPointPredictor() throws FormatException,
+		IOException
+	{
+		final IFD ifd = new IFD(null);
+		ifd.putIFDValue(IFD.ROWS_PER_STRIP, new long[] { 7 });
+		ifd.putIFDValue(IFD.COMPRESSION, TiffCompression.DEFLATE.getCode());
+		ifd.putIFDValue(IFD.PREDICTOR, 3);
+		assertRoundTrip(ifd, 50, 40, 2);
+	}
+
+	/** Tests that the saver keeps track of the IFDs it writes. */
+	@Test
+	public void testIFDOffsets() throws FormatException, IOException {
+		final int planes = 3;
+		final byte[] pixels = new byte[16 * 16];
+		final BytesLocation location = new BytesLocation(1024);
+		final TiffSaver saver = new TiffSaver(context, location);
+		saver.setLittleEndian(true);
+		saver.writeHeader();
+		assertEquals(-1, saver.getIFDOffset(0));
+		for (int p = 0; p < planes; p++) {
+			final IFD ifd = new IFD(null);
+			ifd.putIFDValue(IFD.IMAGE_WIDTH, 16);
+			ifd.putIFDValue(IFD.IMAGE_LENGTH, 16);
+			saver.getStream().seek(saver.getStream().length());
+			saver.writeImage(pixels, ifd, p, FormatTools.UINT8, p == planes - 1);
+		}
+
+		final long[] offsets = new TiffParser(context, location).getIFDOffsets();
+		assertEquals(planes, offsets.length);
+		for (int p = 0; p < planes; p++) {
+			assertEquals(offsets[p], saver.getIFDOffset(p));
+		}
+		assertEquals(-1, saver.getIFDOffset(planes));
+		assertNotNull(saver.getIFD(1));
+		assertNull(saver.getIFD(planes));
+	}
+
+	// -- Helper methods --
+
+	private void assertRoundTrip(final IFD ifd, final int w, final int h)
+		throws FormatException, IOException
+	{
+		assertRoundTrip(ifd, w, h, 1);
+	}
+
+	/** Writes a 16-bit plane with the given layout, and reads it back. */
+	private void assertRoundTrip(final IFD ifd, final int w, final int h,
+		final int threads) throws FormatException, IOException
+	{
+		final byte[] pixels = new byte[w * h * 2];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) (i * 13);
+		}
+		ifd.putIFDValue(IFD.IMAGE_WIDTH, w);
+		ifd.putIFDValue(IFD.IMAGE_LENGTH, h);
+
+		final BytesLocation location = new BytesLocation(1024);
+		final TiffSaver saver = new TiffSaver(context, location);
+		saver.setLittleEndian(true);
+		saver.setThreadCount(threads);
+		saver.writeHeader();
+		saver.writeImage(pixels, ifd, 0, FormatTools.UINT16, true);
+
+		final TiffParser parser = new TiffParser(context, location);
+		final byte[] samples = parser.getSamples(parser.getFirstIFD(),
+			new byte[pixels.length]);
+		assertArrayEquals(pixels, samples);
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TiffTileCache}.
+ */
+public class TiffTileCacheTest {
+
+	@Test
+	public void testHitAndMiss() {
+		final TiffTileCache cache = new TiffTileCache(1024);
+		final byte[] tile = { 1, 2, 3, 4 };
+		assertNull(cache.get(8, 0, 0, null));
+		cache.put(8, 0, 0, tile, tile.length);
+
+		final byte[] buf = new byte[4];
+		assertNotNull(cache.get(8, 0, 0, buf));
+		assertArrayEquals(tile, buf);
+		assertNull(cache.get(8, 0, 1, null));
+		assertNull(cache.get(16, 0, 0, null));
+
+		assertEquals(1, cache.getHitCount());
+		assertEquals(3, cache.getMissCount());
+		assertEquals(4, cache.getBytes());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		final TiffTileCache cache = new TiffTileCache(300);
+		final byte[] tile = new byte[100];
+		cache.put(8, 0, 0, tile, tile.length);
+		cache.put(8, 0, 1, tile, tile.length);
+		cache.put(8, 0, 2, tile, tile.length);
+
+		// touch the oldest tile, so that the second one is evicted next
+		assertNotNull(cache.get(8, 0, 0, null));
+		cache.put(8, 0, 3, tile, tile.length);
+
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(300, cache.getBytes());
+		assertNotNull(cache.get(8, 0, 0, null));
+		assertNull(cache.get(8, 0, 1, null));
+		assertNotNull(cache.get(8, 0, 2, null));
+		assertNotNull(cache.get(8, 0, 3, null));
+	}
+
+	@Test
+	public void testOversizedTile() {
+		final TiffTileCache cache = new TiffTileCache(10);
+		cache.put(8, 0, 0, new byte[11], 11);
+		assertEquals(0, cache.getTileCount());
+		assertEquals(0, cache.getBytes());
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+package io.scif.formats.tiff;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.scif.FormatException;
+import io.scif.util.FormatTools;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.BytesLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * Tests {@link TiffTileWriter}.
+ */
+public class TiffTileWriterTest {
+
+	private static final int WIDTH = 50;
+
+	private static final int HEIGHT = 40;
+
+	private static final int TILE = 16;
+
+	private Context context;
+
+	@Before
+	public void setUp() {
+		context = new Context();
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+	}
+
+	/** Tests writing tiles in reverse order, with clipped edge tiles. */
+	@Test
+	public void testTilesOutOfOrder() throws FormatException, IOException {
+		final byte[] pixels = pixels(1);
+		final BytesLocation location = new BytesLocation(1024);
+		try (final TiffTileWriter writer = createWriter(location)) {
+			assertFalse(writer.isBigTiff());
+			writer.startImage(null, WIDTH, HEIGHT, TILE, TILE, FormatTools.UINT16,
+				1);
+			for (int row = 2; row >= 0; row--) {
+				for (int col = 3; col >= 0; col--) {
+					writer.writeTile(col, row, tile(pixels, col, row));
+				}
+			}
+		}
+		assertArrayEquals(pixels, read(location, 0));
+	}
+
+	/** Tests writing rows of tiles, and several images to one file. */
+	@Test
+	public void testTileRows() throws FormatException, IOException {
+		final BytesLocation location = new BytesLocation(1024);
+		final int rowLen = WIDTH * 2;
+		try (final TiffTileWriter writer = createWriter(location)) {
+			writer.setBigTiff(true);
+			for (int image = 0; image < 2; image++) {
+				final IFD ifd = new IFD(null);
+				ifd.putIFDValue(IFD.COMPRESSION, TiffCompression.DEFLATE.getCode());
+				writer.startImage(ifd, WIDTH, HEIGHT, TILE, TILE, FormatTools.UINT16,
+					1);
+				final byte[] pixels = pixels(image + 1);
+				for (int row = 0; row < 3; row++) {
+					final int h = Math.min(TILE, HEIGHT - row * TILE);
+					final byte[] band = new byte[rowLen * h];
+					System.arraycopy(pixels, row * TILE * rowLen, band, 0, band.length);
+					writer.writeTileRow(row, band);
+				}
+				writer.endImage();
+			}
+		}
+		final TiffParser parser = new TiffParser(context, location);
+		assertEquals(2, parser.getIFDs().size());
+		assertTrue(parser.isBigTiff());
+		assertArrayEquals(pixels(1), read(location, 0));
+		assertArrayEquals(pixels(2), read(location, 1));
+	}
+
+	/** Tests that tiles which are never written read back as blank. */
+	@Test
+	public void testMissingTiles() throws FormatException, IOException {
+		final byte[] pixels = pixels(1);
+		final BytesLocation location = new BytesLocation(1024);
+		try (final TiffTileWriter writer = createWriter(location)) {
+			writer.startImage(null, WIDTH, HEIGHT, TILE, TILE, FormatTools.UINT16,
+				1);
+			writer.writeTile(0, 0, tile(pixels, 0, 0));
+		}
+
+		final byte[] expected = new byte[pixels.length];
+		for (int y = 0; y < TILE; y++) {
+			System.arraycopy(pixels, y * WIDTH * 2, expected, y * WIDTH * 2, TILE *
+				2);
+		}
+		assertArrayEquals(expected, read(location, 0));
+		assertEquals(1, new TiffParser(context, location).getIFDOffsets().length);
+	}
+
+	/** Tests writing downsampled pyramid levels as SubIFDs. */
+	@Test
+	public void testPyramid() throws FormatException, IOException {
+		final byte[] pixels = pixels(1);
+		final BytesLocation location = new BytesLocation(1024);
+		final int rowLen = WIDTH * 2;
+		try (final TiffTileWriter writer = createWriter(location)) {
+			writer.setPyramidLevels(2);
+			writer.setThreadCount(3);
+			final IFD ifd = new IFD(null);
+			ifd.putIFDValue(IFD.COMPRESSION, TiffCompression.DEFLATE.getCode());
+			writer.startImage(ifd, WIDTH, HEIGHT, TILE, TILE, FormatTools.UINT16, 1);
+			for (int row = 0; row < 3; row++) {
+				final int h = Math.min(TILE, HEIGHT - row * TILE);
+				final byte[] band = new byte[rowLen * h];
+				System.arraycopy(pixels, row * TILE * rowLen, band, 0, band.length);
+				writer.writeTileRow(row, band);
+			}
+		}
+
+		final TiffParser parser = new TiffParser(context, location);
+		final IFDList ifds = parser.getIFDs();
+		assertEquals(3, ifds.size());
+		assertEquals(1, parser.getIFDOffsets().length);
+		assertEquals(2, parser.getThumbnailIFDs().size());
+		assertArrayEquals(pixels, read(location, 0));
+
+		final byte[] level1 = downsample(pixels, WIDTH, HEIGHT);
+		final byte[] level2 = downsample(level1, 25, 20);
+		assertEquals(25, ifds.get(1).getImageWidth());
+		assertEquals(20, ifds.get(1).getImageLength());
+		assertArrayEquals(level1, parser.getSamples(ifds.get(1), new byte[25 * 20 *
+			2]));
+		assertEquals(13, ifds.get(2).getImageWidth());
+		assertEquals(10, ifds.get(2).getImageLength());
+		assertArrayEquals(level2, parser.getSamples(ifds.get(2), new byte[13 * 10 *
+			2]));
+	}
+
+	// -- Helper methods --
+
+	private TiffTileWriter createWriter(final Location location) {
+		final DataHandle<Location> handle = context.service(
+			DataHandleService.class).create(location);
+		final TiffTileWriter writer = new TiffTileWriter(context, handle);
+		writer.setLittleEndian(true);
+		return writer;
+	}
+
+	/** Creates a 16-bit test plane. */
+	private byte[] pixels(final int seed) {
+		final byte[] pixels = new byte[WIDTH * HEIGHT * 2];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte) (i * seed * 7);
+		}
+		return pixels;
+	}
+
+	/** Copies a tile out of the given plane, clipped to the plane. */
+	private byte[] tile(final byte[] pixels, final int col, final int row) {
+		final int w = Math.min(TILE, WIDTH - col * TILE);
+		final int h = Math.min(TILE, HEIGHT - row * TILE);
+		final byte[] tile = new byte[w * h * 2];
+		for (int y = 0; y < h; y++) {
+			System.arraycopy(pixels, ((row * TILE + y) * WIDTH + col * TILE) * 2,
+				tile, y * w * 2, w * 2);
+		}
+		return tile;
+	}
+
+	/** Averages each 2 x 2 block of a 16-bit plane, clipped to the plane. */
+	private byte[] downsample(final byte[] pixels, final int width,
+		final int height)
+	{
+		final int w = (width + 1) / 2, h = (height + 1) / 2;
+		final byte[] half = new byte[w * h * 2];
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				double sum = 0;
+				int count = 0;
+				for (int yy = y * 2; yy < Math.min(height, y * 2 + 2); yy++) {
+					for (int xx = x * 2; xx < Math.min(width, x * 2 + 2); xx++) {
+						final int i = (yy * width + xx) * 2;
+						sum += (pixels[i] & 0xff) | (pixels[i + 1] & 0xff) << 8;
+						count++;
+					}
+				}
+				final long value = Math.round(sum / count);
+				half[(y * w + x) * 2] = (byte) value;
+				half[(y * w + x) * 2 + 1] = (byte) (value >> 8);
+			}
+		}
+		return half;
+	}
+
+	private byte[] read(final Location location, final int image)
+		throws FormatException, IOException
+	{
+		final TiffParser parser = new TiffParser(context, location);
+		final IFD ifd = parser.getIFDs().get(image);
+		return parser.getSamples(ifd, new byte[WIDTH * HEIGHT * 2]);
+	}
+
+}
@@ -0,0 +1,188 @@
+/*
+ * #%L
+ * SCIFIO library for reading and converting scientific file formats.
+ * %%
+ * Copyright (C) 2011 - 2021 SCIFIO developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+
+
+package io.scif.img;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import io.scif.FormatException;
+import io.scif.config.SCIFIOConfig;
+import io.scif.config.SCIFIOConfig.ImgMode;
+import io.scif.formats.tiff.IFD;
+import io.scif.formats.tiff.TiffSaver;
+import io.scif.util.FormatTools;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scijava.Context;
+import org.scijava.io.handle.DataHandle;
+import org.scijava.io.handle.DataHandleService;
+import org.scijava.io.location.FileLocation;
+import org.scijava.io.location.Location;
+
+/**
+ * Tests reading planes with {@link ImgOpener} in bands of rows, as it does for
+ * planes too large to read in one piece.
+ */
+public class ImgOpenerTest {
+
+	private static final int WIDTH = 64;
+
+	private static final int HEIGHT = 47;
+
+	private static final int DEPTH = 3;
+
+	private Context context;
+
+	private File file;
+
+	private FileLocation location;
+
+	@Before
+	public void setUp() throws FormatException, IOException {
+		context = new Context();
+		file = File.createTempFile("bands", ".tif");
+		location = new FileLocation(file);
+
+		try (final DataHandle<Location> handle = context.service(
+			DataHandleService.class).create(location))
+		{
+			final TiffSaver saver = new TiffSaver(context, handle);
+			saver.setLittleEndian(false);
+			saver.writeHeader();
+			for (int z = 0; z < DEPTH; z++) {
+				final byte[] plane = new byte[WIDTH * HEIGHT * 2];
+				for (int i = 0; i < WIDTH * HEIGHT; i++) {
+					final int value = i * 13 + z * 4099;
+					plane[2 * i] = (byte) (value >> 8);
+					plane[2 * i + 1] = (byte) value;
+				}
+				final IFD ifd = new IFD(null);
+				ifd.putIFDValue(IFD.IMAGE_WIDTH, WIDTH);
+				ifd.putIFDValue(IFD.IMAGE_LENGTH, HEIGHT);
+				saver.writeImage(plane, ifd, z, FormatTools.UINT16, z == DEPTH - 1);
+			}
+		}
+	}
+
+	@After
+	public void tearDown() {
+		context.dispose();
+		file.delete();
+	}
+
+	/** Tests reading bands into an array image. */
+	@Test
+	public void testArrayBands() {
+		assertBands(new SCIFIOConfig().imgOpenerSetImgModes(ImgMode.ARRAY));
+	}
+
+	/** Tests reading bands into a planar image. */
+	@Test
+	public void testPlanarBands() {
+		assertBands(new SCIFIOConfig().imgOpenerSetImgModes(ImgMode.PLANAR));
+	}
+
+	/** Tests reading bands of a region which starts inside the plane. */
+	@Test
+	public void testRegionBands() {
+		final ImageRegion region = new ImageRegion(new AxisType[] { Axes.X,
+			Axes.Y }, new String[] { "3-60", "5-40" });
+		assertBands(new SCIFIOConfig().imgOpenerSetImgModes(ImgMode.ARRAY)
+			.imgOpenerSetRegion(region));
+		assertBands(new SCIFIOConfig().imgOpenerSetImgModes(ImgMode.PLANAR)
+			.imgOpenerSetRegion(region));
+	}
+
+	/**
+	 * Tests reading bands into an image of another type, which has to be filled
+	 * sample by sample.
+	 */
+	@Test
+	public void testConvertedBands() {
+		final ImgOpener opener = new ImgOpener(context);
+		final ImgOpener banded = bandedOpener();
+		final ArrayImgFactory<FloatType> factory = new ArrayImgFactory<>(
+			new FloatType());
+		assertSamples(opener.openImgs(location, factory, new SCIFIOConfig()).get(
+			0), banded.openImgs(location, factory, new SCIFIOConfig()).get(0));
+	}
+
+	// -- Helper methods --
+
+	/**
+	 * Checks that reading in bands gives the same image as reading whole planes.
+	 */
+	private void assertBands(final SCIFIOConfig config) {
+		final ImgPlus<?> expected = new ImgOpener(context).openImgs(location,
+			config).get(0);
+		final ImgPlus<?> actual = bandedOpener().openImgs(location, config).get(0);
+		assertEquals(DEPTH, expected.dimension(2));
+		assertSamples(expected, actual);
+	}
+
+	/** Creates an opener which reads every plane in bands of five rows. */
+	private ImgOpener bandedOpener() {
+		final ImgOpener opener = new ImgOpener(context);
+		opener.maxPlaneBytes = 0;
+		opener.bandBytes = WIDTH * 2 * 5;
+		return opener;
+	}
+
+	/** Checks that both images have the same dimensions and samples. */
+	private void assertSamples(final ImgPlus<?> expected,
+		final ImgPlus<?> actual)
+	{
+		assertArrayEquals(Intervals.dimensionsAsLongArray(expected), Intervals
+			.dimensionsAsLongArray(actual));
+		final Cursor<?> e = Views.flatIterable(expected).cursor();
+		final Cursor<?> a = Views.flatIterable(actual).cursor();
+		while (e.hasNext()) {
+			final double value = ((RealType<?>) e.next()).getRealDouble();
+			assertEquals(value, ((RealType<?>) a.next()).getRealDouble(), 0);
+		}
+	}
+
+}